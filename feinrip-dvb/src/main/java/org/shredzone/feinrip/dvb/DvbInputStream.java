@@ -32,6 +32,9 @@ import org.shredzone.feinrip.dvb.si.descriptor.DescriptorFactory;
 
 /**
  * InputStream for reading DVB streams.
+ * <p>
+ * The decoding is recorded as Flight Recorder event, from creating the stream until
+ * it is closed.
  *
  * @author Richard "Shred" Körber
  * @see <a href="http://www.etsi.org/deliver/etsi_en/300400_300499/300468/01.12.01_40/en_300468v011201o.pdf">ETSI EN 300 468</a>
@@ -40,8 +43,23 @@ public class DvbInputStream extends DataInputStream {
 
     private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
 
+    private EitDecodingEvent event = new EitDecodingEvent();
+
     public DvbInputStream(InputStream in) {
         super(in);
+        event.begin();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (event != null) {
+                event.commit();
+                event = null;
+            }
+        }
     }
 
     /**
@@ -187,6 +205,9 @@ public class DvbInputStream extends DataInputStream {
         }
 
         descriptor.read(this);
+        if (event != null) {
+            event.descriptors++;
+        }
         return descriptor;
     }
 
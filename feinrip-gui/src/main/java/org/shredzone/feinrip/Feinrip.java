@@ -22,6 +22,7 @@ import java.awt.Image;
 import java.awt.Point;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ResourceBundle;
@@ -29,10 +30,13 @@ import java.util.prefs.Preferences;
 
 import javax.swing.ImageIcon;
 import javax.swing.JFrame;
+import javax.swing.JOptionPane;
 import javax.swing.UIManager;
 
 import org.shredzone.feinrip.database.ImdbDatabase;
 import org.shredzone.feinrip.gui.FeinripPane;
+import org.shredzone.feinrip.job.Job;
+import org.shredzone.feinrip.job.JobQueue;
 
 /**
  * Main class that starts <i>feinrip</i>.
@@ -54,6 +58,21 @@ public class Feinrip extends JFrame {
         addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
+                JobQueue queue = JobQueue.global();
+                List<Job> running = queue.getJobs();
+                if (!running.isEmpty()) {
+                    int answer = JOptionPane.showConfirmDialog(Feinrip.this,
+                                    MessageFormat.format(B.getString("exit.confirm"), running.size()),
+                                    B.getString("exit.title"),
+                                    JOptionPane.YES_NO_OPTION,
+                                    JOptionPane.WARNING_MESSAGE);
+                    if (answer != JOptionPane.YES_OPTION) {
+                        return;
+                    }
+                    // The job threads finish their cleanup before the JVM exits
+                    running.forEach(queue::cancel);
+                }
+
                 Point pnt = getLocation();
                 prefs.putInt("win.pos.x", pnt.x);
                 prefs.putInt("win.pos.y", pnt.y);
@@ -0,0 +1,522 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.shredzone.feinrip.database.ImdbDatabase;
+import org.shredzone.feinrip.database.TvdbService.TvdbEpisode;
+import org.shredzone.feinrip.job.DriveWorker;
+import org.shredzone.feinrip.job.JobQueue;
+import org.shredzone.feinrip.job.ProjectCodec;
+import org.shredzone.feinrip.model.Audio;
+import org.shredzone.feinrip.model.Language;
+import org.shredzone.feinrip.model.MountPoint;
+import org.shredzone.feinrip.model.Project;
+import org.shredzone.feinrip.model.Subtitle;
+import org.shredzone.feinrip.model.TargetTemplate;
+import org.shredzone.feinrip.model.Track;
+import org.shredzone.feinrip.progress.ConsoleProgressMeter;
+import org.shredzone.feinrip.source.DvdSource;
+import org.shredzone.feinrip.source.IsoSource;
+import org.shredzone.feinrip.source.Source;
+import org.shredzone.feinrip.source.VobSource;
+import org.shredzone.feinrip.system.DeviceUtils;
+import org.shredzone.feinrip.system.LanguageUtils;
+
+/**
+ * Main class that runs <i>feinrip</i> without a GUI.
+ * <p>
+ * A job is either described by command line options, or by JSON files as written by
+ * the job journal. All jobs are processed one after the other. Swing is never used,
+ * and the movie database is only opened if a title lookup was requested.
+ * <p>
+ * In rip station mode, a {@link DriveWorker} watches each drive. The options are used
+ * for every inserted disc, and discs in different drives are processed in parallel.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class FeinripBatch {
+
+    private static final String USAGE =
+              "Usage: feinrip-batch [options] [job.json ...]\n"
+            + "\n"
+            + "Source (one of):\n"
+            + "  --dvd <device>           DVD drive, the disc must be mounted\n"
+            + "  --iso <directory>        Mounted ISO image or VIDEO_TS parent directory\n"
+            + "  --vob <file>             VOB file\n"
+            + "  --drives <devices>       Rip station: watch the DVD drives (comma separated, or\n"
+            + "                           all) and process every inserted disc, until terminated\n"
+            + "\n"
+            + "Options:\n"
+            + "  --track <n>              Track number (default: longest track)\n"
+            + "  --eit <file>             EIT file with title information\n"
+            + "  --audio <streams>        Audio streams to use: all, none, or a comma separated\n"
+            + "                           list of stream numbers and language codes (default: all)\n"
+            + "  --subs <streams>         Subtitles to use, like --audio (default: none)\n"
+            + "  --default-audio <stream> Default audio stream number or language code\n"
+            + "  --default-sub <stream>   Default subtitle stream number or language code\n"
+            + "  --title <title>          Title (default: title found on the source)\n"
+            + "  --lookup                 Use the first IMDb match of the title\n"
+            + "  --season <n>             Season number\n"
+            + "  --episode <n>            Episode number\n"
+            + "  --episode-title <title>  Episode title\n"
+            + "  --output <pattern>       Output file pattern, or one of MOVIE, SERIES, NO_SEASON,\n"
+            + "                           TRACK (default: MOVIE)\n"
+            + "  --verbose                Show the output of all tools\n"
+            + "  --help                   Show this help\n";
+
+    /**
+     * A single job to be processed.
+     */
+    private static class BatchJob {
+        private final Project project;
+        private final File target;
+
+        public BatchJob(Project project, File target) {
+            this.project = project;
+            this.target = target;
+        }
+    }
+
+    /**
+     * Command line options that describe a job.
+     */
+    private static class Options implements Cloneable {
+        private String dvd;
+        private String drives;
+        private String iso;
+        private String vob;
+        private Integer track;
+        private String eit;
+        private String audio = "all";
+        private String subs = "none";
+        private String defaultAudio;
+        private String defaultSub;
+        private String title;
+        private boolean lookup;
+        private Integer season;
+        private Integer episode;
+        private String episodeTitle;
+        private String output = TargetTemplate.MOVIE.name();
+        private boolean verbose;
+        private final List<File> jobFiles = new ArrayList<>();
+
+        public boolean hasSource() {
+            return dvd != null || iso != null || vob != null;
+        }
+
+        /**
+         * Returns a copy of the options, using the given DVD drive as source.
+         */
+        public Options forDrive(File device) {
+            try {
+                Options copy = (Options) clone();
+                copy.dvd = device.getPath();
+                return copy;
+            } catch (CloneNotSupportedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+
+        Options opts;
+        try {
+            opts = parse(args);
+        } catch (IllegalArgumentException ex) {
+            err.println(ex.getMessage());
+            err.print(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        if (opts == null) {
+            out.print(USAGE);
+            return;
+        }
+
+        if (opts.drives != null) {
+            runStation(opts, out, err);
+            return;
+        }
+
+        List<BatchJob> jobs = new ArrayList<>();
+        try {
+            if (opts.hasSource()) {
+                jobs.add(createJob(opts));
+            }
+            for (File file : opts.jobFiles) {
+                jobs.addAll(readJobs(file));
+            }
+        } catch (IOException ex) {
+            err.println("Could not set up job: " + ex.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        if (jobs.isEmpty()) {
+            err.print(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        int failed = 0;
+        for (BatchJob job : jobs) {
+            out.println("Processing " + job.target);
+            try {
+                FeinripProcessor processor = new FeinripProcessor(job.project);
+                processor.setTargetFile(job.target);
+                processor.setEjectAfterRip(false);
+                processor.setProgressMeter(new ConsoleProgressMeter(out, opts.verbose));
+                processor.start();
+            } catch (IOException ex) {
+                err.println("Failed: " + job.target + ": " + ex.getMessage());
+                failed++;
+            }
+        }
+
+        System.exit(failed > 0 ? 1 : 0);
+    }
+
+    /**
+     * Runs the rip station mode. Each drive is watched by a {@link DriveWorker}, and
+     * gets its own progress output, prefixed with the device name. Never returns unless
+     * there are no drives.
+     */
+    private static void runStation(Options opts, PrintStream out, PrintStream err) {
+        List<File> devices = new ArrayList<>();
+        if ("all".equalsIgnoreCase(opts.drives)) {
+            devices.addAll(DeviceUtils.findDvdDevices());
+        } else {
+            for (String dev : opts.drives.split(",")) {
+                if (!dev.trim().isEmpty()) {
+                    devices.add(new File(dev.trim()));
+                }
+            }
+        }
+
+        if (devices.isEmpty()) {
+            err.println("No DVD drives found");
+            System.exit(1);
+            return;
+        }
+
+        JobQueue queue = JobQueue.global();
+        List<Thread> threads = new ArrayList<>();
+        for (File device : devices) {
+            out.println("Watching " + device);
+            ConsoleProgressMeter meter = new ConsoleProgressMeter(out, opts.verbose, "[" + device.getName() + "] ");
+            DriveWorker worker = new DriveWorker(device, queue,
+                            dev -> createJob(opts.forDrive(dev)).project, meter);
+            threads.add(worker.start());
+        }
+
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Parses the command line.
+     *
+     * @return {@link Options}, or {@code null} if the help was requested
+     */
+    private static Options parse(String[] args) {
+        Options opts = new Options();
+
+        for (int ix = 0; ix < args.length; ix++) {
+            String arg = args[ix];
+            switch (arg) {
+                case "--dvd":           opts.dvd = value(args, ++ix, arg); break;
+                case "--iso":           opts.iso = value(args, ++ix, arg); break;
+                case "--vob":           opts.vob = value(args, ++ix, arg); break;
+                case "--drives":        opts.drives = value(args, ++ix, arg); break;
+                case "--track":         opts.track = number(args, ++ix, arg); break;
+                case "--eit":           opts.eit = value(args, ++ix, arg); break;
+                case "--audio":         opts.audio = value(args, ++ix, arg); break;
+                case "--subs":          opts.subs = value(args, ++ix, arg); break;
+                case "--default-audio": opts.defaultAudio = value(args, ++ix, arg); break;
+                case "--default-sub":   opts.defaultSub = value(args, ++ix, arg); break;
+                case "--title":         opts.title = value(args, ++ix, arg); break;
+                case "--lookup":        opts.lookup = true; break;
+                case "--season":        opts.season = number(args, ++ix, arg); break;
+                case "--episode":       opts.episode = number(args, ++ix, arg); break;
+                case "--episode-title": opts.episodeTitle = value(args, ++ix, arg); break;
+                case "--output":        opts.output = value(args, ++ix, arg); break;
+                case "--verbose":       opts.verbose = true; break;
+                case "--help":          return null;
+                default:
+                    if (arg.startsWith("--")) {
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                    }
+                    opts.jobFiles.add(new File(arg));
+            }
+        }
+
+        int sources = (opts.dvd != null ? 1 : 0) + (opts.iso != null ? 1 : 0) + (opts.vob != null ? 1 : 0);
+        if (sources > 1) {
+            throw new IllegalArgumentException("Only one of --dvd, --iso, --vob can be used");
+        }
+        if (opts.drives != null && (sources > 0 || !opts.jobFiles.isEmpty())) {
+            throw new IllegalArgumentException("--drives cannot be used with other sources or job files");
+        }
+
+        return opts;
+    }
+
+    private static String value(String[] args, int ix, String option) {
+        if (ix >= args.length) {
+            throw new IllegalArgumentException("Missing value of " + option);
+        }
+        return args[ix];
+    }
+
+    private static int number(String[] args, int ix, String option) {
+        String value = value(args, ix, option);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Not a number: " + option + " " + value);
+        }
+    }
+
+    /**
+     * Creates a job from the command line options.
+     */
+    private static BatchJob createJob(Options opts) throws IOException {
+        Project project = new Project();
+        Source source;
+
+        if (opts.dvd != null) {
+            File device = new File(opts.dvd);
+            File mount = DeviceUtils.findMountPoint(device);
+            if (mount == null) {
+                throw new IOException(device + " is not mounted");
+            }
+            DvdSource dvd = new DvdSource();
+            bind(dvd, project);
+            try {
+                dvd.setMountPoint(new MountPoint(device, mount));
+            } catch (RuntimeException ex) {
+                throw new IOException("Could not analyze DVD at " + mount, ex);
+            }
+            selectTrack(dvd, opts.track);
+            if (opts.eit != null) {
+                dvd.setEitFile(new File(opts.eit));
+            }
+            source = dvd;
+
+        } else if (opts.iso != null) {
+            IsoSource iso = new IsoSource();
+            bind(iso, project);
+            try {
+                iso.setMountPoint(new File(opts.iso));
+            } catch (RuntimeException ex) {
+                throw new IOException("Could not analyze " + opts.iso, ex);
+            }
+            selectTrack(iso, opts.track);
+            if (opts.eit != null) {
+                iso.setEitFile(new File(opts.eit));
+            }
+            source = iso;
+
+        } else {
+            VobSource vob = new VobSource();
+            bind(vob, project);
+            vob.setVobFile(new File(opts.vob));
+            if (!vob.isValid()) {
+                throw new IOException(opts.vob + " is not a file");
+            }
+            if (opts.eit != null) {
+                vob.setEitFile(new File(opts.eit));
+            }
+            source = vob;
+        }
+
+        source.setupProject();
+
+        for (Audio audio : project.getAudios()) {
+            audio.setEnabled(audio.isAvailable() && matches(opts.audio, audio.getIx(), audio.getLanguage()));
+        }
+        project.setDefAudio(project.getAudios().stream()
+                .filter(Audio::isEnabled)
+                .filter(a -> opts.defaultAudio == null
+                        ? a.equals(project.getDefAudio())
+                        : matches(opts.defaultAudio, a.getIx(), a.getLanguage()))
+                .findFirst()
+                .orElse(project.getAudios().stream()
+                        .filter(Audio::isEnabled)
+                        .findFirst()
+                        .orElse(null)));
+
+        for (Subtitle sub : project.getSubs()) {
+            sub.setEnabled(matches(opts.subs, sub.getIndex(), sub.getLanguage()));
+        }
+        project.setDefSub(opts.defaultSub == null ? null : project.getSubs().stream()
+                .filter(Subtitle::isEnabled)
+                .filter(s -> matches(opts.defaultSub, s.getIndex(), s.getLanguage()))
+                .findFirst()
+                .orElse(null));
+
+        String title = (opts.title != null ? opts.title : source.getTitleProposal());
+        if (opts.lookup) {
+            title = lookupTitle(title);
+        }
+        project.setTitle(title);
+
+        if (opts.season != null || opts.episode != null || opts.episodeTitle != null) {
+            project.setEpisode(new TvdbEpisode(
+                    opts.season != null ? opts.season : 0,
+                    opts.episode != null ? opts.episode : 0,
+                    opts.episodeTitle != null ? opts.episodeTitle : ""));
+        }
+
+        String output = opts.output;
+        for (TargetTemplate tt : TargetTemplate.values()) {
+            if (tt.name().equalsIgnoreCase(output)) {
+                output = tt.getPattern();
+            }
+        }
+        project.setOutput(output);
+
+        return new BatchJob(project, new File(source.resolveTargetFileName()));
+    }
+
+    private static void bind(Source source, Project project) {
+        source.bind(project);
+        project.setSource(source);
+    }
+
+    private static void selectTrack(DvdSource source, Integer trackNr) throws IOException {
+        Track track;
+        if (trackNr != null) {
+            track = source.getTracks().stream()
+                    .filter(t -> t.getTrack() == trackNr)
+                    .findFirst()
+                    .orElseThrow(() -> new IOException("Track " + trackNr + " not found"));
+        } else {
+            track = source.getLongestTrack();
+            if (track == null) {
+                throw new IOException("No track found");
+            }
+        }
+        source.setSelectedTrack(track);
+    }
+
+    /**
+     * Checks if a stream matches a stream selection.
+     *
+     * @param spec
+     *            "all", "none", or a comma separated list of stream numbers and
+     *            language codes
+     * @param index
+     *            Stream number
+     * @param language
+     *            Stream {@link Language}
+     * @return {@code true} if the stream is selected
+     */
+    private static boolean matches(String spec, int index, Language language) {
+        if ("all".equals(spec)) {
+            return true;
+        }
+        if ("none".equals(spec)) {
+            return false;
+        }
+        for (String part : spec.split(",")) {
+            part = part.trim();
+            if (part.matches("\\d+")) {
+                if (Integer.parseInt(part) == index) {
+                    return true;
+                }
+            } else if (language != null && language.equals(LanguageUtils.findLanguage(part))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Looks up a title in the movie database.
+     *
+     * @return First match, or the given title if there was no match
+     */
+    private static String lookupTitle(String title) throws IOException {
+        ImdbDatabase db = ImdbDatabase.openReadOnly();
+        try {
+            List<String> result = db.find(title, 1);
+            return result.isEmpty() ? title : result.get(0);
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Reads jobs from a JSON file. The file may either contain a job journal, a single
+     * job of a journal, or just a project.
+     */
+    private static List<BatchJob> readJobs(File file) throws IOException {
+        List<BatchJob> result = new ArrayList<>();
+        try (Reader r = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            JSONObject json = new JSONObject(new JSONTokener(r));
+            if (json.has("jobs")) {
+                JSONArray jobs = json.getJSONArray("jobs");
+                for (int ix = 0; ix < jobs.length(); ix++) {
+                    result.add(readJob(jobs.getJSONObject(ix)));
+                }
+            } else {
+                result.add(readJob(json));
+            }
+        } catch (JSONException ex) {
+            throw new IOException("Invalid job file " + file, ex);
+        }
+        return result;
+    }
+
+    private static BatchJob readJob(JSONObject json) throws IOException {
+        if (json.has("project")) {
+            Project project = ProjectCodec.fromJson(json.getJSONObject("project"));
+            File target = json.has("target")
+                    ? new File(json.getString("target"))
+                    : new File(project.getSource().resolveTargetFileName());
+            return new BatchJob(project, target);
+        }
+
+        Project project = ProjectCodec.fromJson(json);
+        return new BatchJob(project, new File(project.getSource().resolveTargetFileName()));
+    }
+
+}
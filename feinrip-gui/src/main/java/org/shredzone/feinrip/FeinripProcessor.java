@@ -15,25 +15,74 @@
  */
 package org.shredzone.feinrip;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import org.shredzone.feinrip.audio.PlaySoundFx;
+import org.shredzone.feinrip.demux.ElementaryStreamWriter;
+import org.shredzone.feinrip.demux.ProgramStreamDemuxer;
+import org.shredzone.feinrip.demux.VobsubWriter;
+import org.shredzone.feinrip.jmx.JobMetrics;
 import org.shredzone.feinrip.model.Audio;
 import org.shredzone.feinrip.model.Configuration;
+import org.shredzone.feinrip.model.Language;
 import org.shredzone.feinrip.model.Project;
+import org.shredzone.feinrip.model.RipMode;
 import org.shredzone.feinrip.model.Subtitle;
+import org.shredzone.feinrip.pipeline.CheckpointStore;
+import org.shredzone.feinrip.pipeline.ResourceClass;
+import org.shredzone.feinrip.pipeline.ResourceLimiter;
+import org.shredzone.feinrip.pipeline.Stage;
+import org.shredzone.feinrip.pipeline.StageReport;
+import org.shredzone.feinrip.pipeline.StageScheduler;
+import org.shredzone.feinrip.pipeline.StageTask;
+import org.shredzone.feinrip.pipeline.TempPlan;
+import org.shredzone.feinrip.pipeline.TempPlan.Artifact;
+import org.shredzone.feinrip.pipeline.TempPlanner;
+import org.shredzone.feinrip.progress.ParallelProgressMeter;
 import org.shredzone.feinrip.progress.ProgressMeter;
 import org.shredzone.feinrip.source.Source;
 import org.shredzone.feinrip.system.ChapterUtils;
+import org.shredzone.feinrip.system.FileTransfer;
+import org.shredzone.feinrip.system.FileTransfer.Method;
 import org.shredzone.feinrip.system.MkvEncoder;
 import org.shredzone.feinrip.system.PreprocessorInvoker;
 import org.shredzone.feinrip.system.StreamUtils;
+import org.shredzone.feinrip.util.CancelToken;
+import org.shredzone.feinrip.util.FlightRecording;
+import org.shredzone.feinrip.util.GrowingFileInputStream;
+import org.shredzone.feinrip.util.ProcessMonitor;
+import org.shredzone.feinrip.util.ProcessStats;
+import org.shredzone.feinrip.util.ProcessStatsListener;
+import org.shredzone.feinrip.util.StreamFanOut;
 
 /**
  * The main processor for generating mkv files.
@@ -42,15 +91,55 @@ import org.shredzone.feinrip.system.StreamUtils;
  */
 public class FeinripProcessor {
     private static final ResourceBundle B = ResourceBundle.getBundle("message");
+    private static final int PIPE_SIZE = 1024 * 1024;
+
+    // Assumptions for estimating the size of temporary files
+    private static final long MIN_VIDEO_BITRATE = 2_000_000L;
+    private static final long SUBTITLE_SIZE = 16L * 1024L * 1024L;
+    private static final long MISC_SIZE = 1024L * 1024L;
+
+    // Artifacts passed between the stages
+    private static final String CHAPTERS = "chapters";
+    private static final String SRT = "srt";
+    private static final String EIT = "eit";
+    private static final String VOB = "vob";
+    private static final String DEMUX = "demux";
+    private static final String IDENTIFY = "identify";
+    private static final String AUDIO = "audio";
+    private static final String PREPROCESS = "preprocess";
+
+    // Role names of checkpointed files
+    private static final String VOB_ROLE = "video.vob";
+    private static final Pattern STREAM_ROLE = Pattern.compile("(audio|sub)-(\\d+)\\.(\\w+)");
 
     private final Configuration config = Configuration.global();
     private final Project project;
     private ProgressMeter progressMeter;
-    private File chapFile;
-    private File vobFile;
-    private File eitFile;
-    private Map<Integer, File> vobsubFiles = new HashMap<>();
-    private List<File> audioFiles = new ArrayList<>();
+    private ResourceLimiter resourceLimiter;
+    private File targetFile;
+    private boolean ejectAfterRip;
+    private Runnable ripListener;
+    private ProcessStatsListener processStatsListener;
+    private TempPlan tempPlan;
+    // Stage outputs are written by the stages, which run in parallel, and are read by
+    // the stages depending on them and by the input and output suppliers of the report
+    private volatile File chapFile;
+    private volatile File vobFile;
+    private volatile File eitFile;
+    private final Map<Integer, File> vobsubFiles = new ConcurrentSkipListMap<>();
+    private final List<File> audioFiles = new CopyOnWriteArrayList<>();
+    private final Map<Audio, File> mappedAudio = new ConcurrentHashMap<>();
+    // Only used by the demuxing stage, or before the stages are started
+    private Map<Integer, VobsubWriter> subWriters = new HashMap<>();
+    private Map<Audio, ElementaryStreamWriter> audioWriters = new HashMap<>();
+    private List<File> demuxMarkers = new ArrayList<>();
+    private Map<Audio, File> restoredAudio = new HashMap<>();
+    private volatile boolean vobComplete;
+    private volatile boolean streamsComplete;
+    private final Object cancelLock = new Object();
+    private volatile StageScheduler scheduler;
+    private volatile Thread runner;
+    private volatile boolean cancelled;
 
     /**
      * Creates a new {@link FeinripProcessor}.
@@ -63,70 +152,342 @@ public class FeinripProcessor {
         this.progressMeter = progressMeter;
     }
 
+    /**
+     * Sets a {@link ResourceLimiter} that is shared with other processors running at
+     * the same time.
+     */
+    public void setResourceLimiter(ResourceLimiter resourceLimiter) {
+        this.resourceLimiter = resourceLimiter;
+    }
+
+    /**
+     * Sets the target mkv file. If not set, the target file name is resolved by the
+     * source.
+     */
+    public void setTargetFile(File targetFile) {
+        this.targetFile = targetFile;
+    }
+
+    /**
+     * Sets if the medium is released (ejected) as soon as it is not needed anymore.
+     */
+    public void setEjectAfterRip(boolean ejectAfterRip) {
+        this.ejectAfterRip = ejectAfterRip;
+    }
+
+    /**
+     * Sets a {@link Runnable} that is invoked as soon as the medium is not needed
+     * anymore. It is not invoked if the process failed before.
+     */
+    public void setRipListener(Runnable ripListener) {
+        this.ripListener = ripListener;
+    }
+
+    /**
+     * Sets a {@link ProcessStatsListener} that receives the {@link ProcessStats} of
+     * all external tools that have been run. It is invoked by the stage threads.
+     */
+    public void setProcessStatsListener(ProcessStatsListener processStatsListener) {
+        this.processStatsListener = processStatsListener;
+    }
+
+    /**
+     * Cancels a running conversion process. All external tools are killed, and
+     * {@link #start()} fails after the intermediate files have been cleaned up.
+     * <p>
+     * This method can be invoked by any thread, and does not wait for the process
+     * being stopped.
+     */
+    public void cancel() {
+        // Synchronized with installing the scheduler, so the runner is never
+        // interrupted while the scheduler is running
+        synchronized (cancelLock) {
+            cancelled = true;
+            if (scheduler != null) {
+                scheduler.cancel();
+            } else if (runner != null) {
+                // Still preparing, maybe waiting for temp space
+                runner.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Checks if the conversion process was cancelled.
+     */
+    public boolean isCancelled()                { return cancelled; }
+
     /**
      * Starts conversion process.
+     * <p>
+     * The process is split into {@link Stage}. Stages that do not depend on each other
+     * are running in parallel. While running, the process can be monitored via JMX,
+     * see {@link JobMetrics}.
+     *
+     * @throws IOException
+     *             if the process failed or was cancelled
      */
     public void start() throws IOException {
-        // Globally change default directory for createTempFile
-        System.setProperty("java.io.tmpdir", config.getTempDir());
+        runner = Thread.currentThread();
+        ProgressMeter meter = progressMeter;
+        if (config.isFlightRecordingEnabled()) {
+            FlightRecording.start();
+        }
+        boolean success = false;
+        try (JobMetrics metrics = createMetrics()) {
+            progressMeter = metrics.meter(meter);
 
-        final Source source = project.getSource();
+            if (cancelled) {
+                throw new IOException("cancelled");
+            }
+            process();
+            success = true;
+        } catch (IOException ex) {
+            if (cancelled) {
+                // Clear an interrupt that was caused by cancel()
+                Thread.interrupted();
+                throw new IOException("cancelled", ex);
+            }
+            throw ex;
+        } finally {
+            // Also dump on unexpected runtime exceptions, they are the crashes the
+            // recording is meant for
+            if (!success && !cancelled && config.isFlightRecordingEnabled()) {
+                dumpRecording();
+            }
+            progressMeter = meter;
+            synchronized (cancelLock) {
+                runner = null;
+                scheduler = null;
+            }
+        }
+    }
+
+    /**
+     * Creates and registers the {@link JobMetrics} of this conversion process.
+     */
+    private JobMetrics createMetrics() {
+        File target = (targetFile != null
+                        ? targetFile
+                        : new File(project.getSource().resolveTargetFileName()));
+        String title = project.getTitle();
+        JobMetrics metrics = new JobMetrics(title != null && !title.isEmpty() ? title : target.getName(), target);
+        metrics.setReport(() -> {
+            StageScheduler current = scheduler;
+            return current != null ? current.getReport() : null;
+        });
+        return metrics;
+    }
+
+    /**
+     * Dumps the Flight Recorder recording as JFR file next to the target file. Failures
+     * are only logged, as the recording is not essential.
+     */
+    private void dumpRecording() {
+        File target = (targetFile != null
+                        ? targetFile
+                        : new File(project.getSource().resolveTargetFileName()));
+        String name = target.getName().replaceFirst("\\.mkv$", "");
+        File recordingFile = new File(target.getAbsoluteFile().getParentFile(), name + ".jfr");
 
         try {
-            createChapterFile();
-            createVobFile();
-            createEitFile();
+            if (FlightRecording.dump(recordingFile) && progressMeter != null) {
+                progressMeter.log(MessageFormat.format(B.getString("progress.recording"), recordingFile));
+            }
+        } catch (IOException ex) {
+            if (progressMeter != null) {
+                progressMeter.log("Could not write recording " + recordingFile + ": " + ex.getMessage());
+            }
+        }
+    }
 
-            for (Subtitle sub : project.getSubs()) {
-                if (sub.isEnabled()) {
-                    createSubtitleFiles(sub);
-                }
+    /**
+     * Runs the conversion process.
+     */
+    private void process() throws IOException {
+        // Globally change default directory for createTempFile
+        System.setProperty("java.io.tmpdir", config.getTempDirs().get(0).getPath());
+
+        final Source source = project.getSource();
+        final File target = (targetFile != null
+                        ? targetFile
+                        : new File(source.resolveTargetFileName()));
+
+        // Intermediate files of a previous failed run are reused
+        CheckpointStore checkpoints = null;
+        String vobKey = null;
+        String streamsKey = null;
+        if (config.isCheckpointEnabled()) {
+            String fingerprint = source.getFingerprint();
+            if (fingerprint != null) {
+                checkpoints = new CheckpointStore(config.getCheckpointDir(),
+                                config.getCheckpointMaxSize() * 1024L * 1024L,
+                                TimeUnit.DAYS.toMillis(config.getCheckpointMaxAge()));
+                vobKey = CheckpointStore.key(VOB, fingerprint);
+                streamsKey = CheckpointStore.key(DEMUX, vobKey, getStreamsStamp());
+                vobComplete = restoreVob(checkpoints, vobKey);
+                streamsComplete = restoreStreams(checkpoints, streamsKey);
             }
+        }
+        final boolean vobRestored = vobComplete;
+        final boolean streamsRestored = streamsComplete;
 
-            MkvEncoder encoder = new MkvEncoder();
-            encoder.setProject(project);
-            encoder.setVobFile(vobFile);
-            encoder.setChapFile(chapFile);
-            encoder.setEitFile(eitFile);
-            encoder.setVobsubFiles(vobsubFiles);
-            encoder.setForceAudioDemux(config.isForceAudioDemux());
+        RipMode ripMode = (config.isNativeDemux() && source.isStreamable() && !vobRestored && !streamsRestored
+                        ? config.getRipMode()
+                        : RipMode.SPOOL);
 
-            encoder.prepareAudioStreams();
+        MkvEncoder encoder = new MkvEncoder();
+        encoder.setProject(project);
+        encoder.setVobsubFiles(vobsubFiles);
+        encoder.setForceAudioDemux(config.isForceAudioDemux());
 
-            for (Audio audio : encoder.getMissingAudioStreams()) {
-                if (progressMeter != null) {
-                    progressMeter.message(B.getString("progress.audio"), audio.getIx(), audio.getLanguage()).percent(null);
-                }
+        // The subtitle extractor tools need the IFO files on the medium
+        boolean mediumNeeded = !config.isNativeDemux();
 
-                File audioFile = File.createTempFile("feinrip-", "-audio-" + audio.getIx());
-                try {
-                    File resultFile = StreamUtils.extractAudio(vobFile, audio, audioFile, progressMeter);
-                    audioFiles.add(resultFile);
-                    encoder.mapAudioFile(audio, resultFile);
-                } finally {
-                    if (!audioFile.delete()) {
-                        throw new IOException("Could not delete " + audioFile.getAbsolutePath());
+        // Stages are weighted by the number of bytes they are expected to process, so
+        // the progress of the entire job can be estimated. Restored stages have no work.
+        long vobSize = source.estimateVobSize();
+        long audioSize = estimateAudioSize(source);
+        long enabledAudios = project.getAudios().stream().filter(Audio::isEnabled).count();
+
+        StageScheduler scheduler = new StageScheduler();
+        scheduler.setResourceLimiter(resourceLimiter);
+
+        scheduler.add(new Stage("chapters", ResourceClass.CPU, this::createChapterFile)
+                .output(CHAPTERS));
+
+        scheduler.add(new Stage("eit", ResourceClass.CPU, this::createEitFile)
+                .output(EIT));
+
+        scheduler.add(new Stage("srt", ResourceClass.CPU, this::findSubtitleFiles)
+                .output(SRT));
+
+        StageTask ripTask;
+        if (vobRestored) {
+            ripTask = meter -> meter.message(B.getString("progress.restored")).percent(null);
+        } else if (ripMode == RipMode.STREAM) {
+            ripTask = this::createStreamedVobFile;
+        } else if (ripMode == RipMode.FOLLOW) {
+            ripTask = this::createFollowedVobFile;
+        } else {
+            ripTask = this::createVobFile;
+        }
+
+        // Files needed from the medium must be copied before it is released
+        Stage vobStage = new Stage("vob", ResourceClass.OPTICAL_DRIVE, meter -> {
+                    ripTask.run(meter);
+                    vobComplete = true;
+                    if (!mediumNeeded) {
+                        releaseMedium();
                     }
-                }
-            }
+                })
+                .input(EIT, SRT)
+                .output(VOB)
+                .weight(vobRestored ? 0L : vobSize);
+        scheduler.add(vobStage);
+
+        if (ripMode != RipMode.SPOOL) {
+            vobStage.output(DEMUX)
+                    .outputFiles(() -> files(vobFile, streamFiles()));
+        } else if (config.isNativeDemux()) {
+            vobStage.outputFiles(() -> files(vobFile));
+            StageTask demuxTask = (streamsRestored ? meter -> {} : this::demuxStreams);
+            scheduler.add(new Stage("demux", ResourceClass.TEMP_DISK, demuxTask)
+                    .input(VOB)
+                    .output(DEMUX)
+                    .weight(streamsRestored ? 0L : vobSize)
+                    .inputFiles(() -> files(vobFile))
+                    .outputFiles(this::streamFiles));
+        } else {
+            vobStage.outputFiles(() -> files(vobFile));
+            scheduler.add(new Stage("subs", ResourceClass.CPU, this::createSubtitleFiles)
+                    .input(VOB)
+                    .output(DEMUX)
+                    .weight(vobSize)
+                    .inputFiles(() -> files(vobFile))
+                    .outputFiles(this::streamFiles));
+        }
+
+        if (mediumNeeded) {
+            scheduler.add(new Stage("release", ResourceClass.CPU, meter -> releaseMedium())
+                    .input(DEMUX));
+        }
+
+        scheduler.add(new Stage("identify", ResourceClass.TEMP_DISK, meter -> identifyStreams(encoder, meter))
+                .input(VOB)
+                .output(IDENTIFY)
+                .inputFiles(() -> files(vobFile)));
+
+        Stage audioStage = new Stage("audio", ResourceClass.CPU, meter -> {
+                    extractAudioStreams(encoder, meter);
+                    streamsComplete = true;
+                })
+                .input(IDENTIFY)
+                .output(AUDIO)
+                .outputFiles(() -> new ArrayList<>(audioFiles))
+                // Demuxed audio streams are just mapped, others are extracted from the vob
+                .weight(streamsRestored || config.isNativeDemux() ? 0L : vobSize * enabledAudios);
+        if (config.isNativeDemux()) {
+            // Demuxed audio streams are mapped first
+            audioStage.input(DEMUX);
+        }
+        scheduler.add(audioStage);
 
-            if (config.isPreprocessBeforeMuxing() && config.getPreprocessScriptFile() != null) {
+        Stage mkvStage = new Stage("mkv", ResourceClass.TEMP_DISK, meter -> writeMkv(encoder, target, meter))
+                .input(CHAPTERS, EIT, DEMUX, AUDIO)
+                .inputFiles(() -> files(vobFile, streamFiles()))
+                .outputFiles(() -> files(target))
+                .weight(vobSize + audioSize);
+
+        if (config.isPreprocessBeforeMuxing() && config.getPreprocessScriptFile() != null) {
+            scheduler.add(new Stage("preprocess", ResourceClass.CPU, meter -> preprocess(encoder, meter))
+                    .input(CHAPTERS, EIT, DEMUX, AUDIO)
+                    .output(PREPROCESS)
+                    .weight(vobSize));
+            mkvStage.input(PREPROCESS);
+        }
+
+        scheduler.add(mkvStage);
+
+        // Refuse or delay the run if there is not enough space for temporary files
+        tempPlan = planTempSpace(source, target);
+        try {
+            TempPlanner.global().reserve(tempPlan, () -> {
                 if (progressMeter != null) {
-                    progressMeter.message(B.getString("progress.preprocess"), config.getPreprocessScriptFile()).percent(null);
+                    progressMeter.message(B.getString("progress.tempwait")).percent(null);
                 }
+            });
+        } catch (IOException ex) {
+            if (checkpoints != null) {
+                saveCheckpoints(checkpoints, vobKey, streamsKey);
+            }
+            throw ex;
+        }
 
-                PreprocessorInvoker preproc = new PreprocessorInvoker(new File(config.getPreprocessScriptFile()));
-                preproc.setVobFile(vobFile);
-                preproc.setJsonProcessData(encoder.getJsonProcessData());
-                preproc.invoke(progressMeter);
+        boolean success = false;
+        try {
+            synchronized (cancelLock) {
+                this.scheduler = scheduler;
+                if (cancelled) {
+                    // The run fails right away, without starting any stage
+                    scheduler.cancel();
+                }
             }
+            ProcessMonitor.Scope scope = ProcessMonitor.listen(this::processFinished);
+            try {
+                scheduler.run(progressMeter);
+            } finally {
+                scope.close();
+            }
+            success = true;
+        } finally {
+            tempPlan.close();
+            writeReport(scheduler.getReport(), target);
 
-            if (progressMeter != null) {
-                progressMeter.message(B.getString("progress.mkv")).percent(null);
+            if (!success && checkpoints != null) {
+                saveCheckpoints(checkpoints, vobKey, streamsKey);
             }
-            encoder.writeMkv(progressMeter, new File(source.resolveTargetFileName()));
 
-        } finally {
             if (progressMeter != null) {
                 progressMeter.message(B.getString("progress.cleanup")).percent(null);
             }
@@ -159,35 +520,818 @@ public class FeinripProcessor {
         }
     }
 
-    private void createChapterFile() throws IOException {
+    /**
+     * Estimates the space that is needed for the temporary files and the target file.
+     * The estimation is rather too large than too small.
+     */
+    private TempPlan planTempSpace(Source source, File target) {
+        String smallDir = config.getSmallTempDir();
+        TempPlan plan = new TempPlan(config.getTempDirs(), smallDir != null ? new File(smallDir) : null);
+
+        long vobSize = source.estimateVobSize();
+
+        if (!vobComplete && source.isStreamable()) {
+            plan.require(Artifact.VOB, vobSize);
+        }
+
+        long audioSize = 0L;
+        if (!streamsComplete) {
+            audioSize = estimateAudioSize(source);
+            for (Subtitle sub : project.getSubs()) {
+                if (sub.isEnabled()) {
+                    plan.require(Artifact.SUBTITLE, SUBTITLE_SIZE);
+                }
+            }
+        }
+        plan.require(Artifact.AUDIO, audioSize);
+        plan.require(Artifact.MISC, MISC_SIZE);
+
+        plan.require(getStagingFile(target), vobSize + audioSize);
+        return plan;
+    }
+
+    /**
+     * Estimates the total size of all enabled audio streams. The estimation is rather
+     * too large than too small.
+     */
+    private long estimateAudioSize(Source source) {
+        long vobSize = source.estimateVobSize();
+        long duration = source.estimateDuration();
+        if (duration <= 0L) {
+            duration = vobSize * 8000L / MIN_VIDEO_BITRATE;
+        }
+
+        long audioSize = 0L;
+        for (Audio audio : project.getAudios()) {
+            if (audio.isEnabled()) {
+                audioSize += Math.min(duration * getAudioBitrate(audio) / 8000L, vobSize);
+            }
+        }
+        return audioSize;
+    }
+
+    /**
+     * Returns the maximum bit rate of an audio stream on a DVD, in bits per second.
+     */
+    private static long getAudioBitrate(Audio audio) {
+        String format = (audio.getFormat() != null ? audio.getFormat() : "");
+        switch (format) {
+            case "mpeg1":
+            case "mpeg2":
+            case "mp2":
+                return 384_000L;
+            case "dts":
+            case "sdds":
+                return 1_536_000L;
+            case "lpcm":
+            case "pcm":
+                return 6_144_000L;
+            default:
+                return 448_000L;
+        }
+    }
+
+    /**
+     * Logs the {@link ProcessStats} of a terminated external tool, and passes them to
+     * the {@link ProcessStatsListener}.
+     */
+    private void processFinished(ProcessStats stats) {
         if (progressMeter != null) {
-            progressMeter.message(B.getString("progress.chapter")).percent(null);
+            progressMeter.log(stats.toString());
+        }
+        if (processStatsListener != null) {
+            processStatsListener.processFinished(stats);
         }
-        chapFile = File.createTempFile("feinrip-", ".chap");
-        ChapterUtils.writeChapters(project.getChapters(), chapFile);
     }
 
-    private void createVobFile() throws IOException {
+    /**
+     * Writes the {@link StageReport} as JSON file next to the target file, and logs a
+     * summary. Failures are only logged, as the report is not essential.
+     */
+    private void writeReport(StageReport report, File target) {
+        String name = target.getName().replaceFirst("\\.mkv$", "");
+        File reportFile = new File(target.getAbsoluteFile().getParentFile(), name + ".report.json");
+
+        try {
+            report.write(reportFile);
+        } catch (IOException ex) {
+            if (progressMeter != null) {
+                progressMeter.log("Could not write report " + reportFile + ": " + ex.getMessage());
+            }
+        }
+
         if (progressMeter != null) {
-            progressMeter.message(B.getString("progress.vob"))
-                    .percent(null);
+            progressMeter.log(MessageFormat.format(B.getString("progress.report"), reportFile));
+            report.summary().forEach(progressMeter::log);
         }
+    }
+
+    /**
+     * Returns a stamp of everything the demuxed and extracted streams depend on.
+     */
+    private String getStreamsStamp() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(config.isNativeDemux()).append('/');
+        sb.append(project.getSize()).append('/');
+        sb.append(project.getSource().getSubtitlePalette()).append('/');
+        sb.append(StreamUtils.getToolStamp()).append('/');
+        project.getAudios().stream()
+                .filter(Audio::isEnabled)
+                .forEach(a -> sb.append('a').append(a.getIx()).append(':').append(a.getStreamId()).append(','));
+        project.getSubs().stream()
+                .filter(Subtitle::isEnabled)
+                .forEach(t -> sb.append('s').append(t.getIndex()).append(':').append(t.getStreamId()).append(','));
+        return sb.toString();
+    }
+
+    /**
+     * Restores the vob file of a previous run.
+     *
+     * @return {@code true} if the vob file was restored
+     */
+    private boolean restoreVob(CheckpointStore checkpoints, String key) throws IOException {
+        Map<String, File> files = checkpoints.restore(key, createRestorePrefix());
+        if (files == null) {
+            return false;
+        }
+
+        vobFile = files.get(VOB_ROLE);
+        if (progressMeter != null && vobFile != null) {
+            progressMeter.log(MessageFormat.format(B.getString("progress.restored.file"), vobFile));
+        }
+        return vobFile != null;
+    }
+
+    /**
+     * Restores the demuxed subtitles and audio streams of a previous run.
+     *
+     * @return {@code true} if the streams were restored
+     */
+    private boolean restoreStreams(CheckpointStore checkpoints, String key) throws IOException {
+        Map<String, File> files = checkpoints.restore(key, createRestorePrefix());
+        if (files == null) {
+            return false;
+        }
+
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            File file = entry.getValue();
+            Matcher m = STREAM_ROLE.matcher(entry.getKey());
+            if (m.matches()) {
+                int ix = Integer.parseInt(m.group(2));
+                if ("audio".equals(m.group(1))) {
+                    Audio audio = project.getAudios().stream()
+                            .filter(a -> a.getIx() == ix)
+                            .findFirst()
+                            .orElse(null);
+                    if (audio != null) {
+                        restoredAudio.put(audio, file);
+                        audioFiles.add(file);
+                        continue;
+                    }
+                } else if ("idx".equals(m.group(3))) {
+                    vobsubFiles.put(ix, file);
+                    continue;
+                } else if ("sub".equals(m.group(3))) {
+                    // Deleted together with the idx file
+                    continue;
+                }
+            }
+            if (!file.delete()) {
+                throw new IOException("Could not delete " + file.getAbsolutePath());
+            }
+        }
+
+        if (progressMeter != null) {
+            for (File file : files.values()) {
+                progressMeter.log(MessageFormat.format(B.getString("progress.restored.file"), file));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves the intermediate files of this failed run to the {@link CheckpointStore}.
+     * Files that were moved are not deleted on cleanup.
+     */
+    private void saveCheckpoints(CheckpointStore checkpoints, String vobKey, String streamsKey) {
+        boolean saved = false;
+        try {
+            if (streamsComplete) {
+                Map<String, File> files = new HashMap<>();
+                for (Map.Entry<Audio, File> entry : mappedAudio.entrySet()) {
+                    String name = entry.getValue().getName();
+                    String suffix = name.substring(name.lastIndexOf('.') + 1);
+                    files.put("audio-" + entry.getKey().getIx() + '.' + suffix, entry.getValue());
+                }
+                for (Map.Entry<Integer, File> entry : vobsubFiles.entrySet()) {
+                    String idx = entry.getValue().getAbsolutePath();
+                    if (idx.endsWith(".idx")) {
+                        files.put("sub-" + entry.getKey() + ".idx", entry.getValue());
+                        files.put("sub-" + entry.getKey() + ".sub",
+                                new File(idx.substring(0, idx.length() - 3) + "sub"));
+                    }
+                }
+                if (checkpoints.save(streamsKey, files)) {
+                    audioFiles.removeAll(mappedAudio.values());
+                    vobsubFiles.values().removeIf(file -> file.getName().endsWith(".idx"));
+                    saved = true;
+                }
+            }
+
+            if (vobComplete && vobFile != null
+                    && checkpoints.save(vobKey, Collections.singletonMap(VOB_ROLE, vobFile))) {
+                vobFile = null;
+                saved = true;
+            }
+
+            if (progressMeter != null && saved) {
+                progressMeter.log(MessageFormat.format(B.getString("progress.checkpoint"), config.getCheckpointDir()));
+            }
+        } catch (IOException ex) {
+            if (progressMeter != null) {
+                progressMeter.log("Could not keep intermediate files: " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Creates a path prefix for restored files.
+     */
+    private static String createRestorePrefix() throws IOException {
+        // ATTENTION: see createVobFile() for a note about the file name
+        File marker = File.createTempFile("feinrip-", "-restore");
+        if (!marker.delete()) {
+            throw new IOException("Could not delete " + marker.getAbsolutePath());
+        }
+        return marker.getAbsolutePath() + '-';
+    }
+
+    /**
+     * Returns all audio and subtitle files that have been created so far.
+     */
+    private Collection<File> streamFiles() {
+        List<File> result = new ArrayList<>(audioFiles);
+        for (File idx : new ArrayList<>(vobsubFiles.values())) {
+            result.add(idx);
+            String name = idx.getName();
+            if (name.endsWith(".idx")) {
+                result.add(new File(idx.getParentFile(), name.substring(0, name.length() - 4) + ".sub"));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Collects files into a list, ignoring {@code null} files.
+     */
+    private static Collection<File> files(File file, Collection<File> more) {
+        List<File> result = new ArrayList<>(more);
+        if (file != null) {
+            result.add(file);
+        }
+        return result;
+    }
+
+    private static Collection<File> files(File file) {
+        return files(file, Collections.emptyList());
+    }
+
+    /**
+     * Invoked when the medium is not needed anymore. Ejects the medium if requested,
+     * and notifies the rip listener.
+     */
+    private void releaseMedium() throws IOException {
+        if (ejectAfterRip) {
+            project.getSource().releaseMedium();
+        }
+        if (ripListener != null) {
+            ripListener.run();
+        }
+    }
+
+    /**
+     * Finds all enabled subtitles that are provided as files by the source, and do not
+     * need to be extracted.
+     */
+    private void findSubtitleFiles(ProgressMeter meter) throws IOException {
+        Source source = project.getSource();
+        for (Subtitle sub : project.getSubs()) {
+            if (sub.isEnabled()) {
+                File subFile = source.findSubFile(sub);
+                if (subFile != null) {
+                    vobsubFiles.put(sub.getIndex(), subFile);
+                }
+            }
+        }
+    }
+
+    private void createChapterFile(ProgressMeter meter) throws IOException {
+        meter.message(B.getString("progress.chapter")).percent(null);
+        chapFile = tempPlan.createTempFile(Artifact.MISC, ".chap");
+        ChapterUtils.writeChapters(project.getChapters(), chapFile);
+    }
+
+    private void identifyStreams(MkvEncoder encoder, ProgressMeter meter) throws IOException {
+        meter.message(B.getString("progress.identify")).percent(null);
+        encoder.setVobFile(vobFile);
+        encoder.prepareAudioStreams();
+    }
+
+    /**
+     * Extracts all audio streams that are not found by mkvmerge, and have not been
+     * demuxed yet.
+     */
+    private void extractAudioStreams(MkvEncoder encoder, ProgressMeter meter) throws IOException {
+        Collection<Audio> missingAudios = mapRestoredAudio(encoder, encoder.getMissingAudioStreams());
+        if (config.isNativeDemux()) {
+            missingAudios = mapDemuxedAudio(encoder, missingAudios);
+        }
+
+        for (Audio audio : missingAudios) {
+            meter.message(B.getString("progress.audio"), audio.getIx(), audio.getLanguage()).percent(null);
+
+            File audioFile = tempPlan.createTempFile(Artifact.AUDIO, "-audio-" + audio.getIx());
+            try {
+                File resultFile = StreamUtils.extractAudio(vobFile, audio, audioFile, meter);
+                tempPlan.track(Artifact.AUDIO, resultFile);
+                audioFiles.add(resultFile);
+                mapAudio(encoder, audio, resultFile);
+            } finally {
+                if (!audioFile.delete()) {
+                    throw new IOException("Could not delete " + audioFile.getAbsolutePath());
+                }
+            }
+        }
+    }
+
+    private void preprocess(MkvEncoder encoder, ProgressMeter meter) throws IOException {
+        meter.message(B.getString("progress.preprocess"), config.getPreprocessScriptFile()).percent(null);
+
+        encoder.setChapFile(chapFile);
+        encoder.setEitFile(eitFile);
+
+        PreprocessorInvoker preproc = new PreprocessorInvoker(new File(config.getPreprocessScriptFile()));
+        preproc.setVobFile(vobFile);
+        preproc.setJsonProcessData(encoder.getJsonProcessData());
+        preproc.invoke(meter);
+    }
+
+    private void writeMkv(MkvEncoder encoder, File target, ProgressMeter meter) throws IOException {
+        meter.message(B.getString("progress.mkv")).percent(null);
+
+        encoder.setChapFile(chapFile);
+        encoder.setEitFile(eitFile);
+
+        // The target file is written next to the target and then renamed, so it never
+        // appears half written, and a failed run does not destroy an existing target.
+        File staging = getStagingFile(target);
+        try {
+            encoder.writeMkv(meter, staging);
+            Method method = FileTransfer.move(staging, target);
+            if (method != Method.RENAME) {
+                meter.log("Target file was finalized by " + method.name().toLowerCase());
+            }
+        } finally {
+            if (staging.exists() && !staging.delete()) {
+                throw new IOException("Could not delete " + staging.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Returns the file that the target file is written to before it is finalized.
+     */
+    private static File getStagingFile(File target) {
+        File dir = target.getAbsoluteFile().getParentFile();
+        return new File(dir, ".feinrip-" + target.getName());
+    }
+
+    private void createVobFile(ProgressMeter meter) throws IOException {
+        meter.message(B.getString("progress.vob")).percent(null);
         // ATTENTION: don't create file names of the pattern /(.+[_\-])(\d+)$/!
         // It will trigger mkvmerge's open_multi, which merges ALL FILES of the
         // same pattern in the same directory AND CANNOT BE TURNED OFF.
-        vobFile = project.getSource().createVobFile(progressMeter);
+        Source source = project.getSource();
+        if (source.isStreamable()) {
+            vobFile = tempPlan.createTempFile(Artifact.VOB, "-video.vob");
+            source.readVobStream(vobFile, meter);
+        } else {
+            vobFile = source.createVobFile(meter);
+        }
     }
 
-    private void createSubtitleFiles(Subtitle sub) throws IOException {
-        if (progressMeter != null) {
-            progressMeter.message(B.getString("progress.sub"), sub.getIndex(), sub.getLanguage())
-                    .percent(null);
+    /**
+     * Extracts all enabled subtitles. Each extraction reads the entire vob file, so
+     * several subtitles are extracted in parallel, up to the configured concurrency
+     * limit.
+     * <p>
+     * If one extraction fails, pending extractions are cancelled, but running
+     * extractions are completed so their files can be cleaned up properly.
+     */
+    private void createSubtitleFiles(ProgressMeter meter) throws IOException {
+        List<Subtitle> subs = project.getSubs().stream()
+                .filter(Subtitle::isEnabled)
+                .filter(sub -> !vobsubFiles.containsKey(sub.getIndex()))
+                .collect(Collectors.toList());
+
+        if (subs.isEmpty()) {
+            return;
+        }
+
+        meter.message(B.getString("progress.subs"), subs.size()).percent(null);
+        ParallelProgressMeter subMeter = new ParallelProgressMeter(meter, subs.size());
+
+        int concurrency = Math.min(config.getSubtitleConcurrency(), subs.size());
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<File>> futures = new ArrayList<>();
+            for (int ix = 0; ix < subs.size(); ix++) {
+                Subtitle sub = subs.get(ix);
+                ProgressMeter childMeter = subMeter.child(ix);
+                futures.add(executor.submit(() -> createSubtitleFile(sub, childMeter)));
+            }
+
+            IOException failure = null;
+            for (int ix = 0; ix < futures.size(); ix++) {
+                try {
+                    File subFile = getUninterruptibly(futures.get(ix));
+                    if (subFile != null) {
+                        // null if the subtitle is empty
+                        vobsubFiles.put(subs.get(ix).getIndex(), subFile);
+                    }
+                } catch (ExecutionException ex) {
+                    if (failure == null) {
+                        failure = (ex.getCause() instanceof IOException
+                                    ? (IOException) ex.getCause()
+                                    : new IOException("Subtitle extraction failed", ex.getCause()));
+                        // Do not start any further extraction
+                        futures.forEach(f -> f.cancel(false));
+                    }
+                } catch (CancellationException ex) {
+                    // Cancelled after a failure, there is nothing to clean up
+                }
+            }
+
+            CancelToken.check();
+
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private File createSubtitleFile(Subtitle sub, ProgressMeter meter) throws IOException {
+        File subFile = project.getSource().createSubFile(sub, vobFile, meter);
+        if (meter != null) {
+            meter.percent(100.0f);
+        }
+        return subFile;
+    }
+
+    /**
+     * Demuxes all enabled subtitles and audio streams from the vob file, in a single
+     * pass.
+     * <p>
+     * All enabled audio streams are demuxed, even those that mkvmerge will find in the
+     * vob file, so demuxing does not need to wait for mkvmerge analyzing the vob file.
+     */
+    private void demuxStreams(ProgressMeter meter) throws IOException {
+        List<Audio> audios = project.getAudios().stream()
+                .filter(Audio::isEnabled)
+                .collect(Collectors.toList());
+
+        ProgramStreamDemuxer demuxer = new ProgramStreamDemuxer();
+        boolean success = false;
+        try {
+            prepareDemuxer(demuxer, audios);
+
+            int streams = subWriters.size() + audioWriters.size();
+            if (streams > 0) {
+                meter.message(B.getString("progress.demux"), streams).percent(null);
+
+                try (InputStream in = new FileInputStream(vobFile)) {
+                    demuxer.demux(in, vobFile.length(), meter);
+                }
+            }
+
+            success = true;
+        } finally {
+            completeDemuxer(success);
+        }
+    }
+
+    /**
+     * Rips the vob stream through a named pipe. While ripping, the stream is spooled to
+     * the vob file, and all enabled subtitles and audio streams are demuxed at the same
+     * time.
+     * <p>
+     * mkvmerge needs to seek in the vob file, so it is still spooled to disk. However,
+     * no further pass over the vob file is required for extracting audio and subtitles.
+     */
+    private void createStreamedVobFile(ProgressMeter meter) throws IOException {
+        meter.message(B.getString("progress.vob")).percent(null);
+
+        Source source = project.getSource();
+        List<Audio> audios = project.getAudios().stream()
+                .filter(Audio::isEnabled)
+                .collect(Collectors.toList());
+
+        ProgramStreamDemuxer demuxer = new ProgramStreamDemuxer();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        File fifo = null;
+        boolean success = false;
+        try {
+            prepareDemuxer(demuxer, audios);
+
+            // ATTENTION: see createVobFile() for a note about the file name
+            vobFile = tempPlan.createTempFile(Artifact.VOB, "-video.vob");
+            fifo = StreamUtils.createFifo("-video.fifo");
+
+            PipedInputStream demuxIn = new PipedInputStream(PIPE_SIZE);
+            OutputStream demuxOut = new PipedOutputStream(demuxIn);
+
+            Future<?> demuxFuture = executor.submit(() -> {
+                // Closing the pipe makes the fan-out fail instead of blocking forever
+                try (InputStream in = demuxIn) {
+                    demuxer.demux(in, 0L, null);
+                }
+                return null;
+            });
+
+            AtomicBoolean opened = new AtomicBoolean(false);
+            File ripFifo = fifo;
+            Future<?> ripFuture = executor.submit(() -> {
+                try {
+                    // The pipe's length cannot be watched, but the spooled vob file grows
+                    source.readVobStream(ripFifo, vobFile, meter);
+                } finally {
+                    if (!opened.get()) {
+                        // The rip tool failed before opening the pipe. Open it ourselves,
+                        // so the reader does not wait forever.
+                        new FileOutputStream(ripFifo).close();
+                    }
+                }
+                return null;
+            });
+
+            try {
+                InputStream in = new FileInputStream(fifo);
+                opened.set(true);
+                new StreamFanOut(in)
+                        .addTarget(new BufferedOutputStream(new FileOutputStream(vobFile), PIPE_SIZE))
+                        .addTarget(demuxOut)
+                        .transfer();
+            } finally {
+                IOException failure = waitFor(ripFuture);
+                IOException demuxFailure = waitFor(demuxFuture);
+                if (failure == null) {
+                    failure = demuxFailure;
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+
+            success = true;
+        } finally {
+            executor.shutdown();
+            if (fifo != null && !fifo.delete()) {
+                throw new IOException("Could not delete " + fifo.getAbsolutePath());
+            }
+            completeDemuxer(success);
+        }
+    }
+
+    /**
+     * Rips the vob stream into the vob file. While ripping, all enabled subtitles and
+     * audio streams are demuxed from the growing vob file.
+     * <p>
+     * This is similar to {@link #createStreamedVobFile(ProgressMeter)}, but does not need a named
+     * pipe. The demuxer may fall behind the rip without slowing it down.
+     */
+    private void createFollowedVobFile(ProgressMeter meter) throws IOException {
+        meter.message(B.getString("progress.vob")).percent(null);
+
+        Source source = project.getSource();
+        List<Audio> audios = project.getAudios().stream()
+                .filter(Audio::isEnabled)
+                .collect(Collectors.toList());
+
+        ProgramStreamDemuxer demuxer = new ProgramStreamDemuxer();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        boolean success = false;
+        try {
+            prepareDemuxer(demuxer, audios);
+
+            // ATTENTION: see createVobFile() for a note about the file name
+            File ripFile = tempPlan.createTempFile(Artifact.VOB, "-video.vob");
+            vobFile = ripFile;
+
+            GrowingFileInputStream in = new GrowingFileInputStream(ripFile);
+            Future<?> ripFuture = executor.submit(() -> {
+                try {
+                    source.readVobStream(ripFile, meter);
+                    in.finish();
+                } catch (IOException | RuntimeException ex) {
+                    in.abort();
+                    throw ex;
+                }
+                return null;
+            });
+
+            try (InputStream demuxIn = in) {
+                demuxer.demux(demuxIn, 0L, null);
+            } finally {
+                IOException failure = waitFor(ripFuture);
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+
+            success = true;
+        } finally {
+            executor.shutdown();
+            completeDemuxer(success);
+        }
+    }
+
+    /**
+     * Waits for a {@link Future} to complete.
+     *
+     * @return {@link IOException} if the task failed, {@code null} if it was successful
+     */
+    private static IOException waitFor(Future<?> future) {
+        try {
+            getUninterruptibly(future);
+            return null;
+        } catch (ExecutionException ex) {
+            return (ex.getCause() instanceof IOException
+                        ? (IOException) ex.getCause()
+                        : new IOException("Streaming failed", ex.getCause()));
+        }
+    }
+
+    /**
+     * Waits for a {@link Future} to complete, even if the current thread is
+     * interrupted. The stage is interrupted when it is cancelled, but the task is
+     * cancelled as well then, and must be terminated before its files are cleaned up.
+     * The interrupt flag is kept.
+     */
+    private static <T> T getUninterruptibly(Future<T> future) throws ExecutionException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Adds sinks for all enabled subtitles and the given audio streams to the
+     * {@link ProgramStreamDemuxer}. Audio streams that cannot be demuxed are ignored.
+     */
+    private void prepareDemuxer(ProgramStreamDemuxer demuxer, Collection<Audio> audios)
+                throws IOException {
+        Source source = project.getSource();
+
+        for (Subtitle sub : project.getSubs()) {
+            if (!sub.isEnabled() || vobsubFiles.containsKey(sub.getIndex())) {
+                continue;
+            }
+
+            Language lang = sub.getLanguage();
+            File marker = tempPlan.createTempFile(Artifact.SUBTITLE, "-sub-" + sub.getIndex());
+            demuxMarkers.add(marker);
+            tempPlan.track(Artifact.SUBTITLE, new File(marker.getAbsolutePath() + ".sub"));
+            VobsubWriter writer = new VobsubWriter(
+                            new File(marker.getAbsolutePath() + ".sub"),
+                            new File(marker.getAbsolutePath() + ".idx"),
+                            lang.getIso1() != null ? lang.getIso1() : lang.toShortString(),
+                            project.getSize(),
+                            source.getSubtitlePalette());
+            subWriters.put(sub.getIndex(), writer);
+            demuxer.addSink(Integer.decode(sub.getStreamId()), writer);
+        }
+
+        for (Audio audio : audios) {
+            int streamId = audio.getStreamId() & 0xFF;
+            if (!ProgramStreamDemuxer.isSupported(streamId)) {
+                continue;
+            }
+
+            File marker = tempPlan.createTempFile(Artifact.AUDIO, "-audio-" + audio.getIx());
+            demuxMarkers.add(marker);
+            File audioFile = new File(marker.getAbsolutePath() + '.' + getAudioSuffix(streamId));
+            tempPlan.track(Artifact.AUDIO, audioFile);
+            audioFiles.add(audioFile);
+            ElementaryStreamWriter writer = new ElementaryStreamWriter(audioFile);
+            audioWriters.put(audio, writer);
+            demuxer.addSink(streamId, writer);
+        }
+    }
+
+    /**
+     * Cleans up after demuxing. Marker files and empty subtitle files are deleted, all
+     * other subtitle files are registered for muxing.
+     *
+     * @param success
+     *            {@code true} if demuxing was successful. If {@code false}, all
+     *            subtitle files are deleted.
+     */
+    private void completeDemuxer(boolean success) throws IOException {
+        for (File marker : demuxMarkers) {
+            if (!marker.delete()) {
+                throw new IOException("Could not delete " + marker.getAbsolutePath());
+            }
+        }
+        demuxMarkers.clear();
+
+        for (Map.Entry<Integer, VobsubWriter> entry : subWriters.entrySet()) {
+            VobsubWriter writer = entry.getValue();
+            if (success && !writer.isEmpty()) {
+                vobsubFiles.put(entry.getKey(), writer.getIdxFile());
+            } else { // ignore empty sub files
+                writer.getIdxFile().delete();
+                writer.getSubFile().delete();
+            }
+        }
+        subWriters.clear();
+    }
+
+    /**
+     * Maps the demuxed audio files of the given audio streams to the
+     * {@link MkvEncoder}.
+     *
+     * @return Audio streams that were not demuxed, and need to be extracted separately
+     */
+    private List<Audio> mapDemuxedAudio(MkvEncoder encoder, Collection<Audio> audios) throws IOException {
+        List<Audio> remaining = new ArrayList<>();
+        for (Audio audio : audios) {
+            ElementaryStreamWriter writer = audioWriters.get(audio);
+            if (writer == null) {
+                remaining.add(audio);
+                continue;
+            }
+            if (writer.getSize() == 0) {
+                throw new IOException(String.format("No data for mpeg audio stream ID 0x%x", audio.getStreamId()));
+            }
+            mapAudio(encoder, audio, writer.getFile());
+        }
+        return remaining;
+    }
+
+    /**
+     * Maps the restored audio files of the given audio streams to the
+     * {@link MkvEncoder}.
+     *
+     * @return Audio streams that were not restored
+     */
+    private List<Audio> mapRestoredAudio(MkvEncoder encoder, Collection<Audio> audios) {
+        List<Audio> remaining = new ArrayList<>();
+        for (Audio audio : audios) {
+            File file = restoredAudio.get(audio);
+            if (file != null) {
+                mapAudio(encoder, audio, file);
+            } else {
+                remaining.add(audio);
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Maps an audio file to the {@link MkvEncoder}, and remembers it for checkpoints.
+     */
+    private void mapAudio(MkvEncoder encoder, Audio audio, File file) {
+        encoder.mapAudioFile(audio, file);
+        mappedAudio.put(audio, file);
+    }
+
+    /**
+     * Returns the file name suffix of an audio stream demuxed by the
+     * {@link ProgramStreamDemuxer}.
+     */
+    private static String getAudioSuffix(int streamId) {
+        if (streamId >= 0x80 && streamId <= 0x87) {
+            return "ac3";
+        } else if (streamId >= 0x88 && streamId <= 0x8F) {
+            return "dts";
+        } else {
+            return "mp2";
         }
-        File subFile = project.getSource().createSubFile(sub, vobFile, progressMeter);
-        vobsubFiles.put(sub.getIndex(), subFile);
     }
 
-    private void createEitFile() throws IOException {
+    private void createEitFile(ProgressMeter meter) throws IOException {
         eitFile = project.getSource().createEitFile();
     }
 
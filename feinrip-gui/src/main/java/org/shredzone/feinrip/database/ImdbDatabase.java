@@ -90,6 +90,19 @@ public class ImdbDatabase {
         return instance;
     }
 
+    /**
+     * Opens a separate read-only connection to the database. In contrast to
+     * {@link #global()}, the connection is opened synchronously, and errors are not
+     * shown in a dialog but thrown.
+     *
+     * @return {@link ImdbDatabase} that must be closed after use
+     */
+    public static ImdbDatabase openReadOnly() throws IOException {
+        ImdbDatabase db = new ImdbDatabase();
+        db.connect(true);
+        return db;
+    }
+
     /**
      * Connects to the database.
      *
@@ -264,6 +277,8 @@ public class ImdbDatabase {
      */
     public List<String> findAll() throws IOException {
         List<String> result = new ArrayList<>();
+        ImdbQueryEvent event = new ImdbQueryEvent();
+        event.begin();
 
         if (connection != null) {
             try (Statement statement = createStatement();
@@ -279,6 +294,8 @@ public class ImdbDatabase {
             }
         }
 
+        event.results = result.size();
+        event.commit();
         return result;
     }
 
@@ -295,6 +312,8 @@ public class ImdbDatabase {
      */
     public List<String> find(String term, int limit) throws IOException {
         List<String> result = new ArrayList<>();
+        ImdbQueryEvent event = new ImdbQueryEvent();
+        event.begin();
 
         if (connection != null) {
             try (PreparedStatement ps = createPreparedStatement(
@@ -316,6 +335,10 @@ public class ImdbDatabase {
             }
         }
 
+        event.term = term;
+        event.limit = limit;
+        event.results = result.size();
+        event.commit();
         return result;
     }
 
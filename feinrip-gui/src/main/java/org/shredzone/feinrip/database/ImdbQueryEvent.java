@@ -0,0 +1,46 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.database;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of an {@link ImdbDatabase} query.
+ *
+ * @author Richard "Shred" Körber
+ */
+@Name("org.shredzone.feinrip.ImdbQuery")
+@Label("IMDb Query")
+@Description("A query of the local IMDb title database")
+@Category({"Feinrip", "Database"})
+@StackTrace(false)
+class ImdbQueryEvent extends Event {
+
+    @Label("Term")
+    String term;
+
+    @Label("Limit")
+    int limit;
+
+    @Label("Results")
+    int results;
+
+}
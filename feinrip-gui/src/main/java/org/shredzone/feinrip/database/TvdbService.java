@@ -104,6 +104,19 @@ public class TvdbService {
         private int episode;
         private String title;
 
+        public TvdbEpisode() {
+            // default constructor
+        }
+
+        /**
+         * Creates a {@link TvdbEpisode} that was not looked up at The TVDb.
+         */
+        public TvdbEpisode(int season, int episode, String title) {
+            this.season = season;
+            this.episode = episode;
+            this.title = title;
+        }
+
         public int getSeason() {
             return season;
         }
@@ -0,0 +1,69 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.demux;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A {@link PacketSink} that writes the raw elementary stream payload to a file. It is
+ * used for audio streams that can be muxed without conversion, like AC3, DTS or MPEG
+ * audio.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class ElementaryStreamWriter implements PacketSink {
+
+    private final File file;
+    private final OutputStream out;
+    private long size = 0;
+
+    /**
+     * Creates a new {@link ElementaryStreamWriter}.
+     *
+     * @param file
+     *            File to write the elementary stream to
+     */
+    public ElementaryStreamWriter(File file) throws IOException {
+        this.file = file;
+        this.out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+    }
+
+    /**
+     * File the elementary stream is written to.
+     */
+    public File getFile()                       { return file; }
+
+    /**
+     * Number of bytes written so far.
+     */
+    public long getSize()                       { return size; }
+
+    @Override
+    public void accept(PesPacket packet) throws IOException {
+        out.write(packet.getData(), packet.getPayloadStart(), packet.getPayloadLength());
+        size += packet.getPayloadLength();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+}
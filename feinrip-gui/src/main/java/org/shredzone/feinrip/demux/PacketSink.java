@@ -0,0 +1,38 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.demux;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives the {@link PesPacket} of a single stream from the
+ * {@link ProgramStreamDemuxer}.
+ *
+ * @author Richard "Shred" Körber
+ */
+public interface PacketSink extends Closeable {
+
+    /**
+     * Accepts a {@link PesPacket}. The packet content is only valid while this method
+     * is being invoked.
+     *
+     * @param packet
+     *            {@link PesPacket} of the stream
+     */
+    void accept(PesPacket packet) throws IOException;
+
+}
@@ -0,0 +1,102 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.demux;
+
+/**
+ * A single PES packet of a program stream, along with the pack header it was found in.
+ * <p>
+ * Instances are reused by the {@link ProgramStreamDemuxer}. The content is only valid
+ * while a {@link PacketSink} is being invoked, and must be copied if needed later.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class PesPacket {
+
+    /**
+     * Marker for a missing PTS.
+     */
+    public static final long NO_PTS = -1L;
+
+    byte[] data;
+    int packLength;
+    int pesStart;
+    int pesLength;
+    int payloadStart;
+    int payloadLength;
+    int streamId;
+    long pts;
+    long time;
+    long position;
+
+    /**
+     * Buffer containing the pack header, followed by the PES packet.
+     */
+    public byte[] getData()                     { return data; }
+
+    /**
+     * Length of the pack header, starting at index 0 of {@link #getData()}.
+     */
+    public int getPackLength()                  { return packLength; }
+
+    /**
+     * Start of the PES packet in {@link #getData()}, including the start code.
+     */
+    public int getPesStart()                    { return pesStart; }
+
+    /**
+     * Length of the PES packet, including the start code.
+     */
+    public int getPesLength()                   { return pesLength; }
+
+    /**
+     * Start of the elementary stream payload in {@link #getData()}. Sub stream headers
+     * of private streams are already skipped.
+     */
+    public int getPayloadStart()                { return payloadStart; }
+
+    /**
+     * Length of the elementary stream payload.
+     */
+    public int getPayloadLength()               { return payloadLength; }
+
+    /**
+     * Stream ID. For private stream 1, this is the sub stream ID (0x20-0x3F for sub
+     * pictures, 0x80-0x87 for AC3, 0x88-0x8F for DTS, 0xA0-0xA7 for LPCM). For MPEG
+     * audio streams, this is the PES stream ID (0xC0-0xDF).
+     */
+    public int getStreamId()                    { return streamId; }
+
+    /**
+     * Presentation time stamp of this packet, in 90 kHz units. {@link #NO_PTS} if the
+     * packet has no time stamp.
+     */
+    public long getPts()                        { return pts; }
+
+    /**
+     * Presentation time of this packet on a continuous time line, in 90 kHz units.
+     * The time line starts at the first time stamp found in the program stream, so
+     * packets that are presented earlier have a negative time. Time stamp
+     * discontinuities and wraps are removed, see {@link ProgramStreamDemuxer}. Only
+     * valid if {@link #getPts()} is not {@link #NO_PTS}.
+     */
+    public long getTime()                       { return time; }
+
+    /**
+     * Position of the pack header in the program stream.
+     */
+    public long getPosition()                   { return position; }
+
+}
@@ -0,0 +1,484 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.demux;
+
+import static org.shredzone.feinrip.demux.PesPacket.NO_PTS;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.shredzone.feinrip.progress.ProgressMeter;
+import org.shredzone.feinrip.util.CancelToken;
+
+/**
+ * A demultiplexer for MPEG program streams, like vob files.
+ * <p>
+ * The stream is read sequentially, in a single pass. Pack headers and PES headers are
+ * parsed, and the PES packets of all requested audio and sub picture streams are passed
+ * to their {@link PacketSink}. Video streams and navigation packets are skipped.
+ * <p>
+ * Time stamps are not continuous in a program stream. They usually restart at cell
+ * boundaries, and wrap around after 2^33 ticks. A continuous clock is advanced by the
+ * system clock reference (SCR) of the pack headers, which is steadily increasing within
+ * a cell. When the SCR goes backwards, or jumps forward by more than a second, it is a
+ * discontinuity, and the clock continues where it stopped. The time stamps of the
+ * packets are mapped to that clock relative to the SCR of their pack, see
+ * {@link PesPacket#getTime()}.
+ *
+ * @author Richard "Shred" Körber
+ * @see <a href="http://dvd.sourceforge.net/dvdinfo/mpeghdrs.html">MPEG headers
+ *      quick reference</a>
+ */
+public class ProgramStreamDemuxer {
+
+    private static final int PACK_START = 0xBA;
+    private static final int SYSTEM_HEADER = 0xBB;
+    private static final int PRIVATE_STREAM_1 = 0xBD;
+    private static final int MPEG_AUDIO_FIRST = 0xC0;
+    private static final int VIDEO_LAST = 0xEF;
+
+    // Number of bytes between two progress updates and cancellation checks
+    private static final long PERCENT_STEP = 4 * 1024 * 1024;
+
+    // Largest pack header (14 bytes + 7 stuffing) and PES packet (6 + 65535 bytes)
+    private static final int BUFFER_SIZE = 21 + 6 + 0xFFFF;
+
+    // Largest SCR increment between two packs that is not a discontinuity (1 s)
+    private static final long MAX_SCR_STEP = 90000L;
+
+    private final Map<Integer, PacketSink> sinks = new HashMap<>();
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final PesPacket packet = new PesPacket();
+    private long lastScr;
+    private long clock;
+    private long baseTime;
+
+    /**
+     * Checks if a stream can be demultiplexed by the {@link ProgramStreamDemuxer}.
+     *
+     * @param streamId
+     *            Stream ID, see {@link PesPacket#getStreamId()}
+     * @return {@code true} if supported
+     */
+    public static boolean isSupported(int streamId) {
+        return (streamId >= 0x20 && streamId <= 0x3F)      // sub pictures
+            || (streamId >= 0x80 && streamId <= 0x8F)      // AC3 and DTS
+            || (streamId >= 0xC0 && streamId <= 0xDF);     // MPEG audio
+        // LPCM (0xA0-0xA7) needs to be converted, so it is not supported
+    }
+
+    /**
+     * Adds a {@link PacketSink} for a stream.
+     *
+     * @param streamId
+     *            Stream ID, see {@link PesPacket#getStreamId()}
+     * @param sink
+     *            {@link PacketSink} that receives all PES packets of that stream
+     */
+    public void addSink(int streamId, PacketSink sink) {
+        if (!isSupported(streamId)) {
+            throw new IllegalArgumentException(String.format("stream 0x%02X is not supported", streamId));
+        }
+        sinks.put(streamId, sink);
+    }
+
+    /**
+     * Reads the program stream and passes all packets to the sinks. All sinks are closed
+     * when this method returns.
+     * <p>
+     * A truncated packet at the end of the stream is silently ignored. Demuxing fails
+     * if the thread is interrupted or its {@link CancelToken} is cancelled.
+     *
+     * @param in
+     *            {@link InputStream} to read the program stream from
+     * @param length
+     *            Expected length of the stream, used for progress, or 0 if unknown
+     * @param meter
+     *            {@link ProgressMeter} to update while reading, may be {@code null}
+     */
+    public void demux(InputStream in, long length, ProgressMeter meter) throws IOException {
+        try {
+            StreamReader reader = new StreamReader(in);
+            packet.data = buffer;
+            lastScr = NO_PTS;
+            clock = 0L;
+            baseTime = NO_PTS;
+
+            int packLength = 0;
+            long packPosition = 0;
+            long nextPercent = 0;
+            long nextCheck = PERCENT_STEP;
+
+            int code;
+            while ((code = reader.nextStartCode()) >= 0) {
+                long position = reader.getPosition() - 4;
+
+                if (meter != null && length > 0 && position >= nextPercent) {
+                    meter.percent(Math.min(position * 100.0f / length, 100.0f));
+                    nextPercent = position + PERCENT_STEP;
+                }
+
+                if (position >= nextCheck) {
+                    CancelToken.check();
+                    nextCheck = position + PERCENT_STEP;
+                }
+
+                if (code == PACK_START) {
+                    packPosition = position;
+                    packLength = readPackHeader(reader);
+                    if (packLength < 0) {
+                        break;
+                    }
+                    if (packLength > 0) {
+                        updateClock(packLength == 12 ? readPts(4) : readScr(4));
+                    }
+                    continue;
+                }
+
+                if (code < SYSTEM_HEADER) {
+                    // End code, or garbage found while resyncing
+                    continue;
+                }
+
+                int pesStart = packLength;
+                int len = reader.readU16();
+                if (len < 0 || !reader.readFully(buffer, pesStart + 6, len)) {
+                    break;
+                }
+
+                buffer[pesStart] = 0x00;
+                buffer[pesStart + 1] = 0x00;
+                buffer[pesStart + 2] = 0x01;
+                buffer[pesStart + 3] = (byte) code;
+                buffer[pesStart + 4] = (byte) (len >> 8);
+                buffer[pesStart + 5] = (byte) len;
+
+                processPes(code, pesStart, len + 6, packLength, packPosition);
+            }
+        } finally {
+            closeSinks();
+        }
+    }
+
+    /**
+     * Reads a pack header into the buffer.
+     *
+     * @return Length of the pack header including start code, 0 if the pack header is
+     *         invalid, -1 if the end of stream was reached
+     */
+    private int readPackHeader(StreamReader reader) throws IOException {
+        buffer[0] = 0x00;
+        buffer[1] = 0x00;
+        buffer[2] = 0x01;
+        buffer[3] = (byte) PACK_START;
+
+        int flags = reader.read();
+        if (flags < 0) {
+            return -1;
+        }
+        buffer[4] = (byte) flags;
+
+        if ((flags & 0xC0) == 0x40) {
+            // MPEG-2 pack header, followed by stuffing bytes
+            if (!reader.readFully(buffer, 5, 9)) {
+                return -1;
+            }
+            int stuffing = buffer[13] & 0x07;
+            if (!reader.readFully(buffer, 14, stuffing)) {
+                return -1;
+            }
+            return 14 + stuffing;
+        }
+
+        if ((flags & 0xF0) == 0x20) {
+            // MPEG-1 pack header
+            if (!reader.readFully(buffer, 5, 7)) {
+                return -1;
+            }
+            return 12;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Processes a PES packet in the buffer, and passes it to the respective sink.
+     */
+    private void processPes(int code, int pesStart, int pesLength, int packLength, long packPosition)
+                throws IOException {
+        if (code != PRIVATE_STREAM_1 && (code < MPEG_AUDIO_FIRST || code > VIDEO_LAST)) {
+            // Padding, navigation packets, system headers...
+            return;
+        }
+
+        int pos = pesStart + 6;
+        int end = pesStart + pesLength;
+        long pts = NO_PTS;
+
+        if (pos >= end) {
+            return;
+        }
+
+        if ((buffer[pos] & 0xC0) == 0x80) {
+            // MPEG-2 PES header
+            int flags = buffer[pos + 1] & 0xFF;
+            int headerLength = buffer[pos + 2] & 0xFF;
+            if ((flags & 0x80) != 0 && headerLength >= 5) {
+                pts = readPts(pos + 3);
+            }
+            pos += 3 + headerLength;
+        } else {
+            // MPEG-1 PES header
+            while (pos < end && (buffer[pos] & 0xFF) == 0xFF) {
+                pos++; // stuffing
+            }
+            if (pos < end && (buffer[pos] & 0xC0) == 0x40) {
+                pos += 2; // STD buffer
+            }
+            if (pos + 5 <= end && (buffer[pos] & 0xF0) == 0x20) {
+                pts = readPts(pos);
+                pos += 5;
+            } else if (pos + 10 <= end && (buffer[pos] & 0xF0) == 0x30) {
+                pts = readPts(pos);
+                pos += 10;
+            } else {
+                pos++;
+            }
+        }
+
+        long time = 0L;
+        if (pts != NO_PTS) {
+            time = toClock(pts);
+            if (baseTime == NO_PTS) {
+                baseTime = time;
+            }
+            time -= baseTime;
+        }
+
+        if (code > MPEG_AUDIO_FIRST + 0x1F || pos >= end) {
+            // Video stream, or no payload
+            return;
+        }
+
+        int streamId = code;
+        if (code == PRIVATE_STREAM_1) {
+            streamId = buffer[pos] & 0xFF;
+            if (streamId >= 0x80 && streamId <= 0x8F) {
+                pos += 4;   // sub stream ID, frame count, first access unit
+            } else if (streamId >= 0xA0 && streamId <= 0xA7) {
+                pos += 7;   // sub stream ID, LPCM header
+            } else {
+                pos += 1;   // sub stream ID
+            }
+        }
+
+        PacketSink sink = sinks.get(streamId);
+        if (sink == null || pos > end) {
+            return;
+        }
+
+        packet.packLength = packLength;
+        packet.pesStart = pesStart;
+        packet.pesLength = pesLength;
+        packet.payloadStart = pos;
+        packet.payloadLength = end - pos;
+        packet.streamId = streamId;
+        packet.pts = pts;
+        packet.time = time;
+        packet.position = packPosition;
+        sink.accept(packet);
+    }
+
+    /**
+     * Advances the clock by the SCR of a pack. On a discontinuity, the clock stays at
+     * the time of the previous pack.
+     */
+    private void updateClock(long scr) {
+        if (lastScr == NO_PTS) {
+            clock = scr;
+        } else {
+            long step = diff33(scr, lastScr);
+            if (step >= 0 && step <= MAX_SCR_STEP) {
+                clock += step;
+            }
+        }
+        lastScr = scr;
+    }
+
+    /**
+     * Maps a time stamp to the continuous clock. The time stamp is taken relative to
+     * the SCR of the current pack.
+     */
+    private long toClock(long pts) {
+        if (lastScr == NO_PTS) {
+            return pts;
+        }
+        return clock + diff33(pts, lastScr);
+    }
+
+    /**
+     * Returns the difference of two 33 bit time stamps, taking a wrap into account.
+     */
+    private static long diff33(long a, long b) {
+        return ((a - b) << 31) >> 31;
+    }
+
+    /**
+     * Reads the 33 bit SCR base of an MPEG-2 pack header from the buffer.
+     */
+    private long readScr(int pos) {
+        return (((long) buffer[pos] & 0x38) << 27)
+             | (((long) buffer[pos] & 0x03) << 28)
+             | (((long) buffer[pos + 1] & 0xFF) << 20)
+             | (((long) buffer[pos + 2] & 0xF8) << 12)
+             | (((long) buffer[pos + 2] & 0x03) << 13)
+             | (((long) buffer[pos + 3] & 0xFF) << 5)
+             | (((long) buffer[pos + 4] & 0xF8) >> 3);
+    }
+
+    /**
+     * Reads a 33 bit time stamp from the buffer. It is also used for the SCR of MPEG-1
+     * pack headers, which has the same format.
+     */
+    private long readPts(int pos) {
+        return (((long) buffer[pos] & 0x0E) << 29)
+             | (((long) buffer[pos + 1] & 0xFF) << 22)
+             | (((long) buffer[pos + 2] & 0xFE) << 14)
+             | (((long) buffer[pos + 3] & 0xFF) << 7)
+             | (((long) buffer[pos + 4] & 0xFE) >> 1);
+    }
+
+    /**
+     * Closes all sinks. If closing fails, the first exception is thrown after all sinks
+     * have been closed.
+     */
+    private void closeSinks() throws IOException {
+        IOException failure = null;
+        for (PacketSink sink : sinks.values()) {
+            try {
+                sink.close();
+            } catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * A simple buffered reader that keeps track of the stream position.
+     */
+    private static class StreamReader {
+        private final InputStream in;
+        private final byte[] buf = new byte[64 * 1024];
+        private int pos = 0;
+        private int limit = 0;
+        private long position = 0;
+
+        public StreamReader(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Position of the next byte to be read.
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        private boolean fill() throws IOException {
+            int len = in.read(buf);
+            while (len == 0) {
+                len = in.read(buf);
+            }
+            if (len < 0) {
+                return false;
+            }
+            pos = 0;
+            limit = len;
+            return true;
+        }
+
+        /**
+         * Reads a single byte, or -1 if the end of stream was reached.
+         */
+        public int read() throws IOException {
+            if (pos >= limit && !fill()) {
+                return -1;
+            }
+            position++;
+            return buf[pos++] & 0xFF;
+        }
+
+        /**
+         * Reads an unsigned 16 bit value, or -1 if the end of stream was reached.
+         */
+        public int readU16() throws IOException {
+            int hi = read();
+            int lo = read();
+            if (hi < 0 || lo < 0) {
+                return -1;
+            }
+            return (hi << 8) | lo;
+        }
+
+        /**
+         * Reads the given number of bytes.
+         *
+         * @return {@code false} if the end of stream was reached before
+         */
+        public boolean readFully(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (pos >= limit && !fill()) {
+                    return false;
+                }
+                int n = Math.min(len, limit - pos);
+                System.arraycopy(buf, pos, b, off, n);
+                pos += n;
+                off += n;
+                len -= n;
+                position += n;
+            }
+            return true;
+        }
+
+        /**
+         * Finds the next start code prefix, and returns the start code following it.
+         *
+         * @return Start code, or -1 if the end of stream was reached
+         */
+        public int nextStartCode() throws IOException {
+            int zeros = 0;
+            int b;
+            while ((b = read()) >= 0) {
+                if (b == 0x00) {
+                    zeros++;
+                } else if (b == 0x01 && zeros >= 2) {
+                    return read();
+                } else {
+                    zeros = 0;
+                }
+            }
+            return -1;
+        }
+    }
+
+}
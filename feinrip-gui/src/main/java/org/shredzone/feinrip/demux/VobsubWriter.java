@@ -0,0 +1,163 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.demux;
+
+import static org.shredzone.feinrip.demux.PesPacket.NO_PTS;
+
+import java.awt.Dimension;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.shredzone.feinrip.model.Palette;
+import org.shredzone.feinrip.util.VobsubIndex;
+import org.shredzone.feinrip.util.VobsubIndex.Setting;
+import org.shredzone.feinrip.util.VobsubIndex.Timestamp;
+
+/**
+ * A {@link PacketSink} that writes a sub picture stream as VOBsub file pair.
+ * <p>
+ * The packets are written to the .sub file with their pack header, and padded to
+ * 2048 bytes per pack. Packets with a time stamp are recorded in the .idx file. The
+ * sub stream ID is changed to 0x20, so the result is always index 0, like the files
+ * generated by mencoder.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class VobsubWriter implements PacketSink {
+
+    private static final int PACK_SIZE = 2048;
+    private static final int PADDING_STREAM = 0xBE;
+    private static final int FIRST_SUBPICTURE = 0x20;
+
+    private final File subFile;
+    private final File idxFile;
+    private final OutputStream out;
+    private final VobsubIndex index = new VobsubIndex();
+    private final byte[] padding = new byte[PACK_SIZE];
+    private long filepos = 0;
+
+    /**
+     * Creates a new {@link VobsubWriter}.
+     *
+     * @param subFile
+     *            .sub file to write the sub pictures to
+     * @param idxFile
+     *            .idx file to write the index to
+     * @param language
+     *            Language code of the subtitle
+     * @param size
+     *            Video frame size, or {@code null} if unknown
+     * @param palette
+     *            Color {@link Palette}, or {@code null} if unknown
+     */
+    public VobsubWriter(File subFile, File idxFile, String language, Dimension size, Palette palette)
+                throws IOException {
+        this.subFile = subFile;
+        this.idxFile = idxFile;
+        this.out = new BufferedOutputStream(new FileOutputStream(subFile), 64 * 1024);
+
+        Arrays.fill(padding, (byte) 0xFF);
+
+        if (size != null) {
+            index.set(Setting.SIZE, size.width + "x" + size.height);
+        }
+        index.set(Setting.ORG, "0, 0");
+        index.set(Setting.SCALE, "100%, 100%");
+        index.set(Setting.ALPHA, "100%");
+        index.set(Setting.SMOOTH, "OFF");
+        index.set(Setting.FADEINOUT, "50, 50");
+        index.set(Setting.ALIGN, "OFF at LEFT TOP");
+        index.set(Setting.TIME_OFFSET, "0");
+        index.set(Setting.FORCED_SUBS, "OFF");
+        if (palette != null) {
+            index.set(Setting.PALETTE, palette.toRgbString());
+        }
+        index.set(Setting.CUSTOM_COLORS, "OFF, tridx: 0000, colors: 000000, 000000, 000000, 000000");
+        index.set(Setting.LANGIDX, "0");
+        index.set(Setting.ID, language + ", index: 0");
+    }
+
+    /**
+     * The .sub file.
+     */
+    public File getSubFile()                    { return subFile; }
+
+    /**
+     * The .idx file. It only exists if sub pictures were found.
+     */
+    public File getIdxFile()                    { return idxFile; }
+
+    /**
+     * Checks if no sub picture has been written yet.
+     */
+    public boolean isEmpty()                    { return filepos == 0; }
+
+    @Override
+    public void accept(PesPacket packet) throws IOException {
+        byte[] data = packet.getData();
+
+        if (packet.getPts() != NO_PTS) {
+            long ms = Math.max(packet.getTime(), 0L) / 90L;
+            index.timestamp(toTimestamp(ms), String.format("%09x", filepos));
+        }
+
+        // Sub stream ID is the byte in front of the payload
+        data[packet.getPayloadStart() - 1] = (byte) FIRST_SUBPICTURE;
+
+        out.write(data, 0, packet.getPackLength());
+        out.write(data, packet.getPesStart(), packet.getPesLength());
+
+        int length = packet.getPackLength() + packet.getPesLength();
+        if (length < PACK_SIZE) {
+            int rest = PACK_SIZE - length;
+            if (rest >= 6) {
+                out.write(0x00);
+                out.write(0x00);
+                out.write(0x01);
+                out.write(PADDING_STREAM);
+                out.write((rest - 6) >> 8);
+                out.write(rest - 6);
+                out.write(padding, 0, rest - 6);
+            } else {
+                out.write(padding, 0, rest);
+            }
+            length = PACK_SIZE;
+        }
+
+        filepos += length;
+    }
+
+    /**
+     * Closes the .sub file, and writes the .idx file if sub pictures were found.
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+        if (!isEmpty()) {
+            index.write(idxFile);
+        }
+    }
+
+    private static Timestamp toTimestamp(long ms) {
+        return new Timestamp(String.format("%02d:%02d:%02d:%03d",
+                        ms / 3600000L, (ms / 60000L) % 60, (ms / 1000L) % 60, ms % 1000L));
+    }
+
+}
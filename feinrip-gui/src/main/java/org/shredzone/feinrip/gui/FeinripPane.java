@@ -18,13 +18,20 @@ package org.shredzone.feinrip.gui;
 import java.awt.BorderLayout;
 import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.EventQueue;
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ResourceBundle;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.SwingConstants;
 
+import org.shredzone.feinrip.gui.action.CancelJobAction;
 import org.shredzone.feinrip.gui.action.StartAction;
 import org.shredzone.feinrip.gui.pane.AboutPane;
 import org.shredzone.feinrip.gui.pane.AudioPane;
@@ -37,6 +44,7 @@ import org.shredzone.feinrip.gui.pane.SubPane;
 import org.shredzone.feinrip.gui.pane.TargetPane;
 import org.shredzone.feinrip.gui.pane.TitlePane;
 import org.shredzone.feinrip.gui.pane.VideoPane;
+import org.shredzone.feinrip.job.JobQueue;
 import org.shredzone.feinrip.model.Project;
 
 /**
@@ -46,6 +54,7 @@ import org.shredzone.feinrip.model.Project;
  */
 public class FeinripPane extends JPanel {
     private static final long serialVersionUID = 504145006959520172L;
+    private static final ResourceBundle B = ResourceBundle.getBundle("message");
 
     private final Project project = new Project();
 
@@ -83,12 +92,49 @@ public class FeinripPane extends JPanel {
         jbStart.setMaximumSize(new Dimension(Integer.MAX_VALUE, jbStart.getMaximumSize().height));
         addActionPlain(jTabs, jbStart);
 
+        JButton jbCancelJob = new JButton(new CancelJobAction());
+        jbCancelJob.setMaximumSize(new Dimension(Integer.MAX_VALUE, jbCancelJob.getMaximumSize().height));
+        addActionPlain(jTabs, jbCancelJob);
+
+        // Ask for unfinished jobs when the window is shown
+        EventQueue.invokeLater(this::restoreJobs);
+
         JLabelGroup lg = lgRef.get();
         if (lg != null) {
             lg.rearrange();
         }
     }
 
+    /**
+     * Restores the unfinished jobs of a previous session.
+     */
+    private void restoreJobs() {
+        try {
+            JobQueue.global().restore(this::confirmRestore);
+        } catch (IOException ex) {
+            ErrorDialog.showException(ex);
+        }
+    }
+
+    /**
+     * Asks the user if an unfinished job of a previous session is to be resumed.
+     *
+     * @param target
+     *            mkv file of the job
+     * @param sourceMatches
+     *            {@code true} if the disc of the job is available
+     * @return {@code true} to resume the job, {@code false} to discard it
+     */
+    private boolean confirmRestore(File target, boolean sourceMatches) {
+        String message = MessageFormat.format(
+                        B.getString(sourceMatches ? "restore.confirm" : "restore.mismatch"),
+                        target.getName());
+        int result = JOptionPane.showConfirmDialog(this, message, B.getString("restore.title"),
+                        JOptionPane.YES_NO_OPTION,
+                        sourceMatches ? JOptionPane.QUESTION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+        return result == JOptionPane.YES_OPTION;
+    }
+
     /**
      * Locks the powerpane and shows the stealthy progress pane. The currently selected
      * powerpane is remembered.
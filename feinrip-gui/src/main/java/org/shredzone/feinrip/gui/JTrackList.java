@@ -18,6 +18,7 @@ package org.shredzone.feinrip.gui;
 import java.awt.Component;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ResourceBundle;
 
@@ -96,7 +97,11 @@ public class JTrackList extends JList<Track> implements ListSelectionListener, P
             Track previous = tracks.getSelectedTrack();
             if (selection != previous) {
                 tracks.setSelectedTrack(selection);
-                tracks.setupProject();
+                try {
+                    tracks.setupProject();
+                } catch (IOException ex) {
+                    ErrorDialog.showException(ex);
+                }
             }
         }
     }
@@ -0,0 +1,83 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.gui.action;
+
+import java.awt.event.ActionEvent;
+import java.util.List;
+import java.util.ResourceBundle;
+
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+
+import org.shredzone.feinrip.job.Job;
+import org.shredzone.feinrip.job.JobQueue;
+
+/**
+ * Action for cancelling a {@link Job} of the {@link JobQueue}, even if it is already
+ * running in the background. The user selects the job to be cancelled.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class CancelJobAction extends AbstractSyncAction {
+    private static final long serialVersionUID = -2614389506781723311L;
+
+    private static final ResourceBundle B = ResourceBundle.getBundle("message");
+
+    private final JobQueue queue = JobQueue.global();
+
+    public CancelJobAction() {
+        super(B.getString("action.canceljob"), null);
+        setToolTipText(B.getString("action.canceljob.tt"));
+        setEnabled(!queue.getJobs().isEmpty());
+        queue.addJobListener(job -> SwingUtilities.invokeLater(
+                        () -> setEnabled(!queue.getJobs().isEmpty())));
+    }
+
+    @Override
+    public void onAction(ActionEvent e) {
+        List<Job> jobs = queue.getJobs();
+        if (jobs.isEmpty()) {
+            return;
+        }
+
+        JobItem[] items = jobs.stream().map(JobItem::new).toArray(JobItem[]::new);
+        Object selected = JOptionPane.showInputDialog(getFrame(e),
+                        B.getString("action.canceljob.select"),
+                        B.getString("action.canceljob"),
+                        JOptionPane.QUESTION_MESSAGE, null, items, items[0]);
+        if (selected != null) {
+            queue.cancel(((JobItem) selected).job);
+        }
+    }
+
+    /**
+     * A {@link Job} in the selection, shown with its title.
+     */
+    private static class JobItem {
+        private final Job job;
+
+        public JobItem(Job job) {
+            this.job = job;
+        }
+
+        @Override
+        public String toString() {
+            String title = job.getProject().getTitle();
+            return (title != null && !title.isEmpty() ? title : job.getTarget().getName());
+        }
+    }
+
+}
@@ -22,16 +22,27 @@ import java.util.ResourceBundle;
 
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
 
-import org.shredzone.feinrip.FeinripProcessor;
 import org.shredzone.feinrip.gui.ErrorDialog;
 import org.shredzone.feinrip.gui.FeinripPane;
 import org.shredzone.feinrip.gui.pane.ProgressPane;
+import org.shredzone.feinrip.job.Job;
+import org.shredzone.feinrip.job.JobQueue;
+import org.shredzone.feinrip.job.JobState;
 import org.shredzone.feinrip.model.Project;
+import org.shredzone.feinrip.progress.JobProgress;
+import org.shredzone.feinrip.progress.ProgressMeter;
 import org.shredzone.feinrip.source.Source;
 
 /**
  * Action for processing the sources based on the Project, and generating the mkv file.
+ * <p>
+ * The project is submitted to the {@link JobQueue}. The action returns as soon as the
+ * source has been ripped, so the next disc can be inserted while the job is still
+ * being processed. Until then, the job shows its progress in the {@link ProgressPane},
+ * and can be cancelled there. Jobs that continue in the background can be cancelled by
+ * the {@link CancelJobAction}.
  *
  * @author Richard "Shred" Körber
  */
@@ -44,6 +55,9 @@ public class StartAction extends AbstractAsyncAction implements PropertyChangeLi
     private final Project project;
     private final FeinripPane master;
     private final ProgressPane progress;
+    private volatile Job job;
+    private volatile boolean cancelled;
+    private volatile ForegroundMeter meter;
 
     public StartAction(Project project, FeinripPane master, ProgressPane progress) {
         super(B.getString("action.start"), playIcon);
@@ -53,6 +67,12 @@ public class StartAction extends AbstractAsyncAction implements PropertyChangeLi
         this.progress = progress;
         project.addPropertyChangeListener(this);
         updateEnabled();
+
+        JobQueue.global().addJobListener(j -> {
+            if (j.getState() == JobState.FAILED) {
+                SwingUtilities.invokeLater(() -> ErrorDialog.showException(j.getFailure()));
+            }
+        });
     }
 
     private void updateEnabled() {
@@ -82,20 +102,38 @@ public class StartAction extends AbstractAsyncAction implements PropertyChangeLi
         }
     }
 
+    /**
+     * Cancels the current job.
+     */
+    private void cancel() {
+        cancelled = true;
+        Job current = job;
+        if (current != null) {
+            JobQueue.global().cancel(current);
+        }
+    }
+
     @Override
     public void preAction(ActionEvent e) {
         project.setProcessing(true);
         progress.setFrame(getFrame(e));
         setEnabled(false);
+        cancelled = false;
+        progress.setCancelHandler(this::cancel);
         master.showProgressDialog();
     }
 
     @Override
     public void onAction(ActionEvent e) {
         try {
-            FeinripProcessor processor = new FeinripProcessor(project);
-            processor.setProgressMeter(progress);
-            processor.start();
+            meter = new ForegroundMeter(progress);
+            job = JobQueue.global().submit(project, meter);
+            if (cancelled) {
+                cancel();
+            }
+            job.awaitRipped();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         } catch (Exception ex) {
             ErrorDialog.showException(ex);
         }
@@ -103,15 +141,76 @@ public class StartAction extends AbstractAsyncAction implements PropertyChangeLi
 
     @Override
     public void postAction(ActionEvent e) {
+        if (meter != null) {
+            // The job continues in the background, the pane is free for the next job
+            meter.detach();
+            meter = null;
+        }
+        progress.setCancelHandler(null);
         master.hideProgressDialog();
         progress.cleanup();
         progress.setFrame(null);
         updateEnabled();
         project.setProcessing(false);
 
-        if (project.getSource().isVobFileCorrupted()) {
+        if (job != null && job.getState() != JobState.CANCELLED
+                        && job.getProject().getSource().isVobFileCorrupted()) {
             ErrorDialog.showError("action.start.msgtitle", "action.start.corrupted");
         }
+        job = null;
+    }
+
+    /**
+     * Forwards the progress of a job to the {@link ProgressPane} while the source is
+     * ripped. Afterwards it is detached, so the progress of a job in the background
+     * does not interfere with the next job.
+     */
+    private static class ForegroundMeter implements ProgressMeter {
+        private volatile ProgressMeter target;
+
+        public ForegroundMeter(ProgressMeter target) {
+            this.target = target;
+        }
+
+        public void detach() {
+            target = null;
+        }
+
+        @Override
+        public ProgressMeter message(String message, Object... values) {
+            ProgressMeter current = target;
+            if (current != null) {
+                current.message(message, values);
+            }
+            return this;
+        }
+
+        @Override
+        public ProgressMeter percent(Float percent) {
+            ProgressMeter current = target;
+            if (current != null) {
+                current.percent(percent);
+            }
+            return this;
+        }
+
+        @Override
+        public ProgressMeter progress(JobProgress progress) {
+            ProgressMeter current = target;
+            if (current != null) {
+                current.progress(progress);
+            }
+            return this;
+        }
+
+        @Override
+        public ProgressMeter log(String line) {
+            ProgressMeter current = target;
+            if (current != null) {
+                current.log(line);
+            }
+            return this;
+        }
     }
 
 }
@@ -18,11 +18,16 @@ package org.shredzone.feinrip.gui.pane;
 import java.awt.BorderLayout;
 import java.awt.Component;
 import java.awt.EventQueue;
+import java.awt.FlowLayout;
 import java.awt.Frame;
 import java.awt.event.ActionEvent;
 import java.io.File;
+import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.BorderFactory;
@@ -32,22 +37,36 @@ import javax.swing.Icon;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JPanel;
+import javax.swing.JPopupMenu;
 import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JSeparator;
+import javax.swing.JSpinner;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
 
 import org.shredzone.feinrip.gui.BorderAndFlowPanel;
 import org.shredzone.feinrip.gui.ConfigurablePane;
+import org.shredzone.feinrip.gui.ErrorDialog;
 import org.shredzone.feinrip.gui.JLabelGroup;
 import org.shredzone.feinrip.gui.SimpleFileFilter;
 import org.shredzone.feinrip.gui.action.AbstractSyncAction;
 import org.shredzone.feinrip.gui.source.SourceVobPane;
+import org.shredzone.feinrip.job.JobQueue;
 import org.shredzone.feinrip.model.Configuration;
 import org.shredzone.feinrip.model.Project;
+import org.shredzone.feinrip.model.RipMode;
+import org.shredzone.feinrip.pipeline.ResourceClass;
+import org.shredzone.feinrip.progress.JobProgress;
 import org.shredzone.feinrip.progress.ProgressMeter;
 import org.shredzone.feinrip.util.LogBuilder;
 
@@ -63,19 +82,46 @@ public class ProgressPane extends PowerPane implements ConfigurablePane, Progres
     // Minimum delay between two percent meter updates, in milliseconds
     private static final long NEXT_PERCENT_LIMITER = 500;
 
+    // Minimum delay between two log view updates, in milliseconds
+    private static final int LOG_UPDATE_DELAY = 250;
+
+    // Maximum number of lines shown in the log view
+    private static final int LOG_VIEW_LINES = 2000;
+
+    // Maximum number of subtitles to be extracted in parallel
+    private static final int MAX_SUBTITLE_CONCURRENCY = 32;
+
+    // Maximum number of CPU intensive stages of all jobs in parallel
+    private static final int MAX_CPU_CONCURRENCY = 64;
+
+    // Maximum rip watchdog time, in minutes
+    private static final int MAX_RIP_WATCHDOG = 240;
+
     private static final ResourceBundle B = ResourceBundle.getBundle("message");
     private static final Icon selectFileIcon = new ImageIcon(SourceVobPane.class.getResource("/org/shredzone/feinrip/icon/file.png"));
 
     private final Configuration config = Configuration.global();
     private final LogBuilder logBuilder = new LogBuilder();
+    private final AtomicBoolean logUpdateScheduled = new AtomicBoolean();
 
     private JProgressBar jpbProgress;
     private JTextField jtfInfo;
     private JTextArea jtaLog;
+    private Timer logTimer;
+    private int logCounterOffset = -1;
     private JTextField jtfMp3File;
     private JTextField jtfTempDir;
     private JTextField jtfPreprocessorFile;
     private JCheckBox jcAudioDemux;
+    private JCheckBox jcNativeDemux;
+    private JComboBox<RipMode> jcbRipMode;
+    private JCheckBox jcEject;
+    private JCheckBox jcCheckpoint;
+    private JCheckBox jcFlightRecording;
+    private JSpinner jspSubConcurrency;
+    private JSpinner jspCpuConcurrency;
+    private JSpinner jspRipWatchdog;
+    private CancelAction cancelAction;
     private JCheckBox jcPreprocess;
     private Long startTime = null;
     private Frame frame;
@@ -101,13 +147,24 @@ public class ProgressPane extends PowerPane implements ConfigurablePane, Progres
         }
     }
 
+    /**
+     * Sets the handler that is invoked when the user cancels the conversion.
+     *
+     * @param handler
+     *            Cancel handler, or {@code null} if the conversion cannot be cancelled
+     */
+    public void setCancelHandler(Runnable handler) {
+        cancelAction.setHandler(handler);
+    }
+
     /**
      * Cleans up the pane after conversion. Resources (like logs) are freed.
      */
     public void cleanup() {
         jtfInfo.setText("");
-        jtaLog.setText("");
         logBuilder.clear();
+        jtaLog.setText("");
+        logCounterOffset = -1;
         if (frame != null) {
             frame.setTitle(frameTitle);
         }
@@ -120,6 +177,13 @@ public class ProgressPane extends PowerPane implements ConfigurablePane, Progres
         jtaLog.setEditable(false);
         add(new JScrollPane(jtaLog), BorderLayout.CENTER);
 
+        JPopupMenu jpmLog = new JPopupMenu();
+        jpmLog.add(new LogSaveAction());
+        jtaLog.setComponentPopupMenu(jpmLog);
+
+        logTimer = new Timer(LOG_UPDATE_DELAY, ev -> updateLog());
+        logTimer.setRepeats(false);
+
         JPanel jpOut = new JPanel();
         jpOut.setBorder(BorderFactory.createEmptyBorder(4, 0, 2, 0));
         jpOut.setLayout(new BoxLayout(jpOut, BoxLayout.Y_AXIS));
@@ -130,10 +194,17 @@ public class ProgressPane extends PowerPane implements ConfigurablePane, Progres
 
             jpOut.add(Box.createVerticalStrut(1));
 
-            jpbProgress = new JProgressBar(0, 100);
-            jpbProgress.setString("");
-            jpbProgress.setStringPainted(true);
-            jpOut.add(jpbProgress);
+            JPanel jpProgress = new JPanel(new BorderLayout());
+            {
+                jpbProgress = new JProgressBar(0, 100);
+                jpbProgress.setString("");
+                jpbProgress.setStringPainted(true);
+                jpProgress.add(jpbProgress, BorderLayout.CENTER);
+
+                cancelAction = new CancelAction();
+                jpProgress.add(new JButton(cancelAction), BorderLayout.LINE_END);
+            }
+            jpOut.add(jpProgress);
         }
         add(jpOut, BorderLayout.SOUTH);
     }
@@ -150,6 +221,7 @@ public class ProgressPane extends PowerPane implements ConfigurablePane, Progres
             {
                 jtfTempDir = new JTextField(config.getTempDir());
                 jtfTempDir.setToolTipText(B.getString("pane.progress.temp.tt"));
+                jtfTempDir.addActionListener(this::onTempDirAction);
                 jpTempDir.add(jtfTempDir, BorderLayout.CENTER);
 
                 JButton jbTempSelect = new JButton(new TempSelectAction());
@@ -172,6 +244,67 @@ public class ProgressPane extends PowerPane implements ConfigurablePane, Progres
 
             jpConfig.add(new JSeparator());
 
+            JPanel jpSubConcurrency = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+            jpSubConcurrency.setBorder(null);
+            {
+                jspSubConcurrency = new JSpinner(new SpinnerNumberModel(
+                                config.getSubtitleConcurrency(), 1, MAX_SUBTITLE_CONCURRENCY, 1));
+                jspSubConcurrency.setToolTipText(B.getString("pane.progress.subconcurrency.tt"));
+                jspSubConcurrency.addChangeListener(this::onSubConcurrencyChange);
+                jpSubConcurrency.add(jspSubConcurrency);
+            }
+            jpConfig.add(lg = new JLabelGroup(jpSubConcurrency, B.getString("pane.progress.subconcurrency"), lg));
+
+            JPanel jpCpuConcurrency = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+            jpCpuConcurrency.setBorder(null);
+            {
+                jspCpuConcurrency = new JSpinner(new SpinnerNumberModel(
+                                config.getCpuConcurrency(), 1, MAX_CPU_CONCURRENCY, 1));
+                jspCpuConcurrency.setToolTipText(B.getString("pane.progress.cpuconcurrency.tt"));
+                jspCpuConcurrency.addChangeListener(this::onCpuConcurrencyChange);
+                jpCpuConcurrency.add(jspCpuConcurrency);
+            }
+            jpConfig.add(lg = new JLabelGroup(jpCpuConcurrency, B.getString("pane.progress.cpuconcurrency"), lg));
+
+            jcNativeDemux = new JCheckBox(B.getString("pane.progress.nativedemux"));
+            jcNativeDemux.setToolTipText(B.getString("pane.progress.nativedemux.tt"));
+            jcNativeDemux.setSelected(config.isNativeDemux());
+            jcNativeDemux.addActionListener(this::onNativeDemuxAction);
+            jpConfig.add(lg = new JLabelGroup(jcNativeDemux, "", lg));
+
+            jcbRipMode = new JComboBox<>(RipMode.values());
+            jcbRipMode.setToolTipText(B.getString("pane.progress.ripmode.tt"));
+            jcbRipMode.setSelectedItem(config.getRipMode());
+            jcbRipMode.setEnabled(config.isNativeDemux());
+            jcbRipMode.addActionListener(this::onRipModeAction);
+            jpConfig.add(lg = new JLabelGroup(jcbRipMode, B.getString("pane.progress.ripmode"), lg));
+
+            JPanel jpRipWatchdog = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+            jpRipWatchdog.setBorder(null);
+            {
+                jspRipWatchdog = new JSpinner(new SpinnerNumberModel(
+                                config.getRipWatchdog(), 0, MAX_RIP_WATCHDOG, 1));
+                jspRipWatchdog.setToolTipText(B.getString("pane.progress.watchdog.tt"));
+                jspRipWatchdog.addChangeListener(this::onRipWatchdogChange);
+                jpRipWatchdog.add(jspRipWatchdog);
+            }
+            jpConfig.add(lg = new JLabelGroup(jpRipWatchdog, B.getString("pane.progress.watchdog"), lg));
+
+            jcEject = new JCheckBox(B.getString("pane.progress.eject"));
+            jcEject.setSelected(config.isEjectAfterRip());
+            jcEject.addActionListener(this::onEjectAction);
+            jpConfig.add(lg = new JLabelGroup(jcEject, "", lg));
+
+            jcCheckpoint = new JCheckBox(B.getString("pane.progress.checkpoint"));
+            jcCheckpoint.setSelected(config.isCheckpointEnabled());
+            jcCheckpoint.addActionListener(this::onCheckpointAction);
+            jpConfig.add(lg = new JLabelGroup(jcCheckpoint, "", lg));
+
+            jcFlightRecording = new JCheckBox(B.getString("pane.progress.flightrecording"));
+            jcFlightRecording.setSelected(config.isFlightRecordingEnabled());
+            jcFlightRecording.addActionListener(this::onFlightRecordingAction);
+            jpConfig.add(lg = new JLabelGroup(jcFlightRecording, "", lg));
+
             jcAudioDemux = new JCheckBox(B.getString("pane.progress.demux"));
             jcAudioDemux.setSelected(config.isForceAudioDemux());
             jcAudioDemux.addActionListener(this::onAudioDemuxAction);
@@ -205,10 +338,50 @@ public class ProgressPane extends PowerPane implements ConfigurablePane, Progres
         config.setForceAudioDemux(jcAudioDemux.isSelected());
     }
 
+    private void onNativeDemuxAction(ActionEvent e) {
+        config.setNativeDemux(jcNativeDemux.isSelected());
+        jcbRipMode.setEnabled(jcNativeDemux.isSelected());
+    }
+
+    private void onEjectAction(ActionEvent e) {
+        config.setEjectAfterRip(jcEject.isSelected());
+    }
+
+    private void onCheckpointAction(ActionEvent e) {
+        config.setCheckpointEnabled(jcCheckpoint.isSelected());
+    }
+
+    private void onFlightRecordingAction(ActionEvent e) {
+        config.setFlightRecordingEnabled(jcFlightRecording.isSelected());
+    }
+
+    private void onRipModeAction(ActionEvent e) {
+        config.setRipMode(jcbRipMode.getItemAt(jcbRipMode.getSelectedIndex()));
+    }
+
+    private void onSubConcurrencyChange(ChangeEvent e) {
+        config.setSubtitleConcurrency(((Number) jspSubConcurrency.getValue()).intValue());
+    }
+
+    private void onCpuConcurrencyChange(ChangeEvent e) {
+        int concurrency = ((Number) jspCpuConcurrency.getValue()).intValue();
+        config.setCpuConcurrency(concurrency);
+        JobQueue.global().getResourceLimiter().setCapacity(ResourceClass.CPU, concurrency);
+    }
+
+    private void onRipWatchdogChange(ChangeEvent e) {
+        config.setRipWatchdog(((Number) jspRipWatchdog.getValue()).intValue());
+    }
+
     private void onPreprocessAction(ActionEvent e) {
         config.setPreprocessBeforeMuxing(jcPreprocess.isSelected());
     }
 
+    private void onTempDirAction(ActionEvent e) {
+        String dirs = jtfTempDir.getText().trim();
+        config.setTempDir(!dirs.isEmpty() ? dirs : null);
+    }
+
     private void selectTempDir(File dir) {
         String dirname = (dir != null ? dir.getAbsolutePath() : null);
         jtfTempDir.setText(dirname);
@@ -267,35 +440,16 @@ public class ProgressPane extends PowerPane implements ConfigurablePane, Progres
 
     @Override
     public ProgressMeter percent(final Float percent) {
-        long now = System.currentTimeMillis();
-        if (now < nextPercentOutput) {
-            // Too early, avoid output to keep GUI load low
+        if (!isPercentOutputDue()) {
             return this;
         }
-        nextPercentOutput = now + NEXT_PERCENT_LIMITER;
 
         EventQueue.invokeLater(() -> {
             if (percent != null) {
                 if (startTime == null) {
                     startTime = System.currentTimeMillis();
                 }
-                jpbProgress.setValue(percent.intValue());
-                StringBuilder sb = new StringBuilder();
-                sb.append(percent.intValue()).append('%');
-
-                if (frame != null) {
-                    StringBuilder sb2 = new StringBuilder(sb);
-                    sb2.append(" - ").append(frameTitle);
-                    frame.setTitle(sb2.toString());
-                }
-
-                int eta = estimateTime(percent);
-                if (eta >= 0) {
-                    sb.append(String.format(" - %02d:%02d", (eta / 60), (eta % 60)));
-                }
-
-                jpbProgress.setString(sb.toString());
-                jpbProgress.setIndeterminate(false);
+                showPercent(percent, estimateTime(percent), -1.0);
             } else {
                 jpbProgress.setString("");
                 jpbProgress.setIndeterminate(true);
@@ -309,17 +463,177 @@ public class ProgressPane extends PowerPane implements ConfigurablePane, Progres
     }
 
     @Override
-    public ProgressMeter log(final String line) {
-        logBuilder.append(line);
+    public ProgressMeter progress(final JobProgress progress) {
+        if (!isPercentOutputDue()) {
+            return this;
+        }
 
         EventQueue.invokeLater(() -> {
-            String text = logBuilder.toString();
-            jtaLog.setText(text);
-            jtaLog.setCaretPosition(text.lastIndexOf('\n') + 1);
+            startTime = null;
+            showPercent(progress.getPercent(), progress.getRemainingSeconds(),
+                    progress.getMegabytesPerSecond());
         });
         return this;
     }
 
+    /**
+     * Checks if the progress bar is to be updated. Updates are limited, to keep the GUI
+     * load low.
+     */
+    private boolean isPercentOutputDue() {
+        long now = System.currentTimeMillis();
+        if (now < nextPercentOutput) {
+            return false;
+        }
+        nextPercentOutput = now + NEXT_PERCENT_LIMITER;
+        return true;
+    }
+
+    /**
+     * Shows the progress in the progress bar and the frame title. Must be invoked in
+     * the EDT.
+     *
+     * @param percent
+     *            Progress, in percent
+     * @param eta
+     *            Estimated remaining time in seconds, or a negative value if unknown
+     * @param mbps
+     *            Throughput in MB/s, or a negative value if unknown
+     */
+    private void showPercent(float percent, long eta, double mbps) {
+        jpbProgress.setValue((int) percent);
+        StringBuilder sb = new StringBuilder();
+        sb.append((int) percent).append('%');
+
+        if (frame != null) {
+            StringBuilder sb2 = new StringBuilder(sb);
+            sb2.append(" - ").append(frameTitle);
+            frame.setTitle(sb2.toString());
+        }
+
+        if (mbps >= 0.0) {
+            sb.append(String.format(" - %.1f MB/s", mbps));
+        }
+
+        if (eta >= 0) {
+            sb.append(String.format(" - %02d:%02d", (eta / 60), (eta % 60)));
+        }
+
+        jpbProgress.setString(sb.toString());
+        jpbProgress.setIndeterminate(false);
+    }
+
+    @Override
+    public ProgressMeter log(final String line) {
+        logBuilder.append(line);
+
+        // Coalesce log view updates, to keep GUI load low
+        if (logUpdateScheduled.compareAndSet(false, true)) {
+            EventQueue.invokeLater(logTimer::start);
+        }
+        return this;
+    }
+
+    /**
+     * Appends the new log lines to the log view. The oldest lines are removed from the
+     * view if it exceeds {@link #LOG_VIEW_LINES}. Must be invoked in the EDT.
+     */
+    private void updateLog() {
+        logUpdateScheduled.set(false);
+
+        List<String> lines = new ArrayList<>();
+        int repeated = logBuilder.drain(lines);
+
+        Document doc = jtaLog.getDocument();
+        try {
+            // Remove the line multiplicator, it is either updated or final now
+            if (logCounterOffset >= 0) {
+                doc.remove(logCounterOffset, doc.getLength() - logCounterOffset);
+                logCounterOffset = -1;
+            }
+
+            StringBuilder sb = new StringBuilder();
+            for (String line : lines) {
+                if (sb.length() > 0 || doc.getLength() > 0) {
+                    sb.append('\n');
+                }
+                sb.append(line);
+            }
+            doc.insertString(doc.getLength(), sb.toString(), null);
+
+            Element root = doc.getDefaultRootElement();
+            int excess = root.getElementCount() - LOG_VIEW_LINES;
+            if (excess > 0) {
+                doc.remove(0, root.getElement(excess - 1).getEndOffset());
+            }
+
+            if (repeated > 0) {
+                logCounterOffset = doc.getLength();
+                doc.insertString(logCounterOffset, "\n × " + repeated, null);
+            }
+
+            jtaLog.setCaretPosition(root.getElement(root.getElementCount() - 1).getStartOffset());
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Action for cancelling the conversion.
+     */
+    private class CancelAction extends AbstractSyncAction {
+        private static final long serialVersionUID = 2867396208751404520L;
+
+        private transient Runnable handler;
+
+        public CancelAction() {
+            super(B.getString("action.cancel"), null);
+            setEnabled(false);
+        }
+
+        public void setHandler(Runnable handler) {
+            this.handler = handler;
+            setEnabled(handler != null);
+        }
+
+        @Override
+        public void onAction(ActionEvent e) {
+            if (handler != null) {
+                setEnabled(false);
+                jtfInfo.setText(B.getString("progress.cancelling"));
+                handler.run();
+            }
+        }
+    }
+
+    /**
+     * Action for saving the full log.
+     */
+    private class LogSaveAction extends AbstractSyncAction {
+        private static final long serialVersionUID = 6105493725806843146L;
+
+        public LogSaveAction() {
+            super(B.getString("pane.progress.log.save"), null);
+        }
+
+        @Override
+        public void onAction(ActionEvent e) {
+            JFileChooser jfc = new JFileChooser();
+            jfc.setDialogTitle(B.getString("pane.progress.log.dialog"));
+            jfc.setDialogType(JFileChooser.SAVE_DIALOG);
+            jfc.setFileSelectionMode(JFileChooser.FILES_ONLY);
+            jfc.setFileFilter(new SimpleFileFilter("log"));
+            int result = jfc.showSaveDialog(ProgressPane.this);
+            if (result == JFileChooser.APPROVE_OPTION) {
+                try {
+                    logBuilder.save(jfc.getSelectedFile());
+                } catch (IOException ex) {
+                    ErrorDialog.showException(ex);
+                }
+            }
+        }
+    }
+
     /**
      * Action for selecting a temp dir.
      */
@@ -332,11 +646,7 @@ public class ProgressPane extends PowerPane implements ConfigurablePane, Progres
 
         @Override
         public void onAction(ActionEvent e) {
-            File currentDir = null;
-            String tempDir = config.getTempDir();
-            if (tempDir != null) {
-                currentDir = new File(tempDir).getParentFile();
-            }
+            File currentDir = config.getTempDirs().get(0).getParentFile();
 
             JFileChooser jfc = new JFileChooser();
             jfc.setDialogTitle(B.getString("pane.progress.temp.dialog"));
@@ -199,7 +199,11 @@ public class SourceVobPane extends SourceSelectorPane {
         source.setPalette(PaletteType.DEFAULT);
         updateColors();
 
-        source.setupProject();
+        try {
+            source.setupProject();
+        } catch (IOException ex) {
+            ErrorDialog.showException(ex);
+        }
         prefs.put(KEY, file.getParentFile().getAbsolutePath());
     }
 
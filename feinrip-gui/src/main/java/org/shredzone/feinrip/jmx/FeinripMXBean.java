@@ -0,0 +1,67 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.jmx;
+
+/**
+ * Management interface of feinrip. It is registered as
+ * {@code org.shredzone.feinrip:type=Feinrip}.
+ *
+ * @author Richard "Shred" Körber
+ */
+public interface FeinripMXBean {
+
+    /**
+     * Number of jobs that are currently processed. Each of them is registered as
+     * {@link JobMXBean}.
+     */
+    int getActiveJobs();
+
+    /**
+     * Number of jobs that are waiting in the job queue.
+     */
+    int getQueuedJobs();
+
+    /**
+     * Total number of bytes processed by all jobs, by the weights of their stages.
+     */
+    long getBytesProcessed();
+
+    /**
+     * Total space that is reserved for temporary files, in bytes.
+     */
+    long getTempSpaceReserved();
+
+    /**
+     * Total size of the temporary files written so far, in bytes.
+     */
+    long getTempSpaceUsed();
+
+    /**
+     * Number of external tools that are currently running.
+     */
+    int getChildProcesses();
+
+    /**
+     * Total number of external tools that have been started.
+     */
+    long getCommandsStarted();
+
+    /**
+     * Number of streams that were detected to be corrupted while reading.
+     */
+    long getCorruptedStreams();
+
+}
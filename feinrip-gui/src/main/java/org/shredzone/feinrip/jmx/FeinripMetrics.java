@@ -0,0 +1,188 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.jmx;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.shredzone.feinrip.job.JobQueue;
+import org.shredzone.feinrip.job.JobState;
+import org.shredzone.feinrip.pipeline.TempPlanner;
+
+/**
+ * Collects the metrics of all jobs, and exposes them as {@link FeinripMXBean}.
+ * <p>
+ * The metrics are fed by the components, and registered at the platform MBean server
+ * on first use, so they can be monitored with JMX tools.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class FeinripMetrics implements FeinripMXBean {
+    private static final Logger LOG = Logger.getLogger(FeinripMetrics.class.getName());
+
+    static final String DOMAIN = "org.shredzone.feinrip";
+
+    private static final FeinripMetrics GLOBAL = new FeinripMetrics();
+
+    static {
+        register(GLOBAL, DOMAIN + ":type=Feinrip");
+    }
+
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+    private final Set<JobMetrics> jobs = ConcurrentHashMap.newKeySet();
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong commandsStarted = new AtomicLong();
+    private final AtomicLong corruptedStreams = new AtomicLong();
+    private final AtomicLong completedBytes = new AtomicLong();
+    private volatile JobQueue queue;
+
+    /**
+     * Returns the {@link FeinripMetrics} of this instance.
+     */
+    public static FeinripMetrics global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Sets the {@link JobQueue} that is monitored.
+     */
+    public void setJobQueue(JobQueue queue) {
+        this.queue = queue;
+    }
+
+    /**
+     * An external tool has been started.
+     */
+    public void processStarted(Process process) {
+        processes.removeIf(p -> !p.isAlive());
+        processes.add(process);
+        commandsStarted.incrementAndGet();
+    }
+
+    /**
+     * An external tool has terminated.
+     */
+    public void processFinished(Process process) {
+        processes.remove(process);
+    }
+
+    /**
+     * A corrupted stream has been detected.
+     */
+    public void corruptedStreamDetected() {
+        corruptedStreams.incrementAndGet();
+    }
+
+    @Override
+    public int getActiveJobs() {
+        return jobs.size();
+    }
+
+    @Override
+    public int getQueuedJobs() {
+        JobQueue q = queue;
+        if (q == null) {
+            return 0;
+        }
+        return (int) q.getJobs().stream()
+                .filter(job -> job.getState() == JobState.QUEUED)
+                .count();
+    }
+
+    @Override
+    public long getBytesProcessed() {
+        return completedBytes.get() + jobs.stream().mapToLong(JobMetrics::getBytesProcessed).sum();
+    }
+
+    @Override
+    public long getTempSpaceReserved() {
+        return TempPlanner.global().getReservedSpace();
+    }
+
+    @Override
+    public long getTempSpaceUsed() {
+        return TempPlanner.global().getUsedSpace();
+    }
+
+    @Override
+    public int getChildProcesses() {
+        processes.removeIf(p -> !p.isAlive());
+        return processes.size();
+    }
+
+    @Override
+    public long getCommandsStarted() {
+        return commandsStarted.get();
+    }
+
+    @Override
+    public long getCorruptedStreams() {
+        return corruptedStreams.get();
+    }
+
+    /**
+     * A job has been started.
+     *
+     * @return Run number of the job
+     */
+    long jobStarted(JobMetrics job) {
+        jobs.add(job);
+        return runs.incrementAndGet();
+    }
+
+    /**
+     * A job has been finished.
+     */
+    void jobFinished(JobMetrics job) {
+        if (jobs.remove(job)) {
+            completedBytes.addAndGet(job.getBytesProcessed());
+        }
+    }
+
+    /**
+     * Registers an MBean at the platform MBean server. Failures are only logged, as
+     * monitoring is not essential.
+     */
+    static void register(Object bean, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(bean, new ObjectName(name));
+        } catch (JMException | RuntimeException ex) {
+            LOG.log(Level.WARNING, "Could not register MBean " + name, ex);
+        }
+    }
+
+    /**
+     * Unregisters an MBean from the platform MBean server.
+     */
+    static void unregister(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.unregisterMBean(new ObjectName(name));
+        } catch (JMException | RuntimeException ex) {
+            LOG.log(Level.WARNING, "Could not unregister MBean " + name, ex);
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.jmx;
+
+import java.util.Map;
+
+/**
+ * Management interface of a job that is currently processed. It is registered as
+ * {@code org.shredzone.feinrip:type=Job,id=<n>} while the job is running.
+ *
+ * @author Richard "Shred" Körber
+ */
+public interface JobMXBean {
+
+    /**
+     * Title of the job.
+     */
+    String getTitle();
+
+    /**
+     * Target file of the job.
+     */
+    String getTarget();
+
+    /**
+     * Seconds since the job was started.
+     */
+    long getElapsedSeconds();
+
+    /**
+     * The current progress message.
+     */
+    String getMessage();
+
+    /**
+     * Names of the stages that are currently running.
+     */
+    String[] getRunningStages();
+
+    /**
+     * Progress of the job, in percent.
+     */
+    float getPercent();
+
+    /**
+     * Number of bytes processed so far, by the weights of the stages.
+     */
+    long getBytesProcessed();
+
+    /**
+     * Current throughput of the job, in MB/s. Negative if not known yet.
+     */
+    double getThroughput();
+
+    /**
+     * Estimated remaining time, in seconds. Negative if not known yet.
+     */
+    long getRemainingSeconds();
+
+    /**
+     * Throughput of all finished stages, in MB/s, by stage name.
+     */
+    Map<String, Double> getStageThroughput();
+
+}
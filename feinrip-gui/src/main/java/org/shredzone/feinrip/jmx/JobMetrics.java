@@ -0,0 +1,205 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.jmx;
+
+import java.io.Closeable;
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.shredzone.feinrip.pipeline.StageMetrics;
+import org.shredzone.feinrip.pipeline.StageReport;
+import org.shredzone.feinrip.progress.JobProgress;
+import org.shredzone.feinrip.progress.ProgressMeter;
+
+/**
+ * Collects the metrics of a running job, and exposes them as {@link JobMXBean}.
+ * <p>
+ * The progress is fed by the {@link ProgressMeter} returned by
+ * {@link #meter(ProgressMeter)}, the stages are taken from the {@link StageReport}.
+ * The MBean is registered until it is closed.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class JobMetrics implements JobMXBean, Closeable {
+
+    private final String title;
+    private final String target;
+    private final String name;
+    private final long started = System.nanoTime();
+    private volatile Supplier<StageReport> report = () -> null;
+    private volatile String message;
+    private volatile float percent;
+    private volatile long bytesProcessed;
+    private volatile double throughput = -1.0;
+    private volatile long remainingSeconds = -1L;
+
+    /**
+     * Creates and registers a new {@link JobMetrics}.
+     *
+     * @param title
+     *            Title of the job
+     * @param target
+     *            Target file of the job
+     */
+    public JobMetrics(String title, File target) {
+        this.title = title;
+        this.target = target.getAbsolutePath();
+        long run = FeinripMetrics.global().jobStarted(this);
+        this.name = FeinripMetrics.DOMAIN + ":type=Job,id=" + run;
+        FeinripMetrics.register(this, name);
+    }
+
+    /**
+     * Sets the supplier of the {@link StageReport} of the current run. It may supply
+     * {@code null} if there is no run yet.
+     */
+    public void setReport(Supplier<StageReport> report) {
+        this.report = report;
+    }
+
+    /**
+     * Returns a {@link ProgressMeter} that collects the progress, and forwards it to
+     * the given {@link ProgressMeter}.
+     *
+     * @param parent
+     *            {@link ProgressMeter} to forward to, may be {@code null}
+     */
+    public ProgressMeter meter(ProgressMeter parent) {
+        return new MetricsMeter(parent);
+    }
+
+    @Override
+    public String getTitle()                    { return title; }
+
+    @Override
+    public String getTarget()                   { return target; }
+
+    @Override
+    public long getElapsedSeconds() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started);
+    }
+
+    @Override
+    public String getMessage()                  { return message; }
+
+    @Override
+    public String[] getRunningStages() {
+        StageReport r = report.get();
+        if (r == null) {
+            return new String[0];
+        }
+        return r.getMetrics().stream()
+                .filter(sm -> !sm.isFinished())
+                .map(StageMetrics::getName)
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public float getPercent()                   { return percent; }
+
+    @Override
+    public long getBytesProcessed()             { return bytesProcessed; }
+
+    @Override
+    public double getThroughput()               { return throughput; }
+
+    @Override
+    public long getRemainingSeconds()           { return remainingSeconds; }
+
+    @Override
+    public Map<String, Double> getStageThroughput() {
+        Map<String, Double> result = new TreeMap<>();
+        StageReport r = report.get();
+        if (r != null) {
+            for (StageMetrics sm : r.getMetrics()) {
+                if (sm.isFinished()) {
+                    result.put(sm.getName(), Math.round(sm.getThroughput() * 100.0) / 100.0);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Unregisters the MBean.
+     */
+    @Override
+    public void close() {
+        FeinripMetrics.unregister(name);
+        FeinripMetrics.global().jobFinished(this);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * A {@link ProgressMeter} that collects the progress.
+     */
+    private class MetricsMeter implements ProgressMeter {
+        private final ProgressMeter parent;
+
+        public MetricsMeter(ProgressMeter parent) {
+            this.parent = parent;
+        }
+
+        @Override
+        public ProgressMeter message(String msg, Object... values) {
+            message = (msg != null ? MessageFormat.format(msg, values) : null);
+            if (parent != null) {
+                parent.message(msg, values);
+            }
+            return this;
+        }
+
+        @Override
+        public ProgressMeter percent(Float value) {
+            percent = (value != null ? value : 0.0f);
+            throughput = -1.0;
+            remainingSeconds = -1L;
+            if (parent != null) {
+                parent.percent(value);
+            }
+            return this;
+        }
+
+        @Override
+        public ProgressMeter progress(JobProgress value) {
+            percent = value.getPercent();
+            bytesProcessed = value.getBytesProcessed();
+            throughput = value.getMegabytesPerSecond();
+            remainingSeconds = value.getRemainingSeconds();
+            if (parent != null) {
+                parent.progress(value);
+            }
+            return this;
+        }
+
+        @Override
+        public ProgressMeter log(String line) {
+            if (parent != null) {
+                parent.log(line);
+            }
+            return this;
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.job;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.shredzone.feinrip.model.Project;
+import org.shredzone.feinrip.progress.ProgressMeter;
+import org.shredzone.feinrip.system.DeviceUtils;
+
+/**
+ * Watches a single optical drive, and submits a {@link Job} to the {@link JobQueue}
+ * for every disc that is inserted.
+ * <p>
+ * Several workers can share the same {@link JobQueue}. Discs in different drives are
+ * then ripped in parallel, while the CPU intensive stages are limited for all jobs.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class DriveWorker implements Runnable {
+    private static final Logger LOG = Logger.getLogger(DriveWorker.class.getName());
+
+    private static final long POLL_MILLIS = TimeUnit.SECONDS.toMillis(2);
+
+    /**
+     * Creates a {@link Project} for the disc in a drive.
+     */
+    @FunctionalInterface
+    public interface ProjectFactory {
+        /**
+         * Creates a {@link Project}.
+         *
+         * @param device
+         *            Device of the drive. The disc is mounted.
+         * @return {@link Project} to be processed
+         */
+        Project create(File device) throws IOException;
+    }
+
+    private final File device;
+    private final JobQueue queue;
+    private final ProjectFactory factory;
+    private final ProgressMeter meter;
+
+    /**
+     * Creates a new {@link DriveWorker}.
+     *
+     * @param device
+     *            Device of the optical drive
+     * @param queue
+     *            {@link JobQueue} to submit the jobs to
+     * @param factory
+     *            {@link ProjectFactory} that creates a project for each disc
+     * @param meter
+     *            {@link ProgressMeter} that shows the progress of this drive's jobs
+     */
+    public DriveWorker(File device, JobQueue queue, ProjectFactory factory, ProgressMeter meter) {
+        this.device = device;
+        this.queue = queue;
+        this.factory = factory;
+        this.meter = meter;
+    }
+
+    /**
+     * Device of the optical drive.
+     */
+    public File getDevice()                     { return device; }
+
+    /**
+     * Starts the worker in a daemon thread.
+     *
+     * @return {@link Thread} of the worker
+     */
+    public Thread start() {
+        Thread thread = new Thread(this, "feinrip-drive-" + device.getName());
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Processes discs until the thread is interrupted.
+     */
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                File mountPoint = awaitDisc();
+                meter.message("Disc found in {0}, mounted at {1}", device, mountPoint).percent(null);
+
+                try {
+                    Job job = queue.submit(factory.create(device), meter);
+                    job.awaitRipped();
+                } catch (IOException ex) {
+                    LOG.log(Level.WARNING, "Could not process disc in " + device, ex);
+                    meter.log("Could not process disc in " + device + ": " + ex.getMessage());
+                }
+
+                // The disc may have been ejected after ripping. If not, it must be
+                // removed before the next disc is processed.
+                awaitRemoval();
+                meter.message("Waiting for the next disc in {0}", device).percent(null);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits until a disc is inserted and mounted.
+     *
+     * @return Mount point of the disc
+     */
+    private File awaitDisc() throws InterruptedException {
+        while (true) {
+            if (DeviceUtils.hasMedium(device)) {
+                try {
+                    File mountPoint = DeviceUtils.findMountPoint(device);
+                    if (mountPoint != null) {
+                        return mountPoint;
+                    }
+                } catch (IOException ex) {
+                    LOG.log(Level.FINE, "Could not find mount point of " + device, ex);
+                }
+            }
+            Thread.sleep(POLL_MILLIS);
+        }
+    }
+
+    /**
+     * Waits until the disc has been removed.
+     */
+    private void awaitRemoval() throws InterruptedException {
+        while (DeviceUtils.hasMedium(device)) {
+            Thread.sleep(POLL_MILLIS);
+        }
+    }
+
+}
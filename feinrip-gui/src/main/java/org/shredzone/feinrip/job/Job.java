@@ -0,0 +1,144 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.job;
+
+import java.io.File;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import org.shredzone.feinrip.FeinripProcessor;
+import org.shredzone.feinrip.model.Project;
+import org.shredzone.feinrip.progress.ProgressMeter;
+
+/**
+ * A single job of the {@link JobQueue}. It contains a snapshot of the {@link Project}
+ * at the time the job was submitted.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class Job {
+
+    private final String id;
+    private final Project project;
+    private final File target;
+    private final String fingerprint;
+    private final long created;
+    private final CountDownLatch ripped = new CountDownLatch(1);
+    private volatile JobState state = JobState.QUEUED;
+    private volatile Exception failure;
+    private volatile ProgressMeter progressMeter;
+    private FeinripProcessor processor;
+    private boolean cancelled;
+
+    Job(String id, Project project, File target, String fingerprint, long created) {
+        this.id = id;
+        this.project = project;
+        this.target = target;
+        this.fingerprint = fingerprint;
+        this.created = created;
+    }
+
+    Job(Project project, File target, String fingerprint) {
+        this(UUID.randomUUID().toString(), project, target, fingerprint, System.currentTimeMillis());
+    }
+
+    /**
+     * Unique ID of this job.
+     */
+    public String getId()                       { return id; }
+
+    /**
+     * Snapshot of the {@link Project} to be processed.
+     */
+    public Project getProject()                 { return project; }
+
+    /**
+     * mkv file to be written.
+     */
+    public File getTarget()                     { return target; }
+
+    /**
+     * Fingerprint of the source at the time the job was submitted, or {@code null} if
+     * the source has no fingerprint. See {@link org.shredzone.feinrip.source.Source#getFingerprint()}.
+     */
+    public String getFingerprint()              { return fingerprint; }
+
+    /**
+     * Timestamp when the job was submitted.
+     */
+    public long getCreated()                    { return created; }
+
+    /**
+     * Current state of the job.
+     */
+    public JobState getState()                  { return state; }
+    void setState(JobState state)               { this.state = state; }
+
+    /**
+     * The cause of the failure, if the job has failed.
+     */
+    public Exception getFailure()               { return failure; }
+    void setFailure(Exception failure)          { this.failure = failure; }
+
+    /**
+     * The {@link ProgressMeter} of this job, or {@code null} to use the one of the
+     * {@link JobQueue}. It is not persisted.
+     */
+    ProgressMeter getProgressMeter()            { return progressMeter; }
+    void setProgressMeter(ProgressMeter progressMeter) { this.progressMeter = progressMeter; }
+
+    /**
+     * Sets the {@link FeinripProcessor} that is processing this job. If the job was
+     * cancelled before, the processor is cancelled immediately.
+     */
+    synchronized void setProcessor(FeinripProcessor processor) {
+        this.processor = processor;
+        if (cancelled && processor != null) {
+            processor.cancel();
+        }
+    }
+
+    /**
+     * Cancels this job. Does nothing if the job has already terminated.
+     */
+    synchronized void cancel() {
+        cancelled = true;
+        if (processor != null) {
+            processor.cancel();
+        }
+    }
+
+    /**
+     * Checks if this job was cancelled.
+     */
+    synchronized boolean isCancelled()          { return cancelled; }
+
+    /**
+     * Marks that the medium of this job is not needed any more.
+     */
+    void markRipped() {
+        ripped.countDown();
+    }
+
+    /**
+     * Waits until the medium of this job is not needed any more, so the next medium
+     * can be inserted. Also returns if the job has been completed or has failed.
+     */
+    public void awaitRipped() throws InterruptedException {
+        ripped.await();
+    }
+
+}
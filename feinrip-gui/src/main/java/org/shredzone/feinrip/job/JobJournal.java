@@ -0,0 +1,140 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.job;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Keeps a journal of all unfinished {@link Job}, so they can be restored after a
+ * restart.
+ * <p>
+ * The journal is a JSON file that is replaced atomically on every change.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class JobJournal {
+
+    private final Path journal;
+
+    /**
+     * Creates a {@link JobJournal} at the default location.
+     */
+    public JobJournal() {
+        this(FileSystems.getDefault().getPath(System.getProperty("user.home"), ".local", "share", "feinrip", "jobs.json"));
+    }
+
+    /**
+     * Creates a {@link JobJournal} at the given location.
+     *
+     * @param journal
+     *            {@link Path} of the journal file
+     */
+    public JobJournal(Path journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Reads the journal.
+     *
+     * @return JSON of all unfinished jobs, empty if there is no journal
+     */
+    public synchronized List<JSONObject> read() throws IOException {
+        List<JSONObject> result = new ArrayList<>();
+        if (!Files.exists(journal)) {
+            return result;
+        }
+
+        try (Reader r = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+            JSONArray jobs = new JSONObject(new JSONTokener(r)).getJSONArray("jobs");
+            for (int ix = 0; ix < jobs.length(); ix++) {
+                result.add(jobs.getJSONObject(ix));
+            }
+        } catch (JSONException ex) {
+            throw new IOException("Corrupted job journal " + journal, ex);
+        }
+        return result;
+    }
+
+    /**
+     * Writes all unfinished jobs to the journal.
+     *
+     * @param jobs
+     *            All {@link Job} of the queue. Finished jobs are not written.
+     */
+    public synchronized void write(Collection<Job> jobs) throws IOException {
+        JSONArray array = new JSONArray();
+        for (Job job : jobs) {
+            if (job.getState() == JobState.QUEUED || job.getState() == JobState.RUNNING) {
+                array.put(toJson(job));
+            }
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("jobs", array);
+
+        Files.createDirectories(journal.getParent());
+        Path tmp = journal.resolveSibling(journal.getFileName() + ".tmp");
+        Files.write(tmp, json.toString(2).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Converts a {@link Job} to JSON.
+     */
+    public static JSONObject toJson(Job job) throws IOException {
+        JSONObject json = new JSONObject();
+        json.put("id", job.getId());
+        json.put("created", job.getCreated());
+        json.put("target", job.getTarget().getAbsolutePath());
+        if (job.getFingerprint() != null) {
+            json.put("fingerprint", job.getFingerprint());
+        }
+        json.put("project", ProjectCodec.toJson(job.getProject()));
+        return json;
+    }
+
+    /**
+     * Converts JSON to a {@link Job}. The job is in {@link JobState#QUEUED} state.
+     */
+    public static Job fromJson(JSONObject json) throws IOException {
+        try {
+            return new Job(
+                    json.getString("id"),
+                    ProjectCodec.fromJson(json.getJSONObject("project")),
+                    new File(json.getString("target")),
+                    json.optString("fingerprint", null),
+                    json.getLong("created"));
+        } catch (JSONException ex) {
+            throw new IOException("Could not restore job", ex);
+        }
+    }
+
+}
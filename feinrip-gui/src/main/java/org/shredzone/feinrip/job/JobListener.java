@@ -0,0 +1,35 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.job;
+
+/**
+ * Listens to state changes of {@link Job}.
+ *
+ * @author Richard "Shred" Körber
+ */
+@FunctionalInterface
+public interface JobListener {
+
+    /**
+     * Invoked when the state of a {@link Job} has changed. Note that this method is
+     * not invoked in the event dispatch thread.
+     *
+     * @param job
+     *            {@link Job} that has changed
+     */
+    void jobChanged(Job job);
+
+}
@@ -0,0 +1,379 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.job;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.json.JSONObject;
+import org.shredzone.feinrip.FeinripProcessor;
+import org.shredzone.feinrip.jmx.FeinripMetrics;
+import org.shredzone.feinrip.model.Configuration;
+import org.shredzone.feinrip.model.Project;
+import org.shredzone.feinrip.pipeline.ResourceClass;
+import org.shredzone.feinrip.pipeline.ResourceLimiter;
+import org.shredzone.feinrip.progress.JobProgress;
+import org.shredzone.feinrip.progress.ProgressMeter;
+import org.shredzone.feinrip.source.DvdSource;
+import org.shredzone.feinrip.source.Source;
+
+/**
+ * A queue of {@link Job} to be processed.
+ * <p>
+ * Jobs are processed in parallel, but share a common {@link ResourceLimiter}. This way,
+ * the next disc can be ripped while the previous job is still being encoded. Each
+ * optical drive is limited separately, so discs in different drives are ripped in
+ * parallel, while the number of CPU intensive stages is limited for all jobs. All
+ * unfinished jobs are kept in a {@link JobJournal}, and can be restored after a restart.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class JobQueue {
+    private static final Logger LOG = Logger.getLogger(JobQueue.class.getName());
+
+    private static final JobQueue GLOBAL = new JobQueue(new JobJournal());
+
+    /**
+     * Decides whether an unfinished job of the journal is resumed.
+     */
+    @FunctionalInterface
+    public interface RestoreConfirmation {
+        /**
+         * Asks if an unfinished job is to be resumed. If the job is resumed while the
+         * source does not match, the source is checked again and the confirmation is
+         * asked for again.
+         *
+         * @param target
+         *            mkv file of the job
+         * @param sourceMatches
+         *            {@code true} if the source of the job is available, and it is the
+         *            same source (e.g. the same disc) as when the job was submitted
+         * @return {@code true} to resume the job, {@code false} to discard it
+         */
+        boolean confirm(File target, boolean sourceMatches);
+    }
+
+    static {
+        FeinripMetrics.global().setJobQueue(GLOBAL);
+    }
+
+    private final JobJournal journal;
+    private final ResourceLimiter resourceLimiter = new ResourceLimiter();
+    // The job threads keep the JVM alive, so a job is never killed in the middle of
+    // writing the target file. Idle threads terminate soon, so they do not delay the
+    // exit when all jobs are done.
+    private final ExecutorService executor = new ThreadPoolExecutor(
+                    0, Integer.MAX_VALUE, 1L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                    r -> new Thread(r, "feinrip-job"));
+    private final List<Job> jobs = new ArrayList<>();
+    private final List<JobListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile ProgressMeter progressMeter;
+
+    /**
+     * Returns the global {@link JobQueue}.
+     */
+    public static JobQueue global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Creates a new {@link JobQueue}.
+     *
+     * @param journal
+     *            {@link JobJournal} to keep the unfinished jobs in
+     */
+    public JobQueue(JobJournal journal) {
+        this.journal = journal;
+        resourceLimiter.setCapacity(ResourceClass.CPU, Configuration.global().getCpuConcurrency());
+    }
+
+    /**
+     * The {@link ResourceLimiter} that is shared by all jobs of this queue.
+     */
+    public ResourceLimiter getResourceLimiter() { return resourceLimiter; }
+
+    /**
+     * Sets the {@link ProgressMeter} that receives the progress of all jobs. Messages
+     * are prefixed with the title of the job.
+     */
+    public void setProgressMeter(ProgressMeter progressMeter) {
+        this.progressMeter = progressMeter;
+    }
+
+    /**
+     * Adds a {@link JobListener} that is invoked on every state change of a job.
+     */
+    public void addJobListener(JobListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a {@link JobListener}.
+     */
+    public void removeJobListener(JobListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns a list of all jobs that are queued or running. Terminated jobs are
+     * removed from the queue.
+     */
+    public List<Job> getJobs() {
+        synchronized (jobs) {
+            return Collections.unmodifiableList(new ArrayList<>(jobs));
+        }
+    }
+
+    /**
+     * Submits a {@link Project} for processing. A snapshot of the project is taken, so
+     * the project can be changed after this method has returned.
+     *
+     * @param project
+     *            {@link Project} to process
+     * @return {@link Job} that was created
+     */
+    public Job submit(Project project) throws IOException {
+        return submit(project, null);
+    }
+
+    /**
+     * Submits a {@link Project} for processing, with its own {@link ProgressMeter}.
+     * This way, the jobs of different drives can be shown in different views.
+     *
+     * @param project
+     *            {@link Project} to process
+     * @param meter
+     *            {@link ProgressMeter} of this job, or {@code null} to use the
+     *            {@link ProgressMeter} of the queue
+     * @return {@link Job} that was created
+     */
+    public Job submit(Project project, ProgressMeter meter) throws IOException {
+        File target = new File(project.getSource().resolveTargetFileName());
+        String fingerprint = project.getSource().getFingerprint();
+        Job job = new Job(ProjectCodec.snapshot(project), target, fingerprint);
+        job.setProgressMeter(meter);
+        enqueue(job);
+        return job;
+    }
+
+    /**
+     * Cancels a {@link Job}. All external tools of the job are killed, and its
+     * intermediate files are cleaned up. The job terminates with
+     * {@link JobState#CANCELLED} shortly after.
+     *
+     * @param job
+     *            {@link Job} to cancel
+     */
+    public void cancel(Job job) {
+        job.cancel();
+    }
+
+    /**
+     * Restores the unfinished jobs of the journal, and submits them again. Jobs are
+     * restarted from the beginning, so the disc or vob file must be available.
+     * <p>
+     * Every job must be confirmed before it is resumed. A job is only resumed if its
+     * source is the same as when the job was submitted, so a job is never resumed with
+     * a different disc that has been inserted meanwhile. Jobs that are not resumed, and
+     * jobs that cannot be read from the journal, are discarded.
+     *
+     * @param confirmation
+     *            {@link RestoreConfirmation} that decides about each job
+     * @return List of restored {@link Job}
+     */
+    public List<Job> restore(RestoreConfirmation confirmation) throws IOException {
+        List<Job> result = new ArrayList<>();
+        for (JSONObject json : journal.read()) {
+            File target = new File(json.optString("target"));
+            while (true) {
+                Job job;
+                try {
+                    job = JobJournal.fromJson(json);
+                } catch (IOException | RuntimeException ex) {
+                    // It would fail again, so there is no point in asking
+                    LOG.log(Level.WARNING, "Discarded unreadable job " + json.optString("id"), ex);
+                    break;
+                }
+
+                boolean matches = matchesSource(job);
+                if (!confirmation.confirm(target, matches)) {
+                    LOG.log(Level.INFO, "Discarded job " + json.optString("id"));
+                    break;
+                }
+
+                if (matches) {
+                    enqueue(job);
+                    result.add(job);
+                    break;
+                }
+            }
+        }
+        writeJournal();
+        return result;
+    }
+
+    /**
+     * Checks if the source of the {@link Job} is the same as when the job was
+     * submitted. Jobs of a journal without fingerprint only match sources without
+     * fingerprint.
+     */
+    private static boolean matchesSource(Job job) {
+        try {
+            return Objects.equals(job.getFingerprint(), job.getProject().getSource().getFingerprint());
+        } catch (IOException ex) {
+            LOG.log(Level.INFO, "Could not compute fingerprint of job " + job.getId(), ex);
+            return false;
+        }
+    }
+
+    /**
+     * Adds a {@link Job} to the queue and starts processing it.
+     */
+    private void enqueue(Job job) throws IOException {
+        synchronized (jobs) {
+            jobs.add(job);
+        }
+        writeJournal();
+        fireJobChanged(job);
+        executor.execute(() -> process(job));
+    }
+
+    /**
+     * Processes a {@link Job}.
+     */
+    private void process(Job job) {
+        try {
+            job.setState(JobState.RUNNING);
+            fireJobChanged(job);
+
+            FeinripProcessor processor = new FeinripProcessor(job.getProject());
+            processor.setTargetFile(job.getTarget());
+            processor.setEjectAfterRip(Configuration.global().isEjectAfterRip());
+            processor.setResourceLimiter(resourceLimiter.forDevice(getDevice(job)));
+            processor.setRipListener(job::markRipped);
+            job.setProcessor(processor);
+            if (job.getProgressMeter() != null) {
+                processor.setProgressMeter(job.getProgressMeter());
+            } else if (progressMeter != null) {
+                processor.setProgressMeter(new JobProgressMeter(job));
+            }
+            processor.start();
+
+            job.setState(JobState.DONE);
+        } catch (Exception ex) {
+            if (job.isCancelled()) {
+                LOG.log(Level.INFO, "Job " + job.getId() + " was cancelled");
+                job.setState(JobState.CANCELLED);
+            } else {
+                LOG.log(Level.SEVERE, "Job " + job.getId() + " failed", ex);
+                job.setFailure(ex);
+                job.setState(JobState.FAILED);
+            }
+        } finally {
+            job.setProcessor(null);
+            job.markRipped();
+            synchronized (jobs) {
+                jobs.remove(job);
+            }
+            try {
+                writeJournal();
+            } catch (IOException ex) {
+                LOG.log(Level.WARNING, "Could not write job journal", ex);
+            }
+            fireJobChanged(job);
+        }
+    }
+
+    /**
+     * Returns the device of the optical drive the job is reading from, or {@code null}
+     * if it does not read from a drive.
+     */
+    private static File getDevice(Job job) {
+        Source source = job.getProject().getSource();
+        return (source instanceof DvdSource ? ((DvdSource) source).getDevice() : null);
+    }
+
+    private void writeJournal() throws IOException {
+        journal.write(getJobs());
+    }
+
+    private void fireJobChanged(Job job) {
+        for (JobListener listener : listeners) {
+            listener.jobChanged(job);
+        }
+    }
+
+    /**
+     * A {@link ProgressMeter} that prefixes all messages with the job title.
+     */
+    private class JobProgressMeter implements ProgressMeter {
+        private final String prefix;
+
+        public JobProgressMeter(Job job) {
+            String title = job.getProject().getTitle();
+            this.prefix = (title != null && !title.isEmpty() ? title : job.getTarget().getName()) + ": ";
+        }
+
+        @Override
+        public ProgressMeter message(String message, Object... values) {
+            ProgressMeter meter = progressMeter;
+            if (meter != null) {
+                meter.message("{0}", prefix + MessageFormat.format(message, values));
+            }
+            return this;
+        }
+
+        @Override
+        public ProgressMeter percent(Float percent) {
+            ProgressMeter meter = progressMeter;
+            if (meter != null) {
+                meter.percent(percent);
+            }
+            return this;
+        }
+
+        @Override
+        public ProgressMeter progress(JobProgress progress) {
+            ProgressMeter meter = progressMeter;
+            if (meter != null) {
+                meter.progress(progress);
+            }
+            return this;
+        }
+
+        @Override
+        public ProgressMeter log(String line) {
+            ProgressMeter meter = progressMeter;
+            if (meter != null) {
+                meter.log(line);
+            }
+            return this;
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.job;
+
+/**
+ * State of a {@link Job}.
+ *
+ * @author Richard "Shred" Körber
+ */
+public enum JobState {
+
+    /**
+     * Job is waiting to be processed.
+     */
+    QUEUED,
+
+    /**
+     * Job is being processed.
+     */
+    RUNNING,
+
+    /**
+     * Job was completed successfully.
+     */
+    DONE,
+
+    /**
+     * Job has failed.
+     */
+    FAILED,
+
+    /**
+     * Job was cancelled by the user.
+     */
+    CANCELLED;
+
+}
@@ -0,0 +1,328 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.job;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.shredzone.feinrip.model.AspectRatio;
+import org.shredzone.feinrip.model.Audio;
+import org.shredzone.feinrip.model.AudioType;
+import org.shredzone.feinrip.model.Chapter;
+import org.shredzone.feinrip.model.Language;
+import org.shredzone.feinrip.model.MountPoint;
+import org.shredzone.feinrip.model.Palette;
+import org.shredzone.feinrip.model.PaletteType;
+import org.shredzone.feinrip.model.Project;
+import org.shredzone.feinrip.model.Subtitle;
+import org.shredzone.feinrip.model.SubtitleFormat;
+import org.shredzone.feinrip.model.SubtitleType;
+import org.shredzone.feinrip.model.Track;
+import org.shredzone.feinrip.source.DvdSource;
+import org.shredzone.feinrip.source.IsoSource;
+import org.shredzone.feinrip.source.Source;
+import org.shredzone.feinrip.source.VobSource;
+import org.shredzone.feinrip.system.LanguageUtils;
+
+/**
+ * Converts a {@link Project} to JSON and back.
+ * <p>
+ * Only the properties needed for processing are converted. The episode is not
+ * converted, the target file name must be resolved before.
+ *
+ * @author Richard "Shred" Körber
+ */
+public final class ProjectCodec {
+
+    private ProjectCodec() {
+        // utility class without constructor
+    }
+
+    /**
+     * Creates a detached copy of a {@link Project}. The copy uses its own
+     * {@link Source}, and is not affected by changes to the original project.
+     *
+     * @param project
+     *            {@link Project} to copy
+     * @return Copy of the {@link Project}
+     */
+    public static Project snapshot(Project project) throws IOException {
+        return fromJson(toJson(project));
+    }
+
+    /**
+     * Converts a {@link Project} to JSON.
+     */
+    public static JSONObject toJson(Project project) throws IOException {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("source", sourceToJson(project.getSource()));
+            json.put("output", project.getOutput());
+            json.put("title", project.getTitle());
+            json.put("ignoreChapters", project.isIgnoreChapters());
+            json.put("aspect", project.getAspect().name());
+            json.put("audioSyncOffset", project.getAudioSyncOffset());
+
+            Dimension size = project.getSize();
+            if (size != null) {
+                json.put("width", size.width);
+                json.put("height", size.height);
+            }
+
+            JSONArray chapters = new JSONArray();
+            for (Chapter chapter : project.getChapters()) {
+                JSONObject jc = new JSONObject();
+                jc.put("number", chapter.getNumber());
+                jc.put("title", chapter.getTitle());
+                jc.put("position", chapter.getPosition());
+                chapters.put(jc);
+            }
+            json.put("chapters", chapters);
+
+            JSONArray audios = new JSONArray();
+            for (Audio audio : project.getAudios()) {
+                JSONObject ja = new JSONObject();
+                ja.put("ix", audio.getIx());
+                ja.put("language", languageToJson(audio.getLanguage()));
+                ja.put("format", audio.getFormat());
+                ja.put("type", audio.getType() != null ? audio.getType().name() : null);
+                ja.put("channels", audio.getChannels());
+                ja.put("streamId", audio.getStreamId());
+                ja.put("enabled", audio.isEnabled());
+                ja.put("available", audio.isAvailable());
+                audios.put(ja);
+            }
+            json.put("audios", audios);
+            json.put("defAudio", project.getAudios().indexOf(project.getDefAudio()));
+
+            JSONArray subs = new JSONArray();
+            for (Subtitle sub : project.getSubs()) {
+                JSONObject js = new JSONObject();
+                js.put("index", sub.getIndex());
+                js.put("streamId", sub.getStreamId());
+                js.put("format", sub.getFormat() != null ? sub.getFormat().name() : null);
+                js.put("type", sub.getType() != null ? sub.getType().name() : null);
+                js.put("language", languageToJson(sub.getLanguage()));
+                js.put("vts", sub.getVts());
+                js.put("enabled", sub.isEnabled());
+                subs.put(js);
+            }
+            json.put("subs", subs);
+            json.put("defSub", project.getSubs().indexOf(project.getDefSub()));
+
+            return json;
+        } catch (JSONException ex) {
+            throw new IOException("Could not convert project", ex);
+        }
+    }
+
+    /**
+     * Converts JSON to a {@link Project}.
+     * <p>
+     * DVD sources are analyzed again, so the DVD must be present.
+     */
+    public static Project fromJson(JSONObject json) throws IOException {
+        try {
+            Project project = new Project();
+            Source source = sourceFromJson(json.getJSONObject("source"), project);
+
+            project.setOutput(json.optString("output", null));
+            project.setTitle(json.optString("title", null));
+            project.setIgnoreChapters(json.optBoolean("ignoreChapters"));
+            project.setAspect(AspectRatio.valueOf(json.getString("aspect")));
+            project.setAudioSyncOffset(json.optInt("audioSyncOffset"));
+
+            if (json.has("width") && json.has("height")) {
+                project.setSize(new Dimension(json.getInt("width"), json.getInt("height")));
+            }
+
+            List<Chapter> chapters = new ArrayList<>();
+            JSONArray jchapters = json.getJSONArray("chapters");
+            for (int ix = 0; ix < jchapters.length(); ix++) {
+                JSONObject jc = jchapters.getJSONObject(ix);
+                Chapter chapter = new Chapter();
+                chapter.setNumber(jc.getInt("number"));
+                chapter.setTitle(jc.optString("title", null));
+                chapter.setPosition(jc.optString("position", null));
+                chapters.add(chapter);
+            }
+            project.setChapters(chapters);
+
+            List<Audio> audios = new ArrayList<>();
+            JSONArray jaudios = json.getJSONArray("audios");
+            for (int ix = 0; ix < jaudios.length(); ix++) {
+                JSONObject ja = jaudios.getJSONObject(ix);
+                Audio audio = new Audio();
+                audio.setIx(ja.getInt("ix"));
+                audio.setLanguage(languageFromJson(ja.optString("language", null)));
+                audio.setFormat(ja.optString("format", null));
+                audio.setType(ja.has("type") ? AudioType.valueOf(ja.getString("type")) : null);
+                audio.setChannels(ja.getInt("channels"));
+                audio.setStreamId(ja.getInt("streamId"));
+                audio.setEnabled(ja.getBoolean("enabled"));
+                audio.setAvailable(ja.getBoolean("available"));
+                audios.add(audio);
+            }
+            project.setAudios(audios);
+
+            int defAudio = json.optInt("defAudio", -1);
+            project.setDefAudio(defAudio >= 0 ? audios.get(defAudio) : null);
+
+            List<Subtitle> subs = new ArrayList<>();
+            JSONArray jsubs = json.getJSONArray("subs");
+            for (int ix = 0; ix < jsubs.length(); ix++) {
+                JSONObject js = jsubs.getJSONObject(ix);
+                Subtitle sub = new Subtitle();
+                sub.setIndex(js.getInt("index"));
+                sub.setStreamId(js.optString("streamId", null));
+                sub.setFormat(js.has("format") ? SubtitleFormat.valueOf(js.getString("format")) : null);
+                sub.setType(js.has("type") ? SubtitleType.valueOf(js.getString("type")) : null);
+                sub.setLanguage(languageFromJson(js.optString("language", null)));
+                sub.setVts(js.getInt("vts"));
+                sub.setEnabled(js.getBoolean("enabled"));
+                subs.add(sub);
+            }
+            project.setSubs(subs);
+
+            int defSub = json.optInt("defSub", -1);
+            project.setDefSub(defSub >= 0 ? subs.get(defSub) : null);
+
+            return project;
+        } catch (JSONException | IllegalArgumentException | IndexOutOfBoundsException ex) {
+            throw new IOException("Could not restore project", ex);
+        }
+    }
+
+    private static JSONObject sourceToJson(Source source) throws IOException {
+        JSONObject json = new JSONObject();
+
+        if (source instanceof IsoSource) {
+            IsoSource iso = (IsoSource) source;
+            json.put("type", "iso");
+            json.put("mountPoint", fileToJson(iso.getMountPoint()));
+            json.put("track", iso.getSelectedTrack().getTrack());
+            json.put("eitFile", fileToJson(iso.getEitFile()));
+
+        } else if (source instanceof DvdSource) {
+            DvdSource dvd = (DvdSource) source;
+            json.put("type", "dvd");
+            json.put("device", fileToJson(dvd.getDevice()));
+            json.put("mountPoint", fileToJson(dvd.getMountPoint()));
+            json.put("track", dvd.getSelectedTrack().getTrack());
+            json.put("eitFile", fileToJson(dvd.getEitFile()));
+
+        } else if (source instanceof VobSource) {
+            VobSource vob = (VobSource) source;
+            json.put("type", "vob");
+            json.put("vobFile", fileToJson(vob.getVobFile()));
+            json.put("eitFile", fileToJson(vob.getEitFile()));
+            json.put("palette", vob.getPalette().name());
+            if (vob.getCustomPalette() != null) {
+                json.put("customPalette", vob.getCustomPalette().toString());
+            }
+
+        } else {
+            throw new IOException("Cannot convert source " + source);
+        }
+
+        return json;
+    }
+
+    private static Source sourceFromJson(JSONObject json, Project project) throws IOException {
+        String type = json.getString("type");
+        switch (type) {
+            case "iso": {
+                IsoSource iso = new IsoSource();
+                bind(iso, project);
+                try {
+                    iso.setMountPoint(new File(json.getString("mountPoint")));
+                } catch (RuntimeException ex) {
+                    throw new IOException("Could not analyze " + json.getString("mountPoint"), ex);
+                }
+                selectTrack(iso, json.getInt("track"));
+                iso.setEitFile(fileFromJson(json.optString("eitFile", null)));
+                return iso;
+            }
+
+            case "dvd": {
+                DvdSource dvd = new DvdSource();
+                bind(dvd, project);
+                try {
+                    dvd.setMountPoint(new MountPoint(
+                                    new File(json.getString("device")),
+                                    new File(json.getString("mountPoint"))));
+                } catch (RuntimeException ex) {
+                    throw new IOException("Could not analyze DVD at " + json.getString("mountPoint"), ex);
+                }
+                selectTrack(dvd, json.getInt("track"));
+                dvd.setEitFile(fileFromJson(json.optString("eitFile", null)));
+                return dvd;
+            }
+
+            case "vob": {
+                VobSource vob = new VobSource();
+                bind(vob, project);
+                vob.setVobFile(fileFromJson(json.getString("vobFile")));
+                vob.setEitFile(fileFromJson(json.optString("eitFile", null)));
+                vob.setPalette(PaletteType.valueOf(json.getString("palette")));
+                if (json.has("customPalette")) {
+                    vob.setCustomPalette(Palette.parse(json.getString("customPalette")));
+                }
+                return vob;
+            }
+
+            default:
+                throw new IOException("Unknown source type " + type);
+        }
+    }
+
+    private static void bind(Source source, Project project) {
+        source.bind(project);
+        project.setSource(source);
+    }
+
+    private static void selectTrack(DvdSource source, int trackNr) throws IOException {
+        Track track = source.getTracks().stream()
+                .filter(t -> t.getTrack() == trackNr)
+                .findFirst()
+                .orElseThrow(() -> new IOException("Track " + trackNr + " not found"));
+        source.setSelectedTrack(track);
+    }
+
+    private static String languageToJson(Language language) {
+        return language != null ? language.toShortString() : null;
+    }
+
+    private static Language languageFromJson(String code) {
+        Language language = (code != null ? LanguageUtils.findLanguage(code) : null);
+        return language != null ? language : LanguageUtils.getUndefined();
+    }
+
+    private static String fileToJson(File file) {
+        return file != null ? file.getAbsolutePath() : null;
+    }
+
+    private static File fileFromJson(String path) {
+        return path != null ? new File(path) : null;
+    }
+
+}
@@ -15,6 +15,11 @@
  */
 package org.shredzone.feinrip.model;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.prefs.Preferences;
 
 /**
@@ -26,10 +31,22 @@ public class Configuration {
     private static final Configuration INSTANCE = new Configuration();
     private static final String SOUNDFILE_KEY = "soundFile";
     private static final String FORCEAUDIODEMUX_KEY = "forceAudioDemux";
+    private static final String NATIVEDEMUX_KEY = "nativeDemux";
     private static final String PREPROCESS_KEY = "muxerPreprocess";
     private static final String PREPROCESS_SCRIPT_KEY = "muxerPreprocessScript";
     private static final String DVD_STREAMTYPE_KEY = "dvdStreamType";
+    private static final String RIP_MODE_KEY = "ripMode";
+    private static final String EJECT_KEY = "ejectAfterRip";
     private static final String TEMP_DIR = "tempDir";
+    private static final String SMALL_TEMP_DIR = "smallTempDir";
+    private static final String SUBTITLE_CONCURRENCY = "subtitleConcurrency";
+    private static final String CPU_CONCURRENCY = "cpuConcurrency";
+    private static final String PRIORITY_PREFIX = "priority.";
+    private static final String RIP_WATCHDOG = "ripWatchdog";
+    private static final String CHECKPOINT_KEY = "checkpoint";
+    private static final String CHECKPOINT_SIZE_KEY = "checkpointMaxSize";
+    private static final String CHECKPOINT_AGE_KEY = "checkpointMaxAge";
+    private static final String FLIGHT_RECORDING_KEY = "flightRecording";
     private static final String IMDB_URL = "imdbUrl";
     private static final String IMDB_ENABLE = "imdbEnable";
     private static final String OMDB_ENABLE = "omdbEnable";
@@ -43,6 +60,17 @@ public class Configuration {
         return INSTANCE;
     }
 
+    private static final Map<String, String> DEFAULT_PRIORITIES = new HashMap<>();
+    static {
+        // Ripping is I/O bound, and should read the disc as fast as possible
+        DEFAULT_PRIORITIES.put("mplayer", "io=be:0");
+        DEFAULT_PRIORITIES.put("tccat", "io=be:0");
+        // Transcoding is CPU bound, and should not make the machine sluggish
+        DEFAULT_PRIORITIES.put("ffmpeg", "nice=15 io=be:7");
+        DEFAULT_PRIORITIES.put("mencoder", "nice=15 io=be:7");
+        DEFAULT_PRIORITIES.put("mkvmerge", "nice=10 io=be:4");
+    }
+
     private final Preferences prefs = Preferences.userNodeForPackage(Configuration.class);
 
     private Configuration() {
@@ -81,6 +109,21 @@ public class Configuration {
         return prefs.getBoolean(FORCEAUDIODEMUX_KEY, false);
     }
 
+    /**
+     * Sets if audio and subtitle streams are demuxed by the built-in demuxer.
+     */
+    public void setNativeDemux(boolean mode) {
+        prefs.putBoolean(NATIVEDEMUX_KEY, mode);
+    }
+
+    /**
+     * Gets if audio and subtitle streams are demuxed by the built-in demuxer, in a
+     * single pass over the vob file. Enabled by default.
+     */
+    public boolean isNativeDemux() {
+        return prefs.getBoolean(NATIVEDEMUX_KEY, true);
+    }
+
     /**
      * Sets if invoking an external preprocessor tool before muxing.
      */
@@ -138,7 +181,47 @@ public class Configuration {
     }
 
     /**
-     * Sets the directory to be used for temporary files.
+     * Sets the {@link RipMode} for processing the ripped vob stream.
+     */
+    public void setRipMode(RipMode mode) {
+        if (mode != null) {
+            prefs.put(RIP_MODE_KEY, mode.name());
+        } else {
+            prefs.remove(RIP_MODE_KEY);
+        }
+    }
+
+    /**
+     * Gets the {@link RipMode} for processing the ripped vob stream.
+     */
+    public RipMode getRipMode() {
+        RipMode def = RipMode.SPOOL;
+        try {
+            return RipMode.valueOf(prefs.get(RIP_MODE_KEY, def.name()));
+        } catch (IllegalArgumentException ex) {
+            // An unknown value was found in the preferences...
+            return def;
+        }
+    }
+
+    /**
+     * Sets if the disc is ejected as soon as it has been ripped.
+     */
+    public void setEjectAfterRip(boolean mode) {
+        prefs.putBoolean(EJECT_KEY, mode);
+    }
+
+    /**
+     * Gets if the disc is ejected as soon as it has been ripped, so the next disc can
+     * be inserted while the previous one is still being processed. Disabled by default.
+     */
+    public boolean isEjectAfterRip() {
+        return prefs.getBoolean(EJECT_KEY, false);
+    }
+
+    /**
+     * Sets the directory to be used for temporary files. Several directories can be
+     * given, separated by {@link File#pathSeparator}.
      */
     public void setTempDir(String dir) {
         if (dir != null) {
@@ -157,6 +240,195 @@ public class Configuration {
         return prefs.get(TEMP_DIR, "/var/tmp");
     }
 
+    /**
+     * Gets all directories to be used for temporary files. The first directory is the
+     * primary one.
+     */
+    public List<File> getTempDirs() {
+        List<File> result = new ArrayList<>();
+        for (String dir : getTempDir().split(File.pathSeparator)) {
+            if (!dir.trim().isEmpty()) {
+                result.add(new File(dir.trim()));
+            }
+        }
+        if (result.isEmpty()) {
+            result.add(new File("/var/tmp"));
+        }
+        return result;
+    }
+
+    /**
+     * Sets the directory to be used for small temporary files, like subtitles and
+     * chapters. {@code null} to use the temp dirs.
+     */
+    public void setSmallTempDir(String dir) {
+        if (dir != null) {
+            prefs.put(SMALL_TEMP_DIR, dir);
+        } else {
+            prefs.remove(SMALL_TEMP_DIR);
+        }
+    }
+
+    /**
+     * Gets the directory to be used for small temporary files.
+     */
+    public String getSmallTempDir() {
+        // A ram FS is fast, and small files won't fill it up
+        return prefs.get(SMALL_TEMP_DIR, "/dev/shm");
+    }
+
+    /**
+     * Sets the maximum number of subtitle streams that are extracted in parallel.
+     */
+    public void setSubtitleConcurrency(int concurrency) {
+        prefs.putInt(SUBTITLE_CONCURRENCY, Math.max(concurrency, 1));
+    }
+
+    /**
+     * Gets the maximum number of subtitle streams that are extracted in parallel.
+     */
+    public int getSubtitleConcurrency() {
+        // Each extraction reads the entire vob file, so the temp disk is the limit
+        // rather than the number of CPU cores.
+        int def = Math.min(Runtime.getRuntime().availableProcessors(), 4);
+        return Math.max(prefs.getInt(SUBTITLE_CONCURRENCY, def), 1);
+    }
+
+    /**
+     * Sets the maximum number of CPU intensive stages of all jobs that are running in
+     * parallel.
+     */
+    public void setCpuConcurrency(int concurrency) {
+        prefs.putInt(CPU_CONCURRENCY, Math.max(concurrency, 1));
+    }
+
+    /**
+     * Gets the maximum number of CPU intensive stages of all jobs that are running in
+     * parallel.
+     */
+    public int getCpuConcurrency() {
+        return Math.max(prefs.getInt(CPU_CONCURRENCY, Runtime.getRuntime().availableProcessors()), 1);
+    }
+
+    /**
+     * Sets the scheduling policy of an external tool.
+     *
+     * @param tool
+     *            File name of the tool, e.g. "ffmpeg"
+     * @param priority
+     *            {@link ProcessPriority}, or {@code null} to use the default policy
+     */
+    public void setToolPriority(String tool, ProcessPriority priority) {
+        if (priority != null) {
+            prefs.put(PRIORITY_PREFIX + tool, priority.toString());
+        } else {
+            prefs.remove(PRIORITY_PREFIX + tool);
+        }
+    }
+
+    /**
+     * Gets the scheduling policy of an external tool.
+     *
+     * @param tool
+     *            File name of the tool, e.g. "ffmpeg"
+     * @return {@link ProcessPriority}, or {@code null} if the tool runs with normal
+     *         priority
+     */
+    public ProcessPriority getToolPriority(String tool) {
+        String value = prefs.get(PRIORITY_PREFIX + tool, DEFAULT_PRIORITIES.get(tool));
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return ProcessPriority.parse(value);
+        } catch (IllegalArgumentException ex) {
+            // Ignore a broken setting, and run the tool with normal priority
+            return null;
+        }
+    }
+
+    /**
+     * Sets the number of minutes a rip may read no data before the drive is regarded as
+     * stuck and the rip is aborted. 0 disables the watchdog.
+     */
+    public void setRipWatchdog(int minutes) {
+        prefs.putInt(RIP_WATCHDOG, Math.max(minutes, 0));
+    }
+
+    /**
+     * Gets the number of minutes a rip may read no data before the drive is regarded as
+     * stuck and the rip is aborted. 0 disables the watchdog.
+     */
+    public int getRipWatchdog() {
+        return Math.max(prefs.getInt(RIP_WATCHDOG, 10), 0);
+    }
+
+    /**
+     * Sets if the intermediate files of failed runs are kept for a retry.
+     */
+    public void setCheckpointEnabled(boolean enabled) {
+        prefs.putBoolean(CHECKPOINT_KEY, enabled);
+    }
+
+    /**
+     * Gets if the intermediate files of failed runs are kept for a retry.
+     */
+    public boolean isCheckpointEnabled() {
+        return prefs.getBoolean(CHECKPOINT_KEY, true);
+    }
+
+    /**
+     * Gets the directory where the intermediate files of failed runs are kept. It is
+     * located in the temp dir, so the files can be moved there cheaply.
+     */
+    public File getCheckpointDir() {
+        return new File(getTempDirs().get(0), "feinrip-checkpoints");
+    }
+
+    /**
+     * Sets the maximum size of all kept intermediate files, in MiB.
+     */
+    public void setCheckpointMaxSize(int mib) {
+        prefs.putInt(CHECKPOINT_SIZE_KEY, Math.max(mib, 0));
+    }
+
+    /**
+     * Gets the maximum size of all kept intermediate files, in MiB.
+     */
+    public int getCheckpointMaxSize() {
+        return prefs.getInt(CHECKPOINT_SIZE_KEY, 20 * 1024);
+    }
+
+    /**
+     * Sets the number of days the intermediate files of failed runs are kept.
+     */
+    public void setCheckpointMaxAge(int days) {
+        prefs.putInt(CHECKPOINT_AGE_KEY, Math.max(days, 0));
+    }
+
+    /**
+     * Gets the number of days the intermediate files of failed runs are kept.
+     */
+    public int getCheckpointMaxAge() {
+        return prefs.getInt(CHECKPOINT_AGE_KEY, 7);
+    }
+
+    /**
+     * Sets if jobs are recorded by the Flight Recorder, and the recording is dumped
+     * next to the target file if a job failed.
+     */
+    public void setFlightRecordingEnabled(boolean enabled) {
+        prefs.putBoolean(FLIGHT_RECORDING_KEY, enabled);
+    }
+
+    /**
+     * Gets if jobs are recorded by the Flight Recorder, and the recording is dumped
+     * next to the target file if a job failed.
+     */
+    public boolean isFlightRecordingEnabled() {
+        return prefs.getBoolean(FLIGHT_RECORDING_KEY, false);
+    }
+
     /**
      * Sets the URL of the IMDb database file server to be used.
      */
@@ -0,0 +1,180 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.model;
+
+/**
+ * Scheduling policy of an external tool: nice level, I/O scheduling class, and the CPUs
+ * it may run on.
+ * <p>
+ * The string representation is a space separated list of settings, e.g.
+ * {@code "nice=10 io=idle cpus=0-3"}. {@code io} is one of {@code rt:level},
+ * {@code be:level} or {@code idle}, with a level from 0 (highest) to 7 (lowest).
+ * {@code cpus} is a CPU list as understood by {@code taskset}. Missing settings are
+ * left unchanged.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class ProcessPriority {
+
+    /**
+     * I/O scheduling classes, as used by {@code ionice}.
+     */
+    public enum IoClass {
+        REALTIME(1, "rt"), BEST_EFFORT(2, "be"), IDLE(3, "idle");
+
+        private final int number;
+        private final String name;
+
+        private IoClass(int number, String name) {
+            this.number = number;
+            this.name = name;
+        }
+
+        /**
+         * Class number, as used by {@code ionice -c}.
+         */
+        public int getNumber()                  { return number; }
+
+        /**
+         * Short name, as used in the string representation.
+         */
+        public String getName()                 { return name; }
+    }
+
+    private Integer nice;
+    private IoClass ioClass;
+    private Integer ioLevel;
+    private String cpus;
+
+    /**
+     * Parses a string representation.
+     *
+     * @param str
+     *            String representation, see class description
+     * @return {@link ProcessPriority}
+     * @throws IllegalArgumentException
+     *             if the string could not be parsed
+     */
+    public static ProcessPriority parse(String str) {
+        ProcessPriority result = new ProcessPriority();
+        for (String setting : str.trim().split("\\s+")) {
+            if (setting.isEmpty()) {
+                continue;
+            }
+
+            int pos = setting.indexOf('=');
+            if (pos < 0) {
+                throw new IllegalArgumentException("Bad setting: " + setting);
+            }
+            String key = setting.substring(0, pos);
+            String value = setting.substring(pos + 1);
+
+            try {
+                switch (key) {
+                    case "nice":
+                        result.setNice(Integer.parseInt(value));
+                        break;
+
+                    case "io":
+                        parseIo(result, value);
+                        break;
+
+                    case "cpus":
+                        if (!value.matches("[0-9,\\-]+")) {
+                            throw new IllegalArgumentException("Bad CPU list: " + value);
+                        }
+                        result.setCpus(value);
+                        break;
+
+                    default:
+                        throw new IllegalArgumentException("Unknown setting: " + key);
+                }
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Bad setting: " + setting, ex);
+            }
+        }
+        return result;
+    }
+
+    private static void parseIo(ProcessPriority result, String value) {
+        String[] parts = value.split(":", 2);
+        for (IoClass ioc : IoClass.values()) {
+            if (ioc.getName().equals(parts[0])) {
+                result.setIoClass(ioc);
+                if (parts.length > 1) {
+                    result.setIoLevel(Integer.parseInt(parts[1]));
+                }
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Unknown I/O class: " + value);
+    }
+
+    /**
+     * Nice level, from -20 (highest priority) to 19 (lowest priority). {@code null} to
+     * keep the nice level.
+     */
+    public Integer getNice()                    { return nice; }
+    public void setNice(Integer nice) {
+        if (nice != null && (nice < -20 || nice > 19)) {
+            throw new IllegalArgumentException("Bad nice level: " + nice);
+        }
+        this.nice = nice;
+    }
+
+    /**
+     * I/O scheduling class. {@code null} to keep the I/O scheduling class.
+     */
+    public IoClass getIoClass()                 { return ioClass; }
+    public void setIoClass(IoClass ioClass)     { this.ioClass = ioClass; }
+
+    /**
+     * I/O priority level within the class, from 0 (highest) to 7 (lowest). Ignored for
+     * {@link IoClass#IDLE}. {@code null} for the default level.
+     */
+    public Integer getIoLevel()                 { return ioLevel; }
+    public void setIoLevel(Integer ioLevel) {
+        if (ioLevel != null && (ioLevel < 0 || ioLevel > 7)) {
+            throw new IllegalArgumentException("Bad I/O level: " + ioLevel);
+        }
+        this.ioLevel = ioLevel;
+    }
+
+    /**
+     * List of CPUs the tool may run on, e.g. "0-3,6". {@code null} for all CPUs.
+     */
+    public String getCpus()                     { return cpus; }
+    public void setCpus(String cpus)            { this.cpus = cpus; }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (nice != null) {
+            sb.append(" nice=").append(nice);
+        }
+        if (ioClass != null) {
+            sb.append(" io=").append(ioClass.getName());
+            if (ioLevel != null && ioClass != IoClass.IDLE) {
+                sb.append(':').append(ioLevel);
+            }
+        }
+        if (cpus != null) {
+            sb.append(" cpus=").append(cpus);
+        }
+        return sb.toString().trim();
+    }
+
+}
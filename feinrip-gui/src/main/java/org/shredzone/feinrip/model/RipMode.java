@@ -0,0 +1,42 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.model;
+
+/**
+ * Enumeration of the ways the vob stream is processed while ripping.
+ *
+ * @author Richard "Shred" Körber
+ */
+public enum RipMode {
+
+    /**
+     * Rip the vob stream into a temporary file, then process it.
+     */
+    SPOOL,
+
+    /**
+     * Rip the vob stream through a named pipe. Audio and subtitle streams are demuxed
+     * while ripping. Only the vob file for mkvmerge is spooled.
+     */
+    STREAM,
+
+    /**
+     * Rip the vob stream into a temporary file. Audio and subtitle streams are demuxed
+     * from that file while it is still growing.
+     */
+    FOLLOW
+
+}
@@ -26,6 +26,7 @@ public class Track {
 
     private int track;
     private String length;
+    private long duration;
     private int chapters;
     private AspectRatio aspect;
     private int angles;
@@ -43,6 +44,12 @@ public class Track {
     public String getLength()                   { return length; }
     public void setLength(String length)        { this.length = length; }
 
+    /**
+     * Length of the track, in milliseconds.
+     */
+    public long getDuration()                   { return duration; }
+    public void setDuration(long duration)      { this.duration = duration; }
+
     /**
      * Number of chapters
      */
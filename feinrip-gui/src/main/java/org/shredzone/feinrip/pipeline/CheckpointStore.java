@@ -0,0 +1,328 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.shredzone.feinrip.system.FileTransfer;
+
+/**
+ * Keeps the intermediate files of failed runs, so a retry does not need to create
+ * them again.
+ * <p>
+ * Each checkpoint is stored under a key that is computed from everything the files
+ * depend on, see {@link #key(Object...)}. A checkpoint is removed from the store when
+ * it is restored. Checkpoints that are too old are evicted, and the oldest checkpoints
+ * are evicted if the store gets too large.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class CheckpointStore {
+    private static final Logger LOG = Logger.getLogger(CheckpointStore.class.getName());
+
+    private static final String MANIFEST = "checkpoint.json";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    // Incomplete checkpoints may still be saved by another run
+    private static final long TMP_GRACE_MILLIS = TimeUnit.HOURS.toMillis(1L);
+
+    private final File dir;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+
+    /**
+     * Creates a new {@link CheckpointStore}.
+     *
+     * @param dir
+     *            Directory to keep the checkpoints in. It should be on the same file
+     *            system as the temporary files, so files can be moved cheaply.
+     * @param maxBytes
+     *            Maximum size of all checkpoints
+     * @param maxAgeMillis
+     *            Maximum age of a checkpoint
+     */
+    public CheckpointStore(File dir, long maxBytes, long maxAgeMillis) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Computes a checkpoint key.
+     *
+     * @param parts
+     *            All parts the checkpoint depends on. {@code null} parts are accepted.
+     * @return Key, a SHA-256 hash as hex string
+     */
+    public static String key(Object... parts) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (Object part : parts) {
+                md.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest()) {
+                sb.append(String.format("%02x", b & 0xFF));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    /**
+     * Checks if there is a checkpoint for the key.
+     */
+    public boolean contains(String key) {
+        return new File(new File(dir, key), MANIFEST).isFile();
+    }
+
+    /**
+     * Saves files as checkpoint. The files are moved into the store. An existing
+     * checkpoint with the same key is replaced.
+     * <p>
+     * If the files exceed the size limit of the store on their own, they are not
+     * saved, and are left untouched.
+     *
+     * @param key
+     *            Checkpoint key
+     * @param files
+     *            Files to be saved, by their role name. The role name must be a valid
+     *            file name, and should end with the file type suffix.
+     * @return {@code true} if the files were saved, {@code false} if they exceed the
+     *         size limit
+     */
+    public synchronized boolean save(String key, Map<String, File> files) throws IOException {
+        long size = files.values().stream().mapToLong(File::length).sum();
+        if (size > maxBytes) {
+            LOG.log(Level.INFO, "Not keeping checkpoint {0}, {1,number,#} bytes exceed the size limit",
+                    new Object[] {key, size});
+            return false;
+        }
+
+        File tmp = new File(dir, key + TMP_SUFFIX);
+        File target = new File(dir, key);
+
+        delete(tmp);
+        Files.createDirectories(tmp.toPath());
+
+        JSONArray names = new JSONArray();
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            FileTransfer.move(entry.getValue(), new File(tmp, entry.getKey()));
+            names.put(entry.getKey());
+        }
+
+        JSONObject manifest = new JSONObject();
+        manifest.put("created", System.currentTimeMillis());
+        manifest.put("files", names);
+        Files.write(new File(tmp, MANIFEST).toPath(), manifest.toString(2).getBytes(StandardCharsets.UTF_8));
+
+        delete(target);
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+        evict();
+        return true;
+    }
+
+    /**
+     * Restores a checkpoint. The files are moved out of the store, and the checkpoint
+     * is removed.
+     *
+     * @param key
+     *            Checkpoint key
+     * @param prefix
+     *            Path prefix of the restored files. The role name is appended to it.
+     * @return Restored files by their role name, or {@code null} if there is no such
+     *         checkpoint
+     */
+    public synchronized Map<String, File> restore(String key, String prefix) throws IOException {
+        File entry = new File(dir, key);
+        if (!contains(key)) {
+            return null;
+        }
+
+        JSONArray names = readManifest(entry).getJSONArray("files");
+        Map<String, File> result = new HashMap<>();
+        try {
+            for (int ix = 0; ix < names.length(); ix++) {
+                String name = names.getString(ix);
+                File file = new File(prefix + name);
+                FileTransfer.move(new File(entry, name), file);
+                result.put(name, file);
+            }
+        } catch (IOException ex) {
+            // Do not leave a half restored checkpoint behind
+            for (File file : result.values()) {
+                if (!file.delete() && file.exists()) {
+                    LOG.log(Level.WARNING, "Could not delete restored file " + file);
+                }
+            }
+            delete(entry);
+            throw ex;
+        }
+
+        delete(entry);
+        return result;
+    }
+
+    /**
+     * Removes a checkpoint.
+     */
+    public synchronized void remove(String key) throws IOException {
+        delete(new File(dir, key));
+    }
+
+    /**
+     * Evicts checkpoints that are too old, or exceed the size limit. Incomplete
+     * checkpoints are also removed, unless they have been modified recently and may
+     * still be saved.
+     */
+    public synchronized void evict() throws IOException {
+        File[] entries = dir.listFiles(File::isDirectory);
+        if (entries == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<Checkpoint> checkpoints = new ArrayList<>();
+        for (File entry : entries) {
+            if (entry.getName().endsWith(TMP_SUFFIX)) {
+                if (now - lastModified(entry) > TMP_GRACE_MILLIS) {
+                    delete(entry);
+                }
+                continue;
+            }
+
+            if (!new File(entry, MANIFEST).isFile()) {
+                delete(entry);
+                continue;
+            }
+
+            long created;
+            try {
+                created = readManifest(entry).getLong("created");
+            } catch (IOException | JSONException ex) {
+                LOG.log(Level.WARNING, "Removing broken checkpoint " + entry, ex);
+                delete(entry);
+                continue;
+            }
+
+            if (now - created > maxAgeMillis) {
+                delete(entry);
+                continue;
+            }
+
+            checkpoints.add(new Checkpoint(entry, created, size(entry)));
+        }
+
+        checkpoints.sort(Comparator.comparingLong((Checkpoint cp) -> cp.created).reversed());
+
+        long total = 0L;
+        for (Checkpoint cp : checkpoints) {
+            total += cp.size;
+            if (total > maxBytes) {
+                delete(cp.dir);
+            }
+        }
+    }
+
+    private static JSONObject readManifest(File entry) throws IOException {
+        try (Reader r = Files.newBufferedReader(new File(entry, MANIFEST).toPath(), StandardCharsets.UTF_8)) {
+            return new JSONObject(new JSONTokener(r));
+        } catch (JSONException ex) {
+            throw new IOException("Broken checkpoint manifest in " + entry, ex);
+        }
+    }
+
+    /**
+     * Returns the size of the files of a checkpoint. Like in
+     * {@link #save(String, Map)}, the manifest is not counted.
+     */
+    private static long size(File entry) {
+        File[] files = entry.listFiles(f -> !MANIFEST.equals(f.getName()));
+        long size = 0L;
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the time the checkpoint directory or any of its files were last
+     * modified.
+     */
+    private static long lastModified(File entry) {
+        long modified = entry.lastModified();
+        File[] files = entry.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                modified = Math.max(modified, file.lastModified());
+            }
+        }
+        return modified;
+    }
+
+    private static void delete(File entry) throws IOException {
+        if (!entry.exists()) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(entry.toPath())) {
+            for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * A checkpoint found in the store.
+     */
+    private static class Checkpoint {
+        private final File dir;
+        private final long created;
+        private final long size;
+
+        public Checkpoint(File dir, long created, long size) {
+            this.dir = dir;
+            this.created = created;
+            this.size = size;
+        }
+    }
+
+}
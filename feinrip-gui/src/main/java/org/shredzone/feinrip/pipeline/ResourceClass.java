@@ -0,0 +1,41 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.pipeline;
+
+/**
+ * Enumeration of resources a {@link Stage} mainly uses. The {@link StageScheduler}
+ * limits the number of stages using the same resource at the same time.
+ *
+ * @author Richard "Shred" Körber
+ */
+public enum ResourceClass {
+
+    /**
+     * Reads from the optical drive. Only one stage can use the drive at a time.
+     */
+    OPTICAL_DRIVE,
+
+    /**
+     * Reads or writes large temporary files.
+     */
+    TEMP_DISK,
+
+    /**
+     * Mainly uses the CPU.
+     */
+    CPU
+
+}
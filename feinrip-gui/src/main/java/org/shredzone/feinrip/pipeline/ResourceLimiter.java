@@ -0,0 +1,158 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the number of stages using a resource at the same time, across several
+ * {@link StageScheduler}.
+ * <p>
+ * While a {@link StageScheduler} only limits the stages of a single pipeline, a
+ * {@link ResourceLimiter} can be shared by several pipelines running in parallel, so
+ * for example only one pipeline is reading from the optical drive at a time.
+ * <p>
+ * If several optical drives are used, each drive gets its own {@link ResourceLimiter}
+ * by {@link #forDevice(File)}. It limits the access to that drive, but shares all other
+ * resources with its parent.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class ResourceLimiter {
+
+    private final Map<ResourceClass, ResizableSemaphore> semaphores = new EnumMap<>(ResourceClass.class);
+    private final Map<File, ResourceLimiter> devices = new HashMap<>();
+    private final ResourceLimiter parent;
+
+    /**
+     * Creates a new {@link ResourceLimiter}.
+     */
+    public ResourceLimiter() {
+        this.parent = null;
+        setCapacity(ResourceClass.OPTICAL_DRIVE, 1);
+        setCapacity(ResourceClass.TEMP_DISK, 2);
+        setCapacity(ResourceClass.CPU, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new {@link ResourceLimiter} for a single optical drive.
+     *
+     * @param parent
+     *            Parent {@link ResourceLimiter} for all other resources
+     */
+    private ResourceLimiter(ResourceLimiter parent) {
+        this.parent = parent;
+        setCapacity(ResourceClass.OPTICAL_DRIVE, 1);
+    }
+
+    /**
+     * Returns the {@link ResourceLimiter} of an optical drive. Pipelines reading from
+     * different drives can rip in parallel, but share all other resources.
+     *
+     * @param device
+     *            Device of the optical drive, or {@code null} if the source is not read
+     *            from a drive
+     * @return {@link ResourceLimiter} for that drive, or this {@link ResourceLimiter}
+     *         if no device was given
+     */
+    public synchronized ResourceLimiter forDevice(File device) {
+        if (device == null || parent != null) {
+            return this;
+        }
+        return devices.computeIfAbsent(device.getAbsoluteFile(), d -> new ResourceLimiter(this));
+    }
+
+    /**
+     * Sets the maximum number of stages that may use a resource at the same time. If the
+     * capacity is reduced while the resource is in use, running stages are completed,
+     * but no new stages are started until the usage is below the new capacity.
+     */
+    public synchronized void setCapacity(ResourceClass resource, int max) {
+        int capacity = Math.max(max, 1);
+        ResizableSemaphore semaphore = semaphores.get(resource);
+        if (semaphore == null) {
+            semaphores.put(resource, new ResizableSemaphore(capacity));
+        } else {
+            semaphore.resize(capacity);
+        }
+    }
+
+    /**
+     * Acquires a resource. Blocks until the resource is available.
+     */
+    public void acquire(ResourceClass resource) throws IOException {
+        Semaphore semaphore = getSemaphore(resource);
+        if (semaphore == null) {
+            parent.acquire(resource);
+            return;
+        }
+
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", ex);
+        }
+    }
+
+    /**
+     * Releases a resource that was acquired before.
+     */
+    public void release(ResourceClass resource) {
+        Semaphore semaphore = getSemaphore(resource);
+        if (semaphore == null) {
+            parent.release(resource);
+            return;
+        }
+        semaphore.release();
+    }
+
+    private synchronized Semaphore getSemaphore(ResourceClass resource) {
+        return semaphores.get(resource);
+    }
+
+    /**
+     * A fair {@link Semaphore} with a capacity that can be changed.
+     */
+    private static class ResizableSemaphore extends Semaphore {
+        private static final long serialVersionUID = 4328716203386215297L;
+
+        private int capacity;
+
+        public ResizableSemaphore(int capacity) {
+            super(capacity, true);
+            this.capacity = capacity;
+        }
+
+        /**
+         * Changes the capacity. Permits that are currently taken are not affected.
+         */
+        public void resize(int newCapacity) {
+            if (newCapacity > capacity) {
+                release(newCapacity - capacity);
+            } else if (newCapacity < capacity) {
+                reducePermits(capacity - newCapacity);
+            }
+            capacity = newCapacity;
+        }
+    }
+
+}
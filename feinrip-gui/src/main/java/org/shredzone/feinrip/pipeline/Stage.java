@@ -0,0 +1,120 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.pipeline;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A single stage of a processing pipeline.
+ * <p>
+ * A stage declares the artifacts it needs as input, and the artifacts it produces as
+ * output. Artifacts are just names. A stage is started by the {@link StageScheduler}
+ * as soon as all its inputs have been produced by other stages.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class Stage {
+
+    private final String name;
+    private final ResourceClass resource;
+    private final StageTask task;
+    private final Set<String> inputs = new LinkedHashSet<>();
+    private final Set<String> outputs = new LinkedHashSet<>();
+    private Supplier<Collection<File>> inputFiles = Collections::emptyList;
+    private Supplier<Collection<File>> outputFiles = Collections::emptyList;
+    private long weight = 1L;
+
+    /**
+     * Creates a new {@link Stage}.
+     *
+     * @param name
+     *            Stage name, for logging
+     * @param resource
+     *            {@link ResourceClass} this stage mainly uses
+     * @param task
+     *            {@link StageTask} to be run
+     */
+    public Stage(String name, ResourceClass resource, StageTask task) {
+        this.name = name;
+        this.resource = resource;
+        this.task = task;
+    }
+
+    /**
+     * Adds artifacts that are required before this stage can start.
+     */
+    public Stage input(String... artifacts) {
+        inputs.addAll(Arrays.asList(artifacts));
+        return this;
+    }
+
+    /**
+     * Adds artifacts that are available after this stage was completed.
+     */
+    public Stage output(String... artifacts) {
+        outputs.addAll(Arrays.asList(artifacts));
+        return this;
+    }
+
+    /**
+     * Sets the files that are read by this stage. They are only used for measuring the
+     * number of bytes read. The supplier is invoked when the stage is started.
+     */
+    public Stage inputFiles(Supplier<Collection<File>> files) {
+        inputFiles = files;
+        return this;
+    }
+
+    /**
+     * Sets the files that are written by this stage. They are only used for measuring
+     * the number of bytes written. The supplier is invoked when the stage is finished.
+     */
+    public Stage outputFiles(Supplier<Collection<File>> files) {
+        outputFiles = files;
+        return this;
+    }
+
+    /**
+     * Sets the weight of this stage in the progress of the entire run. It is the
+     * number of bytes the stage is expected to process. The default weight is 1, which
+     * is negligible in relation to stages processing files.
+     */
+    public Stage weight(long weight) {
+        this.weight = Math.max(weight, 1L);
+        return this;
+    }
+
+    public String getName()                     { return name; }
+    public ResourceClass getResource()          { return resource; }
+    public StageTask getTask()                  { return task; }
+    public Set<String> getInputs()              { return Collections.unmodifiableSet(inputs); }
+    public Set<String> getOutputs()             { return Collections.unmodifiableSet(outputs); }
+    public Supplier<Collection<File>> getInputFiles() { return inputFiles; }
+    public Supplier<Collection<File>> getOutputFiles() { return outputFiles; }
+    public long getWeight()                     { return weight; }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
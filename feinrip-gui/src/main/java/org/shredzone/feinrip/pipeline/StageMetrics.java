@@ -0,0 +1,161 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.shredzone.feinrip.util.ProcessStats;
+
+/**
+ * Measurements of a single {@link Stage} run.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class StageMetrics {
+
+    private static final double MB = 1024.0 * 1024.0;
+
+    private final String name;
+    private final ResourceClass resource;
+    private final long startMillis;
+    private final long bytesIn;
+    private long wallMillis;
+    private long cpuMillis;
+    private long bytesOut;
+    private boolean failed;
+    private boolean finished;
+    private final List<ProcessStats> processes = Collections.synchronizedList(new ArrayList<>());
+
+    StageMetrics(Stage stage, long startMillis, long bytesIn) {
+        this.name = stage.getName();
+        this.resource = stage.getResource();
+        this.startMillis = startMillis;
+        this.bytesIn = bytesIn;
+    }
+
+    void finish(long wallMillis, long cpuMillis, long bytesOut, boolean failed) {
+        this.wallMillis = wallMillis;
+        this.cpuMillis = cpuMillis;
+        this.bytesOut = bytesOut;
+        this.failed = failed;
+        this.finished = true;
+    }
+
+    /**
+     * Adds the {@link ProcessStats} of an external process that was run by the stage.
+     */
+    void addProcess(ProcessStats stats) {
+        processes.add(stats);
+    }
+
+    /**
+     * Name of the stage.
+     */
+    public String getName()                     { return name; }
+
+    /**
+     * {@link ResourceClass} of the stage.
+     */
+    public ResourceClass getResource()          { return resource; }
+
+    /**
+     * Start of the stage, in milliseconds after the start of the run.
+     */
+    public long getStartMillis()                { return startMillis; }
+
+    /**
+     * Wall clock time of the stage, in milliseconds.
+     */
+    public long getWallMillis()                 { return wallMillis; }
+
+    /**
+     * CPU time of the stage thread and all child processes, in milliseconds.
+     */
+    public long getCpuMillis()                  { return cpuMillis; }
+
+    /**
+     * Total size of all files read by the stage.
+     */
+    public long getBytesIn()                    { return bytesIn; }
+
+    /**
+     * Total size of all files written by the stage.
+     */
+    public long getBytesOut()                   { return bytesOut; }
+
+    /**
+     * {@code true} if the stage has failed.
+     */
+    public boolean isFailed()                   { return failed; }
+
+    /**
+     * {@code true} if the stage has finished, {@code false} if it is still running.
+     */
+    public boolean isFinished()                 { return finished; }
+
+    /**
+     * {@link ProcessStats} of all external processes that were run by the stage, in
+     * the order they have terminated.
+     */
+    public List<ProcessStats> getProcesses() {
+        synchronized (processes) {
+            return Collections.unmodifiableList(new ArrayList<>(processes));
+        }
+    }
+
+    /**
+     * Throughput in MB/s, based on the larger of input and output bytes.
+     */
+    public double getThroughput() {
+        if (wallMillis <= 0) {
+            return 0.0;
+        }
+        return Math.max(bytesIn, bytesOut) / MB / (wallMillis / 1000.0);
+    }
+
+    /**
+     * Returns the metrics as JSON.
+     */
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("name", name);
+        json.put("resource", resource.name());
+        json.put("startMillis", startMillis);
+        json.put("wallMillis", wallMillis);
+        json.put("cpuMillis", cpuMillis);
+        json.put("bytesIn", bytesIn);
+        json.put("bytesOut", bytesOut);
+        json.put("mbPerSecond", Math.round(getThroughput() * 100.0) / 100.0);
+        json.put("failed", failed);
+        JSONArray procs = new JSONArray();
+        getProcesses().forEach(ps -> procs.put(ps.toJson()));
+        json.put("processes", procs);
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-10s %8.1f s wall %8.1f s cpu %9.1f MB in %9.1f MB out %7.1f MB/s%s",
+                name, wallMillis / 1000.0, cpuMillis / 1000.0,
+                bytesIn / MB, bytesOut / MB, getThroughput(),
+                failed ? " FAILED" : "");
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.shredzone.feinrip.util.ProcessMonitor;
+
+/**
+ * Collects the {@link StageMetrics} of all stages run by a {@link StageScheduler}.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class StageReport {
+
+    private final List<StageMetrics> metrics = new ArrayList<>();
+    private final long started = System.currentTimeMillis();
+    private long finished;
+
+    /**
+     * Runs a {@link Stage} and measures it.
+     *
+     * @param stage
+     *            {@link Stage} to run
+     * @param task
+     *            Task that runs the stage
+     */
+    void measure(Stage stage, StageTaskRunner task) throws IOException {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        boolean threadCpu = mx.isCurrentThreadCpuTimeSupported();
+
+        long start = System.currentTimeMillis();
+        StageMetrics sm = new StageMetrics(stage, start - started, size(stage.getInputFiles().get()));
+        synchronized (this) {
+            metrics.add(sm);
+        }
+
+        StageEvent event = new StageEvent();
+        event.begin();
+
+        long cpuStart = threadCpu ? mx.getCurrentThreadCpuTime() : 0L;
+        boolean failed = true;
+        ProcessMonitor.Scope scope = ProcessMonitor.listen(sm::addProcess);
+        try {
+            task.run();
+            failed = false;
+        } finally {
+            scope.close();
+
+            // Only the processes of this stage are charged, even if other stages
+            // are running external processes at the same time.
+            long cpu = sm.getProcesses().stream()
+                    .mapToLong(ps -> ps.getUserMillis() + ps.getSystemMillis())
+                    .sum();
+            if (threadCpu) {
+                cpu += (mx.getCurrentThreadCpuTime() - cpuStart) / 1_000_000L;
+            }
+            long bytesOut = size(stage.getOutputFiles().get());
+            synchronized (this) {
+                sm.finish(System.currentTimeMillis() - start, cpu, bytesOut, failed);
+            }
+
+            event.name = stage.getName();
+            event.resource = stage.getResource().name();
+            event.bytesIn = sm.getBytesIn();
+            event.bytesOut = bytesOut;
+            event.failed = failed;
+            event.commit();
+        }
+    }
+
+    /**
+     * Marks the end of the run.
+     */
+    synchronized void finish() {
+        finished = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the {@link StageMetrics} of all stages that have been started, in the
+     * order they were started.
+     */
+    public synchronized List<StageMetrics> getMetrics() {
+        return Collections.unmodifiableList(new ArrayList<>(metrics));
+    }
+
+    /**
+     * Wall clock time of the entire run, in milliseconds.
+     */
+    public synchronized long getWallMillis() {
+        return (finished > 0 ? finished : System.currentTimeMillis()) - started;
+    }
+
+    /**
+     * Returns the report as JSON.
+     */
+    public synchronized JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("started", started);
+        json.put("wallMillis", getWallMillis());
+        json.put("failed", metrics.stream().anyMatch(StageMetrics::isFailed));
+
+        JSONArray stages = new JSONArray();
+        metrics.stream().map(StageMetrics::toJson).forEach(stages::put);
+        json.put("stages", stages);
+        return json;
+    }
+
+    /**
+     * Writes the report as JSON file.
+     *
+     * @param file
+     *            File to write to
+     */
+    public void write(File file) throws IOException {
+        Files.write(file.toPath(), toJson().toString(2).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns a human readable summary, one line per stage.
+     */
+    public List<String> summary() {
+        List<String> result = getMetrics().stream()
+                .map(StageMetrics::toString)
+                .collect(Collectors.toList());
+        result.add(String.format("%-10s %8.1f s wall", "total", getWallMillis() / 1000.0));
+        return result;
+    }
+
+    private static long size(Collection<File> files) {
+        if (files == null) {
+            return 0L;
+        }
+        return files.stream()
+                .filter(Objects::nonNull)
+                .filter(File::isFile)
+                .mapToLong(File::length)
+                .sum();
+    }
+
+    /**
+     * Runs the measured task.
+     */
+    @FunctionalInterface
+    interface StageTaskRunner {
+        void run() throws IOException;
+    }
+
+}
@@ -0,0 +1,448 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.pipeline;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.shredzone.feinrip.progress.JobProgress;
+import org.shredzone.feinrip.progress.ProgressMeter;
+import org.shredzone.feinrip.util.CancelToken;
+
+/**
+ * Runs a graph of {@link Stage}.
+ * <p>
+ * Each stage is started as soon as all its inputs are available and its
+ * {@link ResourceClass} has capacity left, so independent stages are running in
+ * parallel. If a stage fails, no further stages are started. Running stages are
+ * completed, then the first failure is thrown.
+ * <p>
+ * A run can be cancelled. The running stages are interrupted and their
+ * {@link CancelToken} is cancelled, which makes their commands terminate. No further
+ * stages are started.
+ * <p>
+ * The progress of all stages is merged into a single {@link ProgressMeter}. The
+ * message shows the messages of all running stages. The {@link JobProgress} is the
+ * progress of the entire graph, with the stages weighted by {@link Stage#weight(long)}.
+ * <p>
+ * Every stage is measured, see {@link #getReport()}.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class StageScheduler {
+
+    private final List<Stage> stages = new ArrayList<>();
+    private final Map<ResourceClass, Integer> capacity = new EnumMap<>(ResourceClass.class);
+    private ResourceLimiter limiter;
+    private StageReport report = new StageReport();
+    private final Set<Thread> workers = ConcurrentHashMap.newKeySet();
+    private final CancelToken token = new CancelToken();
+
+    /**
+     * Creates a new {@link StageScheduler}.
+     */
+    public StageScheduler() {
+        capacity.put(ResourceClass.OPTICAL_DRIVE, 1);
+        capacity.put(ResourceClass.TEMP_DISK, 2);
+        capacity.put(ResourceClass.CPU, Math.max(Runtime.getRuntime().availableProcessors(), 1));
+    }
+
+    /**
+     * Sets the maximum number of stages that may use a resource at the same time.
+     */
+    public void setCapacity(ResourceClass resource, int max) {
+        capacity.put(resource, Math.max(max, 1));
+    }
+
+    /**
+     * Sets a {@link ResourceLimiter} that is shared with other schedulers. Stages will
+     * also wait for the resource being available there.
+     */
+    public void setResourceLimiter(ResourceLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    /**
+     * Returns the {@link StageReport} of the last run. It is also available if the run
+     * has failed.
+     */
+    public StageReport getReport() {
+        return report;
+    }
+
+    /**
+     * Cancels the run. Running stages are interrupted, pending stages are not started
+     * any more. {@link #run(ProgressMeter)} returns as soon as the running stages have
+     * terminated. If the run has not been started yet, it will fail immediately.
+     */
+    public void cancel() {
+        token.cancel();
+        workers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * Checks if the run was cancelled.
+     */
+    public boolean isCancelled()                { return token.isCancelled(); }
+
+    /**
+     * Adds a {@link Stage}.
+     */
+    public StageScheduler add(Stage stage) {
+        stages.add(stage);
+        return this;
+    }
+
+    /**
+     * Runs all stages, and waits until they are completed.
+     *
+     * @param meter
+     *            {@link ProgressMeter} to show the merged progress, may be {@code null}
+     * @throws IOException
+     *             if a stage failed, or the run was cancelled or interrupted. The
+     *             running stages have terminated then.
+     */
+    public void run(ProgressMeter meter) throws IOException {
+        validate();
+
+        report = new StageReport();
+        if (token.isCancelled()) {
+            report.finish();
+            throw new IOException("cancelled");
+        }
+
+        MergingMeter merger = new MergingMeter(meter, stages);
+        List<Stage> pending = new ArrayList<>(stages);
+        Set<String> available = new HashSet<>();
+        Map<ResourceClass, Integer> used = new EnumMap<>(ResourceClass.class);
+        Map<Future<Void>, Stage> running = new HashMap<>();
+        IOException failure = null;
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+        try {
+            while (true) {
+                if (failure == null && !token.isCancelled()) {
+                    for (Iterator<Stage> it = pending.iterator(); it.hasNext();) {
+                        Stage stage = it.next();
+                        ResourceClass resource = stage.getResource();
+                        int usage = used.getOrDefault(resource, 0);
+                        if (usage < capacity.get(resource) && available.containsAll(stage.getInputs())) {
+                            it.remove();
+                            used.put(resource, usage + 1);
+                            ProgressMeter stageMeter = merger.start(stage);
+                            running.put(completion.submit(() -> {
+                                runWorker(stage, stageMeter);
+                                return null;
+                            }), stage);
+                        }
+                    }
+                }
+
+                if (running.isEmpty()) {
+                    break;
+                }
+
+                Future<Void> future;
+                try {
+                    future = completion.take();
+                } catch (InterruptedException ex) {
+                    // The running stages must not write to their files any more when
+                    // the caller cleans them up
+                    cancel();
+                    awaitTermination(running.keySet());
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted", ex);
+                }
+
+                Stage stage = running.remove(future);
+                used.merge(stage.getResource(), -1, Integer::sum);
+                merger.finish(stage);
+
+                try {
+                    future.get();
+                    available.addAll(stage.getOutputs());
+                } catch (ExecutionException ex) {
+                    if (failure == null) {
+                        failure = (ex.getCause() instanceof IOException
+                                    ? (IOException) ex.getCause()
+                                    : new IOException("Stage " + stage + " failed", ex.getCause()));
+                    }
+                } catch (InterruptedException ex) {
+                    // Cannot happen, the future is already completed
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted", ex);
+                }
+            }
+        } finally {
+            executor.shutdown();
+            report.finish();
+        }
+
+        if (token.isCancelled()) {
+            IOException ex = new IOException("cancelled");
+            if (failure != null) {
+                ex.addSuppressed(failure);
+            }
+            throw ex;
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+
+        if (!pending.isEmpty()) {
+            throw new IOException("Cyclic dependency between stages " + pending);
+        }
+    }
+
+    /**
+     * Waits until all running stages have terminated. The wait cannot be interrupted,
+     * but the interrupt flag is restored afterwards.
+     */
+    private static void awaitTermination(Collection<Future<Void>> futures) {
+        boolean interrupted = false;
+        for (Future<Void> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (ExecutionException | CancellationException ex) {
+                    // The run is failing anyway
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs a single {@link Stage} in a worker thread, which is interrupted when the run
+     * is cancelled.
+     */
+    private void runWorker(Stage stage, ProgressMeter meter) throws IOException {
+        Thread worker = Thread.currentThread();
+        workers.add(worker);
+        CancelToken.Scope scope = token.enter();
+        try {
+            CancelToken.check();
+            runStage(stage, meter);
+        } finally {
+            scope.close();
+            workers.remove(worker);
+            Thread.interrupted(); // do not leak the interrupt to the next task
+        }
+    }
+
+    /**
+     * Runs a single {@link Stage}, after acquiring its resource from the shared
+     * {@link ResourceLimiter}.
+     */
+    private void runStage(Stage stage, ProgressMeter meter) throws IOException {
+        if (limiter == null) {
+            report.measure(stage, () -> stage.getTask().run(meter));
+            return;
+        }
+
+        limiter.acquire(stage.getResource());
+        try {
+            report.measure(stage, () -> stage.getTask().run(meter));
+        } finally {
+            limiter.release(stage.getResource());
+        }
+    }
+
+    /**
+     * Validates that all inputs are produced by a stage.
+     */
+    private void validate() {
+        Set<String> outputs = stages.stream()
+                .flatMap(stage -> stage.getOutputs().stream())
+                .collect(Collectors.toSet());
+
+        for (Stage stage : stages) {
+            for (String input : stage.getInputs()) {
+                if (!outputs.contains(input)) {
+                    throw new IllegalStateException("Stage " + stage + " requires '"
+                        + input + "', but no stage produces it");
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges the progress of all stages into a single {@link ProgressMeter}.
+     * <p>
+     * The throughput is the weighted progress per second, smoothed over the last
+     * samples. The remaining time is estimated from the remaining weight of all
+     * stages, and the average throughput since the start.
+     */
+    private static class MergingMeter {
+        // Minimum time between two throughput samples, in nanoseconds
+        private static final long SAMPLE_NANOS = TimeUnit.SECONDS.toNanos(1L);
+
+        // Minimum time before the remaining time is estimated, in nanoseconds
+        private static final long ESTIMATE_NANOS = TimeUnit.SECONDS.toNanos(3L);
+
+        // Weight of the latest sample in the smoothed throughput
+        private static final double SMOOTHING = 0.3;
+
+        private final ProgressMeter parent;
+        private final long total;
+        private final Map<Stage, String> messages = new LinkedHashMap<>();
+        private final Map<Stage, Float> percents = new HashMap<>();
+        private final long started = System.nanoTime();
+        private long completed = 0L;
+        private long lastSampleTime = started;
+        private double lastSampleWork = 0.0;
+        private double bytesPerSecond = -1.0;
+
+        public MergingMeter(ProgressMeter parent, List<Stage> stages) {
+            this.parent = parent;
+            this.total = Math.max(stages.stream().mapToLong(Stage::getWeight).sum(), 1L);
+        }
+
+        public synchronized ProgressMeter start(Stage stage) {
+            messages.put(stage, null);
+            percents.put(stage, 0.0f);
+            return new StageMeter(stage);
+        }
+
+        public synchronized void finish(Stage stage) {
+            messages.remove(stage);
+            percents.remove(stage);
+            completed += stage.getWeight();
+            updateMessage();
+            updatePercent();
+        }
+
+        private synchronized void message(Stage stage, String message) {
+            if (messages.containsKey(stage)) {
+                messages.put(stage, message);
+                updateMessage();
+            }
+        }
+
+        private synchronized void percent(Stage stage, Float percent) {
+            if (percents.containsKey(stage)) {
+                percents.put(stage, percent != null ? percent : 0.0f);
+                updatePercent();
+            }
+        }
+
+        private synchronized void log(String line) {
+            if (parent != null) {
+                parent.log(line);
+            }
+        }
+
+        private void updateMessage() {
+            if (parent != null) {
+                String joined = messages.values().stream()
+                        .filter(it -> it != null && !it.isEmpty())
+                        .collect(Collectors.joining(" | "));
+                parent.message("{0}", joined);
+            }
+        }
+
+        private void updatePercent() {
+            if (parent == null) {
+                return;
+            }
+
+            double work = completed;
+            for (Map.Entry<Stage, Float> entry : percents.entrySet()) {
+                work += entry.getKey().getWeight() * entry.getValue() / 100.0;
+            }
+            work = Math.min(work, total);
+
+            long now = System.nanoTime();
+            long sampleNanos = now - lastSampleTime;
+            if (sampleNanos >= SAMPLE_NANOS) {
+                double current = (work - lastSampleWork) * 1.0e9 / sampleNanos;
+                bytesPerSecond = (bytesPerSecond < 0.0
+                                ? current
+                                : bytesPerSecond * (1.0 - SMOOTHING) + current * SMOOTHING);
+                lastSampleTime = now;
+                lastSampleWork = work;
+            }
+
+            long remaining = -1L;
+            long elapsed = now - started;
+            if (elapsed >= ESTIMATE_NANOS && work > 0.0) {
+                remaining = Math.round((total - work) * (elapsed / 1.0e9) / work);
+            }
+
+            parent.progress(new JobProgress((float) (work * 100.0 / total), (long) work,
+                            bytesPerSecond, remaining));
+        }
+
+        /**
+         * The {@link ProgressMeter} of a single stage.
+         */
+        private class StageMeter implements ProgressMeter {
+            private final Stage stage;
+
+            public StageMeter(Stage stage) {
+                this.stage = stage;
+            }
+
+            @Override
+            public ProgressMeter message(String message, Object... values) {
+                MergingMeter.this.message(stage,
+                        message != null ? MessageFormat.format(message, values) : null);
+                return this;
+            }
+
+            @Override
+            public ProgressMeter percent(Float percent) {
+                MergingMeter.this.percent(stage, percent);
+                return this;
+            }
+
+            @Override
+            public ProgressMeter log(String line) {
+                MergingMeter.this.log(line);
+                return this;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.pipeline;
+
+import java.io.IOException;
+
+import org.shredzone.feinrip.progress.ProgressMeter;
+
+/**
+ * The work to be done by a {@link Stage}.
+ *
+ * @author Richard "Shred" Körber
+ */
+@FunctionalInterface
+public interface StageTask {
+
+    /**
+     * Runs the task.
+     *
+     * @param meter
+     *            {@link ProgressMeter} of this stage
+     */
+    void run(ProgressMeter meter) throws IOException;
+
+}
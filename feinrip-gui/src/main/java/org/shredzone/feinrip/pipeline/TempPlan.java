@@ -0,0 +1,248 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.pipeline;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The space requirements of a single run, and where its temporary files are placed.
+ * <p>
+ * The required sizes are added first. The plan is then passed to
+ * {@link TempPlanner#reserve(TempPlan, Runnable)}, which decides on a directory for
+ * each kind of artifact and reserves the space. The plan must be closed when the run
+ * is completed, so the space is released again.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class TempPlan implements Closeable {
+
+    /**
+     * Kinds of temporary files.
+     */
+    public enum Artifact {
+        /**
+         * The vob stream.
+         */
+        VOB(false),
+
+        /**
+         * Extracted or demuxed audio streams.
+         */
+        AUDIO(false),
+
+        /**
+         * Extracted or demuxed subtitle streams.
+         */
+        SUBTITLE(true),
+
+        /**
+         * Markers, chapter files and other tiny files.
+         */
+        MISC(true);
+
+        private final boolean small;
+
+        private Artifact(boolean small) {
+            this.small = small;
+        }
+
+        /**
+         * {@code true} if the files are small enough for a ram FS.
+         */
+        public boolean isSmall()                { return small; }
+    }
+
+    private final List<File> dirs;
+    private final File smallDir;
+    private final Map<Artifact, Long> sizes = new EnumMap<>(Artifact.class);
+    private final Map<File, Long> fixed = new HashMap<>();
+    private final Map<Artifact, File> placement = new EnumMap<>(Artifact.class);
+    private final Map<FileStore, Long> reserved = new HashMap<>();
+    private final Map<File, FileStore> tracked = new HashMap<>();
+    private TempPlanner planner;
+
+    /**
+     * Creates a new {@link TempPlan}.
+     *
+     * @param dirs
+     *            Directories for temporary files. Large files are spread across them.
+     * @param smallDir
+     *            Directory for small temporary files, usually on a ram FS. May be
+     *            {@code null}.
+     */
+    public TempPlan(List<File> dirs, File smallDir) {
+        this.dirs = new ArrayList<>(dirs);
+        this.smallDir = smallDir;
+    }
+
+    /**
+     * Adds the expected size of an artifact.
+     *
+     * @param artifact
+     *            {@link Artifact}
+     * @param size
+     *            Expected size, in bytes
+     */
+    public void require(Artifact artifact, long size) {
+        sizes.merge(artifact, Math.max(size, 0L), Long::sum);
+    }
+
+    /**
+     * Adds the expected size of a file that is not placed by the plan, like the target
+     * file. Only the space on its file system is checked and reserved.
+     *
+     * @param file
+     *            {@link File} to be written
+     * @param size
+     *            Expected size, in bytes
+     */
+    public void require(File file, long size) {
+        fixed.merge(file.getAbsoluteFile(), Math.max(size, 0L), Long::sum);
+    }
+
+    /**
+     * Returns the directory for an artifact. Before the plan is reserved, the primary
+     * temp directory is returned.
+     */
+    public synchronized File getDir(Artifact artifact) {
+        File dir = placement.get(artifact);
+        return (dir != null ? dir : dirs.get(0));
+    }
+
+    /**
+     * Creates a temporary file for an artifact in its directory. The file is tracked,
+     * so its size is not reserved twice.
+     *
+     * @param artifact
+     *            {@link Artifact} to create
+     * @param suffix
+     *            File name suffix
+     * @return Created temporary file
+     */
+    public File createTempFile(Artifact artifact, String suffix) throws IOException {
+        File file = File.createTempFile("feinrip-", suffix, getDir(artifact));
+        track(artifact, file);
+        return file;
+    }
+
+    /**
+     * Tracks a file that has been created in the directory of an artifact by other
+     * means, e.g. by adding an extension to a file returned by
+     * {@link #createTempFile(Artifact, String)}.
+     */
+    public synchronized void track(Artifact artifact, File file) {
+        FileStore store = (planner != null ? planner.findStore(getDir(artifact)) : null);
+        if (store != null) {
+            tracked.put(file, store);
+        }
+    }
+
+    /**
+     * Releases the reserved space.
+     */
+    @Override
+    public void close() {
+        TempPlanner p;
+        synchronized (this) {
+            p = planner;
+            planner = null;
+        }
+        if (p != null) {
+            p.release(this);
+        }
+    }
+
+    /**
+     * Temp directories of this plan.
+     */
+    List<File> getDirs()                        { return Collections.unmodifiableList(dirs); }
+
+    /**
+     * Small temp directory of this plan, may be {@code null}.
+     */
+    File getSmallDir()                          { return smallDir; }
+
+    /**
+     * Expected sizes of the artifacts.
+     */
+    Map<Artifact, Long> getSizes()              { return sizes; }
+
+    /**
+     * Expected sizes of fixed files.
+     */
+    Map<File, Long> getFixed()                  { return fixed; }
+
+    /**
+     * Sets the result of the planning.
+     */
+    synchronized void assign(TempPlanner planner, Map<Artifact, File> placement,
+                Map<FileStore, Long> reserved) {
+        this.planner = planner;
+        this.placement.putAll(placement);
+        this.reserved.putAll(reserved);
+        for (File file : fixed.keySet()) {
+            FileStore store = planner.findStore(file.getParentFile());
+            if (store != null) {
+                tracked.put(file, store);
+            }
+        }
+    }
+
+    /**
+     * Returns the space that is reserved on a file system.
+     */
+    synchronized long getReserved(FileStore store) {
+        return reserved.getOrDefault(store, 0L);
+    }
+
+    /**
+     * Returns the total space that is reserved by this plan.
+     */
+    synchronized long getReserved() {
+        return reserved.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Returns the total size of the files written so far.
+     */
+    synchronized long getUsed() {
+        return tracked.keySet().stream().mapToLong(File::length).sum();
+    }
+
+    /**
+     * Returns the space on a file system that is reserved, but not yet used by the
+     * files written so far.
+     */
+    synchronized long getOutstanding(FileStore store) {
+        long result = reserved.getOrDefault(store, 0L);
+        for (Map.Entry<File, FileStore> entry : tracked.entrySet()) {
+            if (entry.getValue().equals(store)) {
+                result -= entry.getKey().length();
+            }
+        }
+        return Math.max(result, 0L);
+    }
+
+}
@@ -0,0 +1,264 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.shredzone.feinrip.pipeline.TempPlan.Artifact;
+
+/**
+ * Places the temporary files of all runs, and reserves the space they need.
+ * <p>
+ * Small artifacts are placed on the small temp dir if they fit there, large artifacts
+ * are placed on the temp dir with the most free space. The space is reserved until the
+ * {@link TempPlan} is closed, so runs in parallel do not fill up the same disk.
+ * <p>
+ * If a plan does not fit at the moment, but would fit after the other runs have been
+ * completed, {@link #reserve(TempPlan, Runnable)} waits. If it would not fit at all,
+ * the run is refused instead of failing halfway.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class TempPlanner {
+
+    private static final TempPlanner INSTANCE = new TempPlanner();
+
+    // Space that is always kept free on each file system
+    private static final long RESERVE = 256L * 1024L * 1024L;
+
+    // Largest artifact size that is placed on the small temp dir
+    private static final long SMALL_LIMIT = 256L * 1024L * 1024L;
+
+    // Free space is also checked periodically, as other processes may release space
+    private static final long WAIT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final List<TempPlan> plans = new ArrayList<>();
+
+    /**
+     * Returns the {@link TempPlanner} that is shared by all runs.
+     */
+    public static TempPlanner global() {
+        return INSTANCE;
+    }
+
+    /**
+     * Places the artifacts of the {@link TempPlan} and reserves their space. Blocks
+     * until there is enough space.
+     *
+     * @param plan
+     *            {@link TempPlan} to reserve
+     * @param waitListener
+     *            Invoked once if the reservation needs to wait for other runs, may be
+     *            {@code null}
+     * @throws IOException
+     *             if there will never be enough space for the plan
+     */
+    public synchronized void reserve(TempPlan plan, Runnable waitListener) throws IOException {
+        boolean waiting = false;
+        while (!place(plan, true)) {
+            if (plans.isEmpty() || !place(plan, false)) {
+                throw new IOException(refusal(plan));
+            }
+
+            if (!waiting && waitListener != null) {
+                waitListener.run();
+            }
+            waiting = true;
+
+            try {
+                wait(WAIT_MILLIS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted", ex);
+            }
+        }
+        plans.add(plan);
+    }
+
+    /**
+     * Returns the total space that is currently reserved by all runs.
+     */
+    public synchronized long getReservedSpace() {
+        return plans.stream().mapToLong(TempPlan::getReserved).sum();
+    }
+
+    /**
+     * Returns the total size of the files that have been written by all runs so far.
+     */
+    public synchronized long getUsedSpace() {
+        return plans.stream().mapToLong(TempPlan::getUsed).sum();
+    }
+
+    /**
+     * Releases the space of a {@link TempPlan}.
+     */
+    synchronized void release(TempPlan plan) {
+        plans.remove(plan);
+        notifyAll();
+    }
+
+    /**
+     * Finds the {@link FileStore} of a directory.
+     *
+     * @return {@link FileStore}, or {@code null} if the directory does not exist
+     */
+    FileStore findStore(File dir) {
+        if (dir == null || !dir.isDirectory()) {
+            return null;
+        }
+        try {
+            return Files.getFileStore(dir.toPath());
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Tries to place the artifacts of a plan.
+     *
+     * @param plan
+     *            {@link TempPlan} to place
+     * @param commit
+     *            {@code true}: consider the space reserved by other plans, and assign
+     *            the placement on success. {@code false}: only check if the plan would
+     *            fit after all other plans have been completed.
+     * @return {@code true} if the plan fits
+     */
+    private boolean place(TempPlan plan, boolean commit) throws IOException {
+        Map<FileStore, Long> available = new HashMap<>();
+        Map<FileStore, Long> reserved = new HashMap<>();
+        Map<Artifact, File> placement = new EnumMap<>(Artifact.class);
+
+        Map<File, FileStore> dirs = new LinkedHashMap<>();
+        for (File dir : plan.getDirs()) {
+            FileStore store = findStore(dir);
+            if (store != null) {
+                dirs.put(dir, store);
+                available.computeIfAbsent(store, s -> available(s, commit));
+            }
+        }
+        if (dirs.isEmpty()) {
+            throw new IOException("No temp dir found: " + plan.getDirs());
+        }
+
+        FileStore smallStore = findStore(plan.getSmallDir());
+        if (smallStore != null) {
+            available.computeIfAbsent(smallStore, s -> available(s, commit));
+        }
+
+        for (Map.Entry<File, Long> entry : plan.getFixed().entrySet()) {
+            FileStore store = findStore(entry.getKey().getParentFile());
+            if (store != null) {
+                available.computeIfAbsent(store, s -> available(s, commit));
+                if (!take(store, entry.getValue(), available, reserved)) {
+                    return false;
+                }
+            }
+        }
+
+        List<Map.Entry<Artifact, Long>> sizes = new ArrayList<>(plan.getSizes().entrySet());
+        sizes.sort(Map.Entry.<Artifact, Long>comparingByValue().reversed());
+
+        for (Map.Entry<Artifact, Long> entry : sizes) {
+            Artifact artifact = entry.getKey();
+            long size = entry.getValue();
+
+            if (artifact.isSmall() && smallStore != null && size <= SMALL_LIMIT
+                            && take(smallStore, size, available, reserved)) {
+                placement.put(artifact, plan.getSmallDir());
+                continue;
+            }
+
+            File best = dirs.keySet().stream()
+                    .max(Comparator.comparingLong(d -> available.get(dirs.get(d))))
+                    .get();
+            if (!take(dirs.get(best), size, available, reserved)) {
+                return false;
+            }
+            placement.put(artifact, best);
+        }
+
+        if (commit) {
+            plan.assign(this, placement, reserved);
+        }
+        return true;
+    }
+
+    /**
+     * Takes space from a file system.
+     *
+     * @return {@code true} if there was enough space
+     */
+    private static boolean take(FileStore store, long size, Map<FileStore, Long> available,
+                Map<FileStore, Long> reserved) {
+        long free = available.get(store);
+        if (free < size) {
+            return false;
+        }
+        available.put(store, free - size);
+        reserved.merge(store, size, Long::sum);
+        return true;
+    }
+
+    /**
+     * Returns the space that is available on a file system.
+     *
+     * @param store
+     *            {@link FileStore} to check
+     * @param others
+     *            {@code true} to deduct the space reserved by other plans,
+     *            {@code false} to add the space that is used by other plans
+     */
+    private long available(FileStore store, boolean others) {
+        long free;
+        try {
+            free = store.getUsableSpace() - RESERVE;
+        } catch (IOException ex) {
+            return 0L;
+        }
+        for (TempPlan p : plans) {
+            long outstanding = p.getOutstanding(store);
+            if (others) {
+                free -= outstanding;
+            } else {
+                free += p.getReserved(store) - outstanding;
+            }
+        }
+        return Math.max(free, 0L);
+    }
+
+    /**
+     * Creates a message explaining why a plan was refused.
+     */
+    private static String refusal(TempPlan plan) {
+        long total = plan.getSizes().values().stream().mapToLong(Long::longValue).sum()
+                        + plan.getFixed().values().stream().mapToLong(Long::longValue).sum();
+        return String.format("Not enough free space for temporary files, about %d MiB are required in %s",
+                        total / (1024L * 1024L), plan.getDirs());
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.progress;
+
+import java.io.PrintStream;
+import java.text.MessageFormat;
+
+/**
+ * A {@link ProgressMeter} that writes to the console.
+ * <p>
+ * Every message is printed on a line of its own. Percent values are printed at most
+ * every few seconds, to keep the output readable when it is piped to a log file. The
+ * progress of the entire job is printed with throughput and remaining time.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class ConsoleProgressMeter implements ProgressMeter {
+    private static final long NEXT_PERCENT_LIMITER = 5000L;
+
+    private final PrintStream out;
+    private final boolean verbose;
+    private final String prefix;
+    private String lastMessage;
+    private long nextPercentOutput = 0L;
+
+    /**
+     * Creates a new {@link ConsoleProgressMeter}.
+     *
+     * @param out
+     *            {@link PrintStream} to write to
+     * @param verbose
+     *            {@code true} to also write all log lines
+     */
+    public ConsoleProgressMeter(PrintStream out, boolean verbose) {
+        this(out, verbose, "");
+    }
+
+    /**
+     * Creates a new {@link ConsoleProgressMeter} that prefixes all lines, so the output
+     * of several jobs running in parallel can be told apart.
+     *
+     * @param out
+     *            {@link PrintStream} to write to
+     * @param verbose
+     *            {@code true} to also write all log lines
+     * @param prefix
+     *            Prefix of each line
+     */
+    public ConsoleProgressMeter(PrintStream out, boolean verbose, String prefix) {
+        this.out = out;
+        this.verbose = verbose;
+        this.prefix = prefix;
+    }
+
+    @Override
+    public synchronized ProgressMeter message(String message, Object... values) {
+        if (message != null) {
+            String text = MessageFormat.format(message, values);
+            if (!text.equals(lastMessage)) {
+                out.println(prefix + text);
+                lastMessage = text;
+                nextPercentOutput = 0L;
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized ProgressMeter percent(Float percent) {
+        long now = System.currentTimeMillis();
+        if (percent != null && now >= nextPercentOutput) {
+            out.printf("%s  %5.1f %%%n", prefix, percent);
+            nextPercentOutput = now + NEXT_PERCENT_LIMITER;
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized ProgressMeter progress(JobProgress progress) {
+        long now = System.currentTimeMillis();
+        if (now >= nextPercentOutput) {
+            out.printf("%s  %s%n", prefix, progress);
+            nextPercentOutput = now + NEXT_PERCENT_LIMITER;
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized ProgressMeter log(String line) {
+        if (verbose) {
+            out.println(prefix + "  | " + line);
+        }
+        return this;
+    }
+
+}
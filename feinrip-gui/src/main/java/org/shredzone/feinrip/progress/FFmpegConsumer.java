@@ -16,8 +16,6 @@
 package org.shredzone.feinrip.progress;
 
 import java.util.function.Consumer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * {@link LogConsumer} that is able to handle <code>ffmpeg</code> output.
@@ -26,9 +24,6 @@ import java.util.regex.Pattern;
  */
 public class FFmpegConsumer extends LogConsumer {
 
-    private static final Pattern PERCENT = Pattern.compile(".*?size=.*?time=(\\d+)\\.(\\d\\d).*");
-    private static final Pattern PERCENT2 = Pattern.compile(".*?size=.*?time=(\\d\\d):(\\d\\d):(\\d\\d)\\.(\\d\\d).*");
-
     private long duration = 0;
 
     /**
@@ -65,31 +60,11 @@ public class FFmpegConsumer extends LogConsumer {
     @Override
     public void accept(String line) {
         if (duration > 0) {
-            Matcher m = PERCENT.matcher(line);
-            if (m.matches()) {
-                long sec = Long.parseLong(m.group(1));
-                long frc = Long.parseLong(m.group(2));
-
-                long current = (sec * 100) + frc;
-
-                float percent = current * 100.0f / duration;
-                if (percent > 100) percent = 100;
-                meter.percent(percent);
-                return; // Swallow the progress line
-            }
-
-            m = PERCENT2.matcher(line);
-            if (m.matches()) {
-                long hr = Long.parseLong(m.group(1));
-                long min = Long.parseLong(m.group(2));
-                long sec = Long.parseLong(m.group(3));
-                long frc = Long.parseLong(m.group(4));
-
-                long current = (hr * 60 * 60 * 100) + (min * 60 * 100) + (sec * 100) + frc;
-
+            long current = ProgressScanner.scanTime(line);
+            if (current >= 0) {
                 float percent = current * 100.0f / duration;
                 if (percent > 100) percent = 100;
-                meter.percent(percent);
+                percent(percent);
                 return; // Swallow the progress line
             }
         }
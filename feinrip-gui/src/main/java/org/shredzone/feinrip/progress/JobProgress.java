@@ -0,0 +1,99 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.progress;
+
+/**
+ * The progress of an entire job.
+ * <p>
+ * The job is split into stages. Each stage is weighted by the number of bytes it is
+ * expected to process, so the percentage reflects the actual progress of the job, and
+ * the throughput and the estimated remaining time also consider the stages that have
+ * not been started yet.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class JobProgress {
+
+    private static final double MB = 1024.0 * 1024.0;
+
+    private final float percent;
+    private final long bytesProcessed;
+    private final double bytesPerSecond;
+    private final long remainingSeconds;
+
+    /**
+     * Creates a new {@link JobProgress}.
+     *
+     * @param percent
+     *            Progress of the job, in percent
+     * @param bytesProcessed
+     *            Number of bytes processed so far, by the weights of the stages
+     * @param bytesPerSecond
+     *            Current throughput, in bytes per second, or a negative value if not
+     *            known yet
+     * @param remainingSeconds
+     *            Estimated remaining time, in seconds, or a negative value if not known
+     *            yet
+     */
+    public JobProgress(float percent, long bytesProcessed, double bytesPerSecond, long remainingSeconds) {
+        this.percent = percent;
+        this.bytesProcessed = bytesProcessed;
+        this.bytesPerSecond = bytesPerSecond;
+        this.remainingSeconds = remainingSeconds;
+    }
+
+    /**
+     * Progress of the job, in percent.
+     */
+    public float getPercent()                   { return percent; }
+
+    /**
+     * Number of bytes processed so far, by the weights of the stages.
+     */
+    public long getBytesProcessed()             { return bytesProcessed; }
+
+    /**
+     * Current throughput, in bytes per second. Negative if not known yet.
+     */
+    public double getBytesPerSecond()           { return bytesPerSecond; }
+
+    /**
+     * Current throughput, in MB per second. Negative if not known yet.
+     */
+    public double getMegabytesPerSecond() {
+        return bytesPerSecond >= 0.0 ? bytesPerSecond / MB : -1.0;
+    }
+
+    /**
+     * Estimated remaining time, in seconds. Negative if not known yet.
+     */
+    public long getRemainingSeconds()           { return remainingSeconds; }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%5.1f %%", percent));
+        if (bytesPerSecond >= 0.0) {
+            sb.append(String.format(", %.1f MB/s", getMegabytesPerSecond()));
+        }
+        if (remainingSeconds >= 0L) {
+            sb.append(String.format(", ETA %d:%02d:%02d", remainingSeconds / 3600L,
+                    (remainingSeconds / 60L) % 60L, remainingSeconds % 60L));
+        }
+        return sb.toString();
+    }
+
+}
@@ -15,17 +15,25 @@
  */
 package org.shredzone.feinrip.progress;
 
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
  * A {@link Consumer} that logs into a {@link ProgressMeter}.
+ * <p>
+ * Tools print their progress continuously. Percentages are only passed to the
+ * {@link ProgressMeter} a few times per second, see {@link #percent(float)}.
  *
  * @author Richard "Shred" Körber
  */
 public class LogConsumer implements Consumer<String> {
 
+    // Minimum time between two percentages, in nanoseconds
+    private static final long PERCENT_INTERVAL = TimeUnit.MILLISECONDS.toNanos(200L);
+
     protected final ProgressMeter meter;
     protected final boolean error;
+    private long lastPercent = System.nanoTime() - PERCENT_INTERVAL;
 
     /**
      * Creates a new {@link LogConsumer}.
@@ -48,4 +56,19 @@ public class LogConsumer implements Consumer<String> {
         }
     }
 
+    /**
+     * Passes a percentage to the {@link ProgressMeter}. Percentages that follow the
+     * previous one too quickly are dropped, unless the end has been reached.
+     *
+     * @param percent
+     *            Progress percent
+     */
+    protected void percent(float percent) {
+        long now = System.nanoTime();
+        if (now - lastPercent >= PERCENT_INTERVAL || percent >= 100.0f) {
+            lastPercent = now;
+            meter.percent(percent);
+        }
+    }
+
 }
@@ -0,0 +1,109 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.progress;
+
+/**
+ * Merges the progress of a number of tasks running in parallel into a single parent
+ * {@link ProgressMeter}.
+ * <p>
+ * Each task gets its own child meter. The parent shows the average percentage of all
+ * children. Log lines are passed to the parent one at a time. Messages of the children
+ * are ignored, the parent message should describe the whole set of tasks.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class ParallelProgressMeter {
+
+    private final ProgressMeter parent;
+    private final float[] percents;
+
+    /**
+     * Creates a new {@link ParallelProgressMeter}.
+     *
+     * @param parent
+     *            Parent {@link ProgressMeter} to merge into
+     * @param tasks
+     *            Number of tasks
+     */
+    public ParallelProgressMeter(ProgressMeter parent, int tasks) {
+        this.parent = parent;
+        this.percents = new float[tasks];
+    }
+
+    /**
+     * Returns the {@link ProgressMeter} of a task.
+     *
+     * @param task
+     *            Task index, starting from 0
+     * @return {@link ProgressMeter} of that task
+     */
+    public ProgressMeter child(int task) {
+        if (task < 0 || task >= percents.length) {
+            throw new IndexOutOfBoundsException("task " + task);
+        }
+        return new ChildMeter(task);
+    }
+
+    /**
+     * Sets a percent value of a task, and updates the parent.
+     */
+    private synchronized void update(int task, Float percent) {
+        percents[task] = (percent != null ? percent : 0.0f);
+
+        float sum = 0.0f;
+        for (float p : percents) {
+            sum += p;
+        }
+        parent.percent(sum / percents.length);
+    }
+
+    /**
+     * Logs a line to the parent.
+     */
+    private synchronized void log(String line) {
+        parent.log(line);
+    }
+
+    /**
+     * The {@link ProgressMeter} of a single task.
+     */
+    private class ChildMeter implements ProgressMeter {
+        private final int task;
+
+        public ChildMeter(int task) {
+            this.task = task;
+        }
+
+        @Override
+        public ProgressMeter message(String message, Object... values) {
+            // Messages of single tasks are not shown
+            return this;
+        }
+
+        @Override
+        public ProgressMeter percent(Float percent) {
+            update(task, percent);
+            return this;
+        }
+
+        @Override
+        public ProgressMeter log(String line) {
+            ParallelProgressMeter.this.log(line);
+            return this;
+        }
+    }
+
+}
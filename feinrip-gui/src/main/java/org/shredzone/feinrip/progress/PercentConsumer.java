@@ -16,19 +16,16 @@
 package org.shredzone.feinrip.progress;
 
 import java.util.function.Consumer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * A {@link LogConsumer} that detects percentages in the output, and forwards them
- * to the {@link ProgressMeter}.
+ * to the {@link ProgressMeter}. A percentage is a number of up to three digits and an
+ * optional fraction, followed by a percent sign.
  *
  * @author Richard "Shred" Körber
  */
 public class PercentConsumer extends LogConsumer {
 
-    private static final Pattern PERCENT = Pattern.compile(".*?(\\d{1,3}(\\.\\d+)?)\\s?%.*");
-
     /**
      * Creates a new {@link PercentConsumer}.
      *
@@ -44,10 +41,9 @@ public class PercentConsumer extends LogConsumer {
 
     @Override
     public void accept(String line) {
-        Matcher m = PERCENT.matcher(line);
-        if (m.matches()) {
-            float percent = Float.parseFloat(m.group(1));
-            meter.percent(percent);
+        float percent = ProgressScanner.scanPercent(line);
+        if (percent >= 0.0f) {
+            percent(percent);
             // Swallow the progress line
         } else {
             super.accept(line);
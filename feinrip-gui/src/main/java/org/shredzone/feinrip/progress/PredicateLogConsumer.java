@@ -21,9 +21,12 @@ package org.shredzone.feinrip.progress;
 
 import java.util.function.Predicate;
 
+import org.shredzone.feinrip.jmx.FeinripMetrics;
+
 /**
  * A {@link LogConsumer} that tests a predicate in the output and sets a flag if it
- * matched at least once.
+ * matched at least once. It is used for detecting corrupted streams, so the first
+ * match is counted in the {@link FeinripMetrics}.
  *
  * @author Richard "Shred" Körber
  */
@@ -51,8 +54,11 @@ public class PredicateLogConsumer extends LogConsumer {
 
     @Override
     public void accept(String line) {
-        // use short circuit logic so the predicate isn't tested once it was detected
-        matched = matched || predicate.test(line);
+        // the predicate isn't tested once it was detected
+        if (!matched && predicate.test(line)) {
+            matched = true;
+            FeinripMetrics.global().corruptedStreamDetected();
+        }
         super.accept(line);
     }
 
@@ -42,6 +42,20 @@ public interface ProgressMeter {
      */
     ProgressMeter percent(Float percent);
 
+    /**
+     * Shows the progress of the entire job. It is invoked instead of
+     * {@link #percent(Float)} by the stage scheduler.
+     * <p>
+     * The default implementation only shows the percentage.
+     *
+     * @param progress
+     *            {@link JobProgress} of the job
+     * @return {@code this}
+     */
+    default ProgressMeter progress(JobProgress progress) {
+        return percent(progress.getPercent());
+    }
+
     /**
      * Logs a line to a log pane.
      *
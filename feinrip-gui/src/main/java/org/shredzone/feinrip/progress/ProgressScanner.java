@@ -0,0 +1,209 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.progress;
+
+/**
+ * Scans tool output lines for progress values.
+ * <p>
+ * The tools print progress lines continuously, so the lines are scanned in a single
+ * pass, without regular expressions and without creating any objects.
+ *
+ * @author Richard "Shred" Körber
+ */
+final class ProgressScanner {
+
+    // Maximum number of fraction digits that are evaluated
+    private static final long MAX_SCALE = 1_000_000_000L;
+
+    // Maximum number of digits of the ffmpeg seconds value
+    private static final int MAX_SECONDS_DIGITS = 12;
+
+    private ProgressScanner() {
+        // utility class without constructor
+    }
+
+    /**
+     * Finds the first percentage in a line. A percentage is a number of up to three
+     * digits and an optional fraction, followed by an optional whitespace and a
+     * percent sign, like "42%" or "12.5 %".
+     *
+     * @param line
+     *            Line to scan
+     * @return Percentage that was found, or a negative value if there was none
+     */
+    static float scanPercent(String line) {
+        if (line.indexOf('%') < 0) {
+            return -1.0f;
+        }
+
+        int len = line.length();
+        for (int ix = 0; ix < len; ix++) {
+            if (isDigit(line.charAt(ix))) {
+                float percent = matchPercent(line, ix);
+                if (percent >= 0.0f) {
+                    return percent;
+                }
+            }
+        }
+        return -1.0f;
+    }
+
+    /**
+     * Finds the current position in an ffmpeg progress line, like
+     * "size=    1234kB time=00:01:23.45 bitrate= 121.1kbits/s". The position is
+     * either given in seconds, or as "HH:MM:SS.cc".
+     *
+     * @param line
+     *            Line to scan
+     * @return Position that was found, in 1/100 seconds, or a negative value if there
+     *         was none
+     */
+    static long scanTime(String line) {
+        int size = line.indexOf("size=");
+        if (size < 0) {
+            return -1L;
+        }
+
+        long time = scanTime(line, size + 5, false);
+        if (time < 0L) {
+            time = scanTime(line, size + 5, true);
+        }
+        return time;
+    }
+
+    /**
+     * Finds the first "time=" after the given position that is followed by a valid
+     * time value.
+     */
+    private static long scanTime(String line, int from, boolean clock) {
+        for (int ix = line.indexOf("time=", from); ix >= 0; ix = line.indexOf("time=", ix + 1)) {
+            long time = (clock ? matchClock(line, ix + 5) : matchSeconds(line, ix + 5));
+            if (time >= 0L) {
+                return time;
+            }
+        }
+        return -1L;
+    }
+
+    /**
+     * Matches a percentage at the given position.
+     */
+    private static float matchPercent(String line, int start) {
+        int len = line.length();
+        int pos = start;
+        long value = 0L;
+        while (pos < len && pos - start < 3 && isDigit(line.charAt(pos))) {
+            value = value * 10L + (line.charAt(pos) - '0');
+            pos++;
+        }
+
+        long scale = 1L;
+        if (pos + 1 < len && line.charAt(pos) == '.' && isDigit(line.charAt(pos + 1))) {
+            pos++;
+            while (pos < len && isDigit(line.charAt(pos))) {
+                if (scale < MAX_SCALE) {
+                    value = value * 10L + (line.charAt(pos) - '0');
+                    scale *= 10L;
+                }
+                pos++;
+            }
+        }
+
+        if (pos < len && isWhitespace(line.charAt(pos))) {
+            pos++;
+        }
+
+        if (pos < len && line.charAt(pos) == '%') {
+            return (float) ((double) value / scale);
+        }
+        return -1.0f;
+    }
+
+    /**
+     * Matches a time in seconds, like "83.45", at the given position.
+     */
+    private static long matchSeconds(String line, int start) {
+        int len = line.length();
+        int pos = start;
+        long seconds = 0L;
+        while (pos < len && isDigit(line.charAt(pos))) {
+            if (pos - start >= MAX_SECONDS_DIGITS) {
+                return -1L;
+            }
+            seconds = seconds * 10L + (line.charAt(pos) - '0');
+            pos++;
+        }
+
+        if (pos == start || pos >= len || line.charAt(pos) != '.') {
+            return -1L;
+        }
+
+        long fraction = digits(line, pos + 1);
+        if (fraction < 0L) {
+            return -1L;
+        }
+        return seconds * 100L + fraction;
+    }
+
+    /**
+     * Matches a time in "HH:MM:SS.cc" format at the given position.
+     */
+    private static long matchClock(String line, int start) {
+        if (start + 11 > line.length()
+                || line.charAt(start + 2) != ':'
+                || line.charAt(start + 5) != ':'
+                || line.charAt(start + 8) != '.') {
+            return -1L;
+        }
+
+        long hours = digits(line, start);
+        long minutes = digits(line, start + 3);
+        long seconds = digits(line, start + 6);
+        long fraction = digits(line, start + 9);
+        if (hours < 0L || minutes < 0L || seconds < 0L || fraction < 0L) {
+            return -1L;
+        }
+        return ((hours * 60L + minutes) * 60L + seconds) * 100L + fraction;
+    }
+
+    /**
+     * Returns the value of two digits at the given position, or a negative value if
+     * there are no two digits.
+     */
+    private static long digits(String line, int pos) {
+        if (pos + 2 > line.length()) {
+            return -1L;
+        }
+        char c1 = line.charAt(pos);
+        char c2 = line.charAt(pos + 1);
+        if (!isDigit(c1) || !isDigit(c2)) {
+            return -1L;
+        }
+        return (c1 - '0') * 10L + (c2 - '0');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Checks for a whitespace, like the "\s" character class of regular expressions.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+}
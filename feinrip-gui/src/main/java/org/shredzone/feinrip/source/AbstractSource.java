@@ -17,9 +17,14 @@ package org.shredzone.feinrip.source;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.io.File;
+import java.io.IOException;
 
 import org.shredzone.feinrip.database.TvdbService.TvdbEpisode;
+import org.shredzone.feinrip.model.Palette;
 import org.shredzone.feinrip.model.Project;
+import org.shredzone.feinrip.model.Subtitle;
+import org.shredzone.feinrip.progress.ProgressMeter;
 
 /**
  * Abstract implementation of {@link Source}.
@@ -102,4 +107,44 @@ public abstract class AbstractSource implements Source {
         return false;
     }
 
+    @Override
+    public boolean isStreamable() {
+        return false;
+    }
+
+    @Override
+    public void readVobStream(File target, File watch, ProgressMeter meter) throws IOException {
+        throw new IOException("Source cannot be streamed");
+    }
+
+    @Override
+    public String getFingerprint() throws IOException {
+        return null;
+    }
+
+    @Override
+    public long estimateDuration() {
+        return 0L;
+    }
+
+    @Override
+    public long estimateVobSize() {
+        return 0L;
+    }
+
+    @Override
+    public void releaseMedium() throws IOException {
+        // Nothing to release by default
+    }
+
+    @Override
+    public File findSubFile(Subtitle sub) throws IOException {
+        return null;
+    }
+
+    @Override
+    public Palette getSubtitlePalette() {
+        return null;
+    }
+
 }
@@ -17,6 +17,11 @@ package org.shredzone.feinrip.source;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -28,10 +33,12 @@ import org.shredzone.feinrip.model.Audio;
 import org.shredzone.feinrip.model.Chapter;
 import org.shredzone.feinrip.model.Configuration;
 import org.shredzone.feinrip.model.MountPoint;
+import org.shredzone.feinrip.model.Palette;
 import org.shredzone.feinrip.model.StreamType;
 import org.shredzone.feinrip.model.Subtitle;
 import org.shredzone.feinrip.model.Track;
 import org.shredzone.feinrip.progress.ProgressMeter;
+import org.shredzone.feinrip.system.DeviceUtils;
 import org.shredzone.feinrip.system.EitAnalyzer;
 import org.shredzone.feinrip.system.StreamUtils;
 import org.shredzone.feinrip.util.DvdAnalyzer;
@@ -47,6 +54,9 @@ public class DvdSource extends AbstractSource implements TrackableSource {
 
     private static final ResourceBundle B = ResourceBundle.getBundle("message");
 
+    // Maximum bit rate of a DVD vob stream, in bits per second
+    private static final long MAX_BITRATE = 10_080_000L;
+
     private final Configuration config = Configuration.global();
 
     private File device;
@@ -339,10 +349,21 @@ public class DvdSource extends AbstractSource implements TrackableSource {
     @Override
     public File createVobFile(ProgressMeter meter) throws IOException {
         File vobFile = File.createTempFile("feinrip-", "-video.vob");
-        vobCorrupted = StreamUtils.readStream(getDevice(), getSelectedTrackNr(), vobFile, getStreamType(), meter);
+        readVobStream(vobFile, meter);
         return vobFile;
     }
 
+    @Override
+    public boolean isStreamable() {
+        return true;
+    }
+
+    @Override
+    public void readVobStream(File target, File watch, ProgressMeter meter) throws IOException {
+        vobCorrupted = StreamUtils.readStream(getDevice(), getSelectedTrackNr(), target, watch,
+                        getStreamType(), meter);
+    }
+
     @Override
     public void deleteVobFile(File vob) throws IOException {
         if (vob != null && vob.exists()) {
@@ -354,7 +375,7 @@ public class DvdSource extends AbstractSource implements TrackableSource {
 
     @Override
     public File createSubFile(Subtitle sub, File sourceVob, ProgressMeter meter) throws IOException {
-        File srtFile = EitAnalyzer.findSrtFile(getMountPoint(), sub);
+        File srtFile = findSubFile(sub);
         if (srtFile != null) {
             return srtFile;
         }
@@ -373,7 +394,7 @@ public class DvdSource extends AbstractSource implements TrackableSource {
             // Exchange palette, mencoder seems to have some difficulties...
             VobsubIndex vsi = new VobsubIndex();
             vsi.read(idxFile);
-            vsi.set(Setting.PALETTE, dvd.getPalette(track.getTrack()).toRgbString());
+            vsi.set(Setting.PALETTE, getSubtitlePalette().toRgbString());
             vsi.write(idxFile);
 
             return idxFile;
@@ -384,12 +405,97 @@ public class DvdSource extends AbstractSource implements TrackableSource {
         }
     }
 
+    /**
+     * The fingerprint is made from the content of all IFO files of the disc, the
+     * selected track, and the stream type.
+     */
+    @Override
+    public String getFingerprint() throws IOException {
+        File videoTs = new File(getMountPoint(), "VIDEO_TS");
+        File[] ifos = videoTs.listFiles((dir, name) -> name.toUpperCase().endsWith(".IFO"));
+        if (ifos == null || ifos.length == 0) {
+            return null;
+        }
+        Arrays.sort(ifos);
+
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (File ifo : ifos) {
+                md.update(ifo.getName().getBytes(StandardCharsets.UTF_8));
+                md.update(Files.readAllBytes(ifo.toPath()));
+            }
+            md.update(String.format("%d/%s", getSelectedTrackNr(), getStreamType()).getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest()) {
+                sb.append(String.format("%02x", b & 0xFF));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("SHA-256 is not available", ex);
+        }
+    }
+
+    @Override
+    public long estimateDuration() {
+        Track track = getSelectedTrack();
+        return (track != null ? track.getDuration() : 0L);
+    }
+
+    @Override
+    public long estimateVobSize() {
+        // The vob stream of a track is never larger than all vob files of the DVD
+        long total = 0L;
+        File[] vobs = new File(getMountPoint(), "VIDEO_TS").listFiles(
+                        (dir, name) -> name.toUpperCase().endsWith(".VOB"));
+        if (vobs != null) {
+            for (File vob : vobs) {
+                total += vob.length();
+            }
+        }
+
+        long duration = estimateDuration();
+        if (duration > 0) {
+            long bytes = duration * MAX_BITRATE / 8000L;
+            total = (total > 0 ? Math.min(total, bytes) : bytes);
+        }
+        return total;
+    }
+
+    @Override
+    public void releaseMedium() throws IOException {
+        DeviceUtils.eject(new MountPoint(device, mountPoint));
+    }
+
+    /**
+     * Finds a srt file of the subtitle on the DVD. A copy of the srt file is returned,
+     * so the DVD can be ejected while processing.
+     */
+    @Override
+    public File findSubFile(Subtitle sub) throws IOException {
+        File srtFile = EitAnalyzer.findSrtFile(getMountPoint(), sub);
+        if (srtFile == null) {
+            return null;
+        }
+
+        return copyToTempFile(srtFile, "-sub-" + sub.getIndex() + ".srt");
+    }
+
+    @Override
+    public Palette getSubtitlePalette() {
+        return dvd.getPalette(track.getTrack());
+    }
+
     @Override
     public void deleteSubFile(File file) throws IOException {
         if (file != null) {
             String name = file.getAbsolutePath();
-            // Do not delete srt files, because they are not ours...
-            if (name.endsWith(".idx")) {
+            if (name.endsWith(".srt")) {
+                // This is a copy made by findSubFile()
+                if (!file.delete()) {
+                    throw new IOException("Could not delete " + file.getAbsolutePath());
+                }
+            } else if (name.endsWith(".idx")) {
                 File subFile = new File(name.substring(0, name.length() - 3).concat("sub"));
                 if (!file.delete()) {
                     throw new IOException("Could not delete " + file.getAbsolutePath());
@@ -401,14 +507,39 @@ public class DvdSource extends AbstractSource implements TrackableSource {
         }
     }
 
+    /**
+     * Returns a copy of the eit file, so the DVD can be ejected while processing.
+     */
     @Override
     public File createEitFile() throws IOException {
-        return eitFile;
+        if (eitFile == null) {
+            return null;
+        }
+        return copyToTempFile(eitFile, ".eit");
     }
 
     @Override
     public void deleteEitFile(File file) throws IOException {
-        // Do not delete eit file because it is not ours...
+        if (file != null && file.exists()) {
+            if (!file.delete()) {
+                throw new IOException("Could not delete " + file.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Copies a file to a temporary file.
+     *
+     * @param file
+     *            File to copy
+     * @param suffix
+     *            Suffix of the temporary file
+     * @return Copy of the file
+     */
+    private static File copyToTempFile(File file, String suffix) throws IOException {
+        File copy = File.createTempFile("feinrip-", suffix);
+        Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return copy;
     }
 
     /**
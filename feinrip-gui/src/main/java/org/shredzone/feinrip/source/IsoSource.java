@@ -16,6 +16,7 @@
 package org.shredzone.feinrip.source;
 
 import java.io.File;
+import java.io.IOException;
 
 import org.shredzone.feinrip.model.MountPoint;
 import org.shredzone.feinrip.model.StreamType;
@@ -36,6 +37,11 @@ public class IsoSource extends DvdSource {
         return StreamType.DVD;
     }
 
+    @Override
+    public void releaseMedium() throws IOException {
+        // There is no medium to be ejected
+    }
+
     @Override
     public boolean isValid() {
         if (!super.isValid()) {
@@ -20,6 +20,7 @@ import java.io.File;
 import java.io.IOException;
 
 import org.shredzone.feinrip.model.Project;
+import org.shredzone.feinrip.model.Palette;
 import org.shredzone.feinrip.model.Subtitle;
 import org.shredzone.feinrip.progress.ProgressMeter;
 
@@ -42,7 +43,7 @@ public interface Source {
      * Initializes all parameters of the bound {@link Project}. Audios, subtitles,
      * chapters etc will be set.
      */
-    void setupProject();
+    void setupProject() throws IOException;
 
     /**
      * Gets a simple HTML formatted description of the current settings of the source,
@@ -66,7 +67,8 @@ public interface Source {
      * {@code true} if the vob file returned by {@link #createVobFile(ProgressMeter)}
      * is likely corrupted (for example because of read errors while reading a DVD).
      * <p>
-     * Only valid after {@link #createVobFile(ProgressMeter)} has been invoked.
+     * Only valid after {@link #createVobFile(ProgressMeter)} or
+     * {@link #readVobStream(File, ProgressMeter)} has been invoked.
      */
     boolean isVobFileCorrupted();
 
@@ -85,6 +87,71 @@ public interface Source {
      */
     File createVobFile(ProgressMeter meter) throws IOException;
 
+    /**
+     * Checks if the vob stream can be ripped into a named pipe or a file that is read
+     * while it is still growing, using {@link #readVobStream(File, ProgressMeter)}.
+     *
+     * @return {@code true} if streaming is supported
+     */
+    boolean isStreamable();
+
+    /**
+     * Rips the vob stream into the given file, which may also be a named pipe. Only
+     * supported if {@link #isStreamable()} returns {@code true}.
+     *
+     * @param target
+     *            File to write the vob stream to
+     * @param meter
+     *            {@link ProgressMeter} to be used for showing progress
+     */
+    default void readVobStream(File target, ProgressMeter meter) throws IOException {
+        readVobStream(target, target, meter);
+    }
+
+    /**
+     * Rips the vob stream into the given file, which may also be a named pipe. Only
+     * supported if {@link #isStreamable()} returns {@code true}.
+     *
+     * @param target
+     *            File or named pipe to write the vob stream to
+     * @param watch
+     *            Growing file that shows that the rip is progressing. If the target is
+     *            a named pipe, this is the file that the reader of the pipe writes to.
+     * @param meter
+     *            {@link ProgressMeter} to be used for showing progress
+     */
+    void readVobStream(File target, File watch, ProgressMeter meter) throws IOException;
+
+    /**
+     * Returns a fingerprint of the vob stream that is delivered by this source. It is
+     * used for finding checkpoints of a previous run.
+     *
+     * @return Fingerprint, or {@code null} if the source cannot be fingerprinted, so
+     *         no checkpoints are used
+     */
+    String getFingerprint() throws IOException;
+
+    /**
+     * Estimates the playing time of the vob stream.
+     *
+     * @return Playing time in milliseconds, or 0 if unknown
+     */
+    long estimateDuration();
+
+    /**
+     * Estimates the size of the vob stream. The estimation should rather be too large
+     * than too small.
+     *
+     * @return Size in bytes, or 0 if unknown
+     */
+    long estimateVobSize();
+
+    /**
+     * Releases the medium after the vob stream was ripped, e.g. by ejecting the disc.
+     * Other files that are still needed from the medium must have been created before.
+     */
+    void releaseMedium() throws IOException;
+
     /**
      * Deletes the vob file returned by {@link #createVobFile(ProgressMeter)}, if
      * applicable. Does nothing if the vob file was not created by us.
@@ -118,6 +185,23 @@ public interface Source {
      */
     void deleteSubFile(File file) throws IOException;
 
+    /**
+     * Finds a subtitle file that is provided by the source itself, and does not need to
+     * be extracted from the vob file.
+     *
+     * @param sub
+     *            {@link Subtitle} to find
+     * @return Subtitle file, or {@code null} if the subtitle needs to be extracted
+     */
+    File findSubFile(Subtitle sub) throws IOException;
+
+    /**
+     * Returns the color {@link Palette} of the subtitles.
+     *
+     * @return {@link Palette}, or {@code null} if unknown
+     */
+    Palette getSubtitlePalette();
+
     /**
      * Creates an EIT (DVB Event Information Table) file.
      *
@@ -19,7 +19,6 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
-import org.shredzone.feinrip.gui.ErrorDialog;
 import org.shredzone.feinrip.model.Audio;
 import org.shredzone.feinrip.model.Palette;
 import org.shredzone.feinrip.model.PaletteType;
@@ -89,32 +88,28 @@ public class VobSource extends AbstractSource {
     }
 
     @Override
-    public void setupProject() {
+    public void setupProject() throws IOException {
         project.setDefAudio(null);
         project.setDefSub(null);
 
-        try {
-            VobAnalyzer analyzer = new VobAnalyzer(vobFile);
+        VobAnalyzer analyzer = new VobAnalyzer(vobFile);
 
-            List<Audio> audios = analyzer.getAudios();
-            project.setAudios(audios);
-            if (audios.size() == 1) {
-                project.setDefAudio(audios.get(0));
-            }
-            project.touchAudios();
+        List<Audio> audios = analyzer.getAudios();
+        project.setAudios(audios);
+        if (audios.size() == 1) {
+            project.setDefAudio(audios.get(0));
+        }
+        project.touchAudios();
 
-            project.setSubs(analyzer.getSubs());
-            project.touchSubs();
+        project.setSubs(analyzer.getSubs());
+        project.touchSubs();
 
-            project.getChapters().clear();
-            project.touchChapters();
+        project.getChapters().clear();
+        project.touchChapters();
 
-            project.setSize(analyzer.getDimension());
-            project.setAspect(analyzer.getAspect());
-            project.setAudioSyncOffset(0);
-        } catch (IOException ex) {
-            ErrorDialog.showException(ex);
-        }
+        project.setSize(analyzer.getDimension());
+        project.setAspect(analyzer.getAspect());
+        project.setAudioSyncOffset(0);
     }
 
     @Override
@@ -142,6 +137,11 @@ public class VobSource extends AbstractSource {
         return fn;
     }
 
+    @Override
+    public long estimateVobSize() {
+        return (vobFile != null ? vobFile.length() : 0L);
+    }
+
     @Override
     public File createVobFile(ProgressMeter meter) throws IOException {
         return vobFile;
@@ -156,12 +156,7 @@ public class VobSource extends AbstractSource {
     public File createSubFile(Subtitle sub, File sourceVob, ProgressMeter meter) throws IOException {
         File vobsubFile = File.createTempFile("feinrip-", "-sub-" + sub.getIndex());
         try {
-            Palette paletteColors;
-            if (palette == PaletteType.CUSTOM) {
-                paletteColors = customPalette;
-            } else {
-                paletteColors = palette.getPalette();
-            }
+            Palette paletteColors = getSubtitlePalette();
 
             StreamUtils.readSubtitleNoIfo(sub, sourceVob, vobsubFile, project.getSize(), meter);
 
@@ -185,6 +180,15 @@ public class VobSource extends AbstractSource {
         }
     }
 
+    @Override
+    public Palette getSubtitlePalette() {
+        if (palette == PaletteType.CUSTOM) {
+            return customPalette;
+        } else {
+            return palette.getPalette();
+        }
+    }
+
     @Override
     public void deleteSubFile(File file) throws IOException {
         if (file != null) {
@@ -90,6 +90,25 @@ public class DeviceUtils {
         return false;
     }
 
+    /**
+     * Checks if there is a medium in the drive. The check is cheap and does not invoke
+     * external tools, so it can be used for polling.
+     *
+     * @param device
+     *            DVD device
+     * @return {@code true} if a medium is present
+     */
+    public static boolean hasMedium(File device) {
+        // The block device size is 0 if there is no medium in the drive
+        File sizeFile = new File("/sys/block/" + device.getName() + "/size");
+        try (BufferedReader r = new BufferedReader(new FileReader(sizeFile))) {
+            String line = r.readLine();
+            return line != null && Long.parseLong(line.trim()) > 0L;
+        } catch (IOException | NumberFormatException ex) {
+            return false;
+        }
+    }
+
     /**
      * Finds the mount point where a DVD is mounted.
      *
@@ -0,0 +1,117 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.system;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.shredzone.feinrip.util.Command;
+
+/**
+ * Utility class for moving large files with as little writing as possible.
+ * <p>
+ * A file is renamed if possible. If the target is on another file system, or on
+ * another subvolume, the file is cloned by reflink if the file system supports it.
+ * Only if both fail, the file is copied byte by byte.
+ * <p>
+ * Only works on Linuxoids.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class FileTransfer {
+    private static final File CP = new File("/usr/bin/cp");
+
+    // File systems that are known to support reflinks
+    private static final Set<String> REFLINK_TYPES = new HashSet<>(Arrays.asList(
+                    "btrfs", "xfs", "ocfs2", "bcachefs", "zfs"));
+
+    /**
+     * How a file was transferred.
+     */
+    public enum Method {
+        RENAME, REFLINK, COPY
+    }
+
+    private FileTransfer() {
+        // Utility class without constructor
+    }
+
+    /**
+     * Moves a file. An existing target file is replaced. The target file never appears
+     * half written, even if the file needs to be copied.
+     *
+     * @param from
+     *            {@link File} to be moved
+     * @param to
+     *            Target {@link File}
+     * @return {@link Method} that was used
+     */
+    public static Method move(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            return Method.RENAME;
+        } catch (AtomicMoveNotSupportedException ex) {
+            // Different file systems, so the file needs to be cloned...
+        }
+
+        File dir = to.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile(".feinrip-", ".part", dir);
+        try {
+            Method method = Method.COPY;
+            if (isReflinkable(from, dir) && reflink(from, tmp)) {
+                method = Method.REFLINK;
+            } else {
+                Files.copy(from.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(tmp.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(from.toPath());
+            return method;
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+     * Checks if a file could be cloned into a directory by reflink.
+     */
+    private static boolean isReflinkable(File from, File dir) throws IOException {
+        FileStore fromStore = Files.getFileStore(from.toPath());
+        FileStore toStore = Files.getFileStore(dir.toPath());
+        return REFLINK_TYPES.contains(fromStore.type()) && fromStore.type().equals(toStore.type());
+    }
+
+    /**
+     * Clones a file by reflink.
+     *
+     * @return {@code true} if successful, {@code false} if the file system refused
+     */
+    private static boolean reflink(File from, File to) {
+        try {
+            new Command(CP).param("--reflink=always", from, to).execute();
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+}
@@ -19,6 +19,7 @@ import static java.util.stream.Collectors.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -34,6 +35,7 @@ import org.shredzone.feinrip.progress.LogConsumer;
 import org.shredzone.feinrip.progress.PercentConsumer;
 import org.shredzone.feinrip.progress.ProgressMeter;
 import org.shredzone.feinrip.util.Command;
+import org.shredzone.feinrip.util.OutputCapture;
 
 /**
  * Service class for generating mkv files.
@@ -54,6 +56,9 @@ import org.shredzone.feinrip.util.Command;
 public class MkvEncoder {
     private static final File MKVMERGE  = new File("/usr/bin/mkvmerge");
 
+    // Number of lines of the identification output kept in memory, at head and tail
+    private static final int IDENTIFY_LINES = 1000;
+
     private final Map<Audio, ExtAudio> audioMap = new HashMap<>();
 
     private Project project;
@@ -118,14 +123,18 @@ public class MkvEncoder {
         mergeCmd.param("--identify");
         mergeCmd.param(vobFile);
 
-        StringBuilder sb = new StringBuilder();
-        mergeCmd.redirectOutput(sb::append);
-        mergeCmd.execute();
+        // The output is usually small, but is not kept in memory entirely if it isn't
+        try (OutputCapture capture = new OutputCapture(IDENTIFY_LINES, IDENTIFY_LINES)) {
+            mergeCmd.redirectOutput(capture);
+            mergeCmd.execute();
 
-        try {
             Map<Integer, Integer> result = new HashMap<>();
 
-            JSONObject json = (JSONObject) new JSONTokener(sb.toString()).nextValue();
+            JSONObject json;
+            try (Reader reader = capture.reader()) {
+                json = (JSONObject) new JSONTokener(reader).nextValue();
+            }
+
             JSONArray tracks = json.getJSONArray("tracks");
             for (int ix = 0; ix < tracks.length(); ix++) {
                 JSONObject t = tracks.getJSONObject(ix);
@@ -18,12 +18,16 @@ package org.shredzone.feinrip.system;
 import java.awt.Dimension;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.shredzone.feinrip.model.Audio;
+import org.shredzone.feinrip.model.Configuration;
 import org.shredzone.feinrip.model.StreamType;
 import org.shredzone.feinrip.model.Subtitle;
 import org.shredzone.feinrip.progress.FFmpegConsumer;
@@ -38,7 +42,7 @@ import org.shredzone.feinrip.util.Command;
  * Utility class for generic streaming operations.
  * <p>
  * Requires: <code>ffmpeg</code>, <code>mplayer</code>, <code>transcode</code>,
- * <code>mencoder</code> packages
+ * <code>mencoder</code>, <code>coreutils</code> packages
  *
  * @author Richard "Shred" Körber
  */
@@ -47,9 +51,20 @@ public class StreamUtils {
     private static final File MENCODER  = new File("/usr/bin/mencoder");
     private static final File MPLAYER   = new File("/usr/bin/mplayer");
     private static final File TCCAT     = new File("/usr/bin/tccat");
+    private static final File MKFIFO    = new File("/usr/bin/mkfifo");
 
     private static final String PROBESIZE = "50M";
 
+    /**
+     * Returns a stamp of the tools that are used for reading and extracting streams.
+     * It changes whenever one of the tools is updated.
+     */
+    public static String getToolStamp() {
+        return Stream.of(FFMPEG, MENCODER, MPLAYER, TCCAT)
+                .map(tool -> tool.getName() + ':' + tool.length() + ':' + tool.lastModified())
+                .collect(Collectors.joining(","));
+    }
+
     /**
      * Reads a vob stream from the given device.
      *
@@ -58,21 +73,24 @@ public class StreamUtils {
      * @param track
      *            Track number of the stream to read
      * @param out
-     *            File to write the stream to
+     *            File or named pipe to write the stream to
+     * @param watch
+     *            Growing file that shows that the rip is progressing, usually the same
+     *            as {@code out}
      * @param type
      *            {@link StreamType} to be used for streaming
      * @param meter
      *            {@link ProgressMeter} to update while streaming
      * @return {@code true} if there was an I/O error reported while reading
      */
-    public static boolean readStream(File device, int track, File out, StreamType type, ProgressMeter meter)
-                    throws IOException {
+    public static boolean readStream(File device, int track, File out, File watch, StreamType type,
+                    ProgressMeter meter) throws IOException {
         if (type == StreamType.TCCAT) {
-            return readStreamTccat(device, track, out, meter);
+            return readStreamTccat(device, track, out, watch, meter);
         }
 
         // Ignore all lines starting with "dump:" and without percent character
-        Predicate<String> noPercentPredicate = Pattern.compile("^dump\\:[^%]*$").asPredicate().negate();
+        Predicate<String> noPercentPredicate = line -> !line.startsWith("dump:") || line.indexOf('%') >= 0;
 
         PredicateLogConsumer logConsumer = new PredicateLogConsumer(meter, true,
             line -> line.contains("stream read error!")
@@ -87,6 +105,8 @@ public class StreamUtils {
 
         mplayerCmd.redirectOutput(new FilteringConsumer<String>(noPercentPredicate, new PercentConsumer(meter, false)));
         mplayerCmd.redirectError(logConsumer);
+        mplayerCmd.watch(watch);
+        mplayerCmd.watchdog(getRipWatchdogMillis());
 
         mplayerCmd.execute();
 
@@ -101,12 +121,14 @@ public class StreamUtils {
      * @param track
      *            Track number of the stream to read
      * @param out
-     *            File to write the stream to
+     *            File or named pipe to write the stream to
+     * @param watch
+     *            Growing file that shows that the rip is progressing
      * @param meter
      *            {@link ProgressMeter} to update while streaming
      * @return {@code true} if there was an I/O error reported while reading
      */
-    private static boolean readStreamTccat(File device, int track, File out, ProgressMeter meter)
+    private static boolean readStreamTccat(File device, int track, File out, File watch, ProgressMeter meter)
                     throws IOException {
         PredicateLogConsumer logConsumer = new PredicateLogConsumer(meter, true,
             Pattern.compile(".*?critical.*?Read.failed.for.\\d+.blocks.*").asPredicate()
@@ -117,13 +139,46 @@ public class StreamUtils {
         tccatCmd.param("-T", track + ",-1");
 
         tccatCmd.redirectOutput(out);
+        tccatCmd.watch(watch);
         tccatCmd.redirectError(logConsumer);
+        tccatCmd.watchdog(getRipWatchdogMillis());
 
         tccatCmd.execute();
 
         return logConsumer.hasMatched();
     }
 
+    /**
+     * Returns the configured rip watchdog time, in milliseconds. A drive that is stuck
+     * on a bad sector would otherwise block the rip for a very long time.
+     */
+    private static long getRipWatchdogMillis() {
+        return TimeUnit.MINUTES.toMillis(Configuration.global().getRipWatchdog());
+    }
+
+    /**
+     * Creates a named pipe in the temporary directory.
+     * <p>
+     * Note that opening a named pipe blocks until the other side is opened as well.
+     *
+     * @param suffix
+     *            File name suffix
+     * @return Named pipe that was created. It must be deleted after use.
+     */
+    public static File createFifo(String suffix) throws IOException {
+        File fifo = File.createTempFile("feinrip-", suffix);
+        if (!fifo.delete()) {
+            throw new IOException("Could not delete " + fifo.getAbsolutePath());
+        }
+
+        Command mkfifoCmd = new Command(MKFIFO);
+        mkfifoCmd.param("-m", "600");
+        mkfifoCmd.param(fifo);
+        mkfifoCmd.execute();
+
+        return fifo;
+    }
+
     /**
      * Extracts a subtitle from a vob file.
      * <p>
@@ -0,0 +1,118 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Signals that a piece of work was cancelled.
+ * <p>
+ * A token is entered by a thread, and is inherited by all threads that are created
+ * while it is entered. {@link Command} kills its process as soon as the token of the
+ * thread that executed it is cancelled, and long running loops are supposed to invoke
+ * {@link #check()} regularly.
+ *
+ * @author Richard "Shred" Körber
+ */
+public final class CancelToken {
+
+    private static final InheritableThreadLocal<CancelToken> CURRENT = new InheritableThreadLocal<>();
+
+    private volatile boolean cancelled = false;
+
+    /**
+     * Returns the {@link CancelToken} of the current thread, or {@code null} if there
+     * is none.
+     */
+    public static CancelToken current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Checks if the current thread was interrupted or its {@link CancelToken} was
+     * cancelled.
+     *
+     * @throws IOException
+     *             if the work was cancelled
+     */
+    public static void check() throws IOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new IOException("interrupted");
+        }
+        CancelToken token = CURRENT.get();
+        if (token != null && token.isCancelled()) {
+            throw new IOException("cancelled");
+        }
+    }
+
+    /**
+     * Sets the {@link CancelToken} of the current thread.
+     *
+     * @param token
+     *            {@link CancelToken} to set, or {@code null} to remove it
+     */
+    static void set(CancelToken token) {
+        if (token != null) {
+            CURRENT.set(token);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Enters this token for the current thread. The returned {@link Scope} must be
+     * closed by the same thread.
+     */
+    public Scope enter() {
+        Scope scope = new Scope(CURRENT.get());
+        CURRENT.set(this);
+        return scope;
+    }
+
+    /**
+     * Cancels the work. It cannot be undone.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Checks if the work was cancelled.
+     */
+    public boolean isCancelled()                { return cancelled; }
+
+    /**
+     * Restores the previous {@link CancelToken} of a thread when closed.
+     */
+    public static final class Scope implements Closeable {
+        private final CancelToken previous;
+
+        private Scope(CancelToken previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+}
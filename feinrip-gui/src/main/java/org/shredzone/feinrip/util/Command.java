@@ -15,25 +15,71 @@
  */
 package org.shredzone.feinrip.util;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.lang.ProcessBuilder.Redirect;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Stream;
 
+import org.shredzone.feinrip.jmx.FeinripMetrics;
+import org.shredzone.feinrip.model.Configuration;
+import org.shredzone.feinrip.model.ProcessPriority;
+import org.shredzone.feinrip.model.ProcessPriority.IoClass;
+
 /**
  * Helps executing shell commands.
  *
  * @author Richard "Shred" Körber
  */
 public class Command {
+    private static final File NICE = new File("/usr/bin/nice");
+    private static final File IONICE = new File("/usr/bin/ionice");
+    private static final File TASKSET = new File("/usr/bin/taskset");
+    private static final File SHELL = new File("/bin/sh");
+    private static final File PROC_SELF = new File("/proc/self/stat");
+    private static final Logger LOG = Logger.getLogger(Command.class.getName());
+    private static final long POLL_MILLIS = 100L;
+    private static final long SAMPLE_MILLIS = 500L;
+
+    // Runs the command, then writes the statistics of the shell to the accounting file.
+    // The kernel adds the CPU time and I/O of reaped children to the statistics of the
+    // parent, so they contain everything the command has used, until its very end.
+    private static final String ACCOUNTING_SCRIPT =
+                    "f=$1; shift; \"$@\"; rc=$?; cat /proc/$$/stat /proc/$$/io > \"$f\" 2>/dev/null; exit $rc";
+
+    // Stream handling of all commands shares the same threads, which are kept alive
+    // for a while so parallel pipeline stages don't keep starting new threads. The
+    // threads must not keep the context of the job that happened to create them, so
+    // each task carries the context of the thread that submitted it.
+    private static final ExecutorService STREAM_EXECUTOR = new ThreadPoolExecutor(
+                    0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+                        Thread thread = new Thread(() -> {
+                            ThreadContext.clear();
+                            r.run();
+                        }, "feinrip-command-io");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+
+    // Line buffers are reused by the stream threads
+    private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[8192]);
 
     @FunctionalInterface
     public interface IOStream {
@@ -48,6 +94,20 @@ public class Command {
     private IOStream errConsumer = stream -> stream.count();
     private Predicate<Integer> hasFailed = rc -> rc != 0;
     private byte[] inputData = null;
+    private long timeout = 0L;
+    private long watchdog = 0L;
+    private File watchFile = null;
+    private final AtomicLong outActivity = new AtomicLong();
+    private final AtomicLong errActivity = new AtomicLong();
+    private CancelToken token;
+    private Process process;
+    private long startTime;
+    private Future<?> inSpiller;
+    private Future<?> outGobbler;
+    private Future<?> errGobbler;
+    private ProcessSampler sampler;
+    private File accountingFile;
+    private CommandEvent event;
 
     /**
      * Create a new command.
@@ -109,12 +169,57 @@ public class Command {
         return this;
     }
 
+    /**
+     * Sets a deadline. If the command is still running after that time, it is killed
+     * and fails.
+     *
+     * @param millis
+     *            Maximum running time in milliseconds, or 0 for no limit (default)
+     */
+    public Command timeout(long millis) {
+        this.timeout = millis;
+        return this;
+    }
+
+    /**
+     * Sets a watchdog. If the command does not show any activity for that time, it is
+     * regarded as stuck, killed, and fails. Activity is a line on stdout or stderr. If
+     * an output file is watched, only a growing file or a line on stdout is regarded as
+     * activity, so error messages that are repeated by a stuck process on stderr do not
+     * count.
+     *
+     * @param millis
+     *            Maximum time without activity in milliseconds, or 0 for no watchdog
+     *            (default)
+     */
+    public Command watchdog(long millis) {
+        this.watchdog = millis;
+        return this;
+    }
+
+    /**
+     * Sets a file that is written by the command. The watchdog regards a growing file
+     * as activity. Files that stdout is redirected to are watched automatically.
+     * <p>
+     * The length of a named pipe cannot be watched, so it is ignored. If the command
+     * writes into a named pipe, the file that is written by the reader of the pipe
+     * should be watched instead.
+     *
+     * @param file
+     *            File to watch
+     */
+    public Command watch(File file) {
+        this.watchFile = file;
+        return this;
+    }
+
     /**
      * Redirect stdout to a {@link File}.
      */
     public void redirectOutput(File file) {
         builder.redirectOutput(file);
         outConsumer = null;
+        watchFile = file;
     }
 
     /**
@@ -164,65 +269,318 @@ public class Command {
     }
 
     /**
-     * Executes the command synchronously. The stream consumers are executed in a separate
-     * thread.
+     * Executes the command synchronously. The stream consumers are executed in separate
+     * threads, which are shared by all commands.
+     * <p>
+     * If the executing thread is interrupted, its {@link CancelToken} is cancelled, or
+     * the deadline or the watchdog is triggered, the command is killed together with
+     * all of its child processes.
      *
      * @throws IOException
      *             when the command failed to execute successfully
      */
     public void execute() throws IOException {
-        StreamSpiller inSpiller = null;
-        StreamGobbler outGobbler = null;
-        StreamGobbler errGobbler = null;
+        start();
+        finish();
+    }
 
+    /**
+     * Starts the command, and starts handling its streams.
+     */
+    private void start() throws IOException {
         System.out.print(command.get(0));
         command.stream().skip(1).map(it -> " '" + it + "'").forEach(System.out::print);
         System.out.println();
 
-        builder.command(command);
-        Process p = builder.start();
+        token = CancelToken.current();
+        CancelToken.check();
+
+        boolean sampled = ProcessMonitor.isActive();
+        List<String> cmdline = applyPriority(command);
+        if (sampled) {
+            cmdline = applyAccounting(cmdline);
+        }
+        builder.command(cmdline);
+
+        event = new CommandEvent();
+        event.begin();
+        try {
+            process = builder.start();
+        } catch (IOException ex) {
+            deleteAccountingFile();
+            throw ex;
+        }
+        startTime = System.nanoTime();
+        outActivity.set(startTime);
+        errActivity.set(startTime);
+        FeinripMetrics.global().processStarted(process);
+
+        if (sampled) {
+            sampler = new ProcessSampler(ProcessTree.getPid(process), accountingFile);
+            sampler.sample();
+        }
+
+        ThreadContext context = ThreadContext.capture();
 
         if (inputData != null) {
-            inSpiller = new StreamSpiller(p.getOutputStream(), inputData);
-            inSpiller.start();
+            inSpiller = STREAM_EXECUTOR.submit(context.wrap(
+                            new StreamSpiller(process.getOutputStream(), inputData)));
         }
 
         if (outConsumer != null) {
-            outGobbler = new StreamGobbler(p.getInputStream(), outConsumer);
-            outGobbler.start();
+            outGobbler = STREAM_EXECUTOR.submit(context.wrap(
+                            new StreamGobbler(process.getInputStream(), outConsumer, outActivity)));
         }
 
         if (errConsumer != null) {
-            errGobbler = new StreamGobbler(p.getErrorStream(), errConsumer);
-            errGobbler.start();
+            errGobbler = STREAM_EXECUTOR.submit(context.wrap(
+                            new StreamGobbler(process.getErrorStream(), errConsumer, errActivity)));
+        }
+    }
+
+    /**
+     * Waits for the started command to terminate, and for its streams being handled.
+     * The {@link ProcessStats} are reported to the {@link ProcessMonitor} if the
+     * process was sampled.
+     *
+     * @throws IOException
+     *             when the command failed to execute successfully
+     */
+    private void finish() throws IOException {
+        try {
+            waitAndHandleStreams();
+        } finally {
+            FeinripMetrics.global().processFinished(process);
+            commitEvent();
+            if (sampler != null) {
+                long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                int exitCode = (process.isAlive() ? -1 : process.exitValue());
+                ProcessMonitor.fire(sampler.finish(cmdName.getName(), exitCode, wallMillis));
+            }
+            deleteAccountingFile();
+        }
+
+        if (hasFailed.test(rc)) {
+            throw new IOException("command " + cmdName.getName()
+                + " failed, returning error code " + rc);
         }
+    }
 
+    /**
+     * Commits the Flight Recorder event of the command.
+     */
+    private void commitEvent() {
+        if (event != null && event.shouldCommit()) {
+            event.tool = cmdName.getName();
+            event.argsHash = command.hashCode();
+            event.pid = ProcessTree.getPid(process);
+            event.exitCode = (process.isAlive() ? -1 : process.exitValue());
+            event.commit();
+        }
+        event = null;
+    }
+
+    /**
+     * Waits for the started command to terminate, and for its streams being handled.
+     */
+    private void waitAndHandleStreams() throws IOException {
         try {
-            rc = p.waitFor();
+            rc = waitFor(process, token);
             if (inSpiller != null) {
-                inSpiller.join(1000L);
+                await(inSpiller, 1000L);
             }
             if (outGobbler != null) {
-                outGobbler.join();
+                await(outGobbler, 0L);
             }
             if (errGobbler != null) {
-                errGobbler.join();
+                await(errGobbler, 0L);
             }
         } catch (InterruptedException ex) {
+            ProcessTree.kill(process);
             Thread.currentThread().interrupt();
             throw new IOException("interrupted", ex);
         }
+    }
 
-        if (hasFailed.test(rc)) {
-            throw new IOException("command " + cmdName.getName()
-                + " failed, returning error code " + rc);
+    /**
+     * Waits for the process to terminate, while minding the deadline and the watchdog,
+     * and while sampling the process.
+     *
+     * @param p
+     *            {@link Process} to wait for
+     * @param token
+     *            {@link CancelToken} to mind, or {@code null}
+     * @return Return code of the process
+     */
+    private int waitFor(Process p, CancelToken token) throws InterruptedException, IOException {
+        if (timeout <= 0L && watchdog <= 0L && token == null && sampler == null) {
+            return p.waitFor();
+        }
+
+        long start = startTime;
+        long fileLength = -1L;
+        long fileActivity = start;
+        long lastSample = start;
+        while (!p.waitFor(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            long now = System.nanoTime();
+
+            if (sampler != null && now - lastSample >= TimeUnit.MILLISECONDS.toNanos(SAMPLE_MILLIS)) {
+                sampler.sample();
+                lastSample = now;
+            }
+
+            if (token != null && token.isCancelled()) {
+                ProcessTree.kill(p);
+                throw new IOException("cancelled");
+            }
+
+            if (timeout > 0L && now - start > TimeUnit.MILLISECONDS.toNanos(timeout)) {
+                ProcessTree.kill(p);
+                throw new IOException("command " + cmdName.getName()
+                    + " timed out after " + timeout + " ms");
+            }
+
+            if (watchdog > 0L) {
+                long active = Math.max(outActivity.get(), errActivity.get());
+                if (watchFile != null && (watchFile.isFile() || !watchFile.exists())) {
+                    // A missing file has not been created yet, and has a length of 0
+                    long length = watchFile.length();
+                    if (length != fileLength) {
+                        fileLength = length;
+                        fileActivity = now;
+                    }
+                    active = Math.max(fileActivity, outActivity.get());
+                }
+
+                if (now - active > TimeUnit.MILLISECONDS.toNanos(watchdog)) {
+                    ProcessTree.kill(p);
+                    throw new IOException("command " + cmdName.getName()
+                        + " seems stuck, no output for " + watchdog + " ms");
+                }
+            }
+        }
+        return p.exitValue();
+    }
+
+    /**
+     * Prepends the command line with the tools that apply the configured
+     * {@link ProcessPriority} of this command. Tools that are not installed are
+     * skipped.
+     *
+     * @param cmd
+     *            Command line
+     * @return Command line with the scheduling tools prepended
+     */
+    private List<String> applyPriority(List<String> cmd) {
+        ProcessPriority priority = Configuration.global().getToolPriority(cmdName.getName());
+        if (priority == null) {
+            return cmd;
+        }
+
+        List<String> result = new ArrayList<>();
+        if (priority.getCpus() != null && TASKSET.canExecute()) {
+            result.add(TASKSET.getAbsolutePath());
+            result.add("-c");
+            result.add(priority.getCpus());
+        }
+        if (priority.getIoClass() != null && IONICE.canExecute()) {
+            result.add(IONICE.getAbsolutePath());
+            result.add("-c");
+            result.add(String.valueOf(priority.getIoClass().getNumber()));
+            if (priority.getIoLevel() != null && priority.getIoClass() != IoClass.IDLE) {
+                result.add("-n");
+                result.add(String.valueOf(priority.getIoLevel()));
+            }
+        }
+        if (priority.getNice() != null && priority.getNice() != 0 && NICE.canExecute()) {
+            result.add(NICE.getAbsolutePath());
+            result.add("-n");
+            result.add(String.valueOf(priority.getNice()));
+        }
+        result.addAll(cmd);
+        return result;
+    }
+
+    /**
+     * Prepends the command line with a shell that accounts the resources used by the
+     * command when it has terminated. The last moments of a process cannot be sampled,
+     * so short commands would report almost nothing otherwise.
+     * <p>
+     * The shell costs an additional process per command. It becomes the started
+     * {@link Process}, so its PID is the one that is sampled, reported, and killed by
+     * the deadline, the watchdog or a cancellation. {@link ProcessTree#kill(Process)}
+     * kills the shell together with the command, as its descendant.
+     * <p>
+     * The shell is skipped if there is no {@code /proc} file system to account from,
+     * if it is not installed, and if the command does not exist, so starting the
+     * command still fails then.
+     *
+     * @param cmd
+     *            Command line
+     * @return Command line with the accounting shell prepended
+     */
+    private List<String> applyAccounting(List<String> cmd) {
+        if (!PROC_SELF.exists() || !SHELL.canExecute() || !cmdName.canExecute()) {
+            return cmd;
+        }
+
+        try {
+            accountingFile = File.createTempFile("feinrip-", ".acct");
+        } catch (IOException ex) {
+            LOG.log(Level.FINE, "Could not create accounting file, only sampling", ex);
+            return cmd;
+        }
+
+        List<String> result = new ArrayList<>();
+        result.add(SHELL.getAbsolutePath());
+        result.add("-c");
+        result.add(ACCOUNTING_SCRIPT);
+        result.add(SHELL.getName());
+        result.add(accountingFile.getAbsolutePath());
+        result.addAll(cmd);
+        return result;
+    }
+
+    /**
+     * Deletes the accounting file, if there is one.
+     */
+    private void deleteAccountingFile() {
+        if (accountingFile != null) {
+            if (!accountingFile.delete() && accountingFile.exists()) {
+                LOG.log(Level.WARNING, "Could not delete accounting file {0}", accountingFile);
+            }
+            accountingFile = null;
+        }
+    }
+
+    /**
+     * Waits for a stream task to complete. A failure of the task is logged, but does not
+     * make the command fail.
+     *
+     * @param task
+     *            Stream task
+     * @param timeout
+     *            Maximum time to wait in milliseconds, or 0 to wait until completion
+     */
+    private void await(Future<?> task, long timeout) throws InterruptedException {
+        try {
+            if (timeout > 0L) {
+                task.get(timeout, TimeUnit.MILLISECONDS);
+            } else {
+                task.get();
+            }
+        } catch (ExecutionException ex) {
+            LOG.log(Level.WARNING, "Stream handling of " + cmdName.getName() + " failed", ex.getCause());
+        } catch (TimeoutException ex) {
+            // The process does not read its input, so just give up
+            task.cancel(true);
         }
     }
 
     /**
-     * A {@link Thread} that writes to the {@link OutputStream}.
+     * A task that writes to the {@link OutputStream}.
      */
-    private static class StreamSpiller extends Thread {
+    private static class StreamSpiller implements Callable<Void> {
         private final OutputStream out;
         private final byte[] data;
 
@@ -232,34 +590,34 @@ public class Command {
         }
 
         @Override
-        public void run() {
+        public Void call() throws IOException {
             try (OutputStream o = out) { // auto-close after write
                 o.write(data);
-            } catch (IOException ex) {
-                throw new RuntimeException("Failed writing stream", ex);
             }
+            return null;
         }
     }
 
     /**
-     * A {@link Thread} that reads the {@link InputStream} and feeds an {@link IOStream}.
+     * A task that reads the {@link InputStream} and feeds an {@link IOStream}.
      */
-    private static class StreamGobbler extends Thread {
+    private static class StreamGobbler implements Callable<Void> {
         private final InputStream in;
         private final IOStream consumer;
+        private final AtomicLong activity;
 
-        public StreamGobbler(InputStream in, IOStream consumer) {
+        public StreamGobbler(InputStream in, IOStream consumer, AtomicLong activity) {
             this.in = in;
             this.consumer = consumer;
+            this.activity = activity;
         }
 
         @Override
-        public void run() {
-            try (BufferedReader r = new BufferedReader(new InputStreamReader(in))) {
-                consumer.accept(r.lines());
-            } catch (IOException ex) {
-                throw new RuntimeException("Failed reading stream", ex);
+        public Void call() throws IOException {
+            try (LineReader r = new LineReader(in, Charset.defaultCharset(), BUFFERS.get())) {
+                consumer.accept(r.lines().peek(line -> activity.set(System.nanoTime())));
             }
+            return null;
         }
     }
 
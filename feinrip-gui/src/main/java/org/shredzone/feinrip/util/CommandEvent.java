@@ -0,0 +1,51 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of running a {@link Command}, from spawning the process until
+ * it has terminated. Only a hash of the arguments is recorded, as they may contain
+ * private file names.
+ *
+ * @author Richard "Shred" Körber
+ */
+@Name("org.shredzone.feinrip.Command")
+@Label("Command")
+@Description("An external tool, from spawn to exit")
+@Category({"Feinrip", "Command"})
+@StackTrace(false)
+class CommandEvent extends Event {
+
+    @Label("Tool")
+    String tool;
+
+    @Label("Arguments Hash")
+    int argsHash;
+
+    @Label("Process ID")
+    long pid;
+
+    @Label("Exit Code")
+    int exitCode;
+
+}
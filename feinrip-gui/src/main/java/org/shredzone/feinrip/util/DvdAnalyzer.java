@@ -105,6 +105,7 @@ public class DvdAnalyzer {
 
             long lengthSec = title.getTotalTimeMs() / 1000L;
             track.setLength(String.format("%d:%02d", (int) (lengthSec / 60), (int) (lengthSec % 60)));
+            track.setDuration(title.getTotalTimeMs());
             track.setAspect(AspectRatio.valueOf(vts.getAspect().name()));
 
             result[ix] = track;
@@ -0,0 +1,89 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+
+/**
+ * Keeps a continuous Flight Recorder recording of the recent past, so it can be dumped
+ * when a job failed.
+ *
+ * @author Richard "Shred" Körber
+ */
+public final class FlightRecording {
+    private static final Logger LOG = Logger.getLogger(FlightRecording.class.getName());
+
+    private static final Duration MAX_AGE = Duration.ofMinutes(30);
+
+    private static Recording recording;
+
+    private FlightRecording() {
+        // utility class without constructor
+    }
+
+    /**
+     * Starts the continuous recording, unless it is already running. Failures are
+     * only logged, as the recording is not essential.
+     */
+    public static synchronized void start() {
+        if (recording != null) {
+            return;
+        }
+
+        try {
+            Recording r = new Recording(Configuration.getConfiguration("default"));
+            r.setName("feinrip");
+            r.setToDisk(true);
+            r.setMaxAge(MAX_AGE);
+            r.start();
+            recording = r;
+        } catch (IOException | ParseException | IllegalStateException | SecurityException ex) {
+            LOG.log(Level.WARNING, "Could not start flight recording", ex);
+        }
+    }
+
+    /**
+     * Dumps a snapshot of all running recordings to the given file.
+     *
+     * @param file
+     *            File to write the recording to
+     * @return {@code true} if the recording was written, {@code false} if there was
+     *         no running recording
+     */
+    public static boolean dump(File file) throws IOException {
+        if (!FlightRecorder.isAvailable()) {
+            return false;
+        }
+
+        try (Recording snapshot = FlightRecorder.getFlightRecorder().takeSnapshot()) {
+            if (snapshot.getSize() == 0) {
+                return false;
+            }
+            snapshot.dump(file.toPath());
+            return true;
+        }
+    }
+
+}
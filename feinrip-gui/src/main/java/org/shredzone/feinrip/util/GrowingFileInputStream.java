@@ -0,0 +1,127 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link InputStream} that reads a file while it is still being written.
+ * <p>
+ * When the current end of the file is reached, reading blocks until the writer has
+ * appended more data. The end of stream is only signalled after {@link #finish()} was
+ * invoked and all data has been read. If the writer failed, {@link #abort()} makes
+ * all pending and further reads fail.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class GrowingFileInputStream extends InputStream {
+
+    // Maximum time to wait for the file to grow, in milliseconds
+    private static final long POLL_INTERVAL = 100L;
+
+    private final FileInputStream in;
+    private final Object lock = new Object();
+    private final byte[] single = new byte[1];
+    private volatile boolean finished = false;
+    private volatile boolean aborted = false;
+
+    /**
+     * Creates a new {@link GrowingFileInputStream}.
+     *
+     * @param file
+     *            File to read. It must exist, but may still be empty.
+     */
+    public GrowingFileInputStream(File file) throws IOException {
+        this.in = new FileInputStream(file);
+    }
+
+    /**
+     * Signals that the writer has completed the file. Readers will get the end of
+     * stream after all remaining data was read.
+     */
+    public void finish() {
+        finished = true;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Signals that the writer has failed. All pending and further reads will fail.
+     */
+    public void abort() {
+        aborted = true;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int len = read(single, 0, 1);
+        return len < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (true) {
+            if (aborted) {
+                throw new IOException("Writer was aborted");
+            }
+
+            // Check before reading, so the last data written before finishing is read
+            boolean done = finished;
+
+            int result = in.read(b, off, len);
+            if (result > 0) {
+                return result;
+            }
+
+            if (done) {
+                return -1;
+            }
+
+            try {
+                synchronized (lock) {
+                    if (!finished && !aborted) {
+                        lock.wait(POLL_INTERVAL);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted", ex);
+            }
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        return in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads lines from an {@link InputStream}.
+ * <p>
+ * Like {@link java.io.BufferedReader#readLine()}, lines are terminated by LF, CR, or
+ * CR LF. Progress output of the tools is usually terminated by CR only. The stream is
+ * read into a byte buffer that is reused for all lines, and only the resulting line
+ * is decoded. The charset must be ASCII compatible, so line terminators can be found
+ * in the raw bytes.
+ * <p>
+ * The buffer can be passed in, so it can be reused by subsequent readers. It is grown
+ * if a line does not fit in.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class LineReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+    private final Charset charset;
+    private byte[] buf;
+    private int pos = 0;
+    private int limit = 0;
+    private boolean skipLf = false;
+    private boolean eof = false;
+
+    /**
+     * Creates a new {@link LineReader} using the default charset.
+     *
+     * @param in
+     *            {@link InputStream} to read from
+     */
+    public LineReader(InputStream in) {
+        this(in, Charset.defaultCharset(), new byte[BUFFER_SIZE]);
+    }
+
+    /**
+     * Creates a new {@link LineReader}.
+     *
+     * @param in
+     *            {@link InputStream} to read from
+     * @param charset
+     *            ASCII compatible {@link Charset} of the stream
+     * @param buffer
+     *            Buffer to be used. It must not be used by anyone else while this
+     *            reader is in use.
+     */
+    public LineReader(InputStream in, Charset charset, byte[] buffer) {
+        this.in = in;
+        this.charset = charset;
+        this.buf = buffer;
+    }
+
+    /**
+     * Reads the next line.
+     *
+     * @return Line without line terminator, or {@code null} if the end of stream was
+     *         reached
+     */
+    public String readLine() throws IOException {
+        int start = pos;
+        while (true) {
+            for (int ix = pos; ix < limit; ix++) {
+                byte b = buf[ix];
+                if (skipLf) {
+                    skipLf = false;
+                    if (b == '\n') {
+                        start++;
+                        continue;
+                    }
+                }
+                if (b == '\n' || b == '\r') {
+                    String line = new String(buf, start, ix - start, charset);
+                    pos = ix + 1;
+                    skipLf = (b == '\r');
+                    return line;
+                }
+            }
+
+            if (eof) {
+                pos = limit;
+                return (limit > start ? new String(buf, start, limit - start, charset) : null);
+            }
+
+            // Move the incomplete line to the start of the buffer, and read more
+            int length = limit - start;
+            if (length == buf.length) {
+                byte[] larger = new byte[buf.length * 2];
+                System.arraycopy(buf, start, larger, 0, length);
+                buf = larger;
+            } else if (start > 0) {
+                System.arraycopy(buf, start, buf, 0, length);
+            }
+            start = 0;
+            pos = length;
+            limit = length;
+
+            int read = in.read(buf, limit, buf.length - limit);
+            if (read < 0) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+        }
+    }
+
+    /**
+     * Returns a {@link Stream} of all remaining lines. {@link IOException} are wrapped
+     * into {@link UncheckedIOException}.
+     */
+    public Stream<String> lines() {
+        Iterator<String> it = new Iterator<String>() {
+            private String next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = readLine();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String result = next;
+                next = null;
+                return result;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it,
+                        Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
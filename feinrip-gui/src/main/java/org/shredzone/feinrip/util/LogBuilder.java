@@ -15,41 +15,133 @@
  */
 package org.shredzone.feinrip.util;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Map;
+import java.util.logging.Logger;
+
 /**
  * A builder for log outputs. It also compresses duplicate lines, to reduce output.
  * <p>
  * The builder is line oriented. Each append is a single line. There is no need to add
  * line feed characters.
+ * <p>
+ * Damaged discs may produce hundreds of thousands of error lines. Only the beginning
+ * and the end of the log are kept in memory, see {@link OutputCapture}. The full log
+ * can be saved with {@link #save(File)}.
+ * <p>
+ * Lines reporting read errors, warnings and errors of the tools are counted, including
+ * the duplicates. The counts are appended to the saved log, see {@link #getCounts()}.
+ * <p>
+ * Log views are updated incrementally. {@link #drain(Collection)} returns the lines
+ * that have been written since the last invocation. This class is thread safe.
  *
  * @author Richard "Shred" Körber
  */
 public class LogBuilder implements Appendable {
+    private static final Logger LOG = Logger.getLogger(LogBuilder.class.getName());
+
+    // Number of lines kept at the beginning and at the end of the log
+    private static final int HEAD_LINES = 500;
+    private static final int TAIL_LINES = 5000;
 
-    private final StringBuilder sb = new StringBuilder();
+    private final OutputCapture capture = new OutputCapture(HEAD_LINES, TAIL_LINES)
+                    .count("stream read errors", line -> line.contains("stream read error")) // mplayer
+                    .count("warnings", line -> line.startsWith("Warning:"))   // mkvmerge
+                    .count("errors", line -> line.startsWith("Error:"));      // mkvmerge
+    private final Deque<String> pending = new ArrayDeque<>();
     private String lastLine;
     private int lastLineCounter;
 
     /**
-     * Clears the builder, so it can be reused.
+     * Returns the number of read errors, warnings and errors that have been logged.
      */
-    public void clear() {
-        sb.setLength(0);
+    public Map<String, Long> getCounts() {
+        return capture.getCounts();
+    }
+
+    /**
+     * Clears the builder, so it can be reused. The counts of the previous log are
+     * logged if there were any.
+     */
+    public synchronized void clear() {
+        Map<String, Long> counts = capture.getCounts();
+        if (counts.values().stream().anyMatch(c -> c > 0)) {
+            LOG.info("Log contained " + counts);
+        }
+        capture.clear();
+        pending.clear();
+        lastLine = null;
+        lastLineCounter = 0;
+    }
+
+    /**
+     * Moves all lines that have been written since the last invocation to the given
+     * collection. If the lines were not drained for a long time, only the last lines
+     * are returned.
+     * <p>
+     * The last line may still be repeated, so the line multiplicator of the last line
+     * is not drained, but returned instead.
+     *
+     * @param lines
+     *            {@link Collection} to add the new lines to
+     * @return Number of repetitions of the last line, or 0 if there were none so far
+     */
+    public synchronized int drain(Collection<String> lines) {
+        lines.addAll(pending);
+        pending.clear();
+        return lastLineCounter;
+    }
+
+    /**
+     * Saves the full log to a file.
+     *
+     * @param file
+     *            File to write to
+     */
+    public synchronized void save(File file) throws IOException {
+        try (Reader in = capture.reader();
+             Writer out = new BufferedWriter(new OutputStreamWriter(
+                             new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            char[] buffer = new char[8192];
+            int len;
+            while ((len = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, len);
+            }
+            if (lastLineCounter > 0) {
+                out.write(" × " + lastLineCounter + "\n");
+            }
+            for (Map.Entry<String, Long> count : capture.getCounts().entrySet()) {
+                out.write("-- " + count.getKey() + ": " + count.getValue() + "\n");
+            }
+        }
     }
 
     private void writeln(String line) {
-        if (sb.length() > 0) {
-            sb.append("\n");
+        capture.accept(line);
+        if (pending.size() >= TAIL_LINES) {
+            pending.removeFirst();
         }
-        sb.append(line);
+        pending.addLast(line);
         System.out.println(line); // DEBUG
     }
 
     @Override
-    public Appendable append(CharSequence csq) {
+    public synchronized Appendable append(CharSequence csq) {
         String line = csq.toString();
 
         // Count and ignore duplicated lines
         if (line.equals(lastLine)) {
+            capture.repeat(line);
             lastLineCounter++;
             return this;
         }
@@ -77,13 +169,14 @@ public class LogBuilder implements Appendable {
     }
 
     @Override
-    public String toString() {
+    public synchronized String toString() {
+        String log = capture.toString();
         if (lastLineCounter > 0) {
-            StringBuilder result = new StringBuilder(sb);
+            StringBuilder result = new StringBuilder(log);
             result.append("\n × ").append(lastLineCounter);
             return result.toString();
         } else {
-            return sb.toString();
+            return log;
         }
     }
 
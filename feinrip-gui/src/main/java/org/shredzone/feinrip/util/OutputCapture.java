@@ -0,0 +1,289 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.util;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Captures the line output of a command with a bounded amount of memory.
+ * <p>
+ * The first lines (head) and the last lines (tail) are kept in memory. All lines in
+ * between are spilled to a compressed temporary file, so the entire output can still
+ * be read by {@link #reader()}. The number of lines, and the number of lines matching
+ * each registered pattern, are counted for the entire output.
+ * <p>
+ * The spill file is deleted when the capture is closed or cleared, so the capture must
+ * always be closed after use.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class OutputCapture implements Consumer<String>, Closeable {
+    private static final Logger LOG = Logger.getLogger(OutputCapture.class.getName());
+
+    private final int headLimit;
+    private final int tailLimit;
+    private final List<String> head = new ArrayList<>();
+    private final Deque<String> tail = new ArrayDeque<>();
+    private final Map<String, Predicate<String>> patterns = new LinkedHashMap<>();
+    private final Map<String, Long> counts = new LinkedHashMap<>();
+    private long lines = 0;
+    private long spilled = 0;
+    private File spillFile;
+    private Writer spillWriter;
+    private boolean spillFailed = false;
+
+    /**
+     * Creates a new {@link OutputCapture}.
+     *
+     * @param headLimit
+     *            Number of lines to keep at the beginning of the output
+     * @param tailLimit
+     *            Number of lines to keep at the end of the output
+     */
+    public OutputCapture(int headLimit, int tailLimit) {
+        this.headLimit = Math.max(headLimit, 0);
+        this.tailLimit = Math.max(tailLimit, 0);
+    }
+
+    /**
+     * Counts the lines that match a pattern.
+     *
+     * @param name
+     *            Name of the counter
+     * @param pattern
+     *            Pattern that is tested on each line
+     */
+    public synchronized OutputCapture count(String name, Predicate<String> pattern) {
+        patterns.put(name, pattern);
+        counts.put(name, 0L);
+        return this;
+    }
+
+    @Override
+    public synchronized void accept(String line) {
+        lines++;
+        countMatches(line);
+
+        if (head.size() < headLimit) {
+            head.add(line);
+            return;
+        }
+
+        tail.addLast(line);
+        if (tail.size() > tailLimit) {
+            spill(tail.removeFirst());
+        }
+    }
+
+    /**
+     * Counts a repetition of a line that is summarized by the caller instead of being
+     * captured again. Only the pattern counters are updated.
+     *
+     * @param line
+     *            Repeated line
+     */
+    public synchronized void repeat(String line) {
+        countMatches(line);
+    }
+
+    /**
+     * Number of lines that have been captured.
+     */
+    public synchronized long getLineCount()     { return lines; }
+
+    /**
+     * Number of lines that were spilled to disk.
+     */
+    public synchronized long getSpilledLineCount() { return spilled; }
+
+    /**
+     * Number of lines that matched the pattern of the given counter, or 0 if there is
+     * no such counter.
+     */
+    public synchronized long getCount(String name) {
+        return counts.getOrDefault(name, 0L);
+    }
+
+    /**
+     * Returns all counters and their values.
+     */
+    public synchronized Map<String, Long> getCounts() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(counts));
+    }
+
+    /**
+     * Returns the lines at the beginning of the output.
+     */
+    public synchronized List<String> getHead() {
+        return Collections.unmodifiableList(new ArrayList<>(head));
+    }
+
+    /**
+     * Returns the lines at the end of the output. They do not overlap with the head.
+     */
+    public synchronized List<String> getTail() {
+        return Collections.unmodifiableList(new ArrayList<>(tail));
+    }
+
+    /**
+     * Returns a {@link Reader} for the entire output. Lines are separated by LF.
+     * <p>
+     * It contains the lines that were captured when this method was invoked. The
+     * capture must not be closed while the reader is in use.
+     */
+    public synchronized Reader reader() throws IOException {
+        List<InputStream> parts = new ArrayList<>();
+        parts.add(toStream(head));
+        if (spillWriter != null) {
+            // Complete the compressed stream. Further lines are spilled to a new
+            // member, which is read transparently.
+            spillWriter.close();
+            spillWriter = null;
+        }
+        if (spillFile != null) {
+            parts.add(new GZIPInputStream(new FileInputStream(spillFile)));
+        }
+        parts.add(toStream(tail));
+        return new BufferedReader(new InputStreamReader(
+                        new SequenceInputStream(Collections.enumeration(parts)),
+                        StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Clears all captured lines and counters, and deletes the spill file. The patterns
+     * are kept.
+     */
+    public synchronized void clear() {
+        closeSpill();
+        head.clear();
+        tail.clear();
+        counts.replaceAll((k, v) -> 0L);
+        lines = 0;
+        spilled = 0;
+        spillFailed = false;
+    }
+
+    @Override
+    public synchronized void close() {
+        closeSpill();
+    }
+
+    /**
+     * Returns the head and the tail of the output. Spilled lines are replaced by a
+     * marker line.
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        head.forEach(line -> sb.append(line).append('\n'));
+        if (spilled > 0) {
+            sb.append("[... ").append(spilled).append(" lines omitted ...]\n");
+        }
+        tail.forEach(line -> sb.append(line).append('\n'));
+        if (sb.length() > 0) {
+            sb.setLength(sb.length() - 1);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes a line to the spill file. If the spill file cannot be written, the line
+     * is dropped, but still counted. Failing instead would stop reading the output,
+     * and block the command.
+     */
+    private void spill(String line) {
+        spilled++;
+        if (spillFailed) {
+            return;
+        }
+        try {
+            if (spillWriter == null) {
+                if (spillFile == null) {
+                    spillFile = File.createTempFile("feinrip-output-", ".log.gz");
+                }
+                OutputStream out = new GZIPOutputStream(new BufferedOutputStream(
+                                new FileOutputStream(spillFile, true)));
+                spillWriter = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            }
+            spillWriter.write(line);
+            spillWriter.write('\n');
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "Could not spill output, dropping lines", ex);
+            spillFailed = true;
+        }
+    }
+
+    private void countMatches(String line) {
+        for (Map.Entry<String, Predicate<String>> e : patterns.entrySet()) {
+            if (e.getValue().test(line)) {
+                counts.merge(e.getKey(), 1L, Long::sum);
+            }
+        }
+    }
+
+    private void closeSpill() {
+        try {
+            if (spillWriter != null) {
+                spillWriter.close();
+            }
+        } catch (IOException ex) {
+            // ignore, the file is deleted anyway
+        } finally {
+            spillWriter = null;
+            if (spillFile != null) {
+                if (!spillFile.delete()) {
+                    LOG.log(Level.WARNING, "Could not delete spill file {0}", spillFile);
+                }
+                spillFile = null;
+            }
+        }
+    }
+
+    private static InputStream toStream(Iterable<String> lines) {
+        StringBuilder sb = new StringBuilder();
+        lines.forEach(line -> sb.append(line).append('\n'));
+        return new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+}
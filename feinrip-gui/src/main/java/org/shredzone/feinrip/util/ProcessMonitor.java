@@ -0,0 +1,157 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.util;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Distributes the {@link ProcessStats} of terminated external processes to
+ * {@link ProcessStatsListener}.
+ * <p>
+ * Listeners are either global, or registered for the current thread. Thread
+ * listeners are inherited by all threads that are created while they are registered,
+ * and are stacked, so a process is reported to all listeners of the enclosing scopes.
+ * <p>
+ * Processes are only sampled if there is at least one listener.
+ *
+ * @author Richard "Shred" Körber
+ */
+public final class ProcessMonitor {
+    private static final Logger LOG = Logger.getLogger(ProcessMonitor.class.getName());
+
+    private static final InheritableThreadLocal<Node> CURRENT = new InheritableThreadLocal<>();
+    private static final List<ProcessStatsListener> GLOBAL = new CopyOnWriteArrayList<>();
+
+    private ProcessMonitor() {
+        // utility class without constructor
+    }
+
+    /**
+     * Adds a listener for all processes of the current thread, and all threads that
+     * are created while it is registered. The returned {@link Scope} must be closed by
+     * the same thread.
+     *
+     * @param listener
+     *            {@link ProcessStatsListener} to add
+     */
+    public static Scope listen(ProcessStatsListener listener) {
+        Node previous = CURRENT.get();
+        CURRENT.set(new Node(listener, previous));
+        return new Scope(previous);
+    }
+
+    /**
+     * Adds a listener for all processes.
+     */
+    public static void addGlobalListener(ProcessStatsListener listener) {
+        GLOBAL.add(listener);
+    }
+
+    /**
+     * Removes a global listener.
+     */
+    public static void removeGlobalListener(ProcessStatsListener listener) {
+        GLOBAL.remove(listener);
+    }
+
+    /**
+     * Returns the listeners of the current thread, or {@code null} if there are none.
+     */
+    static Node current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Sets the listeners of the current thread.
+     *
+     * @param node
+     *            Listeners that were returned by {@link #current()}, or {@code null} to
+     *            remove all listeners
+     */
+    static void set(Node node) {
+        if (node != null) {
+            CURRENT.set(node);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Checks if processes of the current thread need to be sampled.
+     */
+    static boolean isActive() {
+        return CURRENT.get() != null || !GLOBAL.isEmpty();
+    }
+
+    /**
+     * Reports a terminated process to all listeners of the current thread, and to the
+     * global listeners.
+     */
+    static void fire(ProcessStats stats) {
+        for (Node node = CURRENT.get(); node != null; node = node.parent) {
+            notify(node.listener, stats);
+        }
+        for (ProcessStatsListener listener : GLOBAL) {
+            notify(listener, stats);
+        }
+    }
+
+    private static void notify(ProcessStatsListener listener, ProcessStats stats) {
+        try {
+            listener.processFinished(stats);
+        } catch (RuntimeException ex) {
+            LOG.log(Level.WARNING, "Process stats listener failed", ex);
+        }
+    }
+
+    /**
+     * Removes the listener of the current thread when closed.
+     */
+    public static final class Scope implements Closeable {
+        private final Node previous;
+
+        private Scope(Node previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * A stack of thread listeners.
+     */
+    static final class Node {
+        private final ProcessStatsListener listener;
+        private final Node parent;
+
+        public Node(ProcessStatsListener listener, Node parent) {
+            this.listener = listener;
+            this.parent = parent;
+        }
+    }
+
+}
@@ -0,0 +1,246 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Samples the resources used by a process tree from {@code /proc}.
+ * <p>
+ * The counters of each process only grow, so the last sample of each process is
+ * kept, and the samples of all processes are summed up at the end. The resident set
+ * size is the peak of the entire tree in a single sample, or the peak of a single
+ * process, whatever is larger.
+ * <p>
+ * Processes that terminate between two samples, and the last moments of a process,
+ * cannot be sampled. If the command was run by the accounting shell of
+ * {@link Command}, the CPU time and I/O are taken from the statistics the shell has
+ * written after the command terminated. The resident set size and the context
+ * switches are always sampled.
+ *
+ * @author Richard "Shred" Körber
+ */
+class ProcessSampler {
+    private static final Path PROC = Paths.get("/proc");
+
+    // USER_HZ is fixed to 100 on Linux
+    private static final long MILLIS_PER_TICK = 10L;
+
+    // Indexes of the counters
+    static final int USER = 0;
+    static final int SYSTEM = 1;
+    static final int READ_BYTES = 2;
+    static final int WRITE_BYTES = 3;
+    static final int READ_CHARS = 4;
+    static final int WRITE_CHARS = 5;
+    static final int VOLUNTARY = 6;
+    static final int INVOLUNTARY = 7;
+    private static final int COUNTERS = 8;
+
+    private final long pid;
+    private final File accountingFile;
+    private final Map<Long, long[]> counters = new HashMap<>();
+    private long peakRssKib = 0L;
+
+    /**
+     * Creates a new {@link ProcessSampler}.
+     *
+     * @param pid
+     *            PID of the root process, or -1 if unknown
+     * @param accountingFile
+     *            File the accounting shell writes its statistics to, or {@code null}
+     *            if the command is not run by the accounting shell
+     */
+    ProcessSampler(long pid, File accountingFile) {
+        this.pid = pid;
+        this.accountingFile = accountingFile;
+    }
+
+    /**
+     * Takes a sample of the process and all of its descendants.
+     */
+    void sample() {
+        if (pid <= 0) {
+            return;
+        }
+
+        List<Long> tree = new ArrayList<>();
+        tree.add(pid);
+        ProcessTree.collectDescendants(pid, tree);
+
+        long rssKib = 0L;
+        for (Long p : tree) {
+            Path dir = PROC.resolve(p.toString());
+            long[] values = new long[COUNTERS];
+            try {
+                readStat(dir.resolve("stat"), values);
+                long[] rss = readStatus(dir.resolve("status"), values);
+                readIo(dir.resolve("io"), values);
+                rssKib += rss[0];
+                peakRssKib = Math.max(peakRssKib, rss[1]);
+            } catch (IOException | RuntimeException ex) {
+                // The process has terminated meanwhile, keep its previous sample
+                continue;
+            }
+            counters.merge(p, values, ProcessSampler::max);
+        }
+        peakRssKib = Math.max(peakRssKib, rssKib);
+    }
+
+    /**
+     * Returns the resulting {@link ProcessStats}.
+     *
+     * @param command
+     *            Command name
+     * @param exitCode
+     *            Exit code of the root process
+     * @param wallMillis
+     *            Running time of the root process
+     */
+    ProcessStats finish(String command, int exitCode, long wallMillis) {
+        long[] totals = new long[COUNTERS];
+        for (long[] values : counters.values()) {
+            for (int ix = 0; ix < COUNTERS; ix++) {
+                totals[ix] += values[ix];
+            }
+        }
+        boolean accounted = readAccounting(totals);
+        return new ProcessStats(command, pid, exitCode, wallMillis, totals, peakRssKib,
+                        counters.size(), accounted);
+    }
+
+    /**
+     * Reads the statistics that the accounting shell has written after the command
+     * terminated, and uses them for all counters they are larger for.
+     *
+     * @return {@code true} if the statistics were read, {@code false} if only the
+     *         samples are available
+     */
+    private boolean readAccounting(long[] totals) {
+        if (accountingFile == null) {
+            return false;
+        }
+
+        try {
+            List<String> lines = Files.readAllLines(accountingFile.toPath(), StandardCharsets.US_ASCII);
+            if (lines.isEmpty()) {
+                return false;
+            }
+
+            // The shell's own times, plus the times of its reaped children
+            String[] fields = statFields(lines.get(0));
+            long[] values = new long[COUNTERS];
+            values[USER] = (Long.parseLong(fields[11]) + Long.parseLong(fields[13])) * MILLIS_PER_TICK;
+            values[SYSTEM] = (Long.parseLong(fields[12]) + Long.parseLong(fields[14])) * MILLIS_PER_TICK;
+            parseIo(lines.subList(1, lines.size()), values);
+
+            for (int ix : new int[] {USER, SYSTEM, READ_BYTES, WRITE_BYTES, READ_CHARS, WRITE_CHARS}) {
+                totals[ix] = Math.max(totals[ix], values[ix]);
+            }
+            return true;
+        } catch (IOException | RuntimeException ex) {
+            // The command was killed before the shell could write its statistics
+            return false;
+        }
+    }
+
+    private static void readStat(Path stat, long[] values) throws IOException {
+        String[] fields = statFields(new String(Files.readAllBytes(stat), StandardCharsets.US_ASCII));
+        values[USER] = Long.parseLong(fields[11]) * MILLIS_PER_TICK;
+        values[SYSTEM] = Long.parseLong(fields[12]) * MILLIS_PER_TICK;
+    }
+
+    /**
+     * Splits a stat line into its fields, starting with the state.
+     */
+    private static String[] statFields(String line) {
+        // The command name may contain spaces and brackets, so start after the last ')'
+        return line.substring(line.lastIndexOf(')') + 2).split(" ");
+    }
+
+    /**
+     * Reads the context switches from the status file.
+     *
+     * @return Current and peak resident set size, in KiB
+     */
+    private static long[] readStatus(Path status, long[] values) throws IOException {
+        long[] rss = new long[2];
+        for (String line : Files.readAllLines(status, StandardCharsets.UTF_8)) {
+            if (line.startsWith("VmRSS:")) {
+                rss[0] = parseValue(line);
+            } else if (line.startsWith("VmHWM:")) {
+                rss[1] = parseValue(line);
+            } else if (line.startsWith("voluntary_ctxt_switches:")) {
+                values[VOLUNTARY] = parseValue(line);
+            } else if (line.startsWith("nonvoluntary_ctxt_switches:")) {
+                values[INVOLUNTARY] = parseValue(line);
+            }
+        }
+        return rss;
+    }
+
+    private static void readIo(Path io, long[] values) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(io, StandardCharsets.US_ASCII);
+        } catch (IOException ex) {
+            // Not readable in some containers, keep the other values
+            return;
+        }
+        parseIo(lines, values);
+    }
+
+    private static void parseIo(List<String> lines, long[] values) {
+        for (String line : lines) {
+            if (line.startsWith("read_bytes:")) {
+                values[READ_BYTES] = parseValue(line);
+            } else if (line.startsWith("write_bytes:")) {
+                values[WRITE_BYTES] = parseValue(line);
+            } else if (line.startsWith("rchar:")) {
+                values[READ_CHARS] = parseValue(line);
+            } else if (line.startsWith("wchar:")) {
+                values[WRITE_CHARS] = parseValue(line);
+            }
+        }
+    }
+
+    /**
+     * Parses the number of a "key: value [unit]" line.
+     */
+    private static long parseValue(String line) {
+        String value = line.substring(line.indexOf(':') + 1).trim();
+        int space = value.indexOf(' ');
+        return Long.parseLong(space >= 0 ? value.substring(0, space) : value);
+    }
+
+    private static long[] max(long[] a, long[] b) {
+        long[] result = new long[COUNTERS];
+        for (int ix = 0; ix < COUNTERS; ix++) {
+            result[ix] = Math.max(a[ix], b[ix]);
+        }
+        return result;
+    }
+
+}
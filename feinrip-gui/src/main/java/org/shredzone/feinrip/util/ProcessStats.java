@@ -0,0 +1,176 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.util;
+
+import org.json.JSONObject;
+
+/**
+ * Resources used by an external process and all of its child processes.
+ * <p>
+ * The values are sampled from {@code /proc} while the process is running, so
+ * processes that terminate between two samples, and the last moments of a process,
+ * may be missing. If the statistics are {@link #isAccounted() accounted}, the CPU time
+ * and the I/O were also taken after the process has terminated, and are complete. The
+ * peak resident set size and the context switches are always sampled.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class ProcessStats {
+
+    private final String command;
+    private final long pid;
+    private final int exitCode;
+    private final long wallMillis;
+    private final long userMillis;
+    private final long systemMillis;
+    private final long peakRssKib;
+    private final long readBytes;
+    private final long writeBytes;
+    private final long readChars;
+    private final long writeChars;
+    private final long voluntarySwitches;
+    private final long involuntarySwitches;
+    private final int processes;
+    private final boolean accounted;
+
+    ProcessStats(String command, long pid, int exitCode, long wallMillis, long[] totals,
+                    long peakRssKib, int processes, boolean accounted) {
+        this.command = command;
+        this.pid = pid;
+        this.exitCode = exitCode;
+        this.wallMillis = wallMillis;
+        this.userMillis = totals[ProcessSampler.USER];
+        this.systemMillis = totals[ProcessSampler.SYSTEM];
+        this.readBytes = totals[ProcessSampler.READ_BYTES];
+        this.writeBytes = totals[ProcessSampler.WRITE_BYTES];
+        this.readChars = totals[ProcessSampler.READ_CHARS];
+        this.writeChars = totals[ProcessSampler.WRITE_CHARS];
+        this.voluntarySwitches = totals[ProcessSampler.VOLUNTARY];
+        this.involuntarySwitches = totals[ProcessSampler.INVOLUNTARY];
+        this.peakRssKib = peakRssKib;
+        this.processes = processes;
+        this.accounted = accounted;
+    }
+
+    /**
+     * File name of the command, e.g. "mkvmerge".
+     */
+    public String getCommand()                  { return command; }
+
+    /**
+     * PID of the process, or -1 if unknown.
+     */
+    public long getPid()                        { return pid; }
+
+    /**
+     * Exit code of the process, or -1 if it was killed.
+     */
+    public int getExitCode()                    { return exitCode; }
+
+    /**
+     * Wall clock time of the process, in milliseconds.
+     */
+    public long getWallMillis()                 { return wallMillis; }
+
+    /**
+     * CPU time spent in user mode, in milliseconds.
+     */
+    public long getUserMillis()                 { return userMillis; }
+
+    /**
+     * CPU time spent in kernel mode, in milliseconds.
+     */
+    public long getSystemMillis()               { return systemMillis; }
+
+    /**
+     * Peak resident set size, in KiB. Always sampled.
+     */
+    public long getPeakRssKib()                 { return peakRssKib; }
+
+    /**
+     * Bytes read from storage.
+     */
+    public long getReadBytes()                  { return readBytes; }
+
+    /**
+     * Bytes written to storage.
+     */
+    public long getWriteBytes()                 { return writeBytes; }
+
+    /**
+     * Bytes read by system calls, including pipes and caches.
+     */
+    public long getReadChars()                  { return readChars; }
+
+    /**
+     * Bytes written by system calls, including pipes and caches.
+     */
+    public long getWriteChars()                 { return writeChars; }
+
+    /**
+     * Number of voluntary context switches, e.g. when waiting for I/O. Always sampled.
+     */
+    public long getVoluntarySwitches()          { return voluntarySwitches; }
+
+    /**
+     * Number of involuntary context switches, e.g. when preempted. Always sampled.
+     */
+    public long getInvoluntarySwitches()        { return involuntarySwitches; }
+
+    /**
+     * Number of processes that have been seen in the process tree.
+     */
+    public int getProcesses()                   { return processes; }
+
+    /**
+     * {@code true} if CPU time and I/O were accounted after the process terminated,
+     * {@code false} if they were only sampled while it was running.
+     */
+    public boolean isAccounted()                { return accounted; }
+
+    /**
+     * Returns the statistics as JSON.
+     */
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("command", command);
+        json.put("pid", pid);
+        json.put("exitCode", exitCode);
+        json.put("wallMillis", wallMillis);
+        json.put("userMillis", userMillis);
+        json.put("systemMillis", systemMillis);
+        json.put("peakRssKib", peakRssKib);
+        json.put("readBytes", readBytes);
+        json.put("writeBytes", writeBytes);
+        json.put("readChars", readChars);
+        json.put("writeChars", writeChars);
+        json.put("voluntarySwitches", voluntarySwitches);
+        json.put("involuntarySwitches", involuntarySwitches);
+        json.put("processes", processes);
+        json.put("accounted", accounted);
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-10s rc %d, %.1f s wall, %.1f s user, %.1f s sys, %d MB rss, "
+                        + "%d MB read, %d MB written, %d/%d ctx switches%s",
+                command, exitCode, wallMillis / 1000.0, userMillis / 1000.0, systemMillis / 1000.0,
+                peakRssKib / 1024L, readBytes >> 20, writeBytes >> 20,
+                voluntarySwitches, involuntarySwitches, accounted ? "" : " (sampled)");
+    }
+
+}
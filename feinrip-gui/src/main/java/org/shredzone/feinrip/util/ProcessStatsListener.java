@@ -0,0 +1,35 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.util;
+
+/**
+ * A listener that is invoked when an external process has terminated.
+ *
+ * @author Richard "Shred" Körber
+ */
+@FunctionalInterface
+public interface ProcessStatsListener {
+
+    /**
+     * Invoked when a process has terminated. It is invoked by the thread that has
+     * executed the {@link Command}, so it should return quickly.
+     *
+     * @param stats
+     *            {@link ProcessStats} of the process
+     */
+    void processFinished(ProcessStats stats);
+
+}
@@ -0,0 +1,201 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Terminates a process together with all of its descendants.
+ * <p>
+ * {@link Process#destroy()} only signals the process itself. The external tools are
+ * started via {@code nice}, {@code ionice} or a shell, and some of them fork helper
+ * processes, which would survive and keep the drive or the temp files busy. The
+ * descendants are found by scanning {@code /proc}.
+ *
+ * @author Richard "Shred" Körber
+ */
+public final class ProcessTree {
+    private static final Logger LOG = Logger.getLogger(ProcessTree.class.getName());
+    private static final Path PROC = Paths.get("/proc");
+    private static final File KILL = new File("/bin/kill");
+    private static final long GRACE_MILLIS = 500L;
+
+    private ProcessTree() {
+        // utility class without constructor
+    }
+
+    /**
+     * Kills a process and all of its descendants. The processes are asked to terminate
+     * first, and are killed if they are still alive after a short grace period.
+     * <p>
+     * This method may be invoked by an interrupted thread. The interrupt flag is kept.
+     *
+     * @param process
+     *            {@link Process} to kill
+     */
+    public static void kill(Process process) {
+        boolean interrupted = Thread.interrupted();
+        long pid = getPid(process);
+        List<Long> tree = new ArrayList<>();
+        if (pid > 0) {
+            tree.add(pid);
+            collectDescendants(pid, tree);
+        }
+
+        if (tree.isEmpty()) {
+            process.destroy();
+        } else {
+            signal("TERM", tree);
+        }
+
+        try {
+            if (!process.waitFor(GRACE_MILLIS, TimeUnit.MILLISECONDS) || tree.size() > 1) {
+                List<Long> survivors = new ArrayList<>();
+                for (Long child : tree) {
+                    if (Files.exists(PROC.resolve(child.toString()))) {
+                        survivors.add(child);
+                    }
+                }
+                signal("KILL", survivors);
+            }
+        } catch (InterruptedException ex) {
+            interrupted = true;
+        } finally {
+            process.destroyForcibly();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns the PID of a {@link Process}, or -1 if it cannot be found out.
+     */
+    static long getPid(Process process) {
+        try {
+            // Java 9 and later
+            Method pidMethod = Process.class.getMethod("pid");
+            return (Long) pidMethod.invoke(process);
+        } catch (ReflectiveOperationException ex) {
+            // fall through to the Java 8 way
+        }
+
+        try {
+            Field pidField = process.getClass().getDeclaredField("pid");
+            pidField.setAccessible(true);
+            return pidField.getInt(process);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            LOG.log(Level.FINE, "Cannot find out the PID of " + process, ex);
+            return -1L;
+        }
+    }
+
+    /**
+     * Collects all descendants of a process, children first.
+     *
+     * @param pid
+     *            PID of the root process
+     * @param result
+     *            List to add the PIDs of the descendants to
+     */
+    static void collectDescendants(long pid, List<Long> result) {
+        Map<Long, List<Long>> children = new HashMap<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(PROC, "[0-9]*")) {
+            for (Path dir : ds) {
+                long ppid = readParentPid(dir.resolve("stat"));
+                if (ppid > 0) {
+                    children.computeIfAbsent(ppid, k -> new ArrayList<>())
+                            .add(Long.parseLong(dir.getFileName().toString()));
+                }
+            }
+        } catch (IOException ex) {
+            LOG.log(Level.FINE, "Cannot scan processes", ex);
+            return;
+        }
+
+        List<Long> pending = new ArrayList<>();
+        pending.add(pid);
+        while (!pending.isEmpty()) {
+            List<Long> kids = children.get(pending.remove(0));
+            if (kids != null) {
+                for (Long kid : kids) {
+                    if (!result.contains(kid)) {
+                        result.add(kid);
+                        pending.add(kid);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the parent PID from a {@code /proc/<pid>/stat} file. Returns -1 if the
+     * process has terminated meanwhile.
+     */
+    private static long readParentPid(Path stat) {
+        try {
+            String line = new String(Files.readAllBytes(stat), StandardCharsets.US_ASCII);
+            // The command name may contain spaces and brackets, so start after the last ')'
+            String[] fields = line.substring(line.lastIndexOf(')') + 2).split(" ");
+            return Long.parseLong(fields[1]);
+        } catch (IOException | RuntimeException ex) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Sends a signal to a list of processes.
+     */
+    private static void signal(String signal, List<Long> pids) {
+        if (pids.isEmpty()) {
+            return;
+        }
+
+        List<String> cmd = new ArrayList<>();
+        cmd.add(KILL.getAbsolutePath());
+        cmd.add("-" + signal);
+        pids.forEach(pid -> cmd.add(pid.toString()));
+
+        try {
+            // Not using Command here, as it would try to cancel itself on interruption
+            Process kill = new ProcessBuilder(cmd)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.appendTo(new File("/dev/null")))
+                    .start();
+            kill.waitFor(GRACE_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "Could not send " + signal + " to " + pids, ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
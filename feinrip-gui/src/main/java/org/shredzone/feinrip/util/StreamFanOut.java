@@ -0,0 +1,111 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads an {@link InputStream} and writes its content to a number of
+ * {@link OutputStream} at the same time.
+ * <p>
+ * The targets are written to in the order they were added. A slow target will slow
+ * down all other targets, so targets should be buffered.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class StreamFanOut {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final InputStream in;
+    private final List<OutputStream> targets = new ArrayList<>();
+    private long size = 0;
+
+    /**
+     * Creates a new {@link StreamFanOut}.
+     *
+     * @param in
+     *            {@link InputStream} to read from
+     */
+    public StreamFanOut(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Adds a target {@link OutputStream}.
+     */
+    public StreamFanOut addTarget(OutputStream out) {
+        targets.add(out);
+        return this;
+    }
+
+    /**
+     * Number of bytes transferred so far.
+     */
+    public long getSize()                       { return size; }
+
+    /**
+     * Transfers the input stream to all targets, until the end of stream is reached.
+     * The input stream and all targets are closed afterwards, even if the transfer
+     * failed.
+     *
+     * @return Number of bytes transferred
+     */
+    public long transfer() throws IOException {
+        IOException failure = null;
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int len;
+            while ((len = in.read(buffer)) >= 0) {
+                for (OutputStream out : targets) {
+                    out.write(buffer, 0, len);
+                }
+                size += len;
+            }
+        } catch (IOException ex) {
+            failure = ex;
+        }
+
+        for (OutputStream out : targets) {
+            try {
+                out.close();
+            } catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                }
+            }
+        }
+
+        try {
+            in.close();
+        } catch (IOException ex) {
+            if (failure == null) {
+                failure = ex;
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+
+        return size;
+    }
+
+}
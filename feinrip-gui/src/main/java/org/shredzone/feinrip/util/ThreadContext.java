@@ -0,0 +1,76 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.util;
+
+import java.util.concurrent.Callable;
+
+/**
+ * The context of a thread, which is its {@link CancelToken} and its
+ * {@link ProcessMonitor} listeners.
+ * <p>
+ * The context is inherited by threads that are created by a thread. Threads of a
+ * shared pool would keep the context of the thread that happened to create them, so
+ * they must clear their context, and the context of the submitting thread must be
+ * passed with each task instead.
+ *
+ * @author Richard "Shred" Körber
+ */
+final class ThreadContext {
+
+    private final CancelToken token;
+    private final ProcessMonitor.Node listeners;
+
+    private ThreadContext() {
+        this.token = CancelToken.current();
+        this.listeners = ProcessMonitor.current();
+    }
+
+    /**
+     * Captures the context of the current thread.
+     */
+    static ThreadContext capture() {
+        return new ThreadContext();
+    }
+
+    /**
+     * Clears the context of the current thread.
+     */
+    static void clear() {
+        CancelToken.set(null);
+        ProcessMonitor.set(null);
+    }
+
+    /**
+     * Wraps a task, so it is executed within this context. The context is cleared
+     * when the task is completed.
+     *
+     * @param task
+     *            Task to wrap
+     * @return Wrapped task
+     */
+    <T> Callable<T> wrap(Callable<T> task) {
+        return () -> {
+            CancelToken.set(token);
+            ProcessMonitor.set(listeners);
+            try {
+                return task.call();
+            } finally {
+                clear();
+            }
+        };
+    }
+
+}
@@ -1,2 +1,3 @@
 /bin/touch --no-create %{_datadir}/icons/hicolor &>/dev/null || :
-/bin/sed --in-place -e "s:_datadir_:%{_datadir}:" %{_bindir}/feinrip
\ No newline at end of file
+/bin/sed --in-place -e "s:_datadir_:%{_datadir}:" %{_bindir}/feinrip
+/bin/sed --in-place -e "s:_datadir_:%{_datadir}:" %{_bindir}/feinrip-batch
\ No newline at end of file
@@ -0,0 +1,137 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.demux;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+/**
+ * Builds synthetic MPEG-2 program streams for the demuxer tests.
+ *
+ * @author Richard "Shred" Körber
+ */
+class ProgramStreamBuilder {
+
+    static final long WRAP = 1L << 33;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    /**
+     * Writes an MPEG-2 pack header with the given SCR base.
+     */
+    public ProgramStreamBuilder pack(long scr) {
+        startCode(0xBA);
+        out.write(0x44 | (int) ((scr >> 27) & 0x38) | (int) ((scr >> 28) & 0x03));
+        out.write((int) (scr >> 20) & 0xFF);
+        out.write((int) ((scr >> 12) & 0xF8) | 0x04 | (int) ((scr >> 13) & 0x03));
+        out.write((int) (scr >> 5) & 0xFF);
+        out.write((int) ((scr << 3) & 0xF8) | 0x04);
+        out.write(0x01);                        // SCR extension, marker
+        out.write(0x01);                        // mux rate
+        out.write(0x89);
+        out.write(0xC3);
+        out.write(0xF8);                        // no stuffing
+        return this;
+    }
+
+    /**
+     * Writes a video PES packet.
+     */
+    public ProgramStreamBuilder video(long pts) {
+        return pes(0xE0, pts, new byte[0], new byte[] {0x00, 0x00, 0x01, (byte) 0xB3});
+    }
+
+    /**
+     * Writes a sub picture PES packet in private stream 1.
+     */
+    public ProgramStreamBuilder subpicture(int subStreamId, long pts, byte... payload) {
+        return pes(0xBD, pts, new byte[] {(byte) subStreamId}, payload);
+    }
+
+    /**
+     * Writes an AC3 PES packet in private stream 1.
+     */
+    public ProgramStreamBuilder ac3(int subStreamId, long pts, byte... payload) {
+        return pes(0xBD, pts, new byte[] {(byte) subStreamId, 0x01, 0x00, 0x01}, payload);
+    }
+
+    /**
+     * Writes an MPEG audio PES packet.
+     */
+    public ProgramStreamBuilder mpegAudio(int streamId, long pts, byte... payload) {
+        return pes(streamId, pts, new byte[0], payload);
+    }
+
+    /**
+     * Writes a padding packet.
+     */
+    public ProgramStreamBuilder padding(int length) {
+        startCode(0xBE);
+        out.write(length >> 8);
+        out.write(length & 0xFF);
+        for (int ix = 0; ix < length; ix++) {
+            out.write(0xFF);
+        }
+        return this;
+    }
+
+    /**
+     * Writes raw bytes.
+     */
+    public ProgramStreamBuilder raw(byte... data) {
+        out.write(data, 0, data.length);
+        return this;
+    }
+
+    public byte[] toByteArray() {
+        return out.toByteArray();
+    }
+
+    public InputStream toInputStream() {
+        return new ByteArrayInputStream(toByteArray());
+    }
+
+    private ProgramStreamBuilder pes(int code, long pts, byte[] subHeader, byte[] payload) {
+        boolean hasPts = pts >= 0;
+        int length = 3 + (hasPts ? 5 : 0) + subHeader.length + payload.length;
+
+        startCode(code);
+        out.write(length >> 8);
+        out.write(length & 0xFF);
+        out.write(0x81);
+        out.write(hasPts ? 0x80 : 0x00);
+        out.write(hasPts ? 5 : 0);
+        if (hasPts) {
+            out.write(0x21 | (int) ((pts >> 29) & 0x0E));
+            out.write((int) (pts >> 22) & 0xFF);
+            out.write((int) ((pts >> 14) & 0xFE) | 0x01);
+            out.write((int) (pts >> 7) & 0xFF);
+            out.write((int) ((pts << 1) & 0xFE) | 0x01);
+        }
+        out.write(subHeader, 0, subHeader.length);
+        out.write(payload, 0, payload.length);
+        return this;
+    }
+
+    private void startCode(int code) {
+        out.write(0x00);
+        out.write(0x00);
+        out.write(0x01);
+        out.write(code);
+    }
+
+}
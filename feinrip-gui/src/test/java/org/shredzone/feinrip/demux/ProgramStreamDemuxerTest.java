@@ -0,0 +1,234 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.demux;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.shredzone.feinrip.demux.PesPacket.NO_PTS;
+import static org.shredzone.feinrip.demux.ProgramStreamBuilder.WRAP;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link ProgramStreamDemuxer}.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class ProgramStreamDemuxerTest {
+
+    @Test
+    public void testSupported() {
+        assertTrue(ProgramStreamDemuxer.isSupported(0x20));
+        assertTrue(ProgramStreamDemuxer.isSupported(0x3F));
+        assertTrue(ProgramStreamDemuxer.isSupported(0x80));
+        assertTrue(ProgramStreamDemuxer.isSupported(0x88));
+        assertTrue(ProgramStreamDemuxer.isSupported(0xC0));
+        assertFalse(ProgramStreamDemuxer.isSupported(0xA0));
+        assertFalse(ProgramStreamDemuxer.isSupported(0xE0));
+
+        ProgramStreamDemuxer demuxer = new ProgramStreamDemuxer();
+        assertThrows(IllegalArgumentException.class, () -> demuxer.addSink(0xA0, new Collector()));
+    }
+
+    @Test
+    public void testDemux() throws IOException {
+        ProgramStreamBuilder ps = new ProgramStreamBuilder()
+                .pack(90000).video(108000)
+                .pack(91000).ac3(0x80, 109000, (byte) 1, (byte) 2, (byte) 3)
+                .pack(92000).subpicture(0x20, 117000, (byte) 4, (byte) 5)
+                .pack(93000).ac3(0x81, 110000, (byte) 9)
+                .pack(94000).mpegAudio(0xC0, 111000, (byte) 6)
+                .pack(95000).padding(100)
+                .pack(96000).ac3(0x80, NO_PTS, (byte) 7, (byte) 8);
+
+        Collector ac3 = new Collector();
+        Collector sub = new Collector();
+        Collector mpa = new Collector();
+
+        ProgramStreamDemuxer demuxer = new ProgramStreamDemuxer();
+        demuxer.addSink(0x80, ac3);
+        demuxer.addSink(0x20, sub);
+        demuxer.addSink(0xC0, mpa);
+        demuxer.demux(ps.toInputStream(), 0L, null);
+
+        assertEquals(2, ac3.packets.size());
+        assertArrayEquals(new byte[] {1, 2, 3}, ac3.packets.get(0).payload);
+        assertEquals(109000L, ac3.packets.get(0).pts);
+        assertEquals(1000L, ac3.packets.get(0).time);
+        assertArrayEquals(new byte[] {7, 8}, ac3.packets.get(1).payload);
+        assertEquals(NO_PTS, ac3.packets.get(1).pts);
+
+        assertEquals(1, sub.packets.size());
+        assertArrayEquals(new byte[] {4, 5}, sub.packets.get(0).payload);
+        assertEquals(0x20, sub.packets.get(0).streamId);
+        assertEquals(9000L, sub.packets.get(0).time);
+
+        assertEquals(1, mpa.packets.size());
+        assertArrayEquals(new byte[] {6}, mpa.packets.get(0).payload);
+        assertEquals(3000L, mpa.packets.get(0).time);
+
+        assertTrue(ac3.closed);
+        assertTrue(sub.closed);
+        assertTrue(mpa.closed);
+    }
+
+    @Test
+    public void testPacketLayout() throws IOException {
+        byte[] stream = new ProgramStreamBuilder()
+                .pack(90000).subpicture(0x21, 99000, (byte) 4, (byte) 5)
+                .toByteArray();
+
+        Collector sub = new Collector();
+        ProgramStreamDemuxer demuxer = new ProgramStreamDemuxer();
+        demuxer.addSink(0x21, sub);
+        demuxer.demux(new ByteArrayInputStream(stream), 0L, null);
+
+        // The pack header and the PES packet are passed on unchanged
+        Packet packet = sub.packets.get(0);
+        assertEquals(14, packet.packLength);
+        assertEquals(0L, packet.position);
+        assertArrayEquals(stream, packet.data);
+    }
+
+    @Test
+    public void testDiscontinuity() throws IOException {
+        ProgramStreamBuilder ps = new ProgramStreamBuilder()
+                // First cell
+                .pack(90000).video(108000)
+                .pack(180000).subpicture(0x20, 198000, (byte) 1)
+                // Second cell, the clock restarts
+                .pack(45000).video(63000)
+                .pack(135000).subpicture(0x20, 153000, (byte) 2)
+                // Third cell, the clock jumps forward by 10 seconds
+                .pack(1035000).video(1053000)
+                .pack(1080000).subpicture(0x20, 1098000, (byte) 3);
+
+        Collector sub = demuxSubs(ps);
+
+        assertEquals(3, sub.packets.size());
+        assertEquals(90000L, sub.packets.get(0).time);
+        assertEquals(180000L, sub.packets.get(1).time);
+        assertEquals(225000L, sub.packets.get(2).time);
+    }
+
+    @Test
+    public void testWrap() throws IOException {
+        ProgramStreamBuilder ps = new ProgramStreamBuilder()
+                .pack(WRAP - 45000).video(WRAP - 27000)
+                // Time stamp has wrapped, SCR has not
+                .pack(WRAP - 9000).subpicture(0x20, 9000, (byte) 1)
+                // Both have wrapped
+                .pack(81000).subpicture(0x20, 99000, (byte) 2);
+
+        Collector sub = demuxSubs(ps);
+
+        assertEquals(2, sub.packets.size());
+        assertEquals(36000L, sub.packets.get(0).time);
+        assertEquals(126000L, sub.packets.get(1).time);
+    }
+
+    @Test
+    public void testEarlierThanBase() throws IOException {
+        // Packets may be presented before the first time stamp of the stream
+        ProgramStreamBuilder ps = new ProgramStreamBuilder()
+                .pack(90000).video(108000)
+                .pack(91000).subpicture(0x20, 99000, (byte) 1);
+
+        assertEquals(-9000L, demuxSubs(ps).packets.get(0).time);
+    }
+
+    @Test
+    public void testGarbageAndTruncation() throws IOException {
+        byte[] full = new ProgramStreamBuilder()
+                .pack(90000).subpicture(0x20, 99000, (byte) 9)
+                .toByteArray();
+
+        ProgramStreamBuilder ps = new ProgramStreamBuilder()
+                .raw((byte) 0x12, (byte) 0x00, (byte) 0x00, (byte) 0x34)
+                .pack(90000).subpicture(0x20, 99000, (byte) 1)
+                .raw((byte) 0xFF, (byte) 0x00, (byte) 0x01, (byte) 0x00)
+                .pack(91000).subpicture(0x20, 100000, (byte) 2)
+                .raw(Arrays.copyOf(full, full.length - 1));
+
+        Collector sub = demuxSubs(ps);
+
+        assertEquals(2, sub.packets.size());
+        assertArrayEquals(new byte[] {1}, sub.packets.get(0).payload);
+        assertArrayEquals(new byte[] {2}, sub.packets.get(1).payload);
+        assertTrue(sub.closed);
+    }
+
+    private static Collector demuxSubs(ProgramStreamBuilder ps) throws IOException {
+        Collector sub = new Collector();
+        ProgramStreamDemuxer demuxer = new ProgramStreamDemuxer();
+        demuxer.addSink(0x20, sub);
+        demuxer.demux(ps.toInputStream(), 0L, null);
+        return sub;
+    }
+
+    /**
+     * A copy of a {@link PesPacket}.
+     */
+    private static class Packet {
+        private int streamId;
+        private long pts;
+        private long time;
+        private long position;
+        private int packLength;
+        private byte[] payload;
+        private byte[] data;
+    }
+
+    /**
+     * A {@link PacketSink} that collects copies of all packets.
+     */
+    private static class Collector implements PacketSink {
+        private final List<Packet> packets = new ArrayList<>();
+        private boolean closed;
+
+        @Override
+        public void accept(PesPacket packet) {
+            Packet copy = new Packet();
+            copy.streamId = packet.getStreamId();
+            copy.pts = packet.getPts();
+            copy.time = packet.getTime();
+            copy.position = packet.getPosition();
+            copy.packLength = packet.getPackLength();
+            copy.payload = Arrays.copyOfRange(packet.getData(), packet.getPayloadStart(),
+                            packet.getPayloadStart() + packet.getPayloadLength());
+            byte[] data = packet.getData();
+            copy.data = new byte[packet.getPackLength() + packet.getPesLength()];
+            System.arraycopy(data, 0, copy.data, 0, packet.getPackLength());
+            System.arraycopy(data, packet.getPesStart(), copy.data, packet.getPackLength(), packet.getPesLength());
+            packets.add(copy);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+}
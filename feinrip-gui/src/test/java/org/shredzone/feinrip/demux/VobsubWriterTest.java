@@ -0,0 +1,123 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.demux;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.shredzone.feinrip.demux.PesPacket.NO_PTS;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.shredzone.feinrip.util.VobsubIndex;
+import org.shredzone.feinrip.util.VobsubIndex.Setting;
+import org.shredzone.feinrip.util.VobsubIndex.Timestamp;
+
+/**
+ * Unit tests for {@link VobsubWriter}.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class VobsubWriterTest {
+
+    @TempDir
+    public File tmp;
+
+    @Test
+    public void testWrite() throws IOException {
+        ProgramStreamBuilder ps = new ProgramStreamBuilder()
+                // First cell
+                .pack(90000).video(108000)
+                .pack(180000).subpicture(0x21, 198000, (byte) 1, (byte) 2)
+                .pack(181000).subpicture(0x21, NO_PTS, (byte) 3)
+                // Second cell, the clock restarts
+                .pack(45000).video(63000)
+                .pack(135000).subpicture(0x21, 153000, (byte) 4)
+                // Another stream, not written
+                .pack(136000).subpicture(0x22, 154000, (byte) 5);
+
+        File subFile = new File(tmp, "test.sub");
+        File idxFile = new File(tmp, "test.idx");
+        VobsubWriter writer = new VobsubWriter(subFile, idxFile, "de", new Dimension(720, 576), null);
+        assertTrue(writer.isEmpty());
+
+        ProgramStreamDemuxer demuxer = new ProgramStreamDemuxer();
+        demuxer.addSink(0x21, writer);
+        demuxer.demux(ps.toInputStream(), 0L, null);
+
+        assertFalse(writer.isEmpty());
+
+        // Each packet is padded to a pack of its own
+        byte[] sub = Files.readAllBytes(subFile.toPath());
+        assertEquals(3 * 2048, sub.length);
+        for (int ix = 0; ix < 3; ix++) {
+            int pack = ix * 2048;
+            assertEquals((byte) 0xBA, sub[pack + 3]);
+            assertEquals((byte) 0xBD, sub[pack + 14 + 3]);
+        }
+
+        // The sub stream ID is changed to 0x20, and the pack is padded
+        int pes = 14;
+        int subId = pes + 6 + 3 + 5;
+        assertEquals((byte) 0x20, sub[subId]);
+        assertEquals((byte) 1, sub[subId + 1]);
+        assertEquals((byte) 2, sub[subId + 2]);
+        int padding = subId + 3;
+        assertEquals((byte) 0xBE, sub[padding + 3]);
+        assertEquals(2048 - padding - 6, ((sub[padding + 4] & 0xFF) << 8) | (sub[padding + 5] & 0xFF));
+
+        VobsubIndex index = new VobsubIndex();
+        index.read(idxFile);
+        assertEquals("720x576", index.get(Setting.SIZE));
+        assertEquals("de, index: 0", index.get(Setting.ID));
+
+        // The time line continues across the discontinuity, after the pack at 181000
+        List<String> timestamps = new ArrayList<>();
+        for (Map.Entry<Timestamp, String> entry : index.getTimestamps().entrySet()) {
+            timestamps.add(entry.getKey() + "@" + entry.getValue());
+        }
+        assertEquals(Arrays.asList("00:00:01:000@000000000", "00:00:02:011@000001000"), timestamps);
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        ProgramStreamBuilder ps = new ProgramStreamBuilder()
+                .pack(90000).video(108000)
+                .pack(180000).subpicture(0x22, 198000, (byte) 1);
+
+        File subFile = new File(tmp, "test.sub");
+        File idxFile = new File(tmp, "test.idx");
+        VobsubWriter writer = new VobsubWriter(subFile, idxFile, "de", null, null);
+
+        ProgramStreamDemuxer demuxer = new ProgramStreamDemuxer();
+        demuxer.addSink(0x21, writer);
+        demuxer.demux(ps.toInputStream(), 0L, null);
+
+        assertTrue(writer.isEmpty());
+        assertEquals(0L, subFile.length());
+        assertFalse(idxFile.exists());
+    }
+
+}
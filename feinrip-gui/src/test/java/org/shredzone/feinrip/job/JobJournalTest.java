@@ -0,0 +1,142 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.job;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.shredzone.feinrip.model.AspectRatio;
+import org.shredzone.feinrip.model.Chapter;
+import org.shredzone.feinrip.model.PaletteType;
+import org.shredzone.feinrip.model.Project;
+import org.shredzone.feinrip.source.VobSource;
+
+/**
+ * Unit tests for {@link JobJournal}.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class JobJournalTest {
+
+    @TempDir
+    public Path tmp;
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Job job = new Job("job-1", createProject(), new File("/tmp/target.mkv"), "abc123", 1234567890L);
+
+        Job restored = JobJournal.fromJson(JobJournal.toJson(job));
+
+        assertEquals("job-1", restored.getId());
+        assertEquals(new File("/tmp/target.mkv").getAbsoluteFile(), restored.getTarget());
+        assertEquals("abc123", restored.getFingerprint());
+        assertEquals(1234567890L, restored.getCreated());
+        assertEquals(JobState.QUEUED, restored.getState());
+
+        Project project = restored.getProject();
+        assertEquals("Some Title", project.getTitle());
+        assertEquals(AspectRatio.ASPECT_16_9, project.getAspect());
+        assertEquals(250, project.getAudioSyncOffset());
+        assertEquals(2, project.getChapters().size());
+        assertEquals("Intro", project.getChapters().get(0).getTitle());
+        assertEquals("00:05:00.000", project.getChapters().get(1).getPosition());
+
+        VobSource source = (VobSource) project.getSource();
+        assertEquals(new File("/tmp/source.vob").getAbsoluteFile(), source.getVobFile());
+        assertNull(source.getEitFile());
+        assertEquals(PaletteType.YUV_GREYSCALE, source.getPalette());
+    }
+
+    @Test
+    public void testNoFingerprint() throws IOException {
+        Job job = new Job("job-2", createProject(), new File("/tmp/target.mkv"), null, 1L);
+
+        JSONObject json = JobJournal.toJson(job);
+        assertFalse(json.has("fingerprint"));
+        assertNull(JobJournal.fromJson(json).getFingerprint());
+    }
+
+    @Test
+    public void testBrokenJob() throws IOException {
+        JSONObject json = JobJournal.toJson(new Job("job-3", createProject(), new File("/tmp/target.mkv"), null, 1L));
+        json.remove("project");
+        assertThrows(IOException.class, () -> JobJournal.fromJson(json));
+    }
+
+    @Test
+    public void testJournal() throws IOException {
+        Path file = tmp.resolve("jobs.json");
+        JobJournal journal = new JobJournal(file);
+        assertTrue(journal.read().isEmpty());
+
+        Job queued = new Job("queued", createProject(), new File("/tmp/a.mkv"), null, 1L);
+        Job finished = new Job("finished", createProject(), new File("/tmp/b.mkv"), null, 2L);
+        finished.setState(JobState.DONE);
+        journal.write(Arrays.asList(queued, finished));
+
+        List<JSONObject> read = journal.read();
+        assertEquals(1, read.size());
+        assertEquals("queued", read.get(0).getString("id"));
+        assertFalse(Files.exists(tmp.resolve("jobs.json.tmp")));
+    }
+
+    @Test
+    public void testCorruptedJournal() throws IOException {
+        Path file = tmp.resolve("jobs.json");
+        Files.write(file, "{\"jobs\": [".getBytes("UTF-8"));
+        assertThrows(IOException.class, () -> new JobJournal(file).read());
+    }
+
+    private static Project createProject() {
+        Project project = new Project();
+
+        VobSource source = new VobSource();
+        source.bind(project);
+        source.setVobFile(new File("/tmp/source.vob"));
+        source.setPalette(PaletteType.YUV_GREYSCALE);
+        project.setSource(source);
+
+        project.setTitle("Some Title");
+        project.setAspect(AspectRatio.ASPECT_16_9);
+        project.setAudioSyncOffset(250);
+
+        Chapter intro = new Chapter();
+        intro.setNumber(1);
+        intro.setTitle("Intro");
+        intro.setPosition("00:00:00.000");
+        Chapter main = new Chapter();
+        main.setNumber(2);
+        main.setTitle("Main");
+        main.setPosition("00:05:00.000");
+        project.setChapters(Arrays.asList(intro, main));
+
+        return project;
+    }
+
+}
@@ -0,0 +1,215 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.pipeline;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for {@link CheckpointStore}.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class CheckpointStoreTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1L);
+
+    @TempDir
+    public File tmp;
+
+    private File storeDir;
+    private File workDir;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        storeDir = new File(tmp, "store");
+        workDir = new File(tmp, "work");
+        Files.createDirectories(storeDir.toPath());
+        Files.createDirectories(workDir.toPath());
+    }
+
+    @Test
+    public void testKey() {
+        assertEquals(CheckpointStore.key("a", 1, null), CheckpointStore.key("a", 1, null));
+        assertNotEquals(CheckpointStore.key("a", 1), CheckpointStore.key("a", 2));
+        // Parts are separated, so they cannot be shifted
+        assertNotEquals(CheckpointStore.key("ab", "c"), CheckpointStore.key("a", "bc"));
+        assertEquals(64, CheckpointStore.key().length());
+    }
+
+    @Test
+    public void testSaveAndRestore() throws IOException {
+        CheckpointStore store = new CheckpointStore(storeDir, 1000L, DAY);
+        String key = CheckpointStore.key("test");
+
+        File vob = createFile("stream.vob", 100);
+        File sub = createFile("sub.idx", 10);
+        Map<String, File> files = new HashMap<>();
+        files.put("vob.vob", vob);
+        files.put("sub.idx", sub);
+
+        assertFalse(store.contains(key));
+        assertTrue(store.save(key, files));
+        assertTrue(store.contains(key));
+        assertFalse(vob.exists());
+        assertFalse(sub.exists());
+
+        Map<String, File> restored = store.restore(key, new File(workDir, "retry-").getPath());
+        assertEquals(2, restored.size());
+        assertEquals(new File(workDir, "retry-vob.vob"), restored.get("vob.vob"));
+        assertEquals(100L, restored.get("vob.vob").length());
+        assertEquals(10L, restored.get("sub.idx").length());
+
+        // A checkpoint can only be restored once
+        assertFalse(store.contains(key));
+        assertNull(store.restore(key, workDir.getPath()));
+        assertFalse(new File(storeDir, key).exists());
+    }
+
+    @Test
+    public void testReplace() throws IOException {
+        CheckpointStore store = new CheckpointStore(storeDir, 1000L, DAY);
+        String key = CheckpointStore.key("test");
+
+        store.save(key, single("vob.vob", createFile("first.vob", 10)));
+        store.save(key, single("vob.vob", createFile("second.vob", 20)));
+
+        Map<String, File> restored = store.restore(key, new File(workDir, "r-").getPath());
+        assertEquals(20L, restored.get("vob.vob").length());
+    }
+
+    @Test
+    public void testTooLarge() throws IOException {
+        CheckpointStore store = new CheckpointStore(storeDir, 100L, DAY);
+        String key = CheckpointStore.key("test");
+        File vob = createFile("stream.vob", 101);
+
+        assertFalse(store.save(key, single("vob.vob", vob)));
+        assertFalse(store.contains(key));
+        assertTrue(vob.exists());
+    }
+
+    @Test
+    public void testEvictOldest() throws IOException {
+        CheckpointStore store = new CheckpointStore(storeDir, 100L, DAY);
+        String first = CheckpointStore.key("first");
+        String second = CheckpointStore.key("second");
+        String third = CheckpointStore.key("third");
+
+        store.save(first, single("vob.vob", createFile("1.vob", 40)));
+        setCreated(first, System.currentTimeMillis() - 3000L);
+        store.save(second, single("vob.vob", createFile("2.vob", 40)));
+        setCreated(second, System.currentTimeMillis() - 2000L);
+        assertTrue(store.contains(first));
+        assertTrue(store.contains(second));
+
+        // The store is full now, so the oldest checkpoint is evicted
+        store.save(third, single("vob.vob", createFile("3.vob", 40)));
+        assertFalse(store.contains(first));
+        assertTrue(store.contains(second));
+        assertTrue(store.contains(third));
+    }
+
+    @Test
+    public void testEvictExpired() throws IOException {
+        CheckpointStore store = new CheckpointStore(storeDir, 1000L, DAY);
+        String old = CheckpointStore.key("old");
+        String fresh = CheckpointStore.key("fresh");
+
+        store.save(old, single("vob.vob", createFile("1.vob", 10)));
+        store.save(fresh, single("vob.vob", createFile("2.vob", 10)));
+        setCreated(old, System.currentTimeMillis() - 2 * DAY);
+
+        store.evict();
+        assertFalse(store.contains(old));
+        assertTrue(store.contains(fresh));
+    }
+
+    @Test
+    public void testEvictBroken() throws IOException {
+        CheckpointStore store = new CheckpointStore(storeDir, 1000L, DAY);
+        String key = CheckpointStore.key("broken");
+        store.save(key, single("vob.vob", createFile("1.vob", 10)));
+        Files.write(new File(new File(storeDir, key), "checkpoint.json").toPath(),
+                        "{ broken".getBytes(StandardCharsets.UTF_8));
+
+        File noManifest = new File(storeDir, "nomanifest");
+        Files.createDirectories(noManifest.toPath());
+
+        store.evict();
+        assertFalse(new File(storeDir, key).exists());
+        assertFalse(noManifest.exists());
+    }
+
+    @Test
+    public void testIncompleteGracePeriod() throws IOException {
+        CheckpointStore store = new CheckpointStore(storeDir, 1000L, DAY);
+
+        // An incomplete checkpoint that may still be saved by another run
+        File recent = new File(storeDir, "recent.tmp");
+        Files.createDirectories(recent.toPath());
+        Files.write(new File(recent, "vob.vob").toPath(), new byte[10]);
+
+        // An incomplete checkpoint of a run that has crashed
+        File stale = new File(storeDir, "stale.tmp");
+        Files.createDirectories(stale.toPath());
+        File staleFile = new File(stale, "vob.vob");
+        Files.write(staleFile.toPath(), new byte[10]);
+        long past = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2L);
+        assertTrue(staleFile.setLastModified(past));
+        assertTrue(stale.setLastModified(past));
+
+        store.evict();
+        assertTrue(recent.exists());
+        assertFalse(stale.exists());
+    }
+
+    private File createFile(String name, int size) throws IOException {
+        File file = new File(workDir, name);
+        Files.write(file.toPath(), new byte[size]);
+        return file;
+    }
+
+    private void setCreated(String key, long created) throws IOException {
+        File manifest = new File(new File(storeDir, key), "checkpoint.json");
+        JSONObject json = new JSONObject(new String(Files.readAllBytes(manifest.toPath()), StandardCharsets.UTF_8));
+        json.put("created", created);
+        Files.write(manifest.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, File> single(String name, File file) {
+        Map<String, File> result = new HashMap<>();
+        result.put(name, file);
+        return result;
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.pipeline;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Unit tests for {@link StageScheduler}.
+ *
+ * @author Richard "Shred" Körber
+ */
+@Timeout(10)
+public class StageSchedulerTest {
+
+    /**
+     * Test that stages are started after the stages they depend on.
+     */
+    @Test
+    public void testDependencies() throws IOException {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        StageScheduler scheduler = new StageScheduler();
+        scheduler.add(new Stage("c", ResourceClass.CPU, meter -> order.add("c")).input("b"));
+        scheduler.add(new Stage("b", ResourceClass.CPU, meter -> order.add("b")).input("a").output("b"));
+        scheduler.add(new Stage("a", ResourceClass.CPU, meter -> order.add("a")).output("a"));
+        scheduler.run(null);
+
+        assertEquals(Arrays.asList("a", "b", "c"), order);
+        assertEquals(3, scheduler.getReport().getMetrics().size());
+    }
+
+    /**
+     * Test that independent stages are running in parallel.
+     */
+    @Test
+    public void testParallel() throws IOException {
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        StageTask task = meter -> {
+            try {
+                barrier.await(5, TimeUnit.SECONDS);
+            } catch (Exception ex) {
+                throw new IOException(ex);
+            }
+        };
+
+        StageScheduler scheduler = new StageScheduler();
+        scheduler.setCapacity(ResourceClass.CPU, 2);
+        scheduler.add(new Stage("a", ResourceClass.CPU, task));
+        scheduler.add(new Stage("b", ResourceClass.CPU, task));
+        scheduler.run(null);
+    }
+
+    /**
+     * Test that the capacity of a resource is respected.
+     */
+    @Test
+    public void testCapacity() throws IOException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        StageTask task = meter -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            sleep(20L);
+            running.decrementAndGet();
+        };
+
+        StageScheduler scheduler = new StageScheduler();
+        scheduler.setCapacity(ResourceClass.OPTICAL_DRIVE, 1);
+        for (int ix = 0; ix < 4; ix++) {
+            scheduler.add(new Stage("rip" + ix, ResourceClass.OPTICAL_DRIVE, task));
+        }
+        scheduler.run(null);
+
+        assertEquals(1, peak.get());
+    }
+
+    /**
+     * Test that a failing stage fails the run, and that its dependent stages are not
+     * started.
+     */
+    @Test
+    public void testFailure() {
+        IOException failure = new IOException("failed");
+        AtomicBoolean started = new AtomicBoolean();
+
+        StageScheduler scheduler = new StageScheduler();
+        scheduler.add(new Stage("a", ResourceClass.CPU, meter -> {
+            throw failure;
+        }).output("a"));
+        scheduler.add(new Stage("b", ResourceClass.CPU, meter -> started.set(true)).input("a"));
+
+        IOException ex = assertThrows(IOException.class, () -> scheduler.run(null));
+        assertSame(failure, ex);
+        assertFalse(started.get());
+        assertTrue(scheduler.getReport().getMetrics().get(0).isFailed());
+    }
+
+    /**
+     * Test that a stage that requires a missing input is rejected.
+     */
+    @Test
+    public void testMissingInput() {
+        StageScheduler scheduler = new StageScheduler();
+        scheduler.add(new Stage("a", ResourceClass.CPU, meter -> {}).input("nothing"));
+        assertThrows(IllegalStateException.class, () -> scheduler.run(null));
+    }
+
+    /**
+     * Test that a run that was cancelled before it was started fails without starting
+     * any stage.
+     */
+    @Test
+    public void testCancelBeforeRun() {
+        AtomicBoolean started = new AtomicBoolean();
+
+        StageScheduler scheduler = new StageScheduler();
+        scheduler.add(new Stage("a", ResourceClass.CPU, meter -> started.set(true)));
+        scheduler.cancel();
+
+        IOException ex = assertThrows(IOException.class, () -> scheduler.run(null));
+        assertEquals("cancelled", ex.getMessage());
+        assertFalse(started.get());
+    }
+
+    /**
+     * Test that cancelling interrupts the running stages, and that the run returns
+     * after they have terminated.
+     */
+    @Test
+    public void testCancelWhileRunning() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        AtomicBoolean terminated = new AtomicBoolean();
+        AtomicBoolean pendingStarted = new AtomicBoolean();
+
+        StageScheduler scheduler = new StageScheduler();
+        scheduler.add(new Stage("a", ResourceClass.CPU, meter -> {
+            running.countDown();
+            try {
+                Thread.sleep(10_000L);
+            } catch (InterruptedException ex) {
+                sleep(100L);
+                terminated.set(true);
+                throw new IOException("interrupted", ex);
+            }
+        }).output("a"));
+        scheduler.add(new Stage("b", ResourceClass.CPU, meter -> pendingStarted.set(true)).input("a"));
+
+        Thread canceller = new Thread(() -> {
+            try {
+                running.await();
+                scheduler.cancel();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        canceller.start();
+
+        IOException ex = assertThrows(IOException.class, () -> scheduler.run(null));
+        assertEquals("cancelled", ex.getMessage());
+        assertTrue(terminated.get());
+        assertFalse(pendingStarted.get());
+        canceller.join();
+    }
+
+    /**
+     * Test that an interrupt of the running thread cancels the stages, and waits for
+     * them to terminate before the run fails.
+     */
+    @Test
+    public void testInterrupt() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        AtomicBoolean terminated = new AtomicBoolean();
+        AtomicBoolean cancelSeen = new AtomicBoolean();
+        AtomicReference<Throwable> result = new AtomicReference<>();
+        AtomicBoolean interruptKept = new AtomicBoolean();
+
+        StageScheduler scheduler = new StageScheduler();
+        scheduler.add(new Stage("a", ResourceClass.CPU, meter -> {
+            running.countDown();
+            // Ignores interrupts for a while, like a command that is still being killed
+            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300L);
+            while (System.nanoTime() < until) {
+                Thread.yield();
+            }
+            cancelSeen.set(scheduler.isCancelled());
+            terminated.set(true);
+        }));
+
+        Thread thread = new Thread(() -> {
+            try {
+                scheduler.run(null);
+            } catch (Throwable ex) {
+                result.set(ex);
+                // The stage must have terminated when the run fails
+                if (!terminated.get()) {
+                    result.set(new AssertionError("stage still running"));
+                }
+            }
+            interruptKept.set(Thread.currentThread().isInterrupted());
+        });
+        thread.start();
+        running.await();
+        thread.interrupt();
+        thread.join();
+
+        assertTrue(result.get() instanceof IOException, String.valueOf(result.get()));
+        assertEquals("interrupted", result.get().getMessage());
+        assertTrue(cancelSeen.get());
+        assertTrue(interruptKept.get());
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", ex);
+        }
+    }
+
+}
@@ -0,0 +1,299 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.pipeline;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileStoreAttributeView;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.shredzone.feinrip.pipeline.TempPlan.Artifact;
+
+/**
+ * Unit tests for {@link TempPlanner}.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class TempPlannerTest {
+
+    private static final long MB = 1024L * 1024L;
+    private static final long GB = 1024L * MB;
+
+    // Space that TempPlanner keeps free on each file system
+    private static final long RESERVE = 256L * MB;
+
+    private static final File DISK1 = new File("/disk1");
+    private static final File DISK2 = new File("/disk2");
+    private static final File RAM = new File("/ram");
+
+    @Test
+    public void testPlacement() throws IOException {
+        TestPlanner planner = new TestPlanner();
+        planner.mount(DISK1, 10 * GB);
+        planner.mount(DISK2, 12 * GB);
+        planner.mount(RAM, 1 * GB);
+
+        try (TempPlan plan = new TempPlan(Arrays.asList(DISK1, DISK2), RAM)) {
+            plan.require(Artifact.VOB, 8 * GB);
+            plan.require(Artifact.AUDIO, 5 * GB);
+            plan.require(Artifact.SUBTITLE, 10 * MB);
+            plan.require(Artifact.MISC, 300 * MB);
+
+            assertEquals(DISK1, plan.getDir(Artifact.VOB));
+
+            planner.reserve(plan, null);
+
+            // The largest artifact goes first, to the disk with the most free space
+            assertEquals(DISK2, plan.getDir(Artifact.VOB));
+            assertEquals(DISK1, plan.getDir(Artifact.AUDIO));
+            // Small artifacts go to the ram FS, unless they are too large
+            assertEquals(RAM, plan.getDir(Artifact.SUBTITLE));
+            assertEquals(DISK1, plan.getDir(Artifact.MISC));
+
+            assertEquals(8 * GB + 5 * GB + 10 * MB + 300 * MB, planner.getReservedSpace());
+        }
+
+        assertEquals(0L, planner.getReservedSpace());
+    }
+
+    @Test
+    public void testSmallDirFull() throws IOException {
+        TestPlanner planner = new TestPlanner();
+        planner.mount(DISK1, 10 * GB);
+        planner.mount(RAM, RESERVE + 5 * MB);
+
+        try (TempPlan plan = new TempPlan(Collections.singletonList(DISK1), RAM)) {
+            plan.require(Artifact.SUBTITLE, 10 * MB);
+            planner.reserve(plan, null);
+            assertEquals(DISK1, plan.getDir(Artifact.SUBTITLE));
+        }
+    }
+
+    @Test
+    public void testFixedFile() throws IOException {
+        TestPlanner planner = new TestPlanner();
+        planner.mount(DISK1, 10 * GB);
+        planner.mount(DISK2, RESERVE + 1 * GB);
+
+        try (TempPlan plan = new TempPlan(Collections.singletonList(DISK1), null)) {
+            plan.require(Artifact.VOB, 1 * GB);
+            plan.require(new File(DISK2, "target.mkv"), 2 * GB);
+
+            IOException ex = assertThrows(IOException.class, () -> planner.reserve(plan, null));
+            assertTrue(ex.getMessage().startsWith("Not enough free space"));
+        }
+    }
+
+    @Test
+    public void testNoTempDir() {
+        TestPlanner planner = new TestPlanner();
+        try (TempPlan plan = new TempPlan(Collections.singletonList(DISK1), null)) {
+            plan.require(Artifact.VOB, 1 * GB);
+            assertThrows(IOException.class, () -> planner.reserve(plan, null));
+        }
+    }
+
+    @Test
+    public void testNeverFits() throws IOException {
+        TestPlanner planner = new TestPlanner();
+        planner.mount(DISK1, RESERVE + 10 * GB);
+
+        try (TempPlan first = new TempPlan(Collections.singletonList(DISK1), null)) {
+            first.require(Artifact.VOB, 4 * GB);
+            planner.reserve(first, null);
+
+            // Would not even fit if the first plan was completed, so it is refused
+            // instead of waiting
+            try (TempPlan second = new TempPlan(Collections.singletonList(DISK1), null)) {
+                second.require(Artifact.VOB, 11 * GB);
+                assertThrows(IOException.class, () -> planner.reserve(second, null));
+            }
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    public void testWaitForRelease() throws Exception {
+        TestPlanner planner = new TestPlanner();
+        planner.mount(DISK1, RESERVE + 10 * GB);
+
+        TempPlan first = new TempPlan(Collections.singletonList(DISK1), null);
+        first.require(Artifact.VOB, 6 * GB);
+        planner.reserve(first, null);
+
+        TempPlan second = new TempPlan(Collections.singletonList(DISK1), null);
+        second.require(Artifact.VOB, 6 * GB);
+
+        CountDownLatch waiting = new CountDownLatch(1);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                planner.reserve(second, waiting::countDown);
+            } catch (IOException ex) {
+                failure.set(ex);
+            }
+        });
+        thread.start();
+
+        assertTrue(waiting.await(5, TimeUnit.SECONDS));
+        assertTrue(thread.isAlive());
+        assertEquals(6 * GB, planner.getReservedSpace());
+
+        first.close();
+        thread.join();
+
+        assertEquals(null, failure.get());
+        assertEquals(6 * GB, planner.getReservedSpace());
+        second.close();
+        assertEquals(0L, planner.getReservedSpace());
+    }
+
+    @Test
+    @Timeout(10)
+    public void testInterruptWhileWaiting() throws Exception {
+        TestPlanner planner = new TestPlanner();
+        planner.mount(DISK1, RESERVE + 10 * GB);
+
+        try (TempPlan first = new TempPlan(Collections.singletonList(DISK1), null);
+             TempPlan second = new TempPlan(Collections.singletonList(DISK1), null)) {
+            first.require(Artifact.VOB, 6 * GB);
+            planner.reserve(first, null);
+            second.require(Artifact.VOB, 6 * GB);
+
+            CountDownLatch waiting = new CountDownLatch(1);
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            Thread thread = new Thread(() -> {
+                try {
+                    planner.reserve(second, waiting::countDown);
+                } catch (IOException ex) {
+                    failure.set(ex);
+                }
+            });
+            thread.start();
+
+            assertTrue(waiting.await(5, TimeUnit.SECONDS));
+            thread.interrupt();
+            thread.join();
+
+            assertTrue(failure.get() instanceof IOException);
+            assertEquals(6 * GB, planner.getReservedSpace());
+        }
+    }
+
+    @Test
+    public void testParallelPlansAreSpread() throws IOException {
+        TestPlanner planner = new TestPlanner();
+        planner.mount(DISK1, RESERVE + 10 * GB);
+        planner.mount(DISK2, RESERVE + 9 * GB);
+
+        try (TempPlan first = new TempPlan(Arrays.asList(DISK1, DISK2), null);
+             TempPlan second = new TempPlan(Arrays.asList(DISK1, DISK2), null)) {
+            first.require(Artifact.VOB, 6 * GB);
+            second.require(Artifact.VOB, 6 * GB);
+
+            planner.reserve(first, null);
+            planner.reserve(second, null);
+
+            // The space reserved by the first plan is not available to the second one
+            assertEquals(DISK1, first.getDir(Artifact.VOB));
+            assertEquals(DISK2, second.getDir(Artifact.VOB));
+            assertFalse(planner.getReservedSpace() > 12 * GB);
+        }
+    }
+
+    /**
+     * A {@link TempPlanner} with simulated file systems, one for each directory.
+     */
+    private static class TestPlanner extends TempPlanner {
+        private final Map<File, FileStore> stores = new HashMap<>();
+
+        public void mount(File dir, long usable) {
+            stores.put(dir, new TestStore(dir.getName(), usable));
+        }
+
+        @Override
+        FileStore findStore(File dir) {
+            return stores.get(dir);
+        }
+    }
+
+    /**
+     * A {@link FileStore} with a fixed amount of usable space.
+     */
+    private static class TestStore extends FileStore {
+        private final String name;
+        private final long usable;
+
+        public TestStore(String name, long usable) {
+            this.name = name;
+            this.usable = usable;
+        }
+
+        @Override
+        public String name()                    { return name; }
+
+        @Override
+        public String type()                    { return "test"; }
+
+        @Override
+        public boolean isReadOnly()             { return false; }
+
+        @Override
+        public long getTotalSpace()             { return usable; }
+
+        @Override
+        public long getUsableSpace()            { return usable; }
+
+        @Override
+        public long getUnallocatedSpace()       { return usable; }
+
+        @Override
+        public boolean supportsFileAttributeView(Class<? extends FileAttributeView> type) {
+            return false;
+        }
+
+        @Override
+        public boolean supportsFileAttributeView(String name) {
+            return false;
+        }
+
+        @Override
+        public <V extends FileStoreAttributeView> V getFileStoreAttributeView(Class<V> type) {
+            return null;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) {
+            throw new UnsupportedOperationException(attribute);
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.progress;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link ProgressScanner}.
+ * <p>
+ * The scanner replaces the regular expressions that were formerly used by
+ * {@link PercentConsumer} and {@link FFmpegConsumer}. Those expressions are used here
+ * as reference, and the scanner must give the same results.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class ProgressScannerTest {
+
+    private static final Pattern PERCENT = Pattern.compile(".*?(\\d{1,3}(\\.\\d+)?)\\s?%.*");
+    private static final Pattern TIME = Pattern.compile(".*?size=.*?time=(\\d+)\\.(\\d\\d).*");
+    private static final Pattern CLOCK = Pattern.compile(".*?size=.*?time=(\\d\\d):(\\d\\d):(\\d\\d)\\.(\\d\\d).*");
+
+    // Characters the random lines are made of. Line terminators are missing, as the
+    // scanned lines never contain them.
+    private static final String ALPHABET = "0123456789012345.:% \t%.:sizetime=kB/x";
+    private static final String[] FRAGMENTS = {"size=", "time=", "00:01:23.45", "12.34", "%", " %"};
+
+    private static final int RANDOM_LINES = 200_000;
+
+    /**
+     * Test percentages of typical tool output.
+     */
+    @Test
+    public void testPercent() {
+        assertEquals(42.0f, ProgressScanner.scanPercent("Progress: 42%"));
+        assertEquals(12.5f, ProgressScanner.scanPercent("dump: 12.5 % done"));
+        assertEquals(100.0f, ProgressScanner.scanPercent("#GAUGE# 100%"));
+        assertEquals(234.0f, ProgressScanner.scanPercent("1234%"));
+        assertEquals(5.3f, ProgressScanner.scanPercent("12.5.3%"));
+        assertEquals(3.0f, ProgressScanner.scanPercent("1.2 3%"));
+        assertEquals(-1.0f, ProgressScanner.scanPercent("no percentage here"));
+        assertEquals(-1.0f, ProgressScanner.scanPercent("% 12"));
+        assertEquals(-1.0f, ProgressScanner.scanPercent("12  %"));
+        assertEquals(-1.0f, ProgressScanner.scanPercent(""));
+    }
+
+    /**
+     * Test ffmpeg progress lines.
+     */
+    @Test
+    public void testTime() {
+        assertEquals(8345L, ProgressScanner.scanTime("size=    1234kB time=83.45 bitrate= 121.1kbits/s"));
+        assertEquals(8345L, ProgressScanner.scanTime("size=    1234kB time=00:01:23.45 bitrate= 121.1kbits/s"));
+        assertEquals(3600000L, ProgressScanner.scanTime("frame=1 size=0kB time=10:00:00.00"));
+        assertEquals(-1L, ProgressScanner.scanTime("frame=1 size=0kB time=100:00:00.00"));
+        assertEquals(1234L, ProgressScanner.scanTime("size=1 time=1.2.34 time=12.34"));
+        assertEquals(-1L, ProgressScanner.scanTime("time=83.45 size=1234kB"));
+        assertEquals(-1L, ProgressScanner.scanTime("size=1234kB time=N/A"));
+        assertEquals(-1L, ProgressScanner.scanTime("size=1234kB time=83.4"));
+        assertEquals(-1L, ProgressScanner.scanTime(""));
+    }
+
+    /**
+     * Compares the scanner with the former regular expressions, on random lines.
+     */
+    @Test
+    public void testSameAsRegularExpressions() {
+        Random random = new Random(4711L);
+        for (int ix = 0; ix < RANDOM_LINES; ix++) {
+            String line = randomLine(random);
+            assertEquals(regexPercent(line), ProgressScanner.scanPercent(line), "percent of \"" + line + "\"");
+            assertEquals(regexTime(line), ProgressScanner.scanTime(line), "time of \"" + line + "\"");
+        }
+    }
+
+    private static String randomLine(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(40);
+        while (sb.length() < length) {
+            if (random.nextInt(8) == 0) {
+                sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            } else {
+                sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static float regexPercent(String line) {
+        Matcher m = PERCENT.matcher(line);
+        return m.matches() ? Float.parseFloat(m.group(1)) : -1.0f;
+    }
+
+    private static long regexTime(String line) {
+        Matcher m = TIME.matcher(line);
+        if (m.matches()) {
+            return Long.parseLong(m.group(1)) * 100L + Long.parseLong(m.group(2));
+        }
+
+        m = CLOCK.matcher(line);
+        if (m.matches()) {
+            return ((Long.parseLong(m.group(1)) * 60L + Long.parseLong(m.group(2))) * 60L
+                            + Long.parseLong(m.group(3))) * 100L + Long.parseLong(m.group(4));
+        }
+        return -1L;
+    }
+
+}
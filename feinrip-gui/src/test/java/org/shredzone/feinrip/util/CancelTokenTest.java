@@ -0,0 +1,126 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link CancelToken}.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class CancelTokenTest {
+
+    @Test
+    public void testNoToken() throws IOException {
+        assertNull(CancelToken.current());
+        CancelToken.check();
+    }
+
+    @Test
+    public void testCancel() throws IOException {
+        CancelToken token = new CancelToken();
+        assertFalse(token.isCancelled());
+
+        CancelToken.Scope scope = token.enter();
+        try {
+            assertSame(token, CancelToken.current());
+            CancelToken.check();
+
+            token.cancel();
+            assertTrue(token.isCancelled());
+            IOException ex = assertThrows(IOException.class, CancelToken::check);
+            assertEquals("cancelled", ex.getMessage());
+        } finally {
+            scope.close();
+        }
+
+        assertNull(CancelToken.current());
+        CancelToken.check();
+    }
+
+    @Test
+    public void testNested() {
+        CancelToken outer = new CancelToken();
+        CancelToken inner = new CancelToken();
+
+        CancelToken.Scope outerScope = outer.enter();
+        try {
+            CancelToken.Scope innerScope = inner.enter();
+            try {
+                assertSame(inner, CancelToken.current());
+            } finally {
+                innerScope.close();
+            }
+            assertSame(outer, CancelToken.current());
+        } finally {
+            outerScope.close();
+        }
+        assertNull(CancelToken.current());
+    }
+
+    @Test
+    public void testInherited() throws InterruptedException {
+        CancelToken token = new CancelToken();
+        AtomicReference<CancelToken> seen = new AtomicReference<>();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+
+        Thread thread;
+        CancelToken.Scope scope = token.enter();
+        try {
+            token.cancel();
+            thread = new Thread(() -> {
+                seen.set(CancelToken.current());
+                try {
+                    CancelToken.check();
+                } catch (IOException ex) {
+                    failure.set(ex);
+                }
+            });
+        } finally {
+            scope.close();
+        }
+
+        // The thread inherits the token even if it is started after leaving it
+        thread.start();
+        thread.join();
+
+        assertSame(token, seen.get());
+        assertTrue(failure.get() instanceof IOException);
+    }
+
+    @Test
+    public void testInterrupted() {
+        Thread.currentThread().interrupt();
+        try {
+            IOException ex = assertThrows(IOException.class, CancelToken::check);
+            assertEquals("interrupted", ex.getMessage());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+}
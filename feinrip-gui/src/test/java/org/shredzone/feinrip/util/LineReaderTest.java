@@ -0,0 +1,102 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.util;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link LineReader}.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class LineReaderTest {
+
+    @Test
+    public void testTerminators() throws IOException {
+        assertEquals(Arrays.asList("a", "b", "c", "d", "", "e"),
+                        read("a\nb\rc\r\nd\n\ne", 8192));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        assertEquals(Arrays.asList(), read("", 8192));
+        assertEquals(Arrays.asList(""), read("\n", 8192));
+        assertEquals(Arrays.asList(""), read("\r\n", 8192));
+        assertEquals(Arrays.asList("", ""), read("\n\r", 8192));
+    }
+
+    @Test
+    public void testCrLfAcrossReads() throws IOException {
+        // Every read returns a single byte, so CR and LF are read separately
+        InputStream in = new ByteArrayInputStream("ab\r\ncd\r\r\nef".getBytes(StandardCharsets.US_ASCII)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+        try (LineReader r = new LineReader(in, StandardCharsets.US_ASCII, new byte[4])) {
+            assertEquals(Arrays.asList("ab", "cd", "", "ef"), r.lines().collect(toList()));
+        }
+    }
+
+    @Test
+    public void testLongLines() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int ix = 0; ix < 50; ix++) {
+            StringBuilder line = new StringBuilder();
+            for (int jx = 0; jx < ix * 7; jx++) {
+                line.append((char) ('a' + (jx % 26)));
+            }
+            expected.add(line.toString());
+            sb.append(line).append(ix % 2 == 0 ? "\r\n" : "\r");
+        }
+
+        // The buffer is much smaller than most lines, and must be grown
+        assertEquals(expected, read(sb.toString(), 2));
+    }
+
+    @Test
+    public void testCharset() throws IOException {
+        byte[] data = "Körber\nÄÖÜ\n".getBytes(StandardCharsets.UTF_8);
+        try (LineReader r = new LineReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8, new byte[3])) {
+            assertEquals("Körber", r.readLine());
+            assertEquals("ÄÖÜ", r.readLine());
+            assertNull(r.readLine());
+            assertNull(r.readLine());
+        }
+    }
+
+    private static List<String> read(String text, int bufferSize) throws IOException {
+        byte[] data = text.getBytes(StandardCharsets.US_ASCII);
+        try (LineReader r = new LineReader(new ByteArrayInputStream(data), StandardCharsets.US_ASCII, new byte[bufferSize])) {
+            return r.lines().collect(toList());
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link OutputCapture}.
+ *
+ * @author Richard "Shred" Körber
+ */
+public class OutputCaptureTest {
+
+    @Test
+    public void testSmallOutput() throws IOException {
+        try (OutputCapture capture = new OutputCapture(3, 3)) {
+            capture.accept("one");
+            capture.accept("two");
+
+            assertEquals(Arrays.asList("one", "two"), capture.getHead());
+            assertTrue(capture.getTail().isEmpty());
+            assertEquals(2, capture.getLineCount());
+            assertEquals(0, capture.getSpilledLineCount());
+            assertEquals("one\ntwo", capture.toString());
+            assertEquals(Arrays.asList("one", "two"), readAll(capture));
+        }
+    }
+
+    @Test
+    public void testSpill() throws IOException {
+        List<String> expected = new ArrayList<>();
+        try (OutputCapture capture = new OutputCapture(2, 3)) {
+            for (int ix = 0; ix < 1000; ix++) {
+                String line = "line " + ix;
+                expected.add(line);
+                capture.accept(line);
+            }
+
+            assertEquals(Arrays.asList("line 0", "line 1"), capture.getHead());
+            assertEquals(Arrays.asList("line 997", "line 998", "line 999"), capture.getTail());
+            assertEquals(1000, capture.getLineCount());
+            assertEquals(995, capture.getSpilledLineCount());
+            assertEquals("line 0\nline 1\n[... 995 lines omitted ...]\nline 997\nline 998\nline 999",
+                            capture.toString());
+            assertEquals(expected, readAll(capture));
+
+            // Lines spilled after reading are appended to the spill file
+            for (int ix = 1000; ix < 1010; ix++) {
+                String line = "line " + ix;
+                expected.add(line);
+                capture.accept(line);
+            }
+            assertEquals(expected, readAll(capture));
+        }
+    }
+
+    @Test
+    public void testCounters() {
+        try (OutputCapture capture = new OutputCapture(1, 1)) {
+            capture.count("errors", line -> line.startsWith("Error:"))
+                   .count("warnings", line -> line.startsWith("Warning:"));
+
+            capture.accept("Error: foo");
+            capture.accept("Warning: bar");
+            capture.accept("something else");
+            capture.accept("Error: baz");
+            capture.repeat("Error: baz");
+            capture.repeat("Error: baz");
+
+            assertEquals(4, capture.getCount("errors"));
+            assertEquals(1, capture.getCount("warnings"));
+            assertEquals(0, capture.getCount("unknown"));
+            assertEquals(4, capture.getLineCount());
+
+            Map<String, Long> counts = capture.getCounts();
+            assertEquals(Arrays.asList("errors", "warnings"), new ArrayList<>(counts.keySet()));
+
+            capture.clear();
+            assertEquals(0, capture.getCount("errors"));
+            assertEquals(0, capture.getLineCount());
+            assertTrue(capture.getHead().isEmpty());
+
+            // Patterns are kept after clearing
+            capture.accept("Error: again");
+            assertEquals(1, capture.getCount("errors"));
+        }
+    }
+
+    @Test
+    public void testNoLimits() throws IOException {
+        try (OutputCapture capture = new OutputCapture(0, 0)) {
+            capture.accept("a");
+            capture.accept("b");
+
+            assertTrue(capture.getHead().isEmpty());
+            assertTrue(capture.getTail().isEmpty());
+            assertEquals(2, capture.getSpilledLineCount());
+            assertEquals(Arrays.asList("a", "b"), readAll(capture));
+        }
+    }
+
+    private static List<String> readAll(OutputCapture capture) throws IOException {
+        List<String> result = new ArrayList<>();
+        try (BufferedReader r = new BufferedReader(capture.reader())) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                result.add(line);
+            }
+        }
+        return result;
+    }
+
+}
@@ -15,11 +15,13 @@
  */
 package org.shredzone.feinrip.lsdvd;
 
+import java.io.Closeable;
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -31,13 +33,19 @@ import org.shredzone.feinrip.lsdvd.DvdTitleSet.Format;
 
 /**
  * Specialized reader methods for accessing IFO and BUP files.
+ * <p>
+ * IFO and BUP files are small, so the entire file is read into memory when it is
+ * opened. All fields are then decoded from the buffer, without further file access.
  *
  * @author Richard "Shred" Körber
  */
-public class IfoRandomAccessFile extends RandomAccessFile {
+public class IfoRandomAccessFile implements Closeable {
 
     private static final long DVD_BLOCK_LENGTH = 2048;
 
+    private final ByteBuffer buffer;
+    private int position;
+
     /**
      * Creates a new {@link IfoRandomAccessFile}.
      *
@@ -47,9 +55,11 @@ public class IfoRandomAccessFile extends RandomAccessFile {
      *            File name of the IFO or BUP file to be read. For this part, an
      *            all-lowercase version of the file name is tried when the given file name
      *            was not found.
+     * @throws java.io.FileNotFoundException
+     *             if the file does not exist
      */
-    public IfoRandomAccessFile(File basedir, String file) throws FileNotFoundException {
-        super(findCaselessFilename(basedir, file), "r");
+    public IfoRandomAccessFile(File basedir, String file) throws IOException {
+        this.buffer = readFile(findCaselessFilename(basedir, file));
     }
 
     /**
@@ -72,6 +82,40 @@ public class IfoRandomAccessFile extends RandomAccessFile {
         return new File(basedir, file.toLowerCase());
     }
 
+    /**
+     * Reads the entire file into a {@link ByteBuffer}.
+     *
+     * @param file
+     *            File to read
+     * @return {@link ByteBuffer} with the file content, in big endian order
+     */
+    private static ByteBuffer readFile(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IfoException("File too large: " + length);
+            }
+
+            byte[] data = new byte[(int) length];
+            raf.readFully(data);
+            return ByteBuffer.wrap(data);
+        }
+    }
+
+    /**
+     * Returns the length of the file, in bytes.
+     */
+    public long length() {
+        return buffer.limit();
+    }
+
+    /**
+     * Returns the current offset of the cursor, in bytes.
+     */
+    public long getFilePointer() {
+        return position;
+    }
+
     /**
      * Moves the cursor to the given offset. If the offset lies beyond the end of file, an
      * {@link EOFException} is thrown.
@@ -81,10 +125,13 @@ public class IfoRandomAccessFile extends RandomAccessFile {
      * @return {@code this}
      */
     public IfoRandomAccessFile at(long offset) throws IOException {
-        if (offset >= length()) {
+        if (offset < 0) {
+            throw new IOException("Negative seek offset");
+        }
+        if (offset >= buffer.limit()) {
             throw new EOFException();
         }
-        seek(offset);
+        position = (int) offset;
         return this;
     }
 
@@ -97,10 +144,10 @@ public class IfoRandomAccessFile extends RandomAccessFile {
      * @return {@code this}
      */
     public IfoRandomAccessFile skip(int num) throws IOException {
-        int actual = skipBytes(num);
-        if (actual != num) {
+        if (num < 0) {
             throw new EOFException();
         }
+        position = advance(num);
         return this;
     }
 
@@ -115,7 +162,9 @@ public class IfoRandomAccessFile extends RandomAccessFile {
      */
     public byte[] readFixedBytes(int length) throws IOException {
         byte data[] = new byte[length];
-        readFully(data);
+        int pos = position;
+        position = advance(length);
+        System.arraycopy(buffer.array(), pos, data, 0, length);
         return data;
     }
 
@@ -128,11 +177,12 @@ public class IfoRandomAccessFile extends RandomAccessFile {
      * @return String that was read, or {@code null} if the string was empty
      */
     public String readFixedString(int length) throws IOException {
-        byte data[] = readFixedBytes(length);
-        if (data[0] == 0) {
+        int pos = position;
+        position = advance(length);
+        if (buffer.get(pos) == 0) {
             return null;
         }
-        return new String(data, "ASCII");
+        return new String(buffer.array(), pos, length, StandardCharsets.US_ASCII);
     }
 
     /**
@@ -143,8 +193,9 @@ public class IfoRandomAccessFile extends RandomAccessFile {
      *             if the end of file was reached
      */
     public int readu8() throws IOException {
-        byte data[] = readFixedBytes(1);
-        return (data[0] & 0xFF);
+        int pos = position;
+        position = advance(1);
+        return buffer.get(pos) & 0xFF;
     }
 
     /**
@@ -155,8 +206,9 @@ public class IfoRandomAccessFile extends RandomAccessFile {
      *             if the end of file was reached
      */
     public int readu16() throws IOException {
-        byte data[] = readFixedBytes(2);
-        return ((data[0] & 0xFF) << 8) | (data[1] & 0xFF);
+        int pos = position;
+        position = advance(2);
+        return buffer.getShort(pos) & 0xFFFF;
     }
 
     /**
@@ -167,11 +219,9 @@ public class IfoRandomAccessFile extends RandomAccessFile {
      *             if the end of file was reached
      */
     public long readu32() throws IOException {
-        byte data[] = readFixedBytes(4);
-        return ((data[0] & 0xFF) << 24)
-                        | ((data[1] & 0xFF) << 16)
-                        | ((data[2] & 0xFF) << 8)
-                        | (data[3] & 0xFF);
+        int pos = position;
+        position = advance(4);
+        return buffer.getInt(pos) & 0xFFFFFFFFL;
     }
 
     /**
@@ -195,19 +245,25 @@ public class IfoRandomAccessFile extends RandomAccessFile {
      *             if the end of file was reached
      */
     public long readBcdTimeMs() throws IOException {
-        byte data[] = readFixedBytes(4);
+        int offset = position;
+        position = advance(4);
+
+        int hours = buffer.get(offset) & 0xFF;
+        int mins = buffer.get(offset + 1) & 0xFF;
+        int secs = buffer.get(offset + 2) & 0xFF;
+        int frames = buffer.get(offset + 3) & 0xFF;
 
         double fps;
-        switch (data[3] & 0xC0) {
+        switch (frames & 0xC0) {
             case 0x40: fps = 25.0d; break;
             case 0xC0: fps = 29.97d; break;
-            default: throw new IfoException("Unknown fps rate: " + ((data[3] & 0xC0) >> 6));
+            default: throw new IfoException("Unknown fps rate: " + ((frames & 0xC0) >> 6));
         }
 
-        int frame = (((data[3] & 0x30) >> 4) * 10 + (data[3] & 0x0F));
-        int sec = ((data[2] & 0xF0) >> 4) * 10 + (data[2] & 0x0F);
-        int min = ((data[1] & 0xF0) >> 4) * 10 + (data[1] & 0x0F);
-        int hour = ((data[0] & 0xF0) >> 4) * 10 + (data[0] & 0x0F);
+        int frame = (((frames & 0x30) >> 4) * 10 + (frames & 0x0F));
+        int sec = ((secs & 0xF0) >> 4) * 10 + (secs & 0x0F);
+        int min = ((mins & 0xF0) >> 4) * 10 + (mins & 0x0F);
+        int hour = ((hours & 0xF0) >> 4) * 10 + (hours & 0x0F);
 
         double pos = (((((hour * 60) + min) * 60) + sec) * fps) + frame;
 
@@ -406,4 +462,28 @@ public class IfoRandomAccessFile extends RandomAccessFile {
         return titleSet;
     }
 
+    /**
+     * Computes the cursor position after reading the given number of bytes. If the
+     * end of file would be exceeded, an {@link EOFException} is thrown.
+     *
+     * @param num
+     *            number of bytes to be read
+     * @return new cursor position
+     */
+    private int advance(int num) throws EOFException {
+        if (num > buffer.limit() - position) {
+            throw new EOFException();
+        }
+        return position + num;
+    }
+
+    /**
+     * Closes this file. As the file was entirely read when it was opened, there are no
+     * resources to be released.
+     */
+    @Override
+    public void close() {
+        // nothing to release
+    }
+
 }
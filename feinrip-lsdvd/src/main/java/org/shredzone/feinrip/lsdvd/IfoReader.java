@@ -19,9 +19,15 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 
 import org.shredzone.feinrip.lsdvd.DvdTitleSet.Aspect;
 
@@ -29,6 +35,9 @@ import org.shredzone.feinrip.lsdvd.DvdTitleSet.Aspect;
  * Reads IFO and BUP files of a DVD and returns a basic overview of the DVD structure.
  * <p>
  * It is a simpler, but less buggy replacement for the <code>lsdvd</code> tool.
+ * <p>
+ * The VTS files of the title sets are read concurrently, so a slow or damaged VTS file
+ * does not hold up the others. Titles and log output are still in disc order.
  *
  * @author Richard "Shred" Körber
  * @see <a href="http://stnsoft.com/DVD/index.html">DVD-Video Information</a>
@@ -37,6 +46,8 @@ public class IfoReader {
 
     private static LsdvdLogger LOG = new LsdvdLogger(IfoReader.class);
 
+    private static final int VTS_THREADS = 4;
+
     private final List<DvdTitle> titles = new ArrayList<>();
 
     /**
@@ -99,6 +110,7 @@ public class IfoReader {
      */
     private void readVmgFile(File dvdDir, String vmgName) throws IOException {
         LOG.info("Reading VMG file %s", vmgName);
+        List<DvdTitle> vmgTitles = new ArrayList<>();
         try (IfoRandomAccessFile vmg = new IfoRandomAccessFile(dvdDir, vmgName)) {
             if (!"DVDVIDEO-VMG".equals(vmg.readFixedString(12))) {
                 throw new IfoException("No VMG file");
@@ -120,9 +132,6 @@ public class IfoReader {
                 titlesCount = (int) computedTitles;
             }
 
-            int lastVtsn = -1;
-            List<DvdTitle> vtsnTitles = new ArrayList<>();
-
             for (int ix = 0; ix < titlesCount; ix++) {
                 DvdTitle title = new DvdTitle();
 
@@ -133,30 +142,109 @@ public class IfoReader {
                 title.setVts(vmg.readu8());
                 vmg.skip(4);
 
-                titles.add(title);
-                LOG.debug("Title %2d: vtsn=%d, vts=%d", title.getTitle(),
-                                title.getVtsn(), title.getVts());
+                vmgTitles.add(title);
+            }
+        }
+
+        completeTitleSets(dvdDir, vmgTitles);
+        titles.addAll(vmgTitles);
+    }
+
+    /**
+     * Completes all {@link DvdTitle} by reading the VTS files. Consecutive titles of the
+     * same VTS are read as one title set. The title sets are read concurrently, but the
+     * log output is the same as if they were read one after the other.
+     *
+     * @param dvdDir
+     *            Mount directory of the DVD
+     * @param vmgTitles
+     *            {@link DvdTitle} of the VMG file, in disc order
+     */
+    private void completeTitleSets(File dvdDir, List<DvdTitle> vmgTitles) throws IOException {
+        List<List<DvdTitle>> titleSets = new ArrayList<>();
+        int lastVtsn = -1;
+        for (DvdTitle title : vmgTitles) {
+            if (titleSets.isEmpty() || title.getVtsn() != lastVtsn) {
+                titleSets.add(new ArrayList<>());
+                lastVtsn = title.getVtsn();
+            }
+            titleSets.get(titleSets.size() - 1).add(title);
+        }
+
+        if (titleSets.isEmpty()) {
+            return;
+        }
 
-                if (title.getVtsn() != lastVtsn) {
-                    if (!vtsnTitles.isEmpty()) {
-                        completeTitles(dvdDir, lastVtsn, vtsnTitles);
+        ExecutorService executor = Executors.newFixedThreadPool(
+                        Math.min(titleSets.size(), VTS_THREADS), r -> {
+                            Thread thread = new Thread(r, "IfoReader");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        try {
+            List<LogBuffer> logs = new ArrayList<>();
+            List<Future<?>> futures = new ArrayList<>();
+            for (List<DvdTitle> vtsnTitles : titleSets) {
+                LogBuffer log = new LogBuffer();
+                int vtsn = vtsnTitles.get(0).getVtsn();
+                logs.add(log);
+                futures.add(executor.submit(() -> {
+                    completeTitles(log, dvdDir, vtsn, vtsnTitles);
+                    return null;
+                }));
+            }
+
+            // A title set is logged after the first title of the next title set
+            for (int ix = 0; ix < titleSets.size(); ix++) {
+                List<DvdTitle> vtsnTitles = titleSets.get(ix);
+                for (int tx = 0; tx < vtsnTitles.size(); tx++) {
+                    DvdTitle title = vtsnTitles.get(tx);
+                    LOG.debug("Title %2d: vtsn=%d, vts=%d", title.getTitle(),
+                                    title.getVtsn(), title.getVts());
+                    if (tx == 0 && ix > 0) {
+                        awaitTitleSet(futures.get(ix - 1), logs.get(ix - 1));
                     }
-                    vtsnTitles.clear();
-                    lastVtsn = title.getVtsn();
                 }
-
-                vtsnTitles.add(title);
             }
+            awaitTitleSet(futures.get(titleSets.size() - 1), logs.get(titleSets.size() - 1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-            if (!vtsnTitles.isEmpty()) {
-                completeTitles(dvdDir, lastVtsn, vtsnTitles);
+    /**
+     * Waits for a title set to be completed, and logs its output.
+     *
+     * @param future
+     *            {@link Future} of the title set
+     * @param log
+     *            {@link LogBuffer} with the log output of the title set
+     */
+    private void awaitTitleSet(Future<?> future, LogBuffer log) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading VTS files");
+        } catch (ExecutionException ex) {
+            log.replay(LOG);
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
+            throw new IOException(cause);
         }
+        log.replay(LOG);
     }
 
     /**
      * Completes all {@link DvdTitle} by reading the appropriate VTS file.
      *
+     * @param log
+     *            {@link LogBuffer} to log to
      * @param dvdDir
      *            Mount directory of the DVD
      * @param vtsn
@@ -166,29 +254,41 @@ public class IfoReader {
      *            the {@link DvdTitle} will contain detailed data unless the respective
      *            IFO/BUP files were invalid.
      */
-    private void completeTitles(File dvdDir, int vtsn, List<DvdTitle> vtsnTitles) throws IOException {
+    private void completeTitles(LogBuffer log, File dvdDir, int vtsn, List<DvdTitle> vtsnTitles) throws IOException {
+        TitleSetEvent event = new TitleSetEvent();
+        event.begin();
+        event.vtsn = vtsn;
+        event.titles = vtsnTitles.size();
         try {
             try {
-                LOG.info("Reading VTS_%02d_0.IFO", vtsn);
-                readVtsFile(vtsnTitles, dvdDir, String.format("VIDEO_TS/VTS_%02d_0.IFO", vtsn));
+                log.info("Reading VTS_%02d_0.IFO", vtsn);
+                event.file = String.format("VIDEO_TS/VTS_%02d_0.IFO", vtsn);
+                readVtsFile(log, vtsnTitles, dvdDir, event.file);
+                event.valid = true;
             } catch (IOException ex) {
                 try {
-                    LOG.warn("Failed to read VTS IFO file: %s", ex.getMessage());
-                    LOG.info("Reading VTS_%02d_0.BUP", vtsn);
-                    readVtsFile(vtsnTitles, dvdDir, String.format("VIDEO_TS/VTS_%02d_0.BUP", vtsn));
+                    log.warn("Failed to read VTS IFO file: %s", ex.getMessage());
+                    log.info("Reading VTS_%02d_0.BUP", vtsn);
+                    event.file = String.format("VIDEO_TS/VTS_%02d_0.BUP", vtsn);
+                    readVtsFile(log, vtsnTitles, dvdDir, event.file);
+                    event.valid = true;
                 } catch (IfoException | EOFException ex2) {
-                    LOG.warn("VTS file for vtsn %d is invalid: %s", vtsn, ex.getMessage());
+                    log.warn("VTS file for vtsn %d is invalid: %s", vtsn, ex.getMessage());
                 }
             }
-            LOG.debug("Reading VTS_%02d_0 completed successfully...", vtsn);
+            log.debug("Reading VTS_%02d_0 completed successfully...", vtsn);
         } catch (FileNotFoundException ex) {
-            LOG.warn("Found no VTS file for vtsn %d, ignoring!", vtsn);
+            log.warn("Found no VTS file for vtsn %d, ignoring!", vtsn);
+        } finally {
+            event.commit();
         }
     }
 
     /**
      * Reads a single VTS file.
      *
+     * @param log
+     *            {@link LogBuffer} to log to
      * @param vtsnTitles
      *            {@link DvdTitle} belonging to this VTS file. When this method returns,
      *            the {@link DvdTitle} will contain detailed data.
@@ -197,7 +297,7 @@ public class IfoReader {
      * @param vtsFile
      *            actual VTS file to be read
      */
-    private void readVtsFile(List<DvdTitle> vtsnTitles, File dvdDir, String vtsFile) throws IOException {
+    private void readVtsFile(LogBuffer log, List<DvdTitle> vtsnTitles, File dvdDir, String vtsFile) throws IOException {
         try (IfoRandomAccessFile vts = new IfoRandomAccessFile(dvdDir, vtsFile)) {
             if (!"DVDVIDEO-VTS".equals(vts.readFixedString(12))) {
                 throw new IfoException("No VTS file");
@@ -210,7 +310,7 @@ public class IfoReader {
             for (int ix = 0; ix < vtsnTitles.size(); ix++) {
                 DvdTitle title = vtsnTitles.get(ix);
                 title.setTitleSet(titleSet);
-                readVtsPgc(vts, title, titleSet, pgcOffsets.get(title.getVts()));
+                readVtsPgc(log, vts, title, titleSet, pgcOffsets.get(title.getVts()));
             }
         }
     }
@@ -218,6 +318,8 @@ public class IfoReader {
     /**
      * Reads a PGC structure and completes the {@link DvdTitle} with the data found there.
      *
+     * @param log
+     *            {@link LogBuffer} to log to
      * @param vts
      *            random access to the VTS file
      * @param title
@@ -225,12 +327,12 @@ public class IfoReader {
      * @param offset
      *            Offset of the PGC structure to be read
      */
-    private void readVtsPgc(IfoRandomAccessFile vts, DvdTitle title, DvdTitleSet titleSet, long offset) throws IOException {
+    private void readVtsPgc(LogBuffer log, IfoRandomAccessFile vts, DvdTitle title, DvdTitleSet titleSet, long offset) throws IOException {
         vts.at(offset).skip(2);
 
         int chapters = vts.readu8();
         int cellCount = vts.readu8();
-        LOG.debug("  chapters: %d, cells: %d", chapters, cellCount);
+        log.debug("  chapters: %d, cells: %d", chapters, cellCount);
 
         title.setTotalTimeMs(vts.readBcdTimeMs());
 
@@ -335,4 +437,44 @@ public class IfoReader {
         }
     }
 
+    /**
+     * Collects the log output of a title set that is read concurrently, so it can be
+     * logged in disc order later.
+     */
+    private static class LogBuffer {
+        private final List<Level> levels = new ArrayList<>();
+        private final List<String> messages = new ArrayList<>();
+        private final List<Object[]> parameters = new ArrayList<>();
+
+        public void debug(String msg, Object... args) {
+            add(Level.FINE, msg, args);
+        }
+
+        public void info(String msg, Object... args) {
+            add(Level.INFO, msg, args);
+        }
+
+        public void warn(String msg, Object... args) {
+            add(Level.WARNING, msg, args);
+        }
+
+        private synchronized void add(Level level, String msg, Object[] args) {
+            levels.add(level);
+            messages.add(msg);
+            parameters.add(args);
+        }
+
+        /**
+         * Logs all collected output to the given {@link LsdvdLogger}.
+         */
+        public synchronized void replay(LsdvdLogger logger) {
+            for (int ix = 0; ix < levels.size(); ix++) {
+                logger.log(levels.get(ix), messages.get(ix), parameters.get(ix));
+            }
+            levels.clear();
+            messages.clear();
+            parameters.clear();
+        }
+    }
+
 }
@@ -0,0 +1,49 @@
+/*
+ * feinrip
+ *
+ * Copyright (C) 2014 Richard "Shred" Körber
+ *   https://codeberg.org/shred/feinrip
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.shredzone.feinrip.lsdvd;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of parsing a VTS title set.
+ *
+ * @author Richard "Shred" Körber
+ */
+@Name("org.shredzone.feinrip.lsdvd.TitleSet")
+@Label("Title Set Parsing")
+@Description("Reading the IFO file of a video title set")
+@Category({"Feinrip", "IFO"})
+@StackTrace(false)
+class TitleSetEvent extends Event {
+
+    @Label("VTS Number")
+    int vtsn;
+
+    @Label("File")
+    String file;
+
+    @Label("Titles")
+    int titles;
+
+    @Label("Valid")
+    boolean valid;
+
+}